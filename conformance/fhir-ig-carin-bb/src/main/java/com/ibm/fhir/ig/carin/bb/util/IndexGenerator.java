@@ -23,7 +23,7 @@ public class IndexGenerator {
         Index index = new Index(1);
         File dir = new File("src/main/resources/hl7/fhir/us/carin-bb/package/");
         for (File file : dir.listFiles()) {
-            if (!file.isDirectory()) {
+            if (!file.isDirectory() && !file.getName().startsWith(".")) {
                 try (FileReader reader = new FileReader(file)) {
                     try {
                         Resource resource = FHIRParser.parser(Format.JSON).parse(reader);
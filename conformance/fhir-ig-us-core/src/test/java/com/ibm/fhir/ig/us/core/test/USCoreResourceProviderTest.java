@@ -8,6 +8,7 @@ package com.ibm.fhir.ig.us.core.test;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -20,6 +21,8 @@ import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.type.code.IssueSeverity;
 import com.ibm.fhir.registry.resource.FHIRRegistryResource;
 import com.ibm.fhir.registry.spi.FHIRRegistryResourceProvider;
+import com.ibm.fhir.registry.util.FHIRRegistryUtil;
+import com.ibm.fhir.registry.util.PackageRegistryResource;
 import com.ibm.fhir.validation.FHIRValidator;
 
 public class USCoreResourceProviderTest {
@@ -29,6 +32,17 @@ public class USCoreResourceProviderTest {
         assertEquals(provider.getRegistryResources().size(), 145);
     }
 
+    @Test
+    public void testPackageArchive() {
+        // the package archive is generated by the build, so every resource is loaded from it
+        FHIRRegistryResourceProvider provider = new USCoreResourceProvider();
+        for (FHIRRegistryResource registryResource : provider.getRegistryResources()) {
+            PackageRegistryResource packageRegistryResource = (PackageRegistryResource) registryResource;
+            assertNotNull(packageRegistryResource.getArchive());
+            assertEquals(packageRegistryResource.getResource(), FHIRRegistryUtil.loadResource(packageRegistryResource.getPath()));
+        }
+    }
+
     @Test(enabled = false)
     public void testValidateResources() throws Exception {
         FHIRRegistryResourceProvider provider = new USCoreResourceProvider();
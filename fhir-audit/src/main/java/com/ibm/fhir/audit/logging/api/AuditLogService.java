@@ -39,4 +39,12 @@ public interface AuditLogService {
      * 
      */
     void initialize(PropertyGroup auditLogProperties) throws Exception;
+
+    /**
+     * Flushes any audit log entries which have not yet been persisted and releases
+     * the resources held by the audit log service.
+     */
+    default void stop() {
+        // nothing to do by default
+    }
 }
@@ -98,6 +98,21 @@ public class AuditLogServiceFactory {
         log.exiting(CLASSNAME, METHODNAME);
     }
 
+    /**
+     * Stops the cached audit log service, if one has been created, so that it can flush
+     * any pending audit log entries before the server shuts down.
+     */
+    public static synchronized void stopService() {
+        final String METHODNAME = "stopService";
+        log.entering(CLASSNAME, METHODNAME);
+
+        if (serviceInstance != null) {
+            serviceInstance.stop();
+            serviceInstance = null;
+        }
+        log.exiting(CLASSNAME, METHODNAME);
+    }
+
     /**
      * Resets the singleton instance of the audit logger service object that is cached by this factory class, 
      * then creates, caches, and returns a new service object instance.
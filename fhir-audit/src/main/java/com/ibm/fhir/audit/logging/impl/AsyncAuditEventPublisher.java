@@ -0,0 +1,366 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.audit.logging.impl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decouples the publishing of audit events from the threads which produce them.
+ *
+ * <p>Events are placed on a bounded in-memory queue and a single background thread drains the
+ * queue, handing the events to a {@link Sender} in batches. What happens when the queue is full
+ * is determined by the {@link OverflowPolicy}. Calling {@link #close(long)} stops accepting new
+ * events and waits for the events already queued to be sent. Events still queued when the timeout
+ * expires are spilled to the journal file, if there is one, and otherwise counted as failed.
+ */
+public class AsyncAuditEventPublisher implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(AsyncAuditEventPublisher.class.getName());
+    private static final String CLASSNAME = AsyncAuditEventPublisher.class.getName();
+
+    // how long the drainer waits for the first event of a batch before checking for shutdown
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    /** How long {@link #close()} waits for the queued events to be sent */
+    public static final long DEFAULT_CLOSE_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * Sends a batch of events to their final destination
+     */
+    @FunctionalInterface
+    public interface Sender {
+        /**
+         * @param events the events to be sent, in the order they were published
+         * @throws Exception if the batch could not be sent
+         */
+        void send(List<String> events) throws Exception;
+    }
+
+    /**
+     * What to do with an event when the queue is full
+     */
+    public enum OverflowPolicy {
+        /** Wait for the drainer to make room, as the synchronous publisher would */
+        BLOCK,
+        /** Discard the event and count it */
+        DROP,
+        /** Append the event to the journal file */
+        SPILL;
+
+        /**
+         * @param value the (case insensitive) name of the policy
+         * @return the policy
+         * @throws IllegalArgumentException if the value doesn't name a policy
+         */
+        public static OverflowPolicy from(String value) {
+            return OverflowPolicy.valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    private final Sender sender;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final Path journalFile;
+    private final BlockingQueue<String> queue;
+    private final Thread drainer;
+
+    // set when close starts; no new events are accepted after this
+    private volatile boolean closing = false;
+    // cleared once no publisher can add to the queue any more, which tells the drainer to stop once it is empty
+    private volatile boolean running = true;
+    // publishers hold the read lock while adding an event, and close takes the write lock to wait for them
+    private final ReadWriteLock publishLock = new ReentrantReadWriteLock();
+
+    // metrics
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong totalSendNanos = new AtomicLong();
+    private final AtomicLong maxSendNanos = new AtomicLong();
+
+    /**
+     * Create the publisher and start its drainer thread
+     *
+     * @param sender the sender used to publish each batch
+     * @param queueSize the maximum number of events waiting to be sent
+     * @param batchSize the maximum number of events handed to the sender at a time
+     * @param overflowPolicy what to do with an event when the queue is full
+     * @param journalFile the file to which events are spilled; required for {@link OverflowPolicy#SPILL}, and
+     *        also used for events from a failed batch when configured
+     */
+    public AsyncAuditEventPublisher(Sender sender, int queueSize, int batchSize, OverflowPolicy overflowPolicy, Path journalFile) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("queueSize must be >= 1");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be >= 1");
+        }
+        if (overflowPolicy == OverflowPolicy.SPILL && journalFile == null) {
+            throw new IllegalArgumentException("A journal file is required for the SPILL overflow policy");
+        }
+
+        this.sender = Objects.requireNonNull(sender, "sender");
+        this.batchSize = batchSize;
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy, "overflowPolicy");
+        this.journalFile = journalFile;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+
+        this.drainer = new Thread(this::drain, "fhir-audit-publisher");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    /**
+     * Queue the event for publishing
+     *
+     * @param event
+     * @throws InterruptedException if interrupted while waiting for room on the queue
+     * @throws IOException if the event could not be spilled to the journal file
+     * @throws IllegalStateException if the publisher has been closed, or was closed while waiting for room on the
+     *         queue and has no journal file to spill the event to
+     */
+    public void publish(String event) throws InterruptedException, IOException {
+        publishLock.readLock().lock();
+        try {
+            if (closing) {
+                throw new IllegalStateException("Audit event publisher is closed");
+            }
+
+            if (!queue.offer(event)) {
+                switch (overflowPolicy) {
+                case BLOCK:
+                    // keep checking for close, which waits for this thread to release the lock
+                    while (!queue.offer(event, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (closing) {
+                            if (journalFile == null) {
+                                throw new IllegalStateException("Audit event publisher was closed while waiting for room on the queue");
+                            }
+                            spill(Collections.singletonList(event));
+                            break;
+                        }
+                    }
+                    break;
+                case DROP:
+                    droppedCount.incrementAndGet();
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.fine("Audit queue full; dropped event");
+                    }
+                    break;
+                case SPILL:
+                    spill(Collections.singletonList(event));
+                    break;
+                }
+            }
+        } finally {
+            publishLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stop accepting events, and wait up to timeoutMillis for the queued events to be sent. The events which are
+     * still queued after that are spilled to the journal file, if there is one, and otherwise counted as failed.
+     *
+     * @param timeoutMillis
+     * @return true if all the queued events were handled before the timeout
+     * @throws InterruptedException
+     */
+    public boolean close(long timeoutMillis) throws InterruptedException {
+        final String METHODNAME = "close";
+        logger.entering(CLASSNAME, METHODNAME);
+
+        // Wait for the publishers which are still adding an event. A blocked publisher notices the close within
+        // POLL_INTERVAL_MILLIS, so after this the queue only gets smaller and the drainer can't miss an event.
+        closing = true;
+        publishLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            publishLock.writeLock().unlock();
+        }
+
+        drainer.join(timeoutMillis);
+        boolean done = !drainer.isAlive();
+        if (!done) {
+            // the drainer is stuck sending a batch; take what it hasn't got to yet
+            List<String> leftover = new ArrayList<>();
+            queue.drainTo(leftover);
+            logger.warning("Timed out waiting for audit events to be sent; " + leftover.size() + " events were not sent");
+            if (!leftover.isEmpty()) {
+                handleUnsent(leftover);
+            }
+        }
+        logger.info("Audit event publisher closed. " + getMetricsSummary());
+
+        logger.exiting(CLASSNAME, METHODNAME);
+        return done;
+    }
+
+    /**
+     * Close the publisher, waiting up to {@link #DEFAULT_CLOSE_TIMEOUT_MILLIS} for the queued events to be sent
+     *
+     * @throws InterruptedException
+     * @throws IllegalStateException if the queued events weren't handled before the timeout
+     */
+    @Override
+    public void close() throws InterruptedException {
+        if (!close(DEFAULT_CLOSE_TIMEOUT_MILLIS)) {
+            throw new IllegalStateException("Timed out waiting for audit events to be sent; " + getMetricsSummary());
+        }
+    }
+
+    /**
+     * Drain the queue until the publisher is closed and the queue is empty
+     */
+    private void drain() {
+        List<String> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                String first = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                sendBatch(batch);
+            } catch (InterruptedException x) {
+                // keep going until closed; the queued events still need to be sent
+                logger.fine("Audit event drainer interrupted");
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Hand the batch to the sender, recording the send latency
+     */
+    private void sendBatch(List<String> batch) {
+        long start = System.nanoTime();
+        try {
+            sender.send(batch);
+
+            long elapsed = System.nanoTime() - start;
+            sentCount.addAndGet(batch.size());
+            batchCount.incrementAndGet();
+            totalSendNanos.addAndGet(elapsed);
+            maxSendNanos.accumulateAndGet(elapsed, Math::max);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Sent " + batch.size() + " audit events in " + elapsed / 1e6 + "ms; queueDepth=" + queue.size());
+            }
+        } catch (Exception x) {
+            logger.log(Level.SEVERE, "Failed to send " + batch.size() + " audit events", x);
+            handleUnsent(batch);
+        }
+    }
+
+    /**
+     * Spill events which could not be sent to the journal file, if there is one, and otherwise count them as failed
+     */
+    private void handleUnsent(List<String> events) {
+        if (journalFile != null) {
+            try {
+                spill(events);
+                return;
+            } catch (IOException iox) {
+                logger.log(Level.SEVERE, "Failed to spill " + events.size() + " audit events to " + journalFile, iox);
+            }
+        }
+        failedCount.addAndGet(events.size());
+    }
+
+    /**
+     * Append the events to the journal file, one event per line
+     */
+    private synchronized void spill(List<String> events) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE)) {
+            for (String event : events) {
+                writer.write(event);
+                writer.newLine();
+            }
+        }
+        spilledCount.addAndGet(events.size());
+    }
+
+    /**
+     * @return the number of events waiting to be sent
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of events sent successfully
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * @return the number of events discarded because the queue was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return the number of events written to the journal file
+     */
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    /**
+     * @return the number of events lost because their batch could not be sent, or because they were still queued
+     *         when the publisher was closed, and could not be spilled to a journal file
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return the mean time taken to send a batch, in milliseconds
+     */
+    public double getAverageSendLatencyMillis() {
+        long batches = batchCount.get();
+        return batches == 0 ? 0 : totalSendNanos.get() / 1e6 / batches;
+    }
+
+    /**
+     * @return the longest time taken to send a batch, in milliseconds
+     */
+    public double getMaxSendLatencyMillis() {
+        return maxSendNanos.get() / 1e6;
+    }
+
+    /**
+     * @return a one line summary of the metrics, suitable for logging
+     */
+    public String getMetricsSummary() {
+        return "queueDepth=" + getQueueDepth() + " sent=" + getSentCount() + " dropped=" + getDroppedCount()
+                + " spilled=" + getSpilledCount() + " failed=" + getFailedCount()
+                + " avgSendLatency=" + getAverageSendLatencyMillis() + "ms maxSendLatency=" + getMaxSendLatencyMillis() + "ms";
+    }
+}
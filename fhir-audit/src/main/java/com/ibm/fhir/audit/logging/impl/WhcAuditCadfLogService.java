@@ -7,16 +7,21 @@
 package com.ibm.fhir.audit.logging.impl;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 
 import com.ibm.fhir.audit.cadf.model.CadfAttachment;
 import com.ibm.fhir.audit.cadf.model.CadfCredential;
@@ -32,6 +37,7 @@ import com.ibm.fhir.audit.kafka.Environment;
 import com.ibm.fhir.audit.kafka.EventStreamsCredentials;
 import com.ibm.fhir.audit.logging.api.AuditLogEventType;
 import com.ibm.fhir.audit.logging.api.AuditLogService;
+import com.ibm.fhir.audit.logging.impl.AsyncAuditEventPublisher.OverflowPolicy;
 import com.ibm.fhir.audit.logging.beans.AuditLogEntry;
 import com.ibm.fhir.audit.logging.beans.impl.context.FHIRContext;
 import com.ibm.fhir.config.PropertyGroup;
@@ -50,6 +56,12 @@ public class WhcAuditCadfLogService implements AuditLogService {
     private static final String PROPERTY_AUDIT_GEO_CITY = "geoCity";
     private static final String PROPERTY_AUDIT_GEO_STATE = "geoState";
     private static final String PROPERTY_AUDIT_GEO_COUNTRY = "geoCounty";
+    private static final String PROPERTY_AUDIT_ASYNC_ENABLED = "asyncEnabled";
+    private static final String PROPERTY_AUDIT_ASYNC_QUEUE_SIZE = "asyncQueueSize";
+    private static final String PROPERTY_AUDIT_ASYNC_BATCH_SIZE = "asyncBatchSize";
+    private static final String PROPERTY_AUDIT_ASYNC_OVERFLOW_POLICY = "asyncOverflowPolicy";
+    private static final String PROPERTY_AUDIT_ASYNC_JOURNAL_FILE = "asyncJournalFile";
+    private static final String PROPERTY_AUDIT_ASYNC_SHUTDOWN_TIMEOUT = "asyncShutdownTimeout";
     private static final String HEALTHCHECKOP = "healthcheck";
 
     private static final String KAFKA_USERNAME = "token";
@@ -57,6 +69,10 @@ public class WhcAuditCadfLogService implements AuditLogService {
     private static final String DEFAULT_AUDIT_GEO_CITY = "Dallas";
     private static final String DEFAULT_AUDIT_GEO_STATE = "TX";
     private static final String DEFAULT_AUDIT_GEO_COUNTRY = "US";
+    private static final int DEFAULT_AUDIT_ASYNC_QUEUE_SIZE = 10000;
+    private static final int DEFAULT_AUDIT_ASYNC_BATCH_SIZE = 500;
+    private static final String DEFAULT_AUDIT_ASYNC_OVERFLOW_POLICY = "block";
+    private static final int DEFAULT_AUDIT_ASYNC_SHUTDOWN_TIMEOUT = 30000;
 
     private KafkaProducer<String, String> producer = null;
     private static String bootstrapServers = null;
@@ -66,6 +82,10 @@ public class WhcAuditCadfLogService implements AuditLogService {
     private static String geoState = DEFAULT_AUDIT_GEO_STATE;
     private static String geoCountry = DEFAULT_AUDIT_GEO_COUNTRY;
 
+    // Only set when asynchronous publishing is enabled
+    private AsyncAuditEventPublisher publisher = null;
+    private long shutdownTimeout = DEFAULT_AUDIT_ASYNC_SHUTDOWN_TIMEOUT;
+
     private boolean isEnabled = false;
 
     private static final Map<String, Action> fhir2CadfMap = new HashMap<String, Action>() {
@@ -144,11 +164,26 @@ public class WhcAuditCadfLogService implements AuditLogService {
 
         if (this.producer == null) {
             throw new FHIRException("Failed to init kafka producer!");
-        } else {
-            logger.info("Initialized Audit logger.");
-            this.isEnabled = true;
         }
 
+        // Optionally hand the events off to a background thread, so requests don't wait on the kafka round trip
+        if (auditLogProperties != null && auditLogProperties.getBooleanProperty(PROPERTY_AUDIT_ASYNC_ENABLED, Boolean.FALSE)) {
+            int queueSize = auditLogProperties.getIntProperty(PROPERTY_AUDIT_ASYNC_QUEUE_SIZE, DEFAULT_AUDIT_ASYNC_QUEUE_SIZE);
+            int batchSize = auditLogProperties.getIntProperty(PROPERTY_AUDIT_ASYNC_BATCH_SIZE, DEFAULT_AUDIT_ASYNC_BATCH_SIZE);
+            OverflowPolicy overflowPolicy = OverflowPolicy.from(
+                    auditLogProperties.getStringProperty(PROPERTY_AUDIT_ASYNC_OVERFLOW_POLICY, DEFAULT_AUDIT_ASYNC_OVERFLOW_POLICY));
+            String journalFile = auditLogProperties.getStringProperty(PROPERTY_AUDIT_ASYNC_JOURNAL_FILE, null);
+            shutdownTimeout = auditLogProperties.getIntProperty(PROPERTY_AUDIT_ASYNC_SHUTDOWN_TIMEOUT, DEFAULT_AUDIT_ASYNC_SHUTDOWN_TIMEOUT);
+
+            this.publisher = new AsyncAuditEventPublisher(this::send, queueSize, batchSize, overflowPolicy,
+                    journalFile == null ? null : Paths.get(journalFile));
+            logger.info("Audit events are published asynchronously. queueSize=" + queueSize + " batchSize=" + batchSize
+                    + " overflowPolicy=" + overflowPolicy);
+        }
+
+        logger.info("Initialized Audit logger.");
+        this.isEnabled = true;
+
         logger.exiting(CLASSNAME, METHODNAME);
     }
 
@@ -168,15 +203,42 @@ public class WhcAuditCadfLogService implements AuditLogService {
 
         if (eventObject != null) {
             String eventString = CadfEvent.Writer.generate(eventObject);
-            ProducerRecord<String, String> record = new ProducerRecord<>(auditTopic, eventString);
-            // Block till the message is sent to kafka server.
-            this.producer.send(record).get();
+            if (this.publisher != null) {
+                this.publisher.publish(eventString);
+            } else {
+                ProducerRecord<String, String> record = new ProducerRecord<>(auditTopic, eventString);
+                // Block till the message is sent to kafka server.
+                this.producer.send(record).get();
+            }
         }
 
         logger.exiting(CLASSNAME, METHODNAME);
 
     }
 
+    /**
+     * Send a batch of events to kafka, returning once all of them have been acknowledged
+     * @param events
+     * @throws Exception
+     */
+    private void send(List<String> events) throws Exception {
+        // Let the producer pipeline the records rather than waiting on each one in turn
+        List<Future<RecordMetadata>> results = new ArrayList<>(events.size());
+        for (String eventString : events) {
+            results.add(this.producer.send(new ProducerRecord<>(auditTopic, eventString)));
+        }
+        for (Future<RecordMetadata> result : results) {
+            result.get();
+        }
+    }
+
+    /**
+     * @return the asynchronous publisher, or null if events are published synchronously
+     */
+    public AsyncAuditEventPublisher getPublisher() {
+        return this.publisher;
+    }
+
     @Override
     public boolean isEnabled() {
         return this.isEnabled;
@@ -256,8 +318,17 @@ public class WhcAuditCadfLogService implements AuditLogService {
         return event;
     }
 
-    // release kafka resource for producer
+    // flush any queued events, then release kafka resource for producer
+    @Override
     public void stop() {
+        if (this.publisher != null) {
+            try {
+                this.publisher.close(shutdownTimeout);
+            } catch (InterruptedException e) {
+                logger.warning("Interrupted while flushing audit events");
+                Thread.currentThread().interrupt();
+            }
+        }
         if (this.producer != null) {
             try {
                 this.producer.close();
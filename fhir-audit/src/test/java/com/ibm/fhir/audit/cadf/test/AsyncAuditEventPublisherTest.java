@@ -0,0 +1,229 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.audit.cadf.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.audit.logging.impl.AsyncAuditEventPublisher;
+import com.ibm.fhir.audit.logging.impl.AsyncAuditEventPublisher.OverflowPolicy;
+
+public class AsyncAuditEventPublisherTest {
+
+    @Test
+    public void testPublishAndFlushOnClose() throws Exception {
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        AsyncAuditEventPublisher publisher = new AsyncAuditEventPublisher(events -> {
+            batchSizes.add(events.size());
+            sent.addAll(events);
+        }, 100, 10, OverflowPolicy.BLOCK, null);
+
+        for (int i = 0; i < 50; i++) {
+            publisher.publish("event-" + i);
+        }
+        assertTrue(publisher.close(10000));
+
+        assertEquals(sent.size(), 50);
+        assertEquals(sent.get(0), "event-0");
+        assertEquals(sent.get(49), "event-49");
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 10));
+        assertEquals(publisher.getSentCount(), 50);
+        assertEquals(publisher.getQueueDepth(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testPublishAfterClose() throws Exception {
+        AsyncAuditEventPublisher publisher = new AsyncAuditEventPublisher(events -> { }, 10, 10, OverflowPolicy.BLOCK, null);
+        publisher.close(10000);
+        publisher.publish("event");
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch sending = new CountDownLatch(1);
+        AsyncAuditEventPublisher publisher = new AsyncAuditEventPublisher(events -> {
+            sending.countDown();
+            release.await();
+        }, 2, 1, OverflowPolicy.DROP, null);
+
+        // the first event is held by the (blocked) sender, the next two fill the queue
+        publisher.publish("event-0");
+        sending.await();
+        publisher.publish("event-1");
+        publisher.publish("event-2");
+        publisher.publish("event-3");
+        publisher.publish("event-4");
+
+        assertEquals(publisher.getDroppedCount(), 2);
+        assertEquals(publisher.getQueueDepth(), 2);
+
+        release.countDown();
+        assertTrue(publisher.close(10000));
+        assertEquals(publisher.getSentCount(), 3);
+    }
+
+    @Test
+    public void testSpillWhenFullOrFailed() throws Exception {
+        Path journal = Files.createTempFile("audit-journal", ".ndjson");
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch sending = new CountDownLatch(1);
+            AsyncAuditEventPublisher publisher = new AsyncAuditEventPublisher(events -> {
+                sending.countDown();
+                release.await();
+                throw new IllegalStateException("broker unavailable");
+            }, 1, 1, OverflowPolicy.SPILL, journal);
+
+            publisher.publish("event-0");
+            sending.await();
+            publisher.publish("event-1");
+            publisher.publish("event-2");
+
+            // event-2 didn't fit on the queue
+            assertEquals(publisher.getSpilledCount(), 1);
+
+            // event-0 and event-1 fail to send
+            release.countDown();
+            assertTrue(publisher.close(10000));
+
+            assertEquals(publisher.getSpilledCount(), 3);
+            assertEquals(publisher.getSentCount(), 0);
+            assertEquals(publisher.getFailedCount(), 0);
+            List<String> lines = Files.readAllLines(journal);
+            Collections.sort(lines);
+            assertEquals(lines, Arrays.asList("event-0", "event-1", "event-2"));
+        } finally {
+            Files.deleteIfExists(journal);
+        }
+    }
+
+    @Test
+    public void testCloseWhileBlocked() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch sending = new CountDownLatch(1);
+        AsyncAuditEventPublisher publisher = new AsyncAuditEventPublisher(events -> {
+            sending.countDown();
+            release.await();
+        }, 1, 1, OverflowPolicy.BLOCK, null);
+
+        // event-0 is held by the (blocked) sender, event-1 fills the queue and event-2 waits for room
+        publisher.publish("event-0");
+        sending.await();
+        publisher.publish("event-1");
+        AtomicReference<Exception> blockedResult = new AtomicReference<>();
+        Thread blocked = new Thread(() -> {
+            try {
+                publisher.publish("event-2");
+            } catch (Exception x) {
+                blockedResult.set(x);
+            }
+        });
+        blocked.start();
+        while (blocked.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(10);
+        }
+
+        // the close doesn't hang on the blocked publisher, which is told that its event wasn't published
+        assertFalse(publisher.close(500));
+        blocked.join(10000);
+        assertTrue(blockedResult.get() instanceof IllegalStateException);
+
+        // event-1 was still queued when the close timed out
+        assertEquals(publisher.getFailedCount(), 1);
+        assertEquals(publisher.getQueueDepth(), 0);
+        release.countDown();
+    }
+
+    @Test
+    public void testCloseTimeoutSpillsQueuedEvents() throws Exception {
+        Path journal = Files.createTempFile("audit-journal", ".ndjson");
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch sending = new CountDownLatch(1);
+            AsyncAuditEventPublisher publisher = new AsyncAuditEventPublisher(events -> {
+                sending.countDown();
+                release.await();
+            }, 10, 1, OverflowPolicy.SPILL, journal);
+
+            publisher.publish("event-0");
+            sending.await();
+            publisher.publish("event-1");
+            publisher.publish("event-2");
+
+            assertFalse(publisher.close(200));
+            assertEquals(publisher.getSpilledCount(), 2);
+            assertEquals(publisher.getFailedCount(), 0);
+            assertEquals(Files.readAllLines(journal), Arrays.asList("event-1", "event-2"));
+            release.countDown();
+        } finally {
+            Files.deleteIfExists(journal);
+        }
+    }
+
+    @Test
+    public void testCloseWhilePublishing() throws Exception {
+        AtomicInteger sent = new AtomicInteger();
+        AsyncAuditEventPublisher publisher = new AsyncAuditEventPublisher(events -> sent.addAndGet(events.size()),
+                4, 2, OverflowPolicy.BLOCK, null);
+
+        // every event which publish accepts must be sent, however the close interleaves with the publishers
+        AtomicInteger accepted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    while (true) {
+                        publisher.publish("event");
+                        accepted.incrementAndGet();
+                    }
+                } catch (IllegalStateException x) {
+                    // closed
+                } catch (Exception x) {
+                    throw new RuntimeException(x);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        Thread.sleep(100);
+
+        assertTrue(publisher.close(10000));
+        for (Thread thread : threads) {
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+        }
+        assertEquals(sent.get(), accepted.get());
+        assertEquals(publisher.getSentCount(), accepted.get());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSpillRequiresJournal() {
+        new AsyncAuditEventPublisher(events -> { }, 10, 10, OverflowPolicy.SPILL, null);
+    }
+
+    @Test
+    public void testOverflowPolicyFrom() {
+        assertEquals(OverflowPolicy.from("block"), OverflowPolicy.BLOCK);
+        assertEquals(OverflowPolicy.from(" Drop "), OverflowPolicy.DROP);
+        assertEquals(OverflowPolicy.from("SPILL"), OverflowPolicy.SPILL);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ibm.fhir.benchmark.runner.FHIRBenchmarkRunner;
+import com.ibm.fhir.benchmark.util.BenchmarkUtil;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.persistence.jdbc.codec.GzipPayloadCodec;
+import com.ibm.fhir.persistence.jdbc.codec.LZ4PayloadCodec;
+import com.ibm.fhir.persistence.jdbc.codec.PayloadCodec;
+import com.ibm.fhir.persistence.jdbc.codec.ZstdPayloadCodec;
+
+/**
+ * Compares the payload codecs used to store resources in the JDBC persistence layer. The compressed size of the
+ * example is printed during setup.
+ */
+public class FHIRPayloadCodecBenchmark {
+    private static final int DICTIONARY_SIZE = 64 * 1024;
+
+    @State(Scope.Benchmark)
+    public static class FHIRPayloadCodecState {
+        PayloadCodec codec;
+        String resourceType;
+        byte[] json;
+        byte[] data;
+        byte[] buffer = new byte[8192];
+
+        // JMH will inject the value into the annotated field before any Setup method is called.
+        @Param({"valuesets"})
+        public String exampleName;
+
+        @Param({"gzip", "lz4", "zstd", "zstd-dictionary"})
+        public String codecName;
+
+        @Setup
+        public void setUp() throws Exception {
+            if (exampleName == null) {
+                System.err.println("exampleName is null; if you're in Eclipse then make sure annotation processing is on and you've ran 'mvn clean package'.");
+                System.exit(1);
+            }
+
+            Resource resource = FHIRParser.parser(Format.JSON).parse(new StringReader(BenchmarkUtil.getSpecExample(Format.JSON, exampleName)));
+            resourceType = resource.getClass().getSimpleName();
+            json = toJson(resource);
+
+            switch (codecName) {
+            case "gzip":
+                codec = new GzipPayloadCodec();
+                break;
+            case "lz4":
+                codec = new LZ4PayloadCodec();
+                break;
+            case "zstd":
+                codec = new ZstdPayloadCodec();
+                break;
+            case "zstd-dictionary":
+                byte[] dictionary = ZstdPayloadCodec.trainDictionary(getSamples(resourceType), DICTIONARY_SIZE);
+                codec = new ZstdPayloadCodec(Collections.singletonMap(resourceType, dictionary), ZstdPayloadCodec.DEFAULT_LEVEL);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown codec: " + codecName);
+            }
+
+            data = encode(this);
+            System.out.println(exampleName + " " + codecName + ": " + json.length + " bytes compressed to " + data.length + " bytes");
+        }
+
+        /**
+         * @return the JSON of the other spec examples of the passed resource type
+         */
+        private List<byte[]> getSamples(String resourceType) throws Exception {
+            List<byte[]> samples = new ArrayList<>();
+            for (String specExampleName : BenchmarkUtil.getSpecExampleNames()) {
+                if (specExampleName.equals(exampleName)) {
+                    continue;
+                }
+                Resource sample = FHIRParser.parser(Format.JSON).parse(new StringReader(BenchmarkUtil.getSpecExample(Format.JSON, specExampleName)));
+                if (sample.getClass().getSimpleName().equals(resourceType)) {
+                    samples.add(toJson(sample));
+                }
+            }
+            return samples;
+        }
+
+        private static byte[] toJson(Resource resource) throws Exception {
+            StringWriter writer = new StringWriter();
+            FHIRGenerator.generator(Format.JSON, false).generate(resource, writer);
+            return writer.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public byte[] benchmarkEncode(FHIRPayloadCodecState state) throws Exception {
+        return encode(state);
+    }
+
+    @Benchmark
+    public void benchmarkDecode(FHIRPayloadCodecState state, Blackhole blackhole) throws Exception {
+        try (InputStream in = state.codec.decode(state.data)) {
+            int count;
+            while ((count = in.read(state.buffer)) != -1) {
+                blackhole.consume(count);
+            }
+        }
+    }
+
+    private static byte[] encode(FHIRPayloadCodecState state) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (OutputStream out = state.codec.encode(stream, state.resourceType)) {
+            out.write(state.json);
+        }
+        return stream.toByteArray();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new FHIRBenchmarkRunner(FHIRPayloadCodecBenchmark.class)
+                .run(BenchmarkUtil.getRandomSpecExampleName());
+    }
+}
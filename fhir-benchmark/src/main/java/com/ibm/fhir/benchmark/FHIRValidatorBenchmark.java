@@ -9,12 +9,14 @@ package com.ibm.fhir.benchmark;
 import static com.ibm.fhir.benchmark.runner.FHIRBenchmarkRunner.PROPERTY_EXAMPLE_NAME;
 
 import java.io.StringReader;
+import java.util.concurrent.ForkJoinPool;
 
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 
 import com.ibm.fhir.benchmark.runner.FHIRBenchmarkRunner;
 import com.ibm.fhir.benchmark.util.BenchmarkUtil;
@@ -37,6 +39,8 @@ public class FHIRValidatorBenchmark {
         public FhirValidator fhirValidator;
         public IBaseResource baseResource;
         public FHIRValidator validator;
+        public ForkJoinPool pool;
+        public FHIRValidator parallelValidator;
         public Resource resource;
         public EvaluationContext evaluationContext;
 
@@ -46,9 +50,16 @@ public class FHIRValidatorBenchmark {
             fhirValidator = context.newValidator();
             baseResource = context.newJsonParser().parseResource(new StringReader(JSON_SPEC_EXAMPLE));
             validator = FHIRValidator.validator();
+            pool = new ForkJoinPool();
+            parallelValidator = FHIRValidator.validator(pool);
             resource = FHIRParser.parser(Format.JSON).parse(new StringReader(JSON_SPEC_EXAMPLE));
             evaluationContext = new EvaluationContext(resource);
         }
+
+        @TearDown
+        public void tearDown() {
+            pool.shutdown();
+        }
     }
 
     @Benchmark
@@ -56,6 +67,11 @@ public class FHIRValidatorBenchmark {
         state.validator.validate(state.evaluationContext);
     }
 
+    @Benchmark
+    public void benchmarkParallelValidator(FHIRValidatorState state) throws Exception {
+        state.parallelValidator.validate(state.evaluationContext);
+    }
+
     @Benchmark
     public void benchmarkHAPIValidator(FHIRValidatorState state) throws Exception {
         state.fhirValidator.validateWithResult(state.baseResource);
@@ -11,6 +11,7 @@ import java.util.Collection;
 import java.util.List;
 
 import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
 import org.openjdk.jmh.profile.StackProfiler;
 import org.openjdk.jmh.results.RunResult;
 import org.openjdk.jmh.runner.Runner;
@@ -56,6 +57,7 @@ public class FHIRBenchmarkRunner {
                 .threads(1)
 //              .mode(Mode.AverageTime)
                 .addProfiler(StackProfiler.class)
+                .addProfiler(GCProfiler.class)
                 .build();
         return new Runner(opt).run();
     }
@@ -77,6 +79,7 @@ public class FHIRBenchmarkRunner {
                 .forks(1)
 //              .mode(Mode.AverageTime)
                 .addProfiler(StackProfiler.class)
+                .addProfiler(GCProfiler.class)
                 .param("exampleName", fileName)
                 .build();
         return new Runner(opt).run();
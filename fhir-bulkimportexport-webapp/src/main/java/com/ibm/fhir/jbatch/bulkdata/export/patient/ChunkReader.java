@@ -40,6 +40,7 @@ import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
 import com.ibm.fhir.model.resource.Patient;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.util.RawResource;
 import com.ibm.fhir.persistence.FHIRPersistence;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
@@ -47,6 +48,7 @@ import com.ibm.fhir.persistence.helper.FHIRPersistenceHelper;
 import com.ibm.fhir.persistence.helper.FHIRTransactionHelper;
 import com.ibm.fhir.search.compartment.CompartmentUtil;
 import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.cursor.SearchCursor;
 import com.ibm.fhir.search.util.SearchUtil;
 
 /**
@@ -70,6 +72,8 @@ public class ChunkReader extends AbstractItemReader {
     // loadedResourceIds and isDoDuplicationCheck are always reset when moving to the next resource type.
     Set<String> loadedResourceIds = new HashSet<>();
     boolean isDoDuplicationCheck = false;
+    // When set, NDJSON export copies the stored JSON of each compartment resource to the buffer instead of parsing and generating it.
+    boolean isRawExport = false;
 
     /**
      * Fhir tenant id.
@@ -165,7 +169,6 @@ public class ChunkReader extends AbstractItemReader {
                 if (!searchCriteria.isEmpty()) {
                     queryParameters.put(Constants.FHIR_SEARCH_LASTUPDATED, searchCriteria);
                 }
-                queryParameters.put("_sort", Arrays.asList(new String[] { Constants.FHIR_SEARCH_LASTUPDATED }));
 
                 List<String> compartmentSearchCriterias = CompartmentUtil.getCompartmentResourceTypeInclusionCriteria("Patient", resourceType.getSimpleName());
                 if (compartmentSearchCriterias.size() > 1) {
@@ -177,6 +180,15 @@ public class ChunkReader extends AbstractItemReader {
                     queryTmpParameters.putAll(queryParameters);
 
                     queryTmpParameters.put(compartmentSearchCriteria, Arrays.asList(new String[] {String.join(",", patientIds)}));
+                    if (isRawExport) {
+                        int rawSubTotal = fillChunkDataBufferFromRaw(queryTmpParameters, chunkData);
+                        if (rawSubTotal >= 0) {
+                            resSubTotal += rawSubTotal;
+                            continue;
+                        }
+                    }
+
+                    queryTmpParameters.put("_sort", Arrays.asList(new String[] { Constants.FHIR_SEARCH_LASTUPDATED }));
                     searchContext = SearchUtil.parseQueryParameters(resourceType, queryTmpParameters);
 
                     do {
@@ -244,6 +256,61 @@ public class ChunkReader extends AbstractItemReader {
 
     }
 
+    /**
+     * Copies the stored JSON of all the resources matched by the passed query parameters to the chunk data buffer.
+     * The pages are unsorted, so each one after the first is fetched by seeking past the last resource of the preceding page.
+     *
+     * @param queryParameters
+     * @param chunkData
+     * @return the number of resources copied, or -1 if the persistence layer can't return the resources as stored
+     * @throws Exception
+     */
+    private int fillChunkDataBufferFromRaw(Map<String, List<String>> queryParameters, TransientUserData chunkData) throws Exception {
+        int compartmentPageNum = 1;
+        int resSubTotal = 0;
+        SearchCursor cursor = null;
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(resourceType, queryParameters);
+
+        do {
+            searchContext.setPageSize(pageSize);
+            searchContext.setPageNumber(compartmentPageNum);
+            searchContext.setCursor(cursor);
+            FHIRTransactionHelper txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
+            FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
+
+            List<RawResource> resources;
+            txn.begin();
+            try {
+                resources = fhirPersistence.searchRaw(persistenceContext, resourceType);
+            } finally {
+                txn.end();
+            }
+            if (resources == null) {
+                return -1;
+            }
+            cursor = searchContext.getNextCursor();
+            compartmentPageNum++;
+
+            for (RawResource res : resources) {
+                if (isDoDuplicationCheck && loadedResourceIds.contains(res.getLogicalId())) {
+                    continue;
+                }
+                try {
+                    res.writeJson(chunkData.getBufferStream());
+                    chunkData.getBufferStream().write(Constants.NDJSON_LINESEPERATOR);
+                    resSubTotal++;
+                    if (isDoDuplicationCheck) {
+                        loadedResourceIds.add(res.getLogicalId());
+                    }
+                } catch (IOException e) {
+                    logger.warning("fillChunkDataBufferFromRaw: chunkDataBuffer written error!");
+                    throw e;
+                }
+            }
+        } while (searchContext.getLastPageNumber() >= compartmentPageNum);
+
+        return resSubTotal;
+    }
 
     protected void fillChunkPatientDataBuffer(List<Resource> patients) throws Exception {
         int resSubTotal = 0;
@@ -389,6 +456,8 @@ public class ChunkReader extends AbstractItemReader {
         searchParametersForResoureTypes = BulkDataUtils.getSearchParemetersFromTypeFilters(fhirTypeFilters);
 
         resourceType = ModelSupport.getResourceType(fhirResourceType);
+        isRawExport = !FHIRMediaType.APPLICATION_PARQUET.equals(fhirExportFormat)
+                && FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_BULKDATA_RAW_EXPORT_ENABLED, true);
         pageSize = FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_BULKDATA_PATIENTEXPORT_PAGESIZE, Constants.DEFAULT_PATIENT_EXPORT_SEARCH_PAGE_SIZE);
         if (fhirSearchPageSize != null) {
             try {
@@ -25,6 +25,8 @@ import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 
 import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.jbatch.bulkdata.common.BulkDataUtils;
@@ -36,12 +38,14 @@ import com.ibm.fhir.model.generator.FHIRGenerator;
 import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.util.RawResource;
 import com.ibm.fhir.persistence.FHIRPersistence;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
 import com.ibm.fhir.persistence.helper.FHIRPersistenceHelper;
 import com.ibm.fhir.persistence.helper.FHIRTransactionHelper;
 import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.cursor.SearchCursor;
 import com.ibm.fhir.search.util.SearchUtil;
 
 /**
@@ -64,6 +68,11 @@ public class ChunkReader extends AbstractItemReader {
     Set<String> loadedResourceIds = new HashSet<>();
     boolean isDoDuplicationCheck = false;
 
+    // When set, NDJSON export copies the stored JSON of each resource to the buffer instead of parsing and generating it.
+    // The raw pages are unsorted, so they are fetched by seeking past the last resource of the preceding page.
+    boolean isRawExport = false;
+    SearchCursor nextCursor = null;
+
     FHIRPersistence fhirPersistence;
     Class<? extends Resource> resourceType;
 
@@ -175,6 +184,38 @@ public class ChunkReader extends AbstractItemReader {
                 + chunkData.getBufferStream().size());
     }
 
+    private void fillChunkDataBufferFromRaw(List<RawResource> resources) throws Exception {
+        TransientUserData chunkData = (TransientUserData) stepCtx.getTransientUserData();
+        int resSubTotal = 0;
+        if (chunkData == null) {
+            logger.warning("fillChunkDataBufferFromRaw: chunkData is null, this should never happen!");
+            throw new Exception("fillChunkDataBufferFromRaw: chunkData is null, this should never happen!");
+        }
+
+        for (RawResource res : resources) {
+            if (isDoDuplicationCheck && loadedResourceIds.contains(res.getLogicalId())) {
+                continue;
+            }
+
+            try {
+                res.writeJson(chunkData.getBufferStream());
+                chunkData.getBufferStream().write(Constants.NDJSON_LINESEPERATOR);
+                resSubTotal++;
+                if (isDoDuplicationCheck) {
+                    loadedResourceIds.add(res.getLogicalId());
+                }
+            } catch (IOException e) {
+                logger.warning("fillChunkDataBufferFromRaw: chunkDataBuffer written error!");
+                throw e;
+            }
+        }
+        chunkData.setCurrentUploadResourceNum(chunkData.getCurrentUploadResourceNum() + resSubTotal);
+        chunkData.setCurrentUploadSize(chunkData.getCurrentUploadSize() + chunkData.getBufferStream().size());
+        chunkData.setTotalResourcesNum(chunkData.getTotalResourcesNum() + resSubTotal);
+        logger.fine("fillChunkDataBufferFromRaw: Processed resources - " + resSubTotal + "; Bufferred data size - "
+                + chunkData.getBufferStream().size());
+    }
+
     @Override
     public Object readItem() throws Exception {
         TransientUserData chunkData = (TransientUserData) stepCtx.getTransientUserData();
@@ -187,10 +228,11 @@ public class ChunkReader extends AbstractItemReader {
                 // If there is more typeFilter to process for current resource type, then reset pageNum only and move to the next typeFilter.
                 pageNum = 1;
                 indexOfCurrentTypeFilter++;
+                nextCursor = null;
             }
         }
 
-        FHIRSearchContext searchContext;
+        FHIRSearchContext searchContext = null;
         FHIRPersistenceContext persistenceContext;
         Map<String, List<String>> queryParameters = new HashMap<>();
 
@@ -215,18 +257,39 @@ public class ChunkReader extends AbstractItemReader {
             queryParameters.put(Constants.FHIR_SEARCH_LASTUPDATED, searchCriteria);
         }
 
-        queryParameters.put("_sort", Arrays.asList(new String[] { Constants.FHIR_SEARCH_LASTUPDATED }));
-        searchContext = SearchUtil.parseQueryParameters(resourceType, queryParameters);
-        searchContext.setPageSize(pageSize);
-        searchContext.setPageNumber(pageNum);
         List<Resource> resources = null;
-        FHIRTransactionHelper txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
-        txn.begin();
-        try {
-            persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
-            resources = fhirPersistence.search(persistenceContext, resourceType).getResource();
-        } finally {
-            txn.end();
+        List<RawResource> rawResources = null;
+        FHIRTransactionHelper txn;
+        if (isRawExport) {
+            searchContext = SearchUtil.parseQueryParameters(resourceType, queryParameters);
+            searchContext.setPageSize(pageSize);
+            searchContext.setPageNumber(pageNum);
+            searchContext.setCursor(nextCursor);
+            txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
+            txn.begin();
+            try {
+                persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
+                rawResources = fhirPersistence.searchRaw(persistenceContext, resourceType);
+            } finally {
+                txn.end();
+            }
+            nextCursor = searchContext.getNextCursor();
+        }
+
+        // Fall back to parsing the resources when the persistence layer can't return them as stored
+        if (rawResources == null) {
+            queryParameters.put("_sort", Arrays.asList(new String[] { Constants.FHIR_SEARCH_LASTUPDATED }));
+            searchContext = SearchUtil.parseQueryParameters(resourceType, queryParameters);
+            searchContext.setPageSize(pageSize);
+            searchContext.setPageNumber(pageNum);
+            txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
+            txn.begin();
+            try {
+                persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
+                resources = fhirPersistence.search(persistenceContext, resourceType).getResource();
+            } finally {
+                txn.end();
+            }
         }
         pageNum++;
 
@@ -253,6 +316,14 @@ public class ChunkReader extends AbstractItemReader {
             chunkData.setLastPageNum(searchContext.getLastPageNumber());
         }
 
+        if (rawResources != null) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("readItem: loaded " + rawResources.size() + " stored resources");
+            }
+            fillChunkDataBufferFromRaw(rawResources);
+            return rawResources;
+        }
+
         if (resources != null) {
             if (logger.isLoggable(Level.FINE)) {
                 logger.fine("readItem: loaded " + resources.size() + " resources");
@@ -297,6 +368,9 @@ public class ChunkReader extends AbstractItemReader {
         FHIRPersistenceHelper fhirPersistenceHelper = new FHIRPersistenceHelper();
         fhirPersistence = fhirPersistenceHelper.getFHIRPersistenceImplementation();
 
+        isRawExport = !FHIRMediaType.APPLICATION_PARQUET.equals(fhirExportFormat)
+                && FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_BULKDATA_RAW_EXPORT_ENABLED, true);
+
         searchParametersForResoureTypes = BulkDataUtils.getSearchParemetersFromTypeFilters(fhirTypeFilters);
         resourceType = ModelSupport.getResourceType(fhirResourceType);
     }
@@ -8,9 +8,11 @@ package com.ibm.fhir.jbatch.bulkdata.load;
 
 import java.io.ByteArrayInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.StringJoiner;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,6 +35,7 @@ import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.FHIRUtil;
 import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
 import com.ibm.fhir.persistence.helper.FHIRPersistenceHelper;
@@ -174,40 +177,39 @@ public class ChunkWriter extends AbstractItemWriter {
         // framework at this time point.
         txn.begin();
         try {
+            List<Resource> resourcesToWrite = new ArrayList<>();
             for (Object objResJsonList : arg0) {
                 @SuppressWarnings("unchecked")
                 List<Resource> fhirResourceList = (List<Resource>) objResJsonList;
 
                 for (Resource fhirResource : fhirResourceList) {
-                    try {
-                        String id = fhirResource.getId();
-                        processedNum++;
-                        // Skip the resources which failed the validation
-                        if (failValidationIds.contains(id)) {
-                            continue;
-                        }
-                        OperationOutcome operationOutcome;
-                        if (id == null) {
-                            operationOutcome =
-                                    fhirPersistence.create(persistenceContext, fhirResource).getOutcome();
-                        } else {
-                            operationOutcome =
-                                    fhirPersistence.update(persistenceContext, id, fhirResource).getOutcome();
-                        }
+                    processedNum++;
+                    // Skip the resources which failed the validation
+                    if (!failValidationIds.contains(fhirResource.getId())) {
+                        resourcesToWrite.add(fhirResource);
+                    }
+                }
+            }
 
-                        succeededNum++;
-                        if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES && operationOutcome != null) {
-                            FHIRGenerator.generator(Format.JSON).generate(operationOutcome, chunkData.getBufferStreamForImport());
-                            chunkData.getBufferStreamForImport().write(Constants.NDJSON_LINESEPERATOR);
-                        }
-                    } catch (FHIROperationException e) {
-                        logger.warning("Failed to import '" + fhirResource.getId() + "' due to error: " + e.getMessage());
-                        failedNum++;
-                        if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES) {
-                            OperationOutcome operationOutCome = FHIRUtil.buildOperationOutcome(e, false);
-                            FHIRGenerator.generator(Format.JSON).generate(operationOutCome, chunkData.getBufferStreamForImportError());
-                            chunkData.getBufferStreamForImportError().write(Constants.NDJSON_LINESEPERATOR);
-                        }
+            // Write the whole chunk in one go so the persistence layer can batch the inserts. Resources which can't be
+            // stored are reported as unsuccessful results; an exception here fails the chunk, because some of its
+            // resources may already have been written in the current transaction.
+            List<SingleResourceResult<Resource>> results = fhirPersistence.createOrUpdateAll(persistenceContext, resourcesToWrite);
+            for (int i = 0; i < results.size(); i++) {
+                SingleResourceResult<Resource> result = results.get(i);
+                OperationOutcome operationOutcome = result.getOutcome();
+                if (result.isSuccess()) {
+                    succeededNum++;
+                    if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES && operationOutcome != null) {
+                        FHIRGenerator.generator(Format.JSON).generate(operationOutcome, chunkData.getBufferStreamForImport());
+                        chunkData.getBufferStreamForImport().write(Constants.NDJSON_LINESEPERATOR);
+                    }
+                } else {
+                    logger.warning("Failed to import '" + resourcesToWrite.get(i).getId() + "' due to error: " + getIssueDetails(operationOutcome));
+                    failedNum++;
+                    if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES) {
+                        FHIRGenerator.generator(Format.JSON).generate(operationOutcome, chunkData.getBufferStreamForImportError());
+                        chunkData.getBufferStreamForImportError().write(Constants.NDJSON_LINESEPERATOR);
                     }
                 }
             }
@@ -234,6 +236,26 @@ public class ChunkWriter extends AbstractItemWriter {
     }
 
 
+    /**
+     * @return the details (or failing that, the diagnostics) of each issue in the OperationOutcome of a failed import
+     */
+    private static String getIssueDetails(OperationOutcome operationOutcome) {
+        if (operationOutcome == null) {
+            return "unknown";
+        }
+        StringJoiner details = new StringJoiner("; ");
+        for (OperationOutcome.Issue issue : operationOutcome.getIssue()) {
+            if (issue.getDetails() != null && issue.getDetails().getText() != null) {
+                details.add(issue.getDetails().getText().getValue());
+            } else if (issue.getDiagnostics() != null) {
+                details.add(issue.getDiagnostics().getValue());
+            } else {
+                details.add(issue.getCode().getValue());
+            }
+        }
+        return details.toString();
+    }
+
     private void pushImportOperationOutcomes2COS(ImportTransientUserData chunkData) throws Exception{
         // Upload OperationOutcomes in buffer if it reaches the minimal size for multiple-parts upload.
         if (chunkData.getBufferStreamForImport().size() > Constants.COS_PART_MINIMALSIZE) {
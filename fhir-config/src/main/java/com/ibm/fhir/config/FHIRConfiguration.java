@@ -34,6 +34,9 @@ public class FHIRConfiguration {
     public static final String PROPERTY_CONDITIONAL_DELETE_MAX_NUMBER = "fhirServer/core/conditionalDeleteMaxNumber";
     public static final String PROPERTY_SERVER_REGISTRY_RESOURCE_PROVIDER_ENABLED = "fhirServer/core/serverRegistryResourceProviderEnabled";
     public static final String PROPERTY_CAPABILITY_STATEMENT_CACHE = "fhirServer/core/capabilityStatementCacheTimeout";
+    public static final String PROPERTY_PARALLEL_VALIDATION_ENABLED = "fhirServer/core/parallelValidation/enabled";
+    public static final String PROPERTY_PARALLEL_VALIDATION_PARALLELISM = "fhirServer/core/parallelValidation/parallelism";
+    public static final String PROPERTY_RAW_RESOURCE_PASSTHROUGH_ENABLED = "fhirServer/core/rawResourcePassthroughEnabled";
 
     public static final String PROPERTY_SEARCH_PARAMETER_FILTER = "fhirServer/searchParameterFilter";
 
@@ -77,6 +80,21 @@ public class FHIRConfiguration {
     public static final String PROPERTY_JDBC_ENABLE_CODE_SYSTEMS_CACHE = "fhirServer/persistence/jdbc/enableCodeSystemsCache";
     public static final String PROPERTY_JDBC_ENABLE_PARAMETER_NAMES_CACHE = "fhirServer/persistence/jdbc/enableParameterNamesCache";
     public static final String PROPERTY_JDBC_ENABLE_RESOURCE_TYPES_CACHE = "fhirServer/persistence/jdbc/enableResourceTypesCache";
+    public static final String PROPERTY_JDBC_ENABLE_POSTGRESQL_COPY = "fhirServer/persistence/jdbc/enablePostgreSqlCopy";
+    public static final String PROPERTY_JDBC_PAYLOAD_CODEC = "fhirServer/persistence/jdbc/payloadCodec";
+    public static final String PROPERTY_JDBC_ZSTD_DICTIONARY_DIR = "fhirServer/persistence/jdbc/zstdDictionaryDir";
+    public static final String PROPERTY_JDBC_PARALLEL_DECODE_ENABLED = "fhirServer/persistence/jdbc/parallelDecode/enabled";
+    public static final String PROPERTY_JDBC_PARALLEL_DECODE_PARALLELISM = "fhirServer/persistence/jdbc/parallelDecode/parallelism";
+    public static final String PROPERTY_JDBC_PARALLEL_DECODE_MIN_PAGE_SIZE = "fhirServer/persistence/jdbc/parallelDecode/minPageSize";
+    public static final String PROPERTY_JDBC_SEARCH_COUNT_CACHE_ENABLED = "fhirServer/persistence/jdbc/searchCountCache/enabled";
+    public static final String PROPERTY_JDBC_SEARCH_COUNT_CACHE_MAX_ENTRIES = "fhirServer/persistence/jdbc/searchCountCache/maxEntries";
+    public static final String PROPERTY_JDBC_SEARCH_COUNT_CACHE_TTL = "fhirServer/persistence/jdbc/searchCountCache/timeToLive";
+    public static final String PROPERTY_JDBC_RESOURCE_CACHE_ENABLED = "fhirServer/persistence/jdbc/resourceCache/enabled";
+    public static final String PROPERTY_JDBC_RESOURCE_CACHE_MAX_ENTRIES = "fhirServer/persistence/jdbc/resourceCache/maxEntries";
+    public static final String PROPERTY_JDBC_RESOURCE_CACHE_CURRENT_VERSION_TTL = "fhirServer/persistence/jdbc/resourceCache/currentVersionTimeToLive";
+    public static final String PROPERTY_JDBC_RESOURCE_CACHE_RESOURCE_TYPES = "fhirServer/persistence/jdbc/resourceCache/resourceTypes";
+    public static final String PROPERTY_JDBC_SKIP_UNCHANGED_UPDATES = "fhirServer/persistence/jdbc/skipUnchangedUpdates";
+    public static final String PROPERTY_JDBC_SEARCH_REFERENCE_VALUES = "fhirServer/persistence/jdbc/searchReferenceValues";
 
     // fhir-search - Bounding area
     public static final String PROPERTY_SEARCH_BOUNDING_AREA_RADIUS_TYPE = "fhirServer/search/useBoundingRadius";
@@ -106,6 +124,7 @@ public class FHIRConfiguration {
     public static final String PROPERTY_BULKDATA_BATCHJOB_COSFILEMAXSIZE = "fhirServer/bulkdata/cosFileMaxSize";
     public static final String PROPERTY_BULKDATA_BATCHJOB_COSFILEMAXRESOURCES = "fhirServer/bulkdata/cosFileMaxResources";
     public static final String PROPERTY_BULKDATA_PATIENTEXPORT_PAGESIZE = "fhirServer/bulkdata/patientExportPageSize";
+    public static final String PROPERTY_BULKDATA_RAW_EXPORT_ENABLED = "fhirServer/bulkdata/rawExportEnabled";
 
     // Custom header names
     public static final String DEFAULT_TENANT_ID_HEADER_NAME = "X-FHIR-TENANT-ID";
@@ -0,0 +1,453 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.core.util;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * A bounded cache which can be read and written concurrently without a global lock.
+ *
+ * <p>Entries are held in a {@link ConcurrentHashMap}, so reads are lock-free. Each read marks its entry as referenced.
+ * Each entry is also added to a ring in the order it was written, and once the total weight of the entries exceeds the
+ * configured maximum, a single thread advances the clock hand around that ring: referenced entries have their mark
+ * cleared and are passed over (a second chance), while the others are evicted until the weight is back under the
+ * maximum (the CLOCK approximation of LRU). The hand carries on from where the previous eviction stopped. By default
+ * each entry has a weight of 1, so the maximum weight is the maximum number of entries. Entries may optionally expire a
+ * fixed time after they were written.
+ *
+ * <p>Unlike {@link LRUCache}, the mapping function passed to {@link #computeIfAbsent(Object, Function)} is invoked
+ * without holding any lock, so concurrent callers may compute the value for the same key more than once; the first
+ * value to be cached wins. Null keys and values are not supported.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public final class ConcurrentCache<K, V> {
+    private final ConcurrentHashMap<K, Node<K, V>> map;
+    // the clock; its head is the hand and entries are added behind it, so the hand resumes where it last stopped
+    private final ConcurrentLinkedQueue<Node<K, V>> ring = new ConcurrentLinkedQueue<>();
+    private final long maximumWeight;
+    private final long evictionTarget;
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+    private final long expireAfterWriteNanos;
+
+    private final AtomicLong weight = new AtomicLong();
+    // the number of nodes in the ring which were removed from the map other than by the clock hand
+    private final AtomicLong deadNodes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+
+    private ConcurrentCache(Builder<K, V> builder) {
+        this.maximumWeight = builder.maximumWeight;
+        // evict in batches of roughly 10% of the maximum weight so that the cost of choosing the victims is amortized
+        this.evictionTarget = maximumWeight - maximumWeight / 10;
+        this.weigher = builder.weigher;
+        this.expireAfterWriteNanos = (builder.expireAfterWrite == null) ? 0 : builder.expireAfterWrite.toNanos();
+        this.map = new ConcurrentHashMap<>((int) Math.min(builder.maximumWeight, 1024));
+    }
+
+    /**
+     * Get the value associated with the key
+     *
+     * @param key
+     *     the key
+     * @return
+     *     the cached value, or null if the key is not present or its entry has expired
+     */
+    public V get(K key) {
+        Node<K, V> node = map.get(Objects.requireNonNull(key));
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+        if (expireAfterWriteNanos > 0 && isExpired(node, System.nanoTime())) {
+            if (map.remove(key, node)) {
+                weight.addAndGet(-node.weight);
+                expirationCount.increment();
+                deadNodes.incrementAndGet();
+            }
+            missCount.increment();
+            return null;
+        }
+        node.markReferenced();
+        hitCount.increment();
+        return node.value;
+    }
+
+    /**
+     * Associate the value with the key, replacing any existing value
+     *
+     * @param key
+     *     the key
+     * @param value
+     *     the value
+     * @return
+     *     the previous value associated with the key, or null if there was none
+     */
+    public V put(K key, V value) {
+        Node<K, V> node = newNode(Objects.requireNonNull(key), Objects.requireNonNull(value), now());
+        Node<K, V> previous = map.put(key, node);
+        ring.offer(node);
+        weight.addAndGet(node.weight - ((previous == null) ? 0 : previous.weight));
+        if (previous != null) {
+            deadNodes.incrementAndGet();
+        }
+        evictIfNeeded();
+        return (previous == null) ? null : previous.value;
+    }
+
+    /**
+     * Get the value associated with the key, computing and caching it if the key is not present
+     *
+     * @param key
+     *     the key
+     * @param mappingFunction
+     *     the function used to compute the value; if it returns null, nothing is cached
+     * @return
+     *     the cached or computed value
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+
+        V computed = mappingFunction.apply(key);
+        if (computed == null) {
+            return null;
+        }
+
+        long now = now();
+        Node<K, V> node = newNode(key, computed, now);
+        Node<K, V> result = map.compute(key, (k, existing) -> {
+            if (existing != null) {
+                if (!isExpired(existing, now)) {
+                    // another thread got there first
+                    return existing;
+                }
+                weight.addAndGet(-existing.weight);
+                expirationCount.increment();
+                deadNodes.incrementAndGet();
+            }
+            weight.addAndGet(node.weight);
+            return node;
+        });
+
+        if (result == node) {
+            ring.offer(node);
+            evictIfNeeded();
+        }
+        return result.value;
+    }
+
+    /**
+     * Remove the entry for the key
+     *
+     * @param key
+     *     the key
+     * @return
+     *     the value that was associated with the key, or null if there was none
+     */
+    public V remove(K key) {
+        Node<K, V> node = map.remove(Objects.requireNonNull(key));
+        if (node == null) {
+            return null;
+        }
+        weight.addAndGet(-node.weight);
+        deadNodes.incrementAndGet();
+        return node.value;
+    }
+
+    /**
+     * Remove all entries
+     */
+    public void clear() {
+        for (K key : map.keySet()) {
+            remove(key);
+        }
+    }
+
+    /**
+     * @return the number of entries in the cache, including any which have expired but not yet been removed
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * @return the total weight of the entries in the cache
+     */
+    public long weightedSize() {
+        return weight.get();
+    }
+
+    /**
+     * @return a snapshot of the statistics for this cache
+     */
+    public Stats stats() {
+        return new Stats(hitCount.sum(), missCount.sum(), evictionCount.sum(), expirationCount.sum());
+    }
+
+    private Node<K, V> newNode(K key, V value, long now) {
+        int nodeWeight = (weigher == null) ? 1 : weigher.applyAsInt(key, value);
+        if (nodeWeight < 0) {
+            throw new IllegalArgumentException("Negative weight: " + nodeWeight);
+        }
+        return new Node<>(key, value, nodeWeight, now);
+    }
+
+    private long now() {
+        return (expireAfterWriteNanos > 0) ? System.nanoTime() : 0;
+    }
+
+    private boolean isExpired(Node<K, V> node, long now) {
+        return expireAfterWriteNanos > 0 && now - node.writeTime >= expireAfterWriteNanos;
+    }
+
+    /**
+     * Evict unreferenced (and expired) entries until the total weight is back under the eviction target, and discard
+     * the nodes of removed entries from the ring once they outnumber the live ones. Only one thread does this at a
+     * time; other threads carry on without waiting.
+     */
+    private void evictIfNeeded() {
+        if (deadNodes.get() > Math.max(map.size(), 64) && evictionLock.tryLock()) {
+            try {
+                purgeDeadNodes();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        while (weight.get() > maximumWeight && evictionLock.tryLock()) {
+            try {
+                if (!evict()) {
+                    // the entries which are over the maximum are still being added to the ring by other threads
+                    break;
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return false if the ring was empty, true otherwise
+     */
+    private boolean evict() {
+        long now = now();
+        // a full turn of the hand clears every mark, so after two turns it evicts regardless in case readers keep
+        // marking entries faster than it clears them
+        long secondChances = 2L * ring.size();
+        Node<K, V> node = null;
+        while (weight.get() > evictionTarget && (node = ring.poll()) != null) {
+            if (map.get(node.key) != node) {
+                // removed or replaced since it was added
+                deadNodes.decrementAndGet();
+                continue;
+            }
+            boolean expired = isExpired(node, now);
+            if (!expired && node.referenced && secondChances-- > 0) {
+                node.referenced = false;
+                ring.offer(node);
+            } else if (map.remove(node.key, node)) {
+                weight.addAndGet(-node.weight);
+                if (expired) {
+                    expirationCount.increment();
+                } else {
+                    evictionCount.increment();
+                }
+            } else {
+                deadNodes.decrementAndGet();
+            }
+        }
+        return node != null || weight.get() <= evictionTarget;
+    }
+
+    private void purgeDeadNodes() {
+        long purged = 0;
+        for (Iterator<Node<K, V>> iterator = ring.iterator(); iterator.hasNext();) {
+            Node<K, V> node = iterator.next();
+            if (map.get(node.key) != node) {
+                iterator.remove();
+                purged++;
+            }
+        }
+        deadNodes.addAndGet(-purged);
+    }
+
+    /**
+     * Create a builder for a cache
+     *
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @return a new builder
+     */
+    public static <K, V> Builder<K, V> builder() {
+        return new Builder<>();
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        private final int weight;
+        private final long writeTime;
+        private volatile boolean referenced;
+
+        private Node(K key, V value, int weight, long writeTime) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.writeTime = writeTime;
+        }
+
+        private void markReferenced() {
+            // avoid writing to (and invalidating the cache line of) an entry which is already marked
+            if (!referenced) {
+                referenced = true;
+            }
+        }
+    }
+
+    /**
+     * Builder for a {@link ConcurrentCache}
+     */
+    public static final class Builder<K, V> {
+        private long maximumWeight = -1;
+        private ToIntBiFunction<? super K, ? super V> weigher;
+        private Duration expireAfterWrite;
+
+        private Builder() { }
+
+        /**
+         * Limit the cache to the given number of entries
+         *
+         * @param maximumSize
+         * @return this builder
+         */
+        public Builder<K, V> maximumSize(long maximumSize) {
+            if (maximumSize < 1) {
+                throw new IllegalArgumentException("maximumSize must be greater than zero");
+            }
+            this.maximumWeight = maximumSize;
+            this.weigher = null;
+            return this;
+        }
+
+        /**
+         * Limit the cache to the given total weight, where the weight of each entry is computed by the weigher when
+         * the entry is added
+         *
+         * @param maximumWeight
+         * @param weigher
+         * @return this builder
+         */
+        public Builder<K, V> maximumWeight(long maximumWeight, ToIntBiFunction<? super K, ? super V> weigher) {
+            if (maximumWeight < 1) {
+                throw new IllegalArgumentException("maximumWeight must be greater than zero");
+            }
+            this.maximumWeight = maximumWeight;
+            this.weigher = Objects.requireNonNull(weigher, "weigher");
+            return this;
+        }
+
+        /**
+         * Expire each entry once the given duration has elapsed since it was written
+         *
+         * @param duration
+         * @return this builder
+         */
+        public Builder<K, V> expireAfterWrite(Duration duration) {
+            if (duration.isNegative() || duration.isZero()) {
+                throw new IllegalArgumentException("duration must be positive");
+            }
+            this.expireAfterWrite = duration;
+            return this;
+        }
+
+        /**
+         * @return a new cache
+         * @throws IllegalStateException if neither a maximum size nor a maximum weight was set
+         */
+        public ConcurrentCache<K, V> build() {
+            if (maximumWeight < 1) {
+                throw new IllegalStateException("A maximum size or maximum weight is required");
+            }
+            return new ConcurrentCache<>(this);
+        }
+    }
+
+    /**
+     * A point-in-time snapshot of the statistics for a cache
+     */
+    public static final class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long expirationCount;
+
+        private Stats(long hitCount, long missCount, long evictionCount, long expirationCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.expirationCount = expirationCount;
+        }
+
+        /**
+         * @return the number of lookups which found a cached value
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * @return the number of lookups which did not find a cached value
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * @return the number of entries removed to keep the cache within its maximum size or weight
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * @return the number of entries removed because they had expired
+         */
+        public long getExpirationCount() {
+            return expirationCount;
+        }
+
+        /**
+         * @return the fraction of lookups which found a cached value, or 1.0 if there have been no lookups
+         */
+        public double getHitRate() {
+            long requestCount = hitCount + missCount;
+            return (requestCount == 0) ? 1.0 : (double) hitCount / requestCount;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hitCount + " misses=" + missCount + " evictions=" + evictionCount
+                    + " expirations=" + expirationCount + " hitRate=" + getHitRate();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.core.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.core.util.ConcurrentCache;
+
+public class ConcurrentCacheTest {
+
+    @Test
+    public void testGetPutRemove() {
+        ConcurrentCache<String, String> cache = ConcurrentCache.<String, String>builder().maximumSize(10).build();
+        assertNull(cache.get("a"));
+        assertNull(cache.put("a", "1"));
+        assertEquals(cache.put("a", "2"), "1");
+        assertEquals(cache.get("a"), "2");
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.remove("a"), "2");
+        assertNull(cache.get("a"));
+        assertEquals(cache.weightedSize(), 0);
+
+        ConcurrentCache.Stats stats = cache.stats();
+        assertEquals(stats.getHitCount(), 1);
+        assertEquals(stats.getMissCount(), 2);
+    }
+
+    @Test
+    public void testComputeIfAbsent() {
+        ConcurrentCache<String, Integer> cache = ConcurrentCache.<String, Integer>builder().maximumSize(10).build();
+        AtomicInteger calls = new AtomicInteger();
+        assertEquals(cache.computeIfAbsent("abc", k -> { calls.incrementAndGet(); return k.length(); }), Integer.valueOf(3));
+        assertEquals(cache.computeIfAbsent("abc", k -> { calls.incrementAndGet(); return -1; }), Integer.valueOf(3));
+        assertEquals(calls.get(), 1);
+
+        // null values are not cached
+        assertNull(cache.computeIfAbsent("null", k -> null));
+        assertEquals(cache.size(), 1);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ConcurrentCache<Integer, Integer> cache = ConcurrentCache.<Integer, Integer>builder().maximumSize(100).build();
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, i);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(cache.get(i));
+        }
+
+        cache.put(100, 100);
+        assertTrue(cache.size() <= 100);
+        assertTrue(cache.stats().getEvictionCount() > 0);
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(cache.get(i), "recently used entry " + i + " was evicted");
+        }
+        assertNotNull(cache.get(100));
+    }
+
+    @Test
+    public void testEvictionIsNotBiasedByIterationOrder() {
+        ConcurrentCache<Integer, Integer> cache = ConcurrentCache.<Integer, Integer>builder().maximumSize(100).build();
+        // the hot keys are spread across the hash table, and the cold keys of each round land in both the buckets
+        // before and after them
+        int[] hot = { 3, 250, 517, 1000, 4093 };
+        for (int key : hot) {
+            cache.put(key, key);
+        }
+        int next = 10000;
+        int previous = next;
+        for (int round = 0; round < 10; round++) {
+            int first = next;
+            for (int i = 0; i < 100; i++, next += 37) {
+                cache.put(next, next);
+                if (i % 20 == 0) {
+                    for (int key : hot) {
+                        assertNotNull(cache.get(key), "hot key " + key + " was evicted in round " + round);
+                    }
+                }
+            }
+            // the keys read at the end of the previous round were given a second chance, but the clock hand has
+            // evicted every cold key written before that
+            for (int key = 10000; key < previous; key += 37) {
+                assertNull(cache.get(key), "key " + key + " from an earlier round survived round " + round);
+            }
+            // and the keys written most recently are still there, wherever they hash to
+            for (int key = next - 37 * 50; key < next; key += 37) {
+                assertNotNull(cache.get(key), "key " + key + " written in round " + round + " was evicted");
+            }
+            previous = first;
+        }
+        assertTrue(cache.size() <= 100);
+    }
+
+    @Test
+    public void testReplacedEntriesAreNotEvicted() {
+        ConcurrentCache<Integer, Integer> cache = ConcurrentCache.<Integer, Integer>builder().maximumSize(10).build();
+        // rewriting the same entries many times never evicts anything
+        for (int i = 0; i < 10000; i++) {
+            cache.put(i % 10, i);
+        }
+        assertEquals(cache.size(), 10);
+        assertEquals(cache.stats().getEvictionCount(), 0);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(cache.get(i), Integer.valueOf(9990 + i));
+        }
+    }
+
+    @Test
+    public void testMaximumWeight() {
+        ConcurrentCache<String, String> cache = ConcurrentCache.<String, String>builder()
+                .maximumWeight(20, (key, value) -> value.length())
+                .build();
+        cache.put("a", "0123456789");
+        cache.put("b", "0123456789");
+        assertEquals(cache.weightedSize(), 20);
+        cache.put("c", "01234");
+        assertTrue(cache.weightedSize() <= 20);
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void testExpireAfterWrite() throws Exception {
+        ConcurrentCache<String, String> cache = ConcurrentCache.<String, String>builder()
+                .maximumSize(10)
+                .expireAfterWrite(Duration.ofMillis(20))
+                .build();
+        cache.put("a", "1");
+        assertEquals(cache.get("a"), "1");
+        Thread.sleep(50);
+        assertNull(cache.get("a"));
+        assertEquals(cache.stats().getExpirationCount(), 1);
+        assertEquals(cache.computeIfAbsent("a", k -> "2"), "2");
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testMaximumRequired() {
+        ConcurrentCache.builder().build();
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        ConcurrentCache<Integer, Integer> cache = ConcurrentCache.<Integer, Integer>builder().maximumSize(50).build();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int offset = t;
+                tasks.add(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        int key = (i * 7 + offset) % 200;
+                        assertEquals(cache.computeIfAbsent(key, k -> k * 2), Integer.valueOf(key * 2));
+                        if (i % 100 == 0) {
+                            cache.remove(key);
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.size() <= 50, "size: " + cache.size());
+        assertEquals(cache.weightedSize(), cache.size());
+    }
+}
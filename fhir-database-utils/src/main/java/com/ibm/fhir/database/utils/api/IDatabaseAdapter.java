@@ -127,6 +127,16 @@ public interface IDatabaseAdapter {
      */
     public void dropProcedure(String schemaName, String procedureName);
 
+    /**
+     * Drop the procedure with the given parameter types if it exists. This removes a procedure whose
+     * signature has been changed, because "create or replace" adds an overload rather than replacing it
+     *
+     * @param schemaName
+     * @param procedureName
+     * @param parameterTypes the types of all the parameters of the procedure, in order
+     */
+    public void dropProcedure(String schemaName, String procedureName, List<String> parameterTypes);
+
     /**
      *
      * @param schemaName
@@ -464,6 +474,16 @@ public interface IDatabaseAdapter {
      */
     public void dropFunction(String schemaName, String functionName);
 
+    /**
+     * Drop the function with the given parameter types if it exists. This removes a function whose
+     * signature has been changed, because "create or replace" adds an overload rather than replacing it
+     *
+     * @param schemaName
+     * @param functionName
+     * @param parameterTypes the types of the parameters which identify the function, in order
+     */
+    public void dropFunction(String schemaName, String functionName, List<String> parameterTypes);
+
     /** 
      * grants permissions on a given function
      * @param schemaName
@@ -279,6 +279,18 @@ public abstract class CommonDatabaseAdapter implements IDatabaseAdapter, IDataba
         }
     }
 
+    @Override
+    public void dropProcedure(String schemaName, String procedureName, List<String> parameterTypes) {
+        final String nm = getQualifiedName(schemaName, procedureName);
+        final String ddl = "DROP PROCEDURE " + nm + "(" + String.join(", ", parameterTypes) + ")";
+
+        try {
+            runStatement(ddl);
+        } catch (UndefinedNameException x) {
+            logger.fine(ddl + "; PROCEDURE not found");
+        }
+    }
+
     @Override
     public void dropFunction(String schemaName, String functionName) {
         final String nm = getQualifiedName(schemaName, functionName);
@@ -291,6 +303,18 @@ public abstract class CommonDatabaseAdapter implements IDatabaseAdapter, IDataba
         }
     }
 
+    @Override
+    public void dropFunction(String schemaName, String functionName, List<String> parameterTypes) {
+        final String nm = getQualifiedName(schemaName, functionName);
+        final String ddl = "DROP FUNCTION " + nm + "(" + String.join(", ", parameterTypes) + ")";
+
+        try {
+            runStatement(ddl);
+        } catch (UndefinedNameException x) {
+            logger.fine(ddl + "; FUNCTION not found");
+        }
+    }
+
     @Override
     public void dropPermission(String schemaName, String permissionName) {
         final String nm = getQualifiedName(schemaName, permissionName);
@@ -161,7 +161,8 @@ public class Db2Translator implements IDatabaseTranslator {
 
     @Override
     public boolean isUndefinedName(SQLException x) {
-        return "42704".equals(x.getSQLState());
+        // 42884 is returned when no routine has the name and parameter types given in a DROP statement
+        return "42704".equals(x.getSQLState()) || "42884".equals(x.getSQLState());
     }
 
     @Override
@@ -151,6 +151,11 @@ public class DerbyAdapter extends CommonDatabaseAdapter {
         warnOnce(MessageKey.DROP_PROC, "Drop procedure not supported in Derby");
     }
 
+    @Override
+    public void dropProcedure(String schemaName, String procedureName, List<String> parameterTypes) {
+        warnOnce(MessageKey.DROP_PROC, "Drop procedure not supported in Derby");
+    }
+
     @Override
     public void createTablespace(String tablespaceName) {
         logger.fine("Create tablespace not supported in Derby");
@@ -6,6 +6,9 @@
 
 package com.ibm.fhir.database.utils.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Supplier;
 import java.util.logging.Logger;
@@ -21,6 +24,9 @@ public class ProcedureDef extends BaseObject {
     // supplier provides the procedure body when requested
     private Supplier<String> supplier;
 
+    // the parameter types of previous versions of the procedure which had a different signature
+    private final List<List<String>> previousSignatures = new ArrayList<>();
+
     /**
      * Public constructor
      * @param schemaName
@@ -38,10 +44,32 @@ public class ProcedureDef extends BaseObject {
         // Serialize the execution of the procedure, to try and avoid the
         // horrible deadlocks we keep getting
         synchronized (this) {
+            dropPreviousSignatures(target);
             target.createOrReplaceProcedure(getSchemaName(), getObjectName(), supplier);
         }
     }
 
+    /**
+     * Add the signature of a previous version of this procedure. "Create or replace" adds an overload when
+     * the signature of a procedure changes, so the previous version is dropped before this version is applied.
+     * Dropping a signature which doesn't exist is not an error, so the signatures of all previous versions
+     * can be given.
+     *
+     * @param parameterTypes the parameter types of the previous version, in the form the database
+     *     expects in a DROP statement
+     * @return this procedure definition
+     */
+    public ProcedureDef addPreviousSignature(String... parameterTypes) {
+        previousSignatures.add(Arrays.asList(parameterTypes));
+        return this;
+    }
+
+    private void dropPreviousSignatures(IDatabaseAdapter target) {
+        for (List<String> parameterTypes : previousSignatures) {
+            target.dropProcedure(getSchemaName(), getObjectName(), parameterTypes);
+        }
+    }
+
     @Override
     public void apply(Integer priorVersion, IDatabaseAdapter target) {
         if (priorVersion != null && priorVersion > 0 && this.getVersion() > priorVersion && !migrations.isEmpty()) {
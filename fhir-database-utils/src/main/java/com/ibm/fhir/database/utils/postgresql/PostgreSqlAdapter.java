@@ -322,6 +322,19 @@ public class PostgreSqlAdapter extends CommonDatabaseAdapter {
         final String objectName = DataDefinitionUtil.getQualifiedName(schemaName, procedureName);
         logger.fine("Drop procedure not run on [" + objectName + "]. This is as expected");
     }
+
+    @Override
+    public void dropProcedure(String schemaName, String procedureName, List<String> parameterTypes) {
+        final String objectName = DataDefinitionUtil.getQualifiedName(schemaName, procedureName);
+        logger.fine("Drop procedure not run on [" + objectName + "]. This is as expected");
+    }
+
+    @Override
+    public void dropFunction(String schemaName, String functionName, List<String> parameterTypes) {
+        // PostgreSQL identifies a function by the types of its IN parameters
+        final String objectName = DataDefinitionUtil.getQualifiedName(schemaName, functionName);
+        runStatement("DROP FUNCTION IF EXISTS " + objectName + "(" + String.join(", ", parameterTypes) + ")");
+    }
     
     @Override
     public void dropDetachedPartitions(Collection<Table> tables, String schemaName, int tenantId) {
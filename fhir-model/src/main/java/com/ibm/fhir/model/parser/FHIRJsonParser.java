@@ -30,6 +30,8 @@ import javax.json.JsonReader;
 import javax.json.JsonReaderFactory;
 import javax.json.JsonString;
 import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
 
 import com.ibm.fhir.model.parser.FHIRParser;
 import com.ibm.fhir.model.parser.FHIRAbstractParser;
@@ -47,8 +49,15 @@ import net.jcip.annotations.NotThreadSafe;
 @NotThreadSafe
 @Generated("com.ibm.fhir.tools.CodeGenerator")
 public class FHIRJsonParser extends FHIRAbstractParser {
+    /**
+     * Property name for a property that controls whether the parser reads the input as a stream of JSON events
+     * and populates the model builders directly, instead of first reading the whole input into a JsonObject
+     */
+    public static final java.lang.String PROPERTY_STREAMING = "com.ibm.fhir.model.parser.json.streaming";
+
     public static boolean DEBUG = false;
     private static final JsonReaderFactory JSON_READER_FACTORY = Json.createReaderFactory(null);
+    private static final JsonParserFactory JSON_PARSER_FACTORY = Json.createParserFactory(null);
 
     private final Stack<java.lang.String> stack = new Stack<>();
 
@@ -62,6 +71,15 @@ public class FHIRJsonParser extends FHIRAbstractParser {
     }
 
     public <T extends Resource> T parseAndFilter(InputStream in, Collection<java.lang.String> elementsToInclude) throws FHIRParserException {
+        if (isStreaming()) {
+            try (JsonParser jsonParser = JSON_PARSER_FACTORY.createParser(nonClosingInputStream(in), StandardCharsets.UTF_8)) {
+                return parseAndFilter(jsonParser, elementsToInclude);
+            } catch (FHIRParserException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new FHIRParserException(e.getMessage(), getPath(), e);
+            }
+        }
         try (JsonReader jsonReader = JSON_READER_FACTORY.createReader(nonClosingInputStream(in), StandardCharsets.UTF_8)) {
             JsonObject jsonObject = jsonReader.readObject();
             return parseAndFilter(jsonObject, elementsToInclude);
@@ -78,6 +96,15 @@ public class FHIRJsonParser extends FHIRAbstractParser {
     }
 
     public <T extends Resource> T parseAndFilter(Reader reader, Collection<java.lang.String> elementsToInclude) throws FHIRParserException {
+        if (isStreaming()) {
+            try (JsonParser jsonParser = JSON_PARSER_FACTORY.createParser(nonClosingReader(reader))) {
+                return parseAndFilter(jsonParser, elementsToInclude);
+            } catch (FHIRParserException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new FHIRParserException(e.getMessage(), getPath(), e);
+            }
+        }
         try (JsonReader jsonReader = JSON_READER_FACTORY.createReader(nonClosingReader(reader))) {
             JsonObject jsonObject = jsonReader.readObject();
             return parseAndFilter(jsonObject, elementsToInclude);
@@ -107,13 +134,25 @@ public class FHIRJsonParser extends FHIRAbstractParser {
         }
     }
 
+    public <T extends Resource> T parse(JsonParser jsonParser) throws FHIRParserException {
+        return parseAndFilter(jsonParser, null);
+    }
+
+    public <T extends Resource> T parseAndFilter(JsonParser jsonParser, Collection<java.lang.String> elementsToInclude) throws FHIRParserException {
+        return new FHIRJsonStreamParser(this).parseAndFilter(jsonParser, elementsToInclude);
+    }
+
     private void reset() {
         stack.clear();
     }
 
+    private boolean isStreaming() {
+        return getPropertyOrDefault(PROPERTY_STREAMING, java.lang.Boolean.FALSE, java.lang.Boolean.class);
+    }
+
     @Override
     public boolean isPropertySupported(java.lang.String name) {
-        if (FHIRParser.PROPERTY_IGNORE_UNRECOGNIZED_ELEMENTS.equals(name)) {
+        if (FHIRParser.PROPERTY_IGNORE_UNRECOGNIZED_ELEMENTS.equals(name) || PROPERTY_STREAMING.equals(name)) {
             return true;
         }
         return false;
@@ -0,0 +1,209 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.util;
+
+import java.lang.annotation.Annotation;
+import java.util.Objects;
+
+import com.ibm.fhir.model.annotation.Binding;
+import com.ibm.fhir.model.annotation.Constraint;
+import com.ibm.fhir.model.type.code.BindingStrength;
+
+/**
+ * Factory methods for instances of the model annotations which are used by the generated {@link ModelMetadata}.
+ *
+ * <p>The returned instances follow the {@link Annotation} contract for equals and hashCode, so they are equal to the
+ * instances that the JVM returns for the same annotation declared on a model class.
+ */
+final class AnnotationSupport {
+    private AnnotationSupport() { }
+
+    static Binding binding(String bindingName, BindingStrength.ValueSet strength, String description, String valueSet,
+            String inheritedExtensibleValueSet, String minValueSet, String maxValueSet) {
+        Objects.requireNonNull(strength, "strength");
+        return new Binding() {
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return Binding.class;
+            }
+
+            @Override
+            public String bindingName() {
+                return bindingName;
+            }
+
+            @Override
+            public BindingStrength.ValueSet strength() {
+                return strength;
+            }
+
+            @Override
+            public String description() {
+                return description;
+            }
+
+            @Override
+            public String valueSet() {
+                return valueSet;
+            }
+
+            @Override
+            public String inheritedExtensibleValueSet() {
+                return inheritedExtensibleValueSet;
+            }
+
+            @Override
+            public String minValueSet() {
+                return minValueSet;
+            }
+
+            @Override
+            public String maxValueSet() {
+                return maxValueSet;
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                if (this == obj) {
+                    return true;
+                }
+                if (!(obj instanceof Binding)) {
+                    return false;
+                }
+                Binding other = (Binding) obj;
+                return bindingName.equals(other.bindingName()) &&
+                        strength.equals(other.strength()) &&
+                        description.equals(other.description()) &&
+                        valueSet.equals(other.valueSet()) &&
+                        inheritedExtensibleValueSet.equals(other.inheritedExtensibleValueSet()) &&
+                        minValueSet.equals(other.minValueSet()) &&
+                        maxValueSet.equals(other.maxValueSet());
+            }
+
+            @Override
+            public int hashCode() {
+                return memberHashCode("bindingName", bindingName) +
+                        memberHashCode("strength", strength) +
+                        memberHashCode("description", description) +
+                        memberHashCode("valueSet", valueSet) +
+                        memberHashCode("inheritedExtensibleValueSet", inheritedExtensibleValueSet) +
+                        memberHashCode("minValueSet", minValueSet) +
+                        memberHashCode("maxValueSet", maxValueSet);
+            }
+
+            @Override
+            public String toString() {
+                return new StringBuilder()
+                    .append("@").append(Binding.class.getName()).append("(")
+                    .append("bindingName=").append(bindingName).append(", ")
+                    .append("strength=").append(strength).append(", ")
+                    .append("description=").append(description).append(", ")
+                    .append("valueSet=").append(valueSet).append(", ")
+                    .append("inheritedExtensibleValueSet=").append(inheritedExtensibleValueSet).append(", ")
+                    .append("minValueSet=").append(minValueSet).append(", ")
+                    .append("maxValueSet=").append(maxValueSet)
+                    .append(")")
+                    .toString();
+            }
+        };
+    }
+
+    static Constraint constraint(String id, String level, String location, String description, String expression, boolean modelChecked) {
+        return new Constraint() {
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return Constraint.class;
+            }
+
+            @Override
+            public String id() {
+                return id;
+            }
+
+            @Override
+            public String level() {
+                return level;
+            }
+
+            @Override
+            public String location() {
+                return location;
+            }
+
+            @Override
+            public String description() {
+                return description;
+            }
+
+            @Override
+            public String expression() {
+                return expression;
+            }
+
+            @Override
+            public boolean modelChecked() {
+                return modelChecked;
+            }
+
+            @Override
+            public boolean generated() {
+                return false;
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                if (this == obj) {
+                    return true;
+                }
+                if (!(obj instanceof Constraint)) {
+                    return false;
+                }
+                Constraint other = (Constraint) obj;
+                return id.equals(other.id()) &&
+                        level.equals(other.level()) &&
+                        location.equals(other.location()) &&
+                        description.equals(other.description()) &&
+                        expression.equals(other.expression()) &&
+                        modelChecked == other.modelChecked() &&
+                        !other.generated();
+            }
+
+            @Override
+            public int hashCode() {
+                return memberHashCode("id", id) +
+                        memberHashCode("level", level) +
+                        memberHashCode("location", location) +
+                        memberHashCode("description", description) +
+                        memberHashCode("expression", expression) +
+                        memberHashCode("modelChecked", modelChecked) +
+                        memberHashCode("generated", false);
+            }
+
+            @Override
+            public String toString() {
+                return new StringBuilder()
+                    .append("@").append(Constraint.class.getName()).append("(")
+                    .append("id=").append(id).append(", ")
+                    .append("level=").append(level).append(", ")
+                    .append("location=").append(location).append(", ")
+                    .append("description=").append(description).append(", ")
+                    .append("expression=").append(expression).append(", ")
+                    .append("modelChecked=").append(modelChecked).append(", ")
+                    .append("generated=false")
+                    .append(")")
+                    .toString();
+            }
+        };
+    }
+
+    /**
+     * @return the hash code of an annotation member as specified by {@link Annotation#hashCode()}
+     */
+    private static int memberHashCode(String name, Object value) {
+        return (127 * name.hashCode()) ^ value.hashCode();
+    }
+}
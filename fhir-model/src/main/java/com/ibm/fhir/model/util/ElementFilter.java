@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2018,2019
+ * (C) Copyright IBM Corp. 2018, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -38,6 +38,13 @@ public class ElementFilter implements Function<JsonObject, JsonObject> {
         includeElements.addAll(elements);
     }
 
+    /**
+     * @return true if the element with the passed name (a top-level JSON key of the resource) is retained by this filter
+     */
+    public boolean includes(String elementName) {
+        return includeElements.contains(elementName);
+    }
+
     @Override
     public JsonObject apply(JsonObject jsonObject) {
         JsonObjectBuilder builder = BUILDER_FACTORY.createObjectBuilder();
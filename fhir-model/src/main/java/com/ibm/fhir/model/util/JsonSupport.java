@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -25,10 +25,13 @@ import java.util.stream.Collectors;
 
 import javax.json.Json;
 import javax.json.JsonArray;
+import javax.json.JsonBuilderFactory;
 import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
 import javax.json.JsonReaderFactory;
 import javax.json.JsonString;
 import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
 
 import com.ibm.fhir.model.format.Format;
 import com.ibm.fhir.model.generator.FHIRGenerator;
@@ -37,6 +40,7 @@ import com.ibm.fhir.model.resource.Resource;
 
 public final class JsonSupport {
     private static final JsonReaderFactory JSON_READER_FACTORY = Json.createReaderFactory(null);
+    private static final JsonBuilderFactory JSON_BUILDER_FACTORY = Json.createBuilderFactory(null);
     
     private static final Map<Class<?>, Set<String>> ELEMENT_NAME_MAP = buildElementNameMap(false);
     private static final Map<Class<?>, Set<String>> REQUIRED_ELEMENT_NAME_MAP = buildElementNameMap(true);
@@ -161,6 +165,159 @@ public final class JsonSupport {
         return expectedType.cast(jsonValue);
     }
     
+    /**
+     * Advance the parser to the next value and return it as an instance of the expected type
+     *
+     * @param parser
+     *     the parser, positioned on the key of the value
+     * @param key
+     *     the key of the value (used for error reporting)
+     * @param expectedType
+     *     the expected type of the value
+     * @throws IllegalArgumentException
+     *     if the next value is not an instance of the expected type
+     */
+    public static <T extends JsonValue> T getJsonValue(JsonParser parser, String key, Class<T> expectedType) {
+        parser.next();
+        JsonValue jsonValue = parser.getValue();
+        if (!expectedType.isInstance(jsonValue)) {
+            throw new IllegalArgumentException("Expected: " + expectedType.getSimpleName() + " but found: " + jsonValue.getValueType()
+                                                + " for element: " + key);
+        }
+        return expectedType.cast(jsonValue);
+    }
+
+    /**
+     * Advance the parser to the next event and check that it is the start of an object
+     *
+     * @throws IllegalArgumentException
+     *     if the next event is not {@link JsonParser.Event#START_OBJECT}
+     */
+    public static void requireObject(JsonParser parser, String key) {
+        JsonParser.Event event = parser.next();
+        if (event != JsonParser.Event.START_OBJECT) {
+            throw new IllegalArgumentException("Expected: JsonObject but found: " + getValueType(event)
+                                                + (key != null ? " for element: " + key : ""));
+        }
+    }
+
+    /**
+     * Advance the parser to the next event and check that it is the start of an array
+     *
+     * @throws IllegalArgumentException
+     *     if the next event is not {@link JsonParser.Event#START_ARRAY}
+     */
+    public static void requireArray(JsonParser parser, String key) {
+        JsonParser.Event event = parser.next();
+        if (event != JsonParser.Event.START_ARRAY) {
+            throw new IllegalArgumentException("Expected: JsonArray but found: " + getValueType(event) + " for element: " + key);
+        }
+    }
+
+    /**
+     * Advance the parser to the next item of the current array
+     *
+     * @return
+     *     true if the parser is positioned at the start of the next object in the array, false if the end of the array was reached
+     * @throws IllegalArgumentException
+     *     if the next item of the array is not an object
+     */
+    public static boolean hasNextObject(JsonParser parser, String key) {
+        JsonParser.Event event = parser.next();
+        if (event == JsonParser.Event.END_ARRAY) {
+            return false;
+        }
+        if (event != JsonParser.Event.START_OBJECT) {
+            throw new IllegalArgumentException("Expected: JsonObject but found: " + getValueType(event) + " for element: " + key);
+        }
+        return true;
+    }
+
+    /**
+     * Advance the parser past the next value, including any nested objects and arrays
+     */
+    public static void skipValue(JsonParser parser) {
+        int depth = 0;
+        do {
+            switch (parser.next()) {
+            case START_OBJECT:
+            case START_ARRAY:
+                depth++;
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                depth--;
+                break;
+            default:
+                break;
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Read the remaining members of the current object into a JsonObject
+     *
+     * @param parser
+     *     the parser, positioned within an object
+     * @param event
+     *     the current event of the parser; either the {@link JsonParser.Event#KEY_NAME} of the next member or
+     *     {@link JsonParser.Event#END_OBJECT}
+     */
+    public static JsonObject readObject(JsonParser parser, JsonParser.Event event) {
+        JsonObjectBuilder builder = JSON_BUILDER_FACTORY.createObjectBuilder();
+        while (event == JsonParser.Event.KEY_NAME) {
+            String key = parser.getString();
+            parser.next();
+            builder.add(key, parser.getValue());
+            event = parser.next();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Check that the key of a choice element is the first key seen of the form name[x]
+     *
+     * @param name
+     *     the name of the choice element without any type suffix
+     * @param currentKey
+     *     the key previously seen for this choice element, or null
+     * @param key
+     *     the key being parsed
+     * @return
+     *     the key being parsed
+     * @throws IllegalArgumentException
+     *     if a key for this choice element was already seen
+     */
+    public static String checkChoiceElementKey(String name, String currentKey, String key) {
+        if (currentKey != null) {
+            throw new IllegalArgumentException("Only one choice element key of the form: " + name + "[x] is allowed");
+        }
+        return key;
+    }
+
+    /**
+     * @return the type of the value that starts with the passed parser event
+     */
+    public static JsonValue.ValueType getValueType(JsonParser.Event event) {
+        switch (event) {
+        case START_OBJECT:
+            return JsonValue.ValueType.OBJECT;
+        case START_ARRAY:
+            return JsonValue.ValueType.ARRAY;
+        case VALUE_STRING:
+            return JsonValue.ValueType.STRING;
+        case VALUE_NUMBER:
+            return JsonValue.ValueType.NUMBER;
+        case VALUE_TRUE:
+            return JsonValue.ValueType.TRUE;
+        case VALUE_FALSE:
+            return JsonValue.ValueType.FALSE;
+        case VALUE_NULL:
+        default:
+            return JsonValue.ValueType.NULL;
+        }
+    }
+
     // TODO: replace this method with a class that converts Resource to JsonObject directly
     public static JsonObject toJsonObject(Resource resource) throws FHIRGeneratorException {
         StringWriter writer = new StringWriter();
@@ -218,7 +375,20 @@ public final class JsonSupport {
         if (resourceTypeString == null) {
             throw new IllegalArgumentException("Missing required element: 'resourceType'");
         }
-        String resourceTypeName = resourceTypeString.getString();
+        return getResourceType(resourceTypeString.getString());
+    }
+
+    /**
+     * Advance the parser to the value of the 'resourceType' member and return the corresponding model class
+     *
+     * @param parser
+     *     the parser, positioned on the 'resourceType' key
+     */
+    public static Class<?> getResourceType(JsonParser parser) {
+        return getResourceType(getJsonValue(parser, "resourceType", JsonString.class).getString());
+    }
+
+    private static Class<?> getResourceType(String resourceTypeName) {
         Class<?> resourceType = ModelSupport.getResourceType(resourceTypeName);
         if (resourceType == null) {
             throw new IllegalArgumentException("Invalid resource type: '" + resourceTypeName + "'");
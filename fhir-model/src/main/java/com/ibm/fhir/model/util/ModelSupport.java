@@ -6,14 +6,7 @@
 
 package com.ibm.fhir.model.util;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.OffsetDateTime;
@@ -31,14 +24,9 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import com.ibm.fhir.model.annotation.Binding;
-import com.ibm.fhir.model.annotation.Choice;
 import com.ibm.fhir.model.annotation.Constraint;
-import com.ibm.fhir.model.annotation.ReferenceTarget;
-import com.ibm.fhir.model.annotation.Required;
-import com.ibm.fhir.model.annotation.Summary;
 import com.ibm.fhir.model.annotation.System;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.type.Address;
@@ -343,59 +331,35 @@ public final class ModelSupport {
     }
 
     private static Map<Class<?>, Set<Constraint>> buildModelClassConstraintMap() {
+        Map<Class<?>, List<Constraint>> declaredConstraintMap = ModelMetadata.buildDeclaredConstraintMap();
         Map<Class<?>, Set<Constraint>> modelClassConstraintMap = new LinkedHashMap<>(1024);
         for (Class<?> modelClass : getModelClasses()) {
             Set<Constraint> constraints = new LinkedHashSet<>();
             for (Class<?> clazz : getClosure(modelClass)) {
-                for (Constraint constraint : clazz.getDeclaredAnnotationsByType(Constraint.class)) {
-                    constraints.add(constraint);
-                }
+                constraints.addAll(declaredConstraintMap.getOrDefault(clazz, Collections.emptyList()));
             }
             modelClassConstraintMap.put(modelClass, Collections.unmodifiableSet(constraints));
         }
         return Collections.unmodifiableMap(modelClassConstraintMap);
     }
 
+    /**
+     * Builds the element info of each model class from the generated model metadata, rather than reflecting over the
+     * fields and annotations of the model classes, which is comparatively expensive at startup.
+     */
     private static Map<Class<?>, Map<String, ElementInfo>> buildModelClassElementInfoMap() {
-        try (InputStream in = ModelSupport.class.getClassLoader().getResourceAsStream("modelClasses")) {
-            Map<Class<?>, Map<String, ElementInfo>> modelClassElementInfoMap = new LinkedHashMap<>(1024);
-            List<String> lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)).lines().collect(Collectors.toList());
-            for (String className : lines) {
-                Class<?> modelClass = Class.forName(className);
-                Map<String, ElementInfo> elementInfoMap = new LinkedHashMap<>();
-                for (Field field : getAllFields(modelClass)) {
-                    String elementName = getElementName(field);
-                    Class<?> type = getFieldType(field);
-                    Class<?> declaringType = field.getDeclaringClass();
-                    boolean required = isRequired(field);
-                    boolean summary = isSummary(field);
-                    boolean repeating = isRepeating(field);
-                    boolean choice = isChoice(field);
-                    boolean reference = isReference(field);
-                    Binding binding = field.getAnnotation(Binding.class);
-                    Set<Class<?>> choiceTypes = choice ? Collections.unmodifiableSet(getChoiceTypes(field)) : Collections.emptySet();
-                    Set<String> referenceTypes = reference ? Collections.unmodifiableSet(getReferenceTypes(field)) : Collections.emptySet();
-                    elementInfoMap.put(elementName, new ElementInfo(
-                            elementName,
-                            type,
-                            declaringType,
-                            required,
-                            repeating,
-                            choice,
-                            choiceTypes,
-                            reference,
-                            referenceTypes,
-                            binding,
-                            summary
-                        )
-                    );
+        Map<Class<?>, List<ElementInfo>> declaredElementInfoMap = ModelMetadata.buildDeclaredElementInfoMap();
+        Map<Class<?>, Map<String, ElementInfo>> modelClassElementInfoMap = new LinkedHashMap<>(1024);
+        for (Class<?> modelClass : declaredElementInfoMap.keySet()) {
+            Map<String, ElementInfo> elementInfoMap = new LinkedHashMap<>();
+            for (Class<?> clazz : getClosure(modelClass)) {
+                for (ElementInfo elementInfo : declaredElementInfoMap.getOrDefault(clazz, Collections.emptyList())) {
+                    elementInfoMap.put(elementInfo.getName(), elementInfo);
                 }
-                modelClassElementInfoMap.put(modelClass, Collections.unmodifiableMap(elementInfoMap));
             }
-            return Collections.unmodifiableMap(modelClassElementInfoMap);
-        } catch (Exception e) {
-            throw new Error(e);
+            modelClassElementInfoMap.put(modelClass, Collections.unmodifiableMap(elementInfoMap));
         }
+        return Collections.unmodifiableMap(modelClassElementInfoMap);
     }
 
     @SuppressWarnings("unchecked")
@@ -409,20 +373,6 @@ public final class ModelSupport {
         return Collections.unmodifiableMap(resourceTypeMap);
     }
 
-    private static List<Field> getAllFields(Class<?> modelClass) {
-        List<Field> fields = new ArrayList<>();
-        for (Class<?> clazz : getClosure(modelClass)) {
-            for (Field field : clazz.getDeclaredFields()) {
-                int modifiers = field.getModifiers();
-                if (Modifier.isStatic(modifiers) || Modifier.isVolatile(modifiers)) {
-                    continue;
-                }
-                fields.add(field);
-            }
-        }
-        return fields;
-    }
-
     /**
      * @param name
      *            the name of the choice element without any type suffix
@@ -464,14 +414,6 @@ public final class ModelSupport {
         return Collections.emptySet();
     }
 
-    private static Set<Class<?>> getChoiceTypes(Field field) {
-        return new LinkedHashSet<>(Arrays.asList(field.getAnnotation(Choice.class).value()));
-    }
-
-    private static Set<String> getReferenceTypes(Field field) {
-        return new LinkedHashSet<>(Arrays.asList(field.getAnnotation(ReferenceTarget.class).value()));
-    }
-
     /**
      * @param modelClass
      *            a model class which represents a FHIR resource or element
@@ -613,15 +555,6 @@ public final class ModelSupport {
         return false;
     }
 
-    private static Class<?> getFieldType(Field field) {
-        Type genericType = field.getGenericType();
-        if (genericType instanceof ParameterizedType) {
-            ParameterizedType parameterizedType = (ParameterizedType) genericType;
-            return (Class<?>) parameterizedType.getActualTypeArguments()[0];
-        }
-        return field.getType();
-    }
-
     /**
      * @return all model classes, including both resources and elements, concrete and abstract
      */
@@ -690,14 +623,6 @@ public final class ModelSupport {
         return BackboneElement.class.isAssignableFrom(modelClass);
     }
 
-    private static boolean isChoice(Field field) {
-        return field.isAnnotationPresent(Choice.class);
-    }
-
-    private static boolean isReference(Field field) {
-        return field.isAnnotationPresent(com.ibm.fhir.model.annotation.ReferenceTarget.class);
-    }
-
     /**
      * @param modelClass
      *            a model class which represents a FHIR resource or element
@@ -803,10 +728,6 @@ public final class ModelSupport {
         return CONCRETE_TYPE_MAP.containsKey(type);
     }
 
-    private static boolean isRepeating(Field field) {
-        return List.class.equals(field.getType());
-    }
-
     /**
      * @param modelClass
      *            a model class which represents a FHIR resource or element
@@ -823,14 +744,6 @@ public final class ModelSupport {
         return false;
     }
 
-    private static boolean isRequired(Field field) {
-        return field.isAnnotationPresent(Required.class);
-    }
-
-    private static boolean isSummary(Field field) {
-        return field.isAnnotationPresent(Summary.class);
-    }
-
     /**
      * @param modelClass
      *            a model class which represents a FHIR resource or element
@@ -0,0 +1,147 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.zip.GZIPInputStream;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.parser.exception.FHIRParserException;
+import com.ibm.fhir.model.resource.Resource;
+
+/**
+ * A FHIR resource in the compressed JSON form in which it was stored, along with the metadata needed
+ * to respond to a request for it. This allows the stored JSON to be written to a client without parsing it
+ * into a {@link Resource} and generating it again.
+ */
+public class RawResource {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Class<? extends Resource> resourceType;
+    private final String logicalId;
+    private final String versionId;
+    private final Instant lastUpdated;
+    private final byte[] data;
+    private final Decoder decoder;
+
+    /**
+     * Decompresses the stored form of a resource.
+     */
+    @FunctionalInterface
+    public interface Decoder {
+        /**
+         * @param data
+         *     the compressed JSON representation of a resource
+         * @return a new input stream over the uncompressed JSON representation of the resource
+         * @throws IOException
+         */
+        InputStream decode(byte[] data) throws IOException;
+    }
+
+    /**
+     * @param resourceType
+     *     the type of the resource
+     * @param logicalId
+     *     the logical id of the resource
+     * @param versionId
+     *     the version id of the resource, which must match its meta.versionId
+     * @param lastUpdated
+     *     the last updated time of the resource, which must match its meta.lastUpdated
+     * @param data
+     *     the gzip-compressed JSON representation of the resource
+     */
+    public RawResource(Class<? extends Resource> resourceType, String logicalId, String versionId, Instant lastUpdated, byte[] data) {
+        this(resourceType, logicalId, versionId, lastUpdated, data, d -> new GZIPInputStream(new ByteArrayInputStream(d), BUFFER_SIZE));
+    }
+
+    /**
+     * @param resourceType
+     *     the type of the resource
+     * @param logicalId
+     *     the logical id of the resource
+     * @param versionId
+     *     the version id of the resource, which must match its meta.versionId
+     * @param lastUpdated
+     *     the last updated time of the resource, which must match its meta.lastUpdated
+     * @param data
+     *     the compressed JSON representation of the resource
+     * @param decoder
+     *     the decoder for the compressed representation
+     */
+    public RawResource(Class<? extends Resource> resourceType, String logicalId, String versionId, Instant lastUpdated, byte[] data, Decoder decoder) {
+        this.resourceType = Objects.requireNonNull(resourceType);
+        this.logicalId = Objects.requireNonNull(logicalId);
+        this.versionId = Objects.requireNonNull(versionId);
+        this.lastUpdated = Objects.requireNonNull(lastUpdated);
+        this.data = Objects.requireNonNull(data);
+        this.decoder = Objects.requireNonNull(decoder);
+    }
+
+    public Class<? extends Resource> getResourceType() {
+        return resourceType;
+    }
+
+    public String getLogicalId() {
+        return logicalId;
+    }
+
+    public String getVersionId() {
+        return versionId;
+    }
+
+    public Instant getLastUpdated() {
+        return lastUpdated;
+    }
+
+    /**
+     * @return
+     *     a new input stream over the uncompressed JSON representation of the resource
+     * @throws IOException
+     */
+    public InputStream getJsonInputStream() throws IOException {
+        return decoder.decode(data);
+    }
+
+    /**
+     * Write the uncompressed JSON representation of the resource to the passed output stream.
+     *
+     * @param out
+     *     the output stream, which is not closed by this method
+     * @throws IOException
+     */
+    public void writeJson(OutputStream out) throws IOException {
+        try (InputStream in = getJsonInputStream()) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Parse the JSON representation of the resource.
+     *
+     * @return
+     *     the resource
+     * @throws FHIRParserException
+     *     if the resource could not be parsed
+     */
+    public <T extends Resource> T toResource() throws FHIRParserException {
+        try (InputStream in = getJsonInputStream()) {
+            return FHIRParser.parser(Format.JSON).parse(in);
+        } catch (IOException e) {
+            throw new FHIRParserException("An error occurred while reading the stored resource", resourceType.getSimpleName(), e);
+        }
+    }
+}
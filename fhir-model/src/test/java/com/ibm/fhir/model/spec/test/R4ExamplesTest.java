@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -36,6 +36,14 @@ public class R4ExamplesTest {
         driver.processIndex(Index.valueOf(index));
     }
     
+    @Test
+    public void streamingParserTest() throws Exception {
+        driver.setProcessor(new StreamingParserProcessor());
+        String index = System.getProperty(this.getClass().getName()
+            + ".index", Index.ALL_JSON.name());
+        driver.processIndex(Index.valueOf(index));
+    }
+    
     @Test
     public void copyTest() throws Exception {
         driver.setProcessor(new CopyProcessor(new CopyingVisitor<Resource>()));
@@ -0,0 +1,51 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.spec.test;
+
+import java.io.Reader;
+
+import com.ibm.fhir.examples.ExamplesUtil;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRJsonParser;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.util.test.ResourceComparatorVisitor;
+
+/**
+ * Tests that the streaming mode of the JSON parser produces the same object as the default (JsonObject-based) mode
+ */
+public class StreamingParserProcessor implements IExampleProcessor {
+
+    @Override
+    public void process(String jsonFile, Resource resource) throws Exception {
+        if (!jsonFile.toUpperCase().endsWith(".JSON")) {
+            return;
+        }
+
+        FHIRParser parser = FHIRParser.parser(Format.JSON);
+        parser.setProperty(FHIRJsonParser.PROPERTY_STREAMING, true);
+
+        try (Reader rdr = ExamplesUtil.resourceReader(jsonFile)) {
+            Resource newResource = parser.parse(rdr);
+
+            if (!newResource.equals(resource)) {
+
+                // Use the ResourceComparatorVisitor to provide some detail about what's different
+                ResourceComparatorVisitor originals = new ResourceComparatorVisitor();
+                resource.accept(resource.getClass().getSimpleName(), originals);
+
+                ResourceComparatorVisitor others = new ResourceComparatorVisitor();
+                newResource.accept(newResource.getClass().getSimpleName(), others);
+
+                // Perform a bi-directional comparison of values in the maps
+                ResourceComparatorVisitor.compare(originals.getValues(), others.getValues());
+
+                throw new IllegalStateException("Resource mismatch between streaming and non-streaming JSON parse");
+            }
+        }
+    }
+}
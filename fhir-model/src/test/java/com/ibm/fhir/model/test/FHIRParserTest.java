@@ -6,17 +6,24 @@
 
 package com.ibm.fhir.model.test;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Arrays;
 
 import org.testng.annotations.Test;
 
 import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRJsonParser;
 import com.ibm.fhir.model.parser.FHIRParser;
 import com.ibm.fhir.model.parser.exception.FHIRParserException;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Patient;
 
 public class FHIRParserTest {
     @Test
@@ -47,4 +54,84 @@ public class FHIRParserTest {
             fail();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testStreamingUnrecognizedElements() throws Exception {
+        try (InputStream in = FHIRParserTest.class.getClassLoader().getResourceAsStream("JSON/observation-unrecognized-elements.json")) {
+            streamingParser().parse(in);
+            fail();
+        } catch (FHIRParserException e) {
+            assertTrue(e.getMessage().startsWith("Unrecognized element"));
+        }
+
+        try (InputStream in = FHIRParserTest.class.getClassLoader().getResourceAsStream("JSON/observation-unrecognized-elements.json")) {
+            FHIRParser parser = streamingParser();
+            parser.setProperty(FHIRParser.PROPERTY_IGNORE_UNRECOGNIZED_ELEMENTS, true);
+            assertNotNull(parser.parse(in));
+        }
+    }
+
+    @Test
+    public void testStreamingPrimitiveExtensionOrder() throws Exception {
+        String json = "{\"resourceType\":\"Patient\"," +
+                "\"_gender\":{\"extension\":[{\"url\":\"http://example.com/ext\",\"valueString\":\"x\"}]}," +
+                "\"gender\":\"male\"," +
+                "\"name\":[{\"_given\":[null,{\"id\":\"g2\"}],\"given\":[\"A\",\"B\"]}]}";
+        Patient expected = FHIRParser.parser(Format.JSON).parse(new StringReader(json));
+        Patient actual = streamingParser().parse(new StringReader(json));
+        assertEquals(actual, expected);
+        assertEquals(actual.getGender().getExtension().size(), 1);
+        assertEquals(actual.getName().get(0).getGiven().get(1).getId(), "g2");
+    }
+
+    @Test
+    public void testStreamingResourceTypeNotFirst() throws Exception {
+        String json = "{\"id\":\"1\",\"status\":\"final\",\"resourceType\":\"Observation\"," +
+                "\"code\":{\"text\":\"test\"},\"valueString\":\"x\"}";
+        Observation expected = FHIRParser.parser(Format.JSON).parse(new StringReader(json));
+        Observation actual = streamingParser().parse(new StringReader(json));
+        assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testStreamingChoiceElements() throws Exception {
+        String json = "{\"resourceType\":\"Observation\",\"status\":\"final\",\"code\":{\"text\":\"test\"}," +
+                "\"valueString\":\"x\",\"valueBoolean\":true}";
+        try {
+            streamingParser().parse(new StringReader(json));
+            fail();
+        } catch (FHIRParserException e) {
+            assertTrue(e.getMessage().startsWith("Only one choice element key of the form: value[x] is allowed"));
+        }
+
+        json = "{\"resourceType\":\"Observation\",\"status\":\"final\",\"code\":{\"text\":\"test\"}," +
+                "\"valueString\":\"x\",\"_valueBoolean\":{\"id\":\"v\"}}";
+        try {
+            streamingParser().parse(new StringReader(json));
+            fail();
+        } catch (FHIRParserException e) {
+            assertTrue(e.getMessage().startsWith("Choice element keys: valueString and _valueBoolean are not consistent"));
+        }
+    }
+
+    @Test
+    public void testStreamingElementFilter() throws Exception {
+        String json = "{\"resourceType\":\"Observation\",\"id\":\"1\",\"status\":\"final\",\"code\":{\"text\":\"test\"}," +
+                "\"subject\":{\"reference\":\"Patient/1\"},\"valueString\":\"x\"}";
+        FHIRJsonParser parser = streamingParser().as(FHIRJsonParser.class);
+        Observation observation = parser.parseAndFilter(new StringReader(json), Arrays.asList("subject"));
+        assertEquals(observation.getId(), "1");
+        assertNotNull(observation.getStatus());
+        assertNotNull(observation.getSubject());
+        assertNull(observation.getValue());
+
+        Observation expected = FHIRParser.parser(Format.JSON).as(FHIRJsonParser.class).parseAndFilter(new StringReader(json), Arrays.asList("subject"));
+        assertEquals(observation, expected);
+    }
+
+    private FHIRParser streamingParser() {
+        FHIRParser parser = FHIRParser.parser(Format.JSON);
+        parser.setProperty(FHIRJsonParser.PROPERTY_STREAMING, true);
+        return parser;
+    }
+}
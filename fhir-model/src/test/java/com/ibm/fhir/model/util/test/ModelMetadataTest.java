@@ -0,0 +1,162 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.util.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.annotation.Binding;
+import com.ibm.fhir.model.annotation.Choice;
+import com.ibm.fhir.model.annotation.Constraint;
+import com.ibm.fhir.model.annotation.ReferenceTarget;
+import com.ibm.fhir.model.annotation.Required;
+import com.ibm.fhir.model.annotation.Summary;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.util.ModelSupport.ElementInfo;
+
+/**
+ * Verifies that the generated model metadata which backs ModelSupport matches the fields and annotations of the model
+ * classes.
+ */
+public class ModelMetadataTest {
+
+    @Test
+    public void testModelClasses() throws Exception {
+        List<Class<?>> modelClasses = new ArrayList<>();
+        try (InputStream in = ModelSupport.class.getClassLoader().getResourceAsStream("modelClasses")) {
+            for (String className : new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)).lines().collect(Collectors.toList())) {
+                modelClasses.add(Class.forName(className));
+            }
+        }
+        assertEquals(new ArrayList<>(ModelSupport.getModelClasses()), modelClasses);
+    }
+
+    @Test
+    public void testElementInfo() {
+        for (Class<?> modelClass : ModelSupport.getModelClasses()) {
+            List<Field> fields = getAllFields(modelClass);
+            List<ElementInfo> elementInfos = new ArrayList<>(ModelSupport.getElementInfo(modelClass));
+            assertEquals(elementInfos.size(), fields.size(), modelClass.getName());
+            for (int i = 0; i < fields.size(); i++) {
+                Field field = fields.get(i);
+                ElementInfo elementInfo = elementInfos.get(i);
+                String message = modelClass.getName() + "." + field.getName();
+
+                assertEquals(elementInfo.getName(), ModelSupport.getElementName(field), message);
+                assertEquals(elementInfo.getType(), getFieldType(field), message);
+                assertEquals(elementInfo.getDeclaringType(), field.getDeclaringClass(), message);
+                assertEquals(elementInfo.isRequired(), field.isAnnotationPresent(Required.class), message);
+                assertEquals(elementInfo.isSummary(), field.isAnnotationPresent(Summary.class), message);
+                assertEquals(elementInfo.isRepeating(), List.class.equals(field.getType()), message);
+
+                Choice choice = field.getAnnotation(Choice.class);
+                assertEquals(elementInfo.isChoice(), choice != null, message);
+                if (choice != null) {
+                    assertEquals(new ArrayList<>(elementInfo.getChoiceTypes()), new ArrayList<>(new LinkedHashSet<>(Arrays.asList(choice.value()))), message);
+                } else {
+                    assertTrue(elementInfo.getChoiceTypes().isEmpty(), message);
+                }
+
+                ReferenceTarget referenceTarget = field.getAnnotation(ReferenceTarget.class);
+                assertEquals(elementInfo.isReference(), referenceTarget != null, message);
+                if (referenceTarget != null) {
+                    assertEquals(new ArrayList<>(elementInfo.getReferenceTypes()), new ArrayList<>(new LinkedHashSet<>(Arrays.asList(referenceTarget.value()))), message);
+                } else {
+                    assertTrue(elementInfo.getReferenceTypes().isEmpty(), message);
+                }
+
+                Binding binding = field.getAnnotation(Binding.class);
+                if (binding != null) {
+                    assertBindingEquals(elementInfo.getBinding(), binding, message);
+                } else {
+                    assertNull(elementInfo.getBinding(), message);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConstraints() {
+        for (Class<?> modelClass : ModelSupport.getModelClasses()) {
+            Set<Constraint> expected = new LinkedHashSet<>();
+            for (Class<?> clazz : ModelSupport.getClosure(modelClass)) {
+                expected.addAll(Arrays.asList(clazz.getDeclaredAnnotationsByType(Constraint.class)));
+            }
+            Set<Constraint> actual = ModelSupport.getConstraints(modelClass);
+            assertEquals(actual.size(), expected.size(), modelClass.getName());
+            Iterator<Constraint> iterator = actual.iterator();
+            for (Constraint constraint : expected) {
+                Constraint other = iterator.next();
+                String message = modelClass.getName() + " " + constraint.id();
+                assertEquals(other.id(), constraint.id(), message);
+                assertEquals(other.level(), constraint.level(), message);
+                assertEquals(other.location(), constraint.location(), message);
+                assertEquals(other.description(), constraint.description(), message);
+                assertEquals(other.expression(), constraint.expression(), message);
+                assertEquals(other.modelChecked(), constraint.modelChecked(), message);
+                assertEquals(other.generated(), constraint.generated(), message);
+                assertTrue(other.equals(constraint), message);
+                assertTrue(constraint.equals(other), message);
+                assertEquals(other.hashCode(), constraint.hashCode(), message);
+            }
+        }
+    }
+
+    private void assertBindingEquals(Binding actual, Binding expected, String message) {
+        assertEquals(actual.bindingName(), expected.bindingName(), message);
+        assertEquals(actual.strength(), expected.strength(), message);
+        assertEquals(actual.description(), expected.description(), message);
+        assertEquals(actual.valueSet(), expected.valueSet(), message);
+        assertEquals(actual.inheritedExtensibleValueSet(), expected.inheritedExtensibleValueSet(), message);
+        assertEquals(actual.minValueSet(), expected.minValueSet(), message);
+        assertEquals(actual.maxValueSet(), expected.maxValueSet(), message);
+        assertTrue(actual.equals(expected), message);
+        assertTrue(expected.equals(actual), message);
+        assertEquals(actual.hashCode(), expected.hashCode(), message);
+    }
+
+    private List<Field> getAllFields(Class<?> modelClass) {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> clazz : ModelSupport.getClosure(modelClass)) {
+            for (Field field : clazz.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isVolatile(modifiers)) {
+                    continue;
+                }
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    private Class<?> getFieldType(Field field) {
+        Type genericType = field.getGenericType();
+        if (genericType instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) genericType).getActualTypeArguments()[0];
+        }
+        return field.getType();
+    }
+}
@@ -15,17 +15,25 @@ import java.util.stream.Stream;
 
 public abstract class FHIRPathAbstractNode implements FHIRPathNode {
     protected final String name;
-    protected final String path;
     protected final FHIRPathType type;
     protected final FHIRPathSystemValue value;
-    protected final Collection<FHIRPathNode> children;
-    
+
+    // the parent and index of a node in a lazy tree, used to compute its path on demand
+    private final FHIRPathAbstractNode parent;
+    private final int index;
+
+    // computed on first use for the nodes of a lazy tree
+    private volatile String path;
+    private volatile Collection<FHIRPathNode> children;
+
     protected FHIRPathAbstractNode(Builder builder) {
         name = builder.name;
         path = builder.path;
         type = Objects.requireNonNull(builder.type);
         value = builder.value;
-        children = Collections.unmodifiableCollection(builder.children);
+        parent = builder.parent;
+        index = builder.index;
+        children = builder.lazy ? null : Collections.unmodifiableCollection(builder.children);
     }
     
     @Override
@@ -35,7 +43,32 @@ public abstract class FHIRPathAbstractNode implements FHIRPathNode {
     
     @Override
     public String path() {
-        return path;
+        String result = path;
+        if (result == null && parent != null) {
+            result = parent.path() + "." + FHIRPathTree.segment(name, index);
+            path = result;
+        }
+        return result;
+    }
+
+    /**
+     * The parent of this node in a lazy {@link FHIRPathTree}
+     *
+     * @return
+     *     the parent of this node in a lazy tree, otherwise null
+     */
+    FHIRPathAbstractNode parent() {
+        return parent;
+    }
+
+    /**
+     * The position of this node in the list element it belongs to
+     *
+     * @return
+     *     the index of this node in a lazy tree, or -1 if it isn't part of a list or lazy tree
+     */
+    int index() {
+        return index;
     }
     
     @Override
@@ -55,7 +88,19 @@ public abstract class FHIRPathAbstractNode implements FHIRPathNode {
     
     @Override
     public Collection<FHIRPathNode> children() {
-        return children;
+        Collection<FHIRPathNode> result = children;
+        if (result == null) {
+            // the children of a node in a lazy tree are materialized on first navigation; trees may be shared
+            // between threads, so this is done once per node under its lock
+            synchronized (this) {
+                result = children;
+                if (result == null) {
+                    result = Collections.unmodifiableCollection(FHIRPathTree.loadChildren(this));
+                    children = result;
+                }
+            }
+        }
+        return result;
     }
     
     @Override
@@ -95,11 +140,34 @@ public abstract class FHIRPathAbstractNode implements FHIRPathNode {
         protected String path;
         protected FHIRPathSystemValue value;
         protected Collection<FHIRPathNode> children = new ArrayList<>();
+
+        // lazy tree support
+        private FHIRPathAbstractNode parent;
+        private int index = -1;
+        private boolean lazy;
         
         protected Builder(FHIRPathType type) {
             super();
             this.type = type;
         }
+
+        /**
+         * Build a node of a lazy {@link FHIRPathTree}, whose path is computed from its parent and whose children
+         * (other than its value) are loaded on first use
+         *
+         * @param parent
+         *     the parent node, or null for the root node
+         * @param index
+         *     the index of the node in the list element it belongs to, or -1
+         * @return
+         *     this builder
+         */
+        Builder lazy(FHIRPathAbstractNode parent, int index) {
+            this.parent = parent;
+            this.index = index;
+            this.lazy = true;
+            return this;
+        }
         
         @Override
         public Builder name(String name) {
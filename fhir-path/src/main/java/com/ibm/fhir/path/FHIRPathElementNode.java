@@ -91,7 +91,7 @@ public class FHIRPathElementNode extends FHIRPathAbstractNode {
         Builder builder = new Builder(type, element);
         builder.name = name;
         builder.value = value;
-        builder.children = children;
+        builder.children = children();
         return builder;
     }
     
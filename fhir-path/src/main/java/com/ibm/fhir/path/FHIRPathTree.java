@@ -6,16 +6,21 @@
 
 package com.ibm.fhir.path;
 
+import static com.ibm.fhir.model.util.ModelSupport.delimit;
+import static com.ibm.fhir.model.util.ModelSupport.isKeyword;
+
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.Year;
 import java.time.YearMonth;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Stack;
@@ -24,10 +29,16 @@ import java.util.stream.Collectors;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.type.Element;
 import com.ibm.fhir.model.type.Quantity;
+import com.ibm.fhir.model.visitor.DefaultVisitor;
 import com.ibm.fhir.model.visitor.PathAwareVisitor;
+import com.ibm.fhir.model.visitor.Visitable;
 
 /**
  * A tree of {@link FHIRPathNode} nodes created from a {@link Resource} or an {@link Element}
+ *
+ * <p>A tree is either built eagerly, with every node and a map from path to node created up front, or lazily,
+ * with the children of each node created the first time they are navigated to and paths computed on demand.
+ * Lazy trees are safe to share between threads.
  */
 public class FHIRPathTree {
     private final FHIRPathNode root;
@@ -35,7 +46,7 @@ public class FHIRPathTree {
 
     private FHIRPathTree(FHIRPathNode root, Map<String, FHIRPathNode> pathNodeMap) {
         this.root = root;
-        this.pathNodeMap = Collections.unmodifiableMap(pathNodeMap);
+        this.pathNodeMap = (pathNodeMap != null) ? Collections.unmodifiableMap(pathNodeMap) : null;
     }
 
     /**
@@ -57,7 +68,62 @@ public class FHIRPathTree {
      *     the node at the location given by the path parameter if exists, otherwise null
      */
     public FHIRPathNode getNode(String path) {
-        return pathNodeMap.get(path);
+        if (pathNodeMap != null) {
+            return pathNodeMap.get(path);
+        }
+        return (path != null) ? navigate(path) : null;
+    }
+
+    /**
+     * Find the node at the given path by navigating down from the root, materializing only the nodes along the path
+     */
+    private FHIRPathNode navigate(String path) {
+        String[] segments = path.split("\\.");
+        if (!segments[0].equals(root.path())) {
+            return null;
+        }
+        FHIRPathNode node = root;
+        for (int i = 1; i < segments.length && node != null; i++) {
+            String name = segments[i];
+            int index = 0;
+            int bracket = name.indexOf('[');
+            if (bracket != -1 && name.endsWith("]")) {
+                try {
+                    index = Integer.parseInt(name.substring(bracket + 1, name.length() - 1));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                name = name.substring(0, bracket);
+            }
+            if (name.length() > 1 && name.startsWith("`") && name.endsWith("`")) {
+                name = name.substring(1, name.length() - 1);
+            }
+            node = getChild(node, name, index);
+        }
+        return node;
+    }
+
+    /**
+     * The path segment of an element, in the same form as {@link PathAwareVisitor#getPath()}
+     */
+    static String segment(String name, int index) {
+        if (isKeyword(name)) {
+            name = delimit(name);
+        }
+        return (index != -1) ? name + "[" + index + "]" : name;
+    }
+
+    /**
+     * The index-th child of the node with the given name, skipping the system value of the node (if any)
+     */
+    private FHIRPathNode getChild(FHIRPathNode node, String name, int index) {
+        int count = 0;
+        for (FHIRPathNode child : node.children()) {
+            if (!child.isSystemValue() && name.equals(child.name()) && count++ == index) {
+                return child;
+            }
+        }
+        return null;
     }
 
     /**
@@ -73,9 +139,17 @@ public class FHIRPathTree {
             return null;
         }
 
-        int index = node.path().lastIndexOf(".");
+        if (pathNodeMap == null && node instanceof FHIRPathAbstractNode) {
+            FHIRPathAbstractNode parent = ((FHIRPathAbstractNode) node).parent();
+            if (parent != null) {
+                return parent;
+            }
+        }
+
+        String path = node.path();
+        int index = (path != null) ? path.lastIndexOf(".") : -1;
         if (index != -1) {
-            return pathNodeMap.get(node.path().substring(0, index));
+            return getNode(path.substring(0, index));
         }
 
         return null;
@@ -166,6 +240,218 @@ public class FHIRPathTree {
         return new FHIRPathTree(visitor.getRoot(), visitor.getPathNodeMap());
     }
 
+    /**
+     * Static factory method for creating lazy FHIRPathTree instances from a {@link Resource}; only the root node
+     * is created up front
+     *
+     * @param resource
+     *     the resource
+     * @return
+     *     a new lazy FHIRPathTree instance
+     */
+    public static FHIRPathTree lazyTree(Resource resource) {
+        Objects.requireNonNull(resource);
+        return new FHIRPathTree(buildRoot(resource), null);
+    }
+
+    /**
+     * Static factory method for creating lazy FHIRPathTree instances from an {@link Element}; only the root node
+     * is created up front
+     *
+     * @param element
+     *     the element
+     * @return
+     *     a new lazy FHIRPathTree instance
+     */
+    public static FHIRPathTree lazyTree(Element element) {
+        Objects.requireNonNull(element);
+        return new FHIRPathTree(buildRoot(element), null);
+    }
+
+    private static FHIRPathNode buildRoot(Visitable visitable) {
+        LazyBuildingVisitor visitor = new LazyBuildingVisitor(null, 1);
+        visitable.accept(visitor);
+        return visitor.getNodes().get(0);
+    }
+
+    /**
+     * Create the children of a node in a lazy tree, in the same order as an eager tree would hold them
+     *
+     * @param parent
+     *     the node
+     * @return
+     *     the children of the node
+     */
+    static Collection<FHIRPathNode> loadChildren(FHIRPathAbstractNode parent) {
+        Visitable visitable = null;
+        if (parent.isResourceNode()) {
+            visitable = parent.asResourceNode().resource();
+        } else if (parent.isElementNode()) {
+            visitable = parent.asElementNode().element();
+        }
+
+        List<FHIRPathNode> children = new ArrayList<>();
+        int valuePosition = (parent instanceof FHIRPathQuantityNode) ? 0 : -1;
+        if (visitable != null) {
+            LazyBuildingVisitor visitor = new LazyBuildingVisitor(parent, 2);
+            visitable.accept(parent.name(), parent.index(), visitor);
+            children.addAll(visitor.getNodes());
+            valuePosition = Math.max(valuePosition, visitor.getValuePosition());
+        }
+
+        // the value of the parent is the same node as the one returned by getValue(), placed where the eager
+        // tree places it: after the children that were visited before the last value of the parent
+        FHIRPathSystemValue value = parent.getValue();
+        if (value != null) {
+            children.add((valuePosition != -1) ? valuePosition : children.size(), value);
+        }
+
+        return children;
+    }
+
+    /**
+     * Builds the nodes at a single depth of the visited element; their children are left to be created on demand.
+     * Depth 1 is the visited element itself and depth 2 its children.
+     */
+    private static class LazyBuildingVisitor extends DefaultVisitor {
+        private final FHIRPathAbstractNode parent;
+        private final int targetDepth;
+        private final List<FHIRPathNode> nodes = new ArrayList<>();
+        private FHIRPathNode.Builder builder;
+        private int depth;
+        private int valuePosition = -1;
+
+        private LazyBuildingVisitor(FHIRPathAbstractNode parent, int targetDepth) {
+            super(false);
+            this.parent = parent;
+            this.targetDepth = targetDepth;
+        }
+
+        private List<FHIRPathNode> getNodes() {
+            return nodes;
+        }
+
+        /**
+         * The number of nodes built before the last value of the visited element, or -1 if it had no value
+         */
+        private int getValuePosition() {
+            return valuePosition;
+        }
+
+        @Override
+        public boolean visit(java.lang.String elementName, int elementIndex, Visitable visitable) {
+            // visit the children of the target nodes only to pick up their primitive values
+            return depth <= targetDepth;
+        }
+
+        @Override
+        public void visitStart(java.lang.String elementName, int elementIndex, Element element) {
+            if (++depth == targetDepth) {
+                if (element instanceof Quantity) {
+                    Quantity quantity = (Quantity) element;
+                    builder = FHIRPathQuantityNode.builder(quantity).name(elementName);
+                    FHIRPathQuantityValue value = FHIRPathQuantityValue.quantityValue(quantity);
+                    if (value != null) {
+                        builder.value(value);
+                    }
+                } else {
+                    builder = FHIRPathElementNode.builder(element).name(elementName);
+                }
+                start(elementName, elementIndex);
+            }
+        }
+
+        @Override
+        public void visitStart(java.lang.String elementName, int elementIndex, Resource resource) {
+            if (++depth == targetDepth) {
+                builder = FHIRPathResourceNode.builder(resource).name(elementName);
+                start(elementName, elementIndex);
+            }
+        }
+
+        private void start(java.lang.String elementName, int elementIndex) {
+            if (parent == null) {
+                builder.path(segment(elementName, elementIndex));
+            }
+            ((FHIRPathAbstractNode.Builder) builder).lazy(parent, elementIndex);
+        }
+
+        @Override
+        public void visitEnd(java.lang.String elementName, int elementIndex, Element element) {
+            end();
+        }
+
+        @Override
+        public void visitEnd(java.lang.String elementName, int elementIndex, Resource resource) {
+            end();
+        }
+
+        private void end() {
+            if (depth-- == targetDepth) {
+                nodes.add(builder.build());
+                builder = null;
+            }
+        }
+
+        private void value(FHIRPathSystemValue value) {
+            if (depth == targetDepth) {
+                builder.value(value);
+            } else if (depth == targetDepth - 1) {
+                valuePosition = nodes.size();
+            }
+        }
+
+        @Override
+        public void visit(java.lang.String elementName, BigDecimal value) {
+            value(FHIRPathDecimalValue.decimalValue(elementName, value));
+        }
+
+        @Override
+        public void visit(java.lang.String elementName, byte[] value) {
+            value(FHIRPathStringValue.stringValue(elementName, Base64.getEncoder().encodeToString(value)));
+        }
+
+        @Override
+        public void visit(java.lang.String elementName, java.lang.Boolean value) {
+            value(FHIRPathBooleanValue.booleanValue(elementName, value));
+        }
+
+        @Override
+        public void visit(java.lang.String elementName, java.lang.Integer value) {
+            value(FHIRPathIntegerValue.integerValue(elementName, value));
+        }
+
+        @Override
+        public void visit(java.lang.String elementName, java.lang.String value) {
+            value(FHIRPathStringValue.stringValue(elementName, value));
+        }
+
+        @Override
+        public void visit(java.lang.String elementName, LocalDate value) {
+            value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
+        }
+
+        @Override
+        public void visit(java.lang.String elementName, LocalTime value) {
+            value(FHIRPathTimeValue.timeValue(elementName, value));
+        }
+
+        @Override
+        public void visit(java.lang.String elementName, Year value) {
+            value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
+        }
+
+        @Override
+        public void visit(java.lang.String elementName, YearMonth value) {
+            value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
+        }
+
+        @Override
+        public void visit(java.lang.String elementName, ZonedDateTime value) {
+            value(FHIRPathDateTimeValue.dateTimeValue(elementName, value));
+        }
+    }
+
     private static class BuildingVisitor extends PathAwareVisitor {
         private Stack<FHIRPathNode.Builder> builderStack = new Stack<>();
         private FHIRPathNode root;
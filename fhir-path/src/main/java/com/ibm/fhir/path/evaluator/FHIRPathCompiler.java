@@ -0,0 +1,1048 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.path.evaluator;
+
+import static com.ibm.fhir.path.FHIRPathDateTimeValue.dateTimeValue;
+import static com.ibm.fhir.path.FHIRPathDateValue.dateValue;
+import static com.ibm.fhir.path.FHIRPathDecimalValue.decimalValue;
+import static com.ibm.fhir.path.FHIRPathIntegerValue.integerValue;
+import static com.ibm.fhir.path.FHIRPathStringValue.EMPTY_STRING;
+import static com.ibm.fhir.path.FHIRPathStringValue.stringValue;
+import static com.ibm.fhir.path.FHIRPathTimeValue.timeValue;
+import static com.ibm.fhir.path.evaluator.FHIRPathEvaluator.SINGLETON_FALSE;
+import static com.ibm.fhir.path.evaluator.FHIRPathEvaluator.SINGLETON_TRUE;
+import static com.ibm.fhir.path.util.FHIRPathUtil.empty;
+import static com.ibm.fhir.path.util.FHIRPathUtil.evaluatesToBoolean;
+import static com.ibm.fhir.path.util.FHIRPathUtil.evaluatesToTrue;
+import static com.ibm.fhir.path.util.FHIRPathUtil.getInteger;
+import static com.ibm.fhir.path.util.FHIRPathUtil.getNumberValue;
+import static com.ibm.fhir.path.util.FHIRPathUtil.getQuantityNode;
+import static com.ibm.fhir.path.util.FHIRPathUtil.getQuantityValue;
+import static com.ibm.fhir.path.util.FHIRPathUtil.getSingleton;
+import static com.ibm.fhir.path.util.FHIRPathUtil.getString;
+import static com.ibm.fhir.path.util.FHIRPathUtil.getStringValue;
+import static com.ibm.fhir.path.util.FHIRPathUtil.getSystemValue;
+import static com.ibm.fhir.path.util.FHIRPathUtil.getTemporalValue;
+import static com.ibm.fhir.path.util.FHIRPathUtil.hasNumberValue;
+import static com.ibm.fhir.path.util.FHIRPathUtil.hasQuantityValue;
+import static com.ibm.fhir.path.util.FHIRPathUtil.hasStringValue;
+import static com.ibm.fhir.path.util.FHIRPathUtil.hasSystemValue;
+import static com.ibm.fhir.path.util.FHIRPathUtil.hasTemporalValue;
+import static com.ibm.fhir.path.util.FHIRPathUtil.isCodedElementNode;
+import static com.ibm.fhir.path.util.FHIRPathUtil.isComparableTo;
+import static com.ibm.fhir.path.util.FHIRPathUtil.isFalse;
+import static com.ibm.fhir.path.util.FHIRPathUtil.isQuantityNode;
+import static com.ibm.fhir.path.util.FHIRPathUtil.isSingleton;
+import static com.ibm.fhir.path.util.FHIRPathUtil.isStringElementNode;
+import static com.ibm.fhir.path.util.FHIRPathUtil.isStringValue;
+import static com.ibm.fhir.path.util.FHIRPathUtil.isTypeCompatible;
+import static com.ibm.fhir.path.util.FHIRPathUtil.isUriElementNode;
+import static com.ibm.fhir.path.util.FHIRPathUtil.singleton;
+import static com.ibm.fhir.path.util.FHIRPathUtil.unescape;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import com.ibm.fhir.path.FHIRPathBaseVisitor;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.FHIRPathNumberValue;
+import com.ibm.fhir.path.FHIRPathParser;
+import com.ibm.fhir.path.FHIRPathParser.ExpressionContext;
+import com.ibm.fhir.path.FHIRPathParser.ParamListContext;
+import com.ibm.fhir.path.FHIRPathQuantityNode;
+import com.ibm.fhir.path.FHIRPathQuantityValue;
+import com.ibm.fhir.path.FHIRPathStringValue;
+import com.ibm.fhir.path.FHIRPathSystemValue;
+import com.ibm.fhir.path.FHIRPathTemporalValue;
+import com.ibm.fhir.path.FHIRPathType;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+import com.ibm.fhir.path.function.FHIRPathFunction;
+import com.ibm.fhir.path.util.FHIRPathUtil;
+
+/**
+ * Lowers a FHIRPath parse tree into a tree of pre-bound closures.
+ *
+ * <p>Everything that can be determined from the expression text alone (identifiers, operators, literals, type
+ * specifiers and functions from the {@link FHIRPathFunction} registry) is resolved once, when the expression is compiled.
+ * The resulting {@link Closure} is immutable and holds no evaluation state, so it can be cached and evaluated
+ * concurrently by any number of threads.
+ *
+ * <p>Errors that the parse tree walker only reported when the offending part of the expression was evaluated (unknown
+ * functions, invalid literals, etc.) are still reported at evaluation time.
+ *
+ * <p>{@code $index} and {@code $total} are held by the {@link EvaluationContext} while the functions that iterate over
+ * their input evaluate their arguments. The index is only maintained for arguments that refer to it.
+ */
+final class FHIRPathCompiler extends FHIRPathBaseVisitor<FHIRPathCompiler.Closure> {
+    private static final Logger log = Logger.getLogger(FHIRPathCompiler.class.getName());
+
+    private static final String SYSTEM_NAMESPACE = "System";
+
+    /**
+     * A compiled FHIRPath expression (or sub-expression)
+     */
+    @FunctionalInterface
+    interface Closure {
+        /**
+         * @param evaluationContext
+         *     the evaluation context
+         * @param context
+         *     the input collection ($this)
+         * @return
+         *     the result of evaluation
+         */
+        Collection<FHIRPathNode> evaluate(EvaluationContext evaluationContext, Collection<FHIRPathNode> context);
+    }
+
+    /**
+     * A compiled argument of a function that evaluates it for each item of its input
+     */
+    @FunctionalInterface
+    private interface ItemClosure {
+        /**
+         * @param evaluationContext
+         *     the evaluation context
+         * @param item
+         *     the item ($this)
+         * @param index
+         *     the position of the item in the input collection ($index)
+         * @return
+         *     the result of evaluation
+         */
+        Collection<FHIRPathNode> evaluate(EvaluationContext evaluationContext, FHIRPathNode item, int index);
+    }
+
+    // set when '$index' is compiled, to tell the enclosing iteration function that it needs to maintain the index
+    private boolean referencesIndex = false;
+
+    private FHIRPathCompiler() { }
+
+    /**
+     * Compile a FHIRPath expression
+     *
+     * @param expr
+     *     the FHIRPath expression
+     * @return
+     *     the compiled expression
+     * @throws IllegalArgumentException
+     *     if the expression is not syntactically valid
+     */
+    static Closure compile(String expr) {
+        return new FHIRPathCompiler().visit(FHIRPathUtil.compile(expr));
+    }
+
+    /**
+     * A closure that evaluates the supplier when the expression is compiled, or when it's evaluated if the
+     * supplier throws (so that the error is reported at the same point as it would be by the parse tree walker)
+     */
+    private static Closure constant(Supplier<Collection<FHIRPathNode>> supplier) {
+        try {
+            Collection<FHIRPathNode> result = supplier.get();
+            return (evaluationContext, context) -> result;
+        } catch (RuntimeException e) {
+            return (evaluationContext, context) -> supplier.get();
+        }
+    }
+
+    private static Closure error(Supplier<RuntimeException> supplier) {
+        return (evaluationContext, context) -> {
+            throw supplier.get();
+        };
+    }
+
+    private static IllegalArgumentException unexpectedNumberOfArguments(int arity, String functionName) {
+        return new IllegalArgumentException(String.format("Unexpected number of arguments: %d for function: '%s'", arity, functionName));
+    }
+
+    private static IllegalArgumentException invalidTypeIdentifier(String identifier) {
+        return new IllegalArgumentException(String.format("Argument '%s' cannot be resolved to a valid type identifier", identifier));
+    }
+
+    /**
+     * Indicates whether type or one of its base types has the given name (the type name closure)
+     */
+    private static boolean hasTypeName(FHIRPathType type, String identifier) {
+        if (SYSTEM_NAMESPACE.equals(type.namespace())) {
+            return false;
+        }
+        while (!FHIRPathType.FHIR_ANY.equals(type)) {
+            if (type.getName().equals(identifier)) {
+                return true;
+            }
+            type = type.baseType();
+        }
+        return false;
+    }
+
+    private static String identifier(String text) {
+        return text.startsWith("`") ? text.substring(1, text.length() - 1) : text;
+    }
+
+    /**
+     * Compile the argument of a function that evaluates it for each item of its input, keeping $index up to date in
+     * the evaluation context if the argument refers to it
+     */
+    private ItemClosure compileItemArgument(ExpressionContext argument) {
+        boolean outerReferencesIndex = referencesIndex;
+        referencesIndex = false;
+        Closure closure = visit(argument);
+        boolean indexed = referencesIndex;
+        referencesIndex = outerReferencesIndex;
+
+        if (!indexed) {
+            return (evaluationContext, item, index) -> closure.evaluate(evaluationContext, singleton(item));
+        }
+        return (evaluationContext, item, index) -> {
+            Collection<FHIRPathNode> outerIndex = evaluationContext.getIndex();
+            evaluationContext.setIndex(singleton(integerValue(index)));
+            try {
+                return closure.evaluate(evaluationContext, singleton(item));
+            } finally {
+                evaluationContext.setIndex(outerIndex);
+            }
+        };
+    }
+
+    private List<Closure> compile(List<ExpressionContext> arguments) {
+        List<Closure> closures = new ArrayList<>(arguments.size());
+        for (ExpressionContext argument : arguments) {
+            closures.add(visit(argument));
+        }
+        return closures;
+    }
+
+    private Closure all(List<ExpressionContext> arguments) {
+        if (arguments.size() != 1) {
+            return error(() -> unexpectedNumberOfArguments(arguments.size(), "all"));
+        }
+        ItemClosure criteria = compileItemArgument(arguments.get(0));
+        return (evaluationContext, context) -> {
+            int index = 0;
+            for (FHIRPathNode node : context) {
+                Collection<FHIRPathNode> result = criteria.evaluate(evaluationContext, node, index++);
+                if (evaluatesToBoolean(result) && isFalse(result)) {
+                    return SINGLETON_FALSE;
+                }
+            }
+            return SINGLETON_TRUE;
+        };
+    }
+
+    private Closure aggregate(List<ExpressionContext> arguments) {
+        if (arguments.size() < 1 || arguments.size() > 2) {
+            return error(() -> unexpectedNumberOfArguments(arguments.size(), "aggregate"));
+        }
+        // the aggregator always gets $index and $total, the index of an enclosing function is out of its scope
+        boolean outerReferencesIndex = referencesIndex;
+        Closure aggregator = visit(arguments.get(0));
+        referencesIndex = outerReferencesIndex;
+        Closure init = (arguments.size() == 2) ? visit(arguments.get(1)) : null;
+        return (evaluationContext, context) -> {
+            Collection<FHIRPathNode> total = (init != null) ? init.evaluate(evaluationContext, context) : empty();
+            Collection<FHIRPathNode> outerIndex = evaluationContext.getIndex();
+            Collection<FHIRPathNode> outerTotal = evaluationContext.getTotal();
+            try {
+                int index = 0;
+                for (FHIRPathNode node : context) {
+                    evaluationContext.setIndex(singleton(integerValue(index++)));
+                    evaluationContext.setTotal(total);
+                    total = aggregator.evaluate(evaluationContext, singleton(node));
+                }
+            } finally {
+                evaluationContext.setIndex(outerIndex);
+                evaluationContext.setTotal(outerTotal);
+            }
+            return total;
+        };
+    }
+
+    private Closure as(List<ExpressionContext> arguments, String functionName) {
+        if (arguments.size() != 1) {
+            return error(() -> unexpectedNumberOfArguments(arguments.size(), functionName));
+        }
+        String identifier = arguments.get(0).getText().replace("`", "");
+        FHIRPathType type = FHIRPathType.from(identifier);
+        if (type == null) {
+            return error(() -> invalidTypeIdentifier(identifier));
+        }
+        boolean system = SYSTEM_NAMESPACE.equals(type.namespace());
+        return (evaluationContext, context) -> {
+            Collection<FHIRPathNode> result = new ArrayList<>();
+            for (FHIRPathNode node : context) {
+                FHIRPathType nodeType = node.type();
+                if (system && node.hasValue()) {
+                    nodeType = node.getValue().type();
+                }
+                if (type.isAssignableFrom(nodeType)) {
+                    result.add(node);
+                }
+            }
+            return result;
+        };
+    }
+
+    private Closure exists(List<ExpressionContext> arguments) {
+        if (arguments.size() > 1) {
+            return error(() -> unexpectedNumberOfArguments(arguments.size(), "exists"));
+        }
+        if (arguments.isEmpty()) {
+            return (evaluationContext, context) -> !context.isEmpty() ? SINGLETON_TRUE : SINGLETON_FALSE;
+        }
+        Closure criteria = visit(arguments.get(0));
+        return (evaluationContext, context) -> evaluatesToTrue(criteria.evaluate(evaluationContext, context)) ? SINGLETON_TRUE : SINGLETON_FALSE;
+    }
+
+    private Closure iif(List<ExpressionContext> arguments) {
+        if (arguments.size() < 2 || arguments.size() > 3) {
+            return error(() -> unexpectedNumberOfArguments(arguments.size(), "iif"));
+        }
+        Closure criterion = visit(arguments.get(0));
+        Closure trueResult = visit(arguments.get(1));
+        Closure otherwiseResult = (arguments.size() == 3) ? visit(arguments.get(2)) : null;
+        return (evaluationContext, context) -> {
+            Collection<FHIRPathNode> result = criterion.evaluate(evaluationContext, context);
+            if (!evaluatesToBoolean(result) && !result.isEmpty()) {
+                throw new IllegalArgumentException("'iff' function criterion must evaluate to a boolean or empty");
+            }
+            if (evaluatesToTrue(result)) {
+                return trueResult.evaluate(evaluationContext, context);
+            } else if (otherwiseResult != null) {
+                return otherwiseResult.evaluate(evaluationContext, context);
+            }
+            return empty();
+        };
+    }
+
+    private Closure is(List<ExpressionContext> arguments) {
+        if (arguments.size() != 1) {
+            return error(() -> unexpectedNumberOfArguments(arguments.size(), "is"));
+        }
+        FHIRPathType type = FHIRPathType.from(arguments.get(0).getText().replace("`", ""));
+        return (evaluationContext, context) -> {
+            if (context.isEmpty()) {
+                return SINGLETON_FALSE;
+            } else if (context.size() > 1) {
+                throw new IllegalArgumentException(String.format("Input collection has %d items, but only 1 is allowed", context.size()));
+            }
+            if (type == null) {
+                return SINGLETON_FALSE;
+            }
+            return type.isAssignableFrom(getSingleton(context).type()) ? SINGLETON_TRUE : SINGLETON_FALSE;
+        };
+    }
+
+    private Closure select(List<ExpressionContext> arguments) {
+        if (arguments.size() != 1) {
+            return error(() -> unexpectedNumberOfArguments(arguments.size(), "select"));
+        }
+        ItemClosure projection = compileItemArgument(arguments.get(0));
+        return (evaluationContext, context) -> {
+            Collection<FHIRPathNode> result = new ArrayList<>();
+            int index = 0;
+            for (FHIRPathNode node : context) {
+                result.addAll(projection.evaluate(evaluationContext, node, index++));
+            }
+            return result;
+        };
+    }
+
+    private Closure trace(List<ExpressionContext> arguments) {
+        if (arguments.size() < 1 || arguments.size() > 2) {
+            return error(() -> unexpectedNumberOfArguments(arguments.size(), "trace"));
+        }
+        Closure name = visit(arguments.get(0));
+        Closure projection = (arguments.size() == 2) ? visit(arguments.get(1)) : null;
+        return (evaluationContext, context) -> {
+            String _name = getString(name.evaluate(evaluationContext, context));
+            Collection<FHIRPathNode> nodes = (projection == null) ? context : projection.evaluate(evaluationContext, context);
+            if (!nodes.isEmpty()) {
+                if (log.isLoggable(Level.FINER)) {
+                    log.finer(_name + ": " + nodes);
+                }
+            }
+            return context;
+        };
+    }
+
+    private Closure where(List<ExpressionContext> arguments) {
+        if (arguments.size() != 1) {
+            return error(() -> unexpectedNumberOfArguments(arguments.size(), "where"));
+        }
+        ItemClosure criteria = compileItemArgument(arguments.get(0));
+        return (evaluationContext, context) -> {
+            Collection<FHIRPathNode> result = new ArrayList<>();
+            int index = 0;
+            for (FHIRPathNode node : context) {
+                if (evaluatesToTrue(criteria.evaluate(evaluationContext, node, index++))) {
+                    result.add(node);
+                }
+            }
+            return result;
+        };
+    }
+
+    private Closure function(String functionName, List<ExpressionContext> arguments) {
+        FHIRPathFunction function = FHIRPathFunction.registry().getFunction(functionName);
+        if (function == null) {
+            return error(() -> new IllegalArgumentException("Function: '" + functionName + "' not found"));
+        }
+        if (arguments.size() < function.getMinArity() || arguments.size() > function.getMaxArity()) {
+            return error(() -> unexpectedNumberOfArguments(arguments.size(), functionName));
+        }
+        List<Closure> closures = compile(arguments);
+        if (closures.isEmpty()) {
+            return (evaluationContext, context) -> function.apply(evaluationContext, context, Collections.emptyList());
+        }
+        return (evaluationContext, context) -> {
+            List<Collection<FHIRPathNode>> values = new ArrayList<>(closures.size());
+            for (Closure closure : closures) {
+                values.add(closure.evaluate(evaluationContext, context));
+            }
+            return function.apply(evaluationContext, context, values);
+        };
+    }
+
+    @Override
+    public Closure visitIndexerExpression(FHIRPathParser.IndexerExpressionContext ctx) {
+        debug(ctx);
+        Closure expression = visit(ctx.expression(0));
+        Closure index = visit(ctx.expression(1));
+        return (evaluationContext, context) -> {
+            Collection<FHIRPathNode> nodes = expression.evaluate(evaluationContext, context);
+            List<?> list = (nodes instanceof List) ? (List<?>) nodes : new ArrayList<>(nodes);
+            int i = getInteger(index.evaluate(evaluationContext, context));
+            if (i >= 0 && i < list.size()) {
+                return singleton((FHIRPathNode) list.get(i));
+            }
+            return empty();
+        };
+    }
+
+    @Override
+    public Closure visitPolarityExpression(FHIRPathParser.PolarityExpressionContext ctx) {
+        debug(ctx);
+        Closure expression = visit(ctx.expression());
+        boolean negate = "-".equals(ctx.getChild(0).getText());
+        return (evaluationContext, context) -> {
+            Collection<FHIRPathNode> nodes = expression.evaluate(evaluationContext, context);
+            if (!isSingleton(nodes)) {
+                return empty();
+            }
+            FHIRPathSystemValue value = getSystemValue(nodes);
+            if (value.isNumberValue()) {
+                return singleton(negate ? value.asNumberValue().negate() : value.asNumberValue().plus());
+            }
+            return empty();
+        };
+    }
+
+    @Override
+    public Closure visitAdditiveExpression(FHIRPathParser.AdditiveExpressionContext ctx) {
+        debug(ctx);
+        Closure leftExpression = visit(ctx.expression(0));
+        Closure rightExpression = visit(ctx.expression(1));
+
+        String operator = ctx.getChild(1).getText();
+        boolean add = "+".equals(operator);
+        boolean subtract = "-".equals(operator);
+        boolean concatenate = "&".equals(operator);
+
+        return (evaluationContext, context) -> {
+            Collection<FHIRPathNode> left = leftExpression.evaluate(evaluationContext, context);
+            Collection<FHIRPathNode> right = rightExpression.evaluate(evaluationContext, context);
+
+            Collection<FHIRPathNode> result = empty();
+
+            if ((hasNumberValue(left) && hasNumberValue(right)) || (hasStringValue(left) && hasStringValue(right))) {
+                if (hasNumberValue(left) && hasNumberValue(right)) {
+                    if (add) {
+                        result = singleton(getNumberValue(left).add(getNumberValue(right)));
+                    } else if (subtract) {
+                        result = singleton(getNumberValue(left).asNumberValue().subtract(getNumberValue(right)));
+                    }
+                } else if (hasStringValue(left) && hasStringValue(right)) {
+                    if (add || concatenate) {
+                        // concatenation
+                        result = singleton(getStringValue(left).concat(getStringValue(right)));
+                    } else {
+                        throw new IllegalArgumentException("Invalid argument(s) for '" + operator + "' operator");
+                    }
+                }
+            } else if (((hasStringValue(left) && right.isEmpty()) || (left.isEmpty() && hasStringValue(right))) && (add || concatenate)) {
+                if (concatenate) {
+                    // concatenation where an empty collection is treated as an empty string
+                    if (hasStringValue(left) && right.isEmpty()) {
+                        FHIRPathStringValue leftValue = getStringValue(left);
+                        result = singleton(leftValue.asStringValue().concat(EMPTY_STRING));
+                    } else if (left.isEmpty() && hasStringValue(right)) {
+                        FHIRPathStringValue rightValue = getStringValue(right);
+                        result = singleton(EMPTY_STRING.concat(rightValue.asStringValue()));
+                    } else if (left.isEmpty() && right.isEmpty()) {
+                        result = singleton(EMPTY_STRING);
+                    }
+                }
+            } else if (hasQuantityValue(left) && hasQuantityValue(right)) {
+                FHIRPathQuantityValue leftValue = getQuantityValue(left);
+                FHIRPathQuantityValue rightValue = getQuantityValue(right);
+                if (add) {
+                    result = singleton(leftValue.add(rightValue));
+                } else if (subtract) {
+                    result = singleton(leftValue.subtract(rightValue));
+                }
+            } else if ((hasTemporalValue(left) && hasQuantityValue(right)) ||
+                    (hasQuantityValue(left) && hasTemporalValue(right))) {
+                FHIRPathTemporalValue temporalValue = hasTemporalValue(left) ? getTemporalValue(left) : getTemporalValue(right);
+                FHIRPathQuantityValue quantityValue = hasQuantityValue(left) ? getQuantityValue(left) : getQuantityValue(right);
+                if (add) {
+                    result = singleton(temporalValue.add(quantityValue));
+                } else if (subtract) {
+                    result = singleton(temporalValue.subtract(quantityValue));
+                }
+            } else if (isQuantityNode(left) && isQuantityNode(right)) {
+                FHIRPathQuantityNode leftNode = getQuantityNode(left);
+                FHIRPathQuantityNode rightNode = getQuantityNode(right);
+                if (add) {
+                    result = singleton(leftNode.add(rightNode));
+                } else if (subtract) {
+                    result = singleton(leftNode.subtract(rightNode));
+                }
+            } else if (!left.isEmpty() && !right.isEmpty()) {
+                throw new IllegalArgumentException("Invalid argument(s) for '" + operator + "' operator");
+            }
+
+            return result;
+        };
+    }
+
+    @Override
+    public Closure visitMultiplicativeExpression(FHIRPathParser.MultiplicativeExpressionContext ctx) {
+        debug(ctx);
+        Closure leftExpression = visit(ctx.expression(0));
+        Closure rightExpression = visit(ctx.expression(1));
+
+        BinaryOperator<FHIRPathNumberValue> operator;
+        switch (ctx.getChild(1).getText()) {
+        case "*":
+            operator = FHIRPathNumberValue::multiply;
+            break;
+        case "/":
+            operator = FHIRPathNumberValue::divide;
+            break;
+        case "div":
+            operator = FHIRPathNumberValue::div;
+            break;
+        case "mod":
+            operator = FHIRPathNumberValue::mod;
+            break;
+        default:
+            operator = null;
+            break;
+        }
+
+        return (evaluationContext, context) -> {
+            Collection<FHIRPathNode> left = leftExpression.evaluate(evaluationContext, context);
+            Collection<FHIRPathNode> right = rightExpression.evaluate(evaluationContext, context);
+
+            if (!hasSystemValue(left) || !hasSystemValue(right)) {
+                return empty();
+            }
+
+            FHIRPathSystemValue leftValue = getSystemValue(left);
+            FHIRPathSystemValue rightValue = getSystemValue(right);
+
+            if (operator != null && leftValue.isNumberValue() && rightValue.isNumberValue()) {
+                try {
+                    return singleton(operator.apply(leftValue.asNumberValue(), rightValue.asNumberValue()));
+                } catch (ArithmeticException e) {
+                    // TODO: log this
+                }
+            }
+
+            return empty();
+        };
+    }
+
+    @Override
+    public Closure visitUnionExpression(FHIRPathParser.UnionExpressionContext ctx) {
+        debug(ctx);
+        Closure leftExpression = visit(ctx.expression(0));
+        Closure rightExpression = visit(ctx.expression(1));
+        return (evaluationContext, context) -> {
+            Collection<FHIRPathNode> left = leftExpression.evaluate(evaluationContext, context);
+            Collection<FHIRPathNode> right = rightExpression.evaluate(evaluationContext, context);
+            Set<FHIRPathNode> union = new LinkedHashSet<>(left);
+            union.addAll(right);
+            return new ArrayList<>(union);
+        };
+    }
+
+    @Override
+    public Closure visitOrExpression(FHIRPathParser.OrExpressionContext ctx) {
+        debug(ctx);
+        Closure leftExpression = visit(ctx.expression(0));
+        Closure rightExpression = visit(ctx.expression(1));
+
+        switch (ctx.getChild(1).getText()) {
+        case "or":
+            // Returns false if both operands evaluate to false, true if either operand evaluates to true, and empty ({ }) otherwise:
+            return (evaluationContext, context) -> {
+                Collection<FHIRPathNode> left = leftExpression.evaluate(evaluationContext, context);
+                if (evaluatesToBoolean(left) && evaluatesToTrue(left)) {
+                    // short-circuit evaluation
+                    return SINGLETON_TRUE;
+                }
+                Collection<FHIRPathNode> right = rightExpression.evaluate(evaluationContext, context);
+                if (evaluatesToBoolean(right) && evaluatesToTrue(right)) {
+                    return SINGLETON_TRUE;
+                } else if (evaluatesToBoolean(left) && evaluatesToBoolean(right) &&
+                        isFalse(left) && isFalse(right)) {
+                    return SINGLETON_FALSE;
+                }
+                return empty();
+            };
+        case "xor":
+            // Returns true if exactly one of the operands evaluates to true, false if either both operands evaluate to true or both operands evaluate to false, and the empty collection ({ }) otherwise:
+            return (evaluationContext, context) -> {
+                Collection<FHIRPathNode> left = leftExpression.evaluate(evaluationContext, context);
+                Collection<FHIRPathNode> right = rightExpression.evaluate(evaluationContext, context);
+                if (evaluatesToBoolean(left) && evaluatesToBoolean(right)) {
+                    return (evaluatesToTrue(left) != evaluatesToTrue(right)) ? SINGLETON_TRUE : SINGLETON_FALSE;
+                }
+                return empty();
+            };
+        default:
+            return (evaluationContext, context) -> {
+                leftExpression.evaluate(evaluationContext, context);
+                return empty();
+            };
+        }
+    }
+
+    @Override
+    public Closure visitAndExpression(FHIRPathParser.AndExpressionContext ctx) {
+        debug(ctx);
+        Closure leftExpression = visit(ctx.expression(0));
+        Closure rightExpression = visit(ctx.expression(1));
+        // Returns true if both operands evaluate to true, false if either operand evaluates to false, and the empty collection ({ }) otherwise.
+        return (evaluationContext, context) -> {
+            Collection<FHIRPathNode> left = leftExpression.evaluate(evaluationContext, context);
+            if (evaluatesToBoolean(left) && isFalse(left)) {
+                // short-circuit evaluation
+                return SINGLETON_FALSE;
+            }
+            Collection<FHIRPathNode> right = rightExpression.evaluate(evaluationContext, context);
+            if (evaluatesToBoolean(right) && isFalse(right)) {
+                return SINGLETON_FALSE;
+            } else if (evaluatesToBoolean(left) && evaluatesToBoolean(right) &&
+                    evaluatesToTrue(left) && evaluatesToTrue(right)) {
+                return SINGLETON_TRUE;
+            }
+            return empty();
+        };
+    }
+
+    @Override
+    public Closure visitMembershipExpression(FHIRPathParser.MembershipExpressionContext ctx) {
+        debug(ctx);
+        Closure leftExpression = visit(ctx.expression(0));
+        Closure rightExpression = visit(ctx.expression(1));
+
+        switch (ctx.getChild(1).getText()) {
+        case "in":
+            FHIRPathFunction memberOfFunction = FHIRPathFunction.registry().getFunction("memberOf");
+            return (evaluationContext, context) -> {
+                Collection<FHIRPathNode> left = leftExpression.evaluate(evaluationContext, context);
+                Collection<FHIRPathNode> right = rightExpression.evaluate(evaluationContext, context);
+                if ((isCodedElementNode(left) || isStringElementNode(left) || isUriElementNode(left)) && isStringValue(right)) {
+                    // For backwards compatibility per: https://jira.hl7.org/projects/FHIR/issues/FHIR-26605
+                    return memberOfFunction.apply(evaluationContext, left, Collections.singletonList(right));
+                }
+                return right.containsAll(left) ? SINGLETON_TRUE : SINGLETON_FALSE;
+            };
+        case "contains":
+            return (evaluationContext, context) -> {
+                Collection<FHIRPathNode> left = leftExpression.evaluate(evaluationContext, context);
+                Collection<FHIRPathNode> right = rightExpression.evaluate(evaluationContext, context);
+                return left.containsAll(right) ? SINGLETON_TRUE : SINGLETON_FALSE;
+            };
+        default:
+            return (evaluationContext, context) -> {
+                leftExpression.evaluate(evaluationContext, context);
+                rightExpression.evaluate(evaluationContext, context);
+                return SINGLETON_FALSE;
+            };
+        }
+    }
+
+    @Override
+    public Closure visitInequalityExpression(FHIRPathParser.InequalityExpressionContext ctx) {
+        debug(ctx);
+        Closure leftExpression = visit(ctx.expression(0));
+        Closure rightExpression = visit(ctx.expression(1));
+
+        IntPredicate operator;
+        switch (ctx.getChild(1).getText()) {
+        case "<=":
+            operator = comparison -> comparison <= 0;
+            break;
+        case "<":
+            operator = comparison -> comparison < 0;
+            break;
+        case ">":
+            operator = comparison -> comparison > 0;
+            break;
+        case ">=":
+            operator = comparison -> comparison >= 0;
+            break;
+        default:
+            operator = comparison -> false;
+            break;
+        }
+
+        return (evaluationContext, context) -> {
+            Collection<FHIRPathNode> left = leftExpression.evaluate(evaluationContext, context);
+            Collection<FHIRPathNode> right = rightExpression.evaluate(evaluationContext, context);
+
+            if (!isSingleton(left) || !isSingleton(right)) {
+                return SINGLETON_FALSE;
+            }
+
+            FHIRPathNode leftNode = getSingleton(left);
+            FHIRPathNode rightNode = getSingleton(right);
+
+            if (hasSystemValue(leftNode) && hasSystemValue(rightNode) &&
+                    !isTypeCompatible(getSystemValue(leftNode), getSystemValue(rightNode))) {
+                throw new IllegalArgumentException("Type: '" + leftNode.type().getName() + "' is not compatible with type: '" + rightNode.type().getName() + "'");
+            }
+
+            if (leftNode.isComparableTo(rightNode)) {
+                return operator.test(leftNode.compareTo(rightNode)) ? SINGLETON_TRUE : SINGLETON_FALSE;
+            }
+
+            return empty();
+        };
+    }
+
+    @Override
+    public Closure visitInvocationExpression(FHIRPathParser.InvocationExpressionContext ctx) {
+        debug(ctx);
+        Closure expression = visit(ctx.expression());
+        Closure invocation = visit(ctx.invocation());
+        return (evaluationContext, context) -> invocation.evaluate(evaluationContext, expression.evaluate(evaluationContext, context));
+    }
+
+    @Override
+    public Closure visitEqualityExpression(FHIRPathParser.EqualityExpressionContext ctx) {
+        debug(ctx);
+        Closure leftExpression = visit(ctx.expression(0));
+        Closure rightExpression = visit(ctx.expression(1));
+
+        // TODO: "equals" and "equivalent" have different semantics
+        String operator = ctx.getChild(1).getText();
+        boolean equal = "=".equals(operator) || "~".equals(operator);
+        boolean notEqual = "!=".equals(operator) || "!~".equals(operator);
+
+        return (evaluationContext, context) -> {
+            Collection<FHIRPathNode> left = leftExpression.evaluate(evaluationContext, context);
+            Collection<FHIRPathNode> right = rightExpression.evaluate(evaluationContext, context);
+
+            if (left.isEmpty() || right.isEmpty()) {
+                return empty();
+            }
+
+            if (left.size() != right.size()) {
+                return SINGLETON_FALSE;
+            }
+
+            if (!isComparableTo(left, right)) {
+                return empty();
+            }
+
+            if (equal) {
+                return left.equals(right) ? SINGLETON_TRUE : SINGLETON_FALSE;
+            } else if (notEqual) {
+                return !left.equals(right) ? SINGLETON_TRUE : SINGLETON_FALSE;
+            }
+            return SINGLETON_FALSE;
+        };
+    }
+
+    @Override
+    public Closure visitImpliesExpression(FHIRPathParser.ImpliesExpressionContext ctx) {
+        debug(ctx);
+        Closure leftExpression = visit(ctx.expression(0));
+        Closure rightExpression = visit(ctx.expression(1));
+        // If the left operand evaluates to true, this operator returns the boolean evaluation of the right operand. If the left operand evaluates to false, this operator returns true. Otherwise, this operator returns true if the right operand evaluates to true, and the empty collection ({ }) otherwise.
+        return (evaluationContext, context) -> {
+            Collection<FHIRPathNode> left = leftExpression.evaluate(evaluationContext, context);
+            Collection<FHIRPathNode> right = rightExpression.evaluate(evaluationContext, context);
+            if (evaluatesToBoolean(left) && evaluatesToBoolean(right)) {
+                // !left || right
+                return (!evaluatesToTrue(left) || evaluatesToTrue(right)) ? SINGLETON_TRUE : SINGLETON_FALSE;
+            } else if ((left.isEmpty() && evaluatesToBoolean(right) && evaluatesToTrue(right)) ||
+                    (evaluatesToBoolean(left) && isFalse(left) && right.isEmpty())) {
+                return SINGLETON_TRUE;
+            }
+            return empty();
+        };
+    }
+
+    @Override
+    public Closure visitTermExpression(FHIRPathParser.TermExpressionContext ctx) {
+        debug(ctx);
+        return visit(ctx.term());
+    }
+
+    @Override
+    public Closure visitTypeExpression(FHIRPathParser.TypeExpressionContext ctx) {
+        debug(ctx);
+        Closure expression = visit(ctx.expression());
+
+        String qualifiedIdentifier = ctx.typeSpecifier().getText().replace("`", "");
+        FHIRPathType type = FHIRPathType.from(qualifiedIdentifier);
+        if (type == null) {
+            return (evaluationContext, context) -> {
+                expression.evaluate(evaluationContext, context);
+                throw invalidTypeIdentifier(qualifiedIdentifier);
+            };
+        }
+
+        switch (ctx.getChild(1).getText()) {
+        case "is":
+            return (evaluationContext, context) -> {
+                Collection<FHIRPathNode> nodes = expression.evaluate(evaluationContext, context);
+                if (nodes.size() > 1) {
+                    throw new IllegalArgumentException(String.format("Input collection has %d items, but only 1 is allowed", nodes.size()));
+                } else if (!nodes.isEmpty() && type.isAssignableFrom(getSingleton(nodes).type())) {
+                    return SINGLETON_TRUE;
+                }
+                return SINGLETON_FALSE;
+            };
+        case "as":
+            return (evaluationContext, context) -> {
+                Collection<FHIRPathNode> result = new ArrayList<>();
+                for (FHIRPathNode node : expression.evaluate(evaluationContext, context)) {
+                    if (type.isAssignableFrom(node.type())) {
+                        result.add(node);
+                    }
+                }
+                return result;
+            };
+        default:
+            return (evaluationContext, context) -> {
+                expression.evaluate(evaluationContext, context);
+                return new ArrayList<>();
+            };
+        }
+    }
+
+    @Override
+    public Closure visitInvocationTerm(FHIRPathParser.InvocationTermContext ctx) {
+        debug(ctx);
+        return visit(ctx.invocation());
+    }
+
+    @Override
+    public Closure visitLiteralTerm(FHIRPathParser.LiteralTermContext ctx) {
+        debug(ctx);
+        return visit(ctx.literal());
+    }
+
+    @Override
+    public Closure visitExternalConstantTerm(FHIRPathParser.ExternalConstantTermContext ctx) {
+        debug(ctx);
+        return visit(ctx.externalConstant());
+    }
+
+    @Override
+    public Closure visitParenthesizedTerm(FHIRPathParser.ParenthesizedTermContext ctx) {
+        debug(ctx);
+        return visit(ctx.expression());
+    }
+
+    @Override
+    public Closure visitNullLiteral(FHIRPathParser.NullLiteralContext ctx) {
+        debug(ctx);
+        return (evaluationContext, context) -> empty();
+    }
+
+    @Override
+    public Closure visitBooleanLiteral(FHIRPathParser.BooleanLiteralContext ctx) {
+        debug(ctx);
+        Collection<FHIRPathNode> result = Boolean.valueOf(ctx.getText()) ? SINGLETON_TRUE : SINGLETON_FALSE;
+        return (evaluationContext, context) -> result;
+    }
+
+    @Override
+    public Closure visitStringLiteral(FHIRPathParser.StringLiteralContext ctx) {
+        debug(ctx);
+        return constant(() -> {
+            String text = unescape(ctx.getText());
+            return singleton(stringValue(text.substring(1, text.length() - 1)));
+        });
+    }
+
+    @Override
+    public Closure visitNumberLiteral(FHIRPathParser.NumberLiteralContext ctx) {
+        debug(ctx);
+        String text = ctx.getText();
+        return constant(() -> text.contains(".") ?
+                singleton(decimalValue(new BigDecimal(text))) :
+                singleton(integerValue(Integer.parseInt(text))));
+    }
+
+    @Override
+    public Closure visitDateLiteral(FHIRPathParser.DateLiteralContext ctx) {
+        debug(ctx);
+        String text = ctx.getText().substring(1);
+        return constant(() -> singleton(dateValue(text)));
+    }
+
+    @Override
+    public Closure visitDateTimeLiteral(FHIRPathParser.DateTimeLiteralContext ctx) {
+        debug(ctx);
+        String text = ctx.getText().substring(1);
+        return constant(() -> singleton(dateTimeValue(text)));
+    }
+
+    @Override
+    public Closure visitTimeLiteral(FHIRPathParser.TimeLiteralContext ctx) {
+        debug(ctx);
+        String text = ctx.getText().substring(2);
+        return constant(() -> singleton(timeValue(text)));
+    }
+
+    @Override
+    public Closure visitQuantityLiteral(FHIRPathParser.QuantityLiteralContext ctx) {
+        debug(ctx);
+        return visit(ctx.quantity());
+    }
+
+    @Override
+    public Closure visitExternalConstant(FHIRPathParser.ExternalConstantContext ctx) {
+        debug(ctx);
+        if (ctx.identifier() == null) {
+            return error(() -> new IllegalArgumentException("Invalid external constant: '" + ctx.getText() + "'"));
+        }
+        String identifier = identifier(ctx.identifier().getText());
+        return (evaluationContext, context) -> evaluationContext.getExternalConstant(identifier);
+    }
+
+    @Override
+    public Closure visitMemberInvocation(FHIRPathParser.MemberInvocationContext ctx) {
+        debug(ctx);
+        String identifier = identifier(ctx.identifier().getText());
+        return (evaluationContext, context) -> {
+            if (isSingleton(context)) {
+                FHIRPathNode node = getSingleton(context);
+                if (hasTypeName(node.type(), identifier)) {
+                    return context;
+                }
+            }
+            List<FHIRPathNode> result = new ArrayList<>();
+            for (FHIRPathNode node : context) {
+                for (FHIRPathNode child : node.children()) {
+                    if (identifier.equals(child.name())) {
+                        result.add(child);
+                    }
+                }
+            }
+            return result;
+        };
+    }
+
+    @Override
+    public Closure visitFunctionInvocation(FHIRPathParser.FunctionInvocationContext ctx) {
+        debug(ctx);
+        return visit(ctx.function());
+    }
+
+    @Override
+    public Closure visitThisInvocation(FHIRPathParser.ThisInvocationContext ctx) {
+        debug(ctx);
+        return (evaluationContext, context) -> context;
+    }
+
+    @Override
+    public Closure visitIndexInvocation(FHIRPathParser.IndexInvocationContext ctx) {
+        debug(ctx);
+        referencesIndex = true;
+        return (evaluationContext, context) -> evaluationContext.getIndex();
+    }
+
+    @Override
+    public Closure visitTotalInvocation(FHIRPathParser.TotalInvocationContext ctx) {
+        debug(ctx);
+        return (evaluationContext, context) -> evaluationContext.getTotal();
+    }
+
+    @Override
+    public Closure visitFunction(FHIRPathParser.FunctionContext ctx) {
+        debug(ctx);
+
+        String functionName = identifier(ctx.identifier().getText());
+
+        List<ExpressionContext> arguments = new ArrayList<ExpressionContext>();
+        ParamListContext paramList = ctx.paramList();
+        if (paramList != null) {
+            arguments.addAll(paramList.expression());
+        }
+
+        switch (functionName) {
+        case "aggregate":
+            return aggregate(arguments);
+        case "all":
+            return all(arguments);
+        case "as":
+        case "ofType":
+            return as(arguments, functionName);
+        case "exists":
+            return exists(arguments);
+        case "iif":
+            return iif(arguments);
+        case "is":
+            return is(arguments);
+        case "select":
+            return select(arguments);
+        case "trace":
+            return trace(arguments);
+        case "where":
+            return where(arguments);
+        default:
+            return function(functionName, arguments);
+        }
+    }
+
+    @Override
+    public Closure visitQuantity(FHIRPathParser.QuantityContext ctx) {
+        debug(ctx);
+        return constant(() -> {
+            String number = ctx.NUMBER().getText();
+            String text = ctx.unit().getText();
+            String unit = text.substring(1, text.length() - 1);
+            return singleton(FHIRPathQuantityValue.quantityValue(new BigDecimal(number), unit));
+        });
+    }
+
+    private void debug(ParseTree ctx) {
+        if (log.isLoggable(Level.FINEST)) {
+            log.finest("Compiling " + ctx.getClass().getSimpleName() + ": " + ctx.getText() + ", childCount: " + ctx.getChildCount());
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.path.test;
+
+import static com.ibm.fhir.path.evaluator.FHIRPathEvaluator.SINGLETON_TRUE;
+import static com.ibm.fhir.path.util.FHIRPathUtil.getStringValue;
+import static org.testng.Assert.assertEquals;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.examples.ExamplesUtil;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
+import com.ibm.fhir.path.exception.FHIRPathException;
+
+/**
+ * Tests the evaluation of compiled (and cached) FHIRPath expressions
+ */
+public class FHIRPathCompiledExpressionTest {
+    private static final Patient patient = readPatient();
+
+    @Test
+    public void testNestedContext() throws Exception {
+        FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
+        // $this inside the inner where refers to each given name, and to each name in the outer where
+        Collection<FHIRPathNode> result = evaluator.evaluate(patient, "Patient.name.where(given.where($this = 'Jim').exists()).where($this.use = 'usual').given");
+        assertEquals(result.size(), 1);
+        assertEquals(getStringValue(result).string(), "Jim");
+    }
+
+    @Test
+    public void testRepeatedEvaluation() throws Exception {
+        String expr = "Patient.name.where(use = 'official').family & ', ' & Patient.name.where(use = 'official').given.first()";
+        for (int i = 0; i < 3; i++) {
+            FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
+            Collection<FHIRPathNode> result = evaluator.evaluate(patient, expr);
+            assertEquals(getStringValue(result).string(), "Chalmers, Peter");
+        }
+    }
+
+    @Test
+    public void testConcurrentEvaluation() throws Exception {
+        String expr = "Patient.name.where(given.exists()).count() = 3 and Patient.birthDate < @2000-01-01";
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<Collection<FHIRPathNode>>> tasks = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                tasks.add(() -> FHIRPathEvaluator.evaluator().evaluate(patient, expr));
+            }
+            for (Future<Collection<FHIRPathNode>> future : executor.invokeAll(tasks)) {
+                assertEquals(future.get(), SINGLETON_TRUE);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
+        Collection<FHIRPathNode> result = evaluator.evaluate(patient, "Patient.name.select($index)");
+        assertEquals(integers(result), Arrays.asList(0, 1, 2));
+
+        // $index inside the inner select refers to each given name, and is restored for the outer where
+        result = evaluator.evaluate(patient, "Patient.name.select(given.select($index))");
+        assertEquals(integers(result), Arrays.asList(0, 1, 0, 0, 1));
+        result = evaluator.evaluate(patient, "Patient.name.where(given.where($index = 0).exists() and $index = 1).given");
+        assertEquals(getStringValue(result).string(), "Jim");
+
+        result = evaluator.evaluate(patient, "Patient.name.all($index < 3)");
+        assertEquals(result, SINGLETON_TRUE);
+        result = evaluator.evaluate(patient, "$index.empty()");
+        assertEquals(result, SINGLETON_TRUE);
+    }
+
+    @Test
+    public void testTotal() throws Exception {
+        FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
+        Collection<FHIRPathNode> result = evaluator.evaluate(patient, "(1 | 2 | 3).aggregate($this + $total, 10)");
+        assertEquals(integers(result), Arrays.asList(16));
+        result = evaluator.evaluate(patient, "Patient.name.aggregate($total + $index, 0)");
+        assertEquals(integers(result), Arrays.asList(3));
+        result = evaluator.evaluate(patient, "Patient.name.select($total).empty()");
+        assertEquals(result, SINGLETON_TRUE);
+    }
+
+    @Test(expectedExceptions = FHIRPathException.class)
+    public void testAggregateInvalidArity() throws Exception {
+        FHIRPathEvaluator.evaluator().evaluate(patient, "Patient.name.aggregate()");
+    }
+
+    @Test(expectedExceptions = FHIRPathException.class)
+    public void testUnknownFunction() throws Exception {
+        FHIRPathEvaluator.evaluator().evaluate(patient, "Patient.name.notAFunction()");
+    }
+
+    @Test
+    public void testUnknownFunctionNotEvaluated() throws Exception {
+        // errors are reported when the offending sub-expression is evaluated, not when the expression is compiled
+        FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
+        Collection<FHIRPathNode> result = evaluator.evaluate(patient, "true or Patient.name.notAFunction()");
+        assertEquals(result, SINGLETON_TRUE);
+    }
+
+    @Test(expectedExceptions = FHIRPathException.class)
+    public void testInvalidArity() throws Exception {
+        FHIRPathEvaluator.evaluator().evaluate(patient, "Patient.name.where()");
+    }
+
+    private static List<Integer> integers(Collection<FHIRPathNode> nodes) {
+        List<Integer> integers = new ArrayList<>();
+        for (FHIRPathNode node : nodes) {
+            integers.add(node.asSystemValue().asNumberValue().asIntegerValue().integer());
+        }
+        return integers;
+    }
+
+    private static Patient readPatient() {
+        try (Reader reader = ExamplesUtil.resourceReader("json/spec/patient-example.json")) {
+            return FHIRParser.parser(Format.JSON).parse(reader);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.path.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.examples.ExamplesUtil;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Decimal;
+import com.ibm.fhir.model.type.Quantity;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.FHIRPathTree;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+
+/**
+ * Tests that a lazy FHIRPathTree has the same nodes, paths and navigation as an eager one
+ */
+public class LazyFHIRPathTreeTest {
+    @Test
+    public void testResources() throws Exception {
+        for (String name : new String[] { "observation-example.xml", "patient-example.xml", "questionnaire-example.xml" }) {
+            Resource resource = TestUtil.readLocalResource("FHIRPath/input/" + name);
+            assertEquivalent(FHIRPathTree.tree(resource), FHIRPathTree.lazyTree(resource));
+        }
+    }
+
+    @Test
+    public void testBundle() throws Exception {
+        Resource bundle = FHIRParser.parser(Format.JSON).parse(ExamplesUtil.resourceReader("json/spec/bundle-transaction.json"));
+        assertEquivalent(FHIRPathTree.tree(bundle), FHIRPathTree.lazyTree(bundle));
+    }
+
+    @Test
+    public void testElement() throws Exception {
+        Quantity quantity = Quantity.builder()
+                .value(Decimal.of(new BigDecimal("1.5")))
+                .unit(com.ibm.fhir.model.type.String.of("mg"))
+                .system(Uri.of("http://unitsofmeasure.org"))
+                .code(Code.of("mg"))
+                .build();
+        assertEquivalent(FHIRPathTree.tree(quantity), FHIRPathTree.lazyTree(quantity));
+    }
+
+    @Test
+    public void testNavigation() throws Exception {
+        Resource resource = TestUtil.readLocalResource("FHIRPath/input/patient-example.xml");
+        FHIRPathTree tree = FHIRPathTree.lazyTree(resource);
+
+        FHIRPathNode given = tree.getNode("Patient.name[0].given[1]");
+        assertEquals(given.getValue().asStringValue().string(), "James");
+        assertSame(tree.getParent(given), tree.getNode("Patient.name[0]"));
+        assertEquals(tree.getSibling(given, "given").path(), "Patient.name[0].given[0]");
+
+        assertNull(tree.getNode("Patient.name[9]"));
+        assertNull(tree.getNode("Patient.unknown"));
+        assertNull(tree.getNode("Observation.id"));
+        assertNull(tree.getParent(tree.getRoot()));
+
+        Collection<FHIRPathNode> result = FHIRPathEvaluator.evaluator().evaluate(new EvaluationContext(resource), "Patient.name.given");
+        assertEquals(result.size(), 5);
+    }
+
+    private static void assertEquivalent(FHIRPathTree eager, FHIRPathTree lazy) {
+        List<FHIRPathNode> eagerNodes = new ArrayList<>();
+        List<FHIRPathNode> lazyNodes = new ArrayList<>();
+        assertEquivalent(eager.getRoot(), lazy.getRoot(), eagerNodes, lazyNodes);
+
+        for (int i = 0; i < eagerNodes.size(); i++) {
+            FHIRPathNode eagerNode = eagerNodes.get(i);
+            FHIRPathNode lazyNode = lazyNodes.get(i);
+            if (eagerNode.path() == null) {
+                continue;
+            }
+            assertSame(lazy.getNode(eagerNode.path()), lazyNode, eagerNode.path());
+            FHIRPathNode eagerParent = eager.getParent(eagerNode);
+            FHIRPathNode lazyParent = lazy.getParent(lazyNode);
+            assertEquals(lazyParent == null ? null : lazyParent.path(), eagerParent == null ? null : eagerParent.path());
+            assertEquals(lazy.getSiblings(lazyNode).size(), eager.getSiblings(eagerNode).size());
+        }
+    }
+
+    private static void assertEquivalent(FHIRPathNode eager, FHIRPathNode lazy, List<FHIRPathNode> eagerNodes, List<FHIRPathNode> lazyNodes) {
+        eagerNodes.add(eager);
+        lazyNodes.add(lazy);
+        assertEquals(lazy.getClass(), eager.getClass());
+        assertEquals(lazy.name(), eager.name());
+        assertEquals(lazy.path(), eager.path());
+        assertEquals(lazy.type(), eager.type());
+        assertEquals(lazy.getValue(), eager.getValue());
+        assertEquals(lazy, eager);
+        assertEquals(lazy.children().size(), eager.children().size(), eager.path());
+        Iterator<FHIRPathNode> eagerChildren = eager.children().iterator();
+        Iterator<FHIRPathNode> lazyChildren = lazy.children().iterator();
+        while (eagerChildren.hasNext()) {
+            assertEquivalent(eagerChildren.next(), lazyChildren.next(), eagerNodes, lazyNodes);
+        }
+    }
+}
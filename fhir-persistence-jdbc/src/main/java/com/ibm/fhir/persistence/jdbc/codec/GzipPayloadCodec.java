@@ -0,0 +1,43 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The gzip payload codec, which is the default and the format of all payloads written by earlier releases.
+ */
+public class GzipPayloadCodec implements PayloadCodec {
+    public static final String NAME = "gzip";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isEncoded(byte[] data) {
+        return data.length >= 2 && (data[0] & 0xff) == 0x1f && (data[1] & 0xff) == 0x8b;
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out, String resourceType) throws IOException {
+        return new GZIPOutputStream(out, BUFFER_SIZE);
+    }
+
+    @Override
+    public InputStream decode(byte[] data) throws IOException {
+        return new GZIPInputStream(new ByteArrayInputStream(data), BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+/**
+ * A payload codec which writes the LZ4 frame format. LZ4 compresses less than gzip, but inflates several times faster.
+ */
+public class LZ4PayloadCodec implements PayloadCodec {
+    public static final String NAME = "lz4";
+
+    // the LZ4 frame magic number 0x184D2204, which is written in little-endian byte order
+    private static final byte[] MAGIC = { 0x04, 0x22, 0x4d, 0x18 };
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isEncoded(byte[] data) {
+        return PayloadCodecs.startsWith(data, MAGIC);
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out, String resourceType) throws IOException {
+        // most resources are small, so use the smallest block size to keep the buffers small
+        return new LZ4FrameOutputStream(out, LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB);
+    }
+
+    @Override
+    public InputStream decode(byte[] data) throws IOException {
+        return new LZ4FrameInputStream(new ByteArrayInputStream(data));
+    }
+}
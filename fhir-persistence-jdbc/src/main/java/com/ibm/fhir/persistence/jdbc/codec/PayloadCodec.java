@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compresses the JSON representation of a resource for storage in the DATA column of the xx_RESOURCES tables,
+ * and decompresses it again when the resource is read.
+ *
+ * <p>Each codec writes a self-describing format which starts with a magic number, so the codec which wrote a payload
+ * can be determined from the payload itself. This allows the configured codec to be changed without migrating the
+ * payloads which were written by a different codec.
+ */
+public interface PayloadCodec {
+
+    /**
+     * @return the name used to select this codec in the fhir-server-config.json
+     */
+    String getName();
+
+    /**
+     * @param data
+     *     a stored payload
+     * @return true if the payload starts with the magic number of the format written by this codec
+     */
+    boolean isEncoded(byte[] data);
+
+    /**
+     * @param out
+     *     the stream to which the compressed payload is written
+     * @param resourceType
+     *     the type of the resource being written, which may be used to select a compression dictionary
+     * @return a stream to which the JSON representation of the resource is written; the payload is only complete
+     *     once this stream has been closed
+     * @throws IOException
+     */
+    OutputStream encode(OutputStream out, String resourceType) throws IOException;
+
+    /**
+     * @param data
+     *     a payload for which {@link #isEncoded(byte[])} is true
+     * @return a stream over the JSON representation of the resource
+     * @throws IOException
+     */
+    InputStream decode(byte[] data) throws IOException;
+}
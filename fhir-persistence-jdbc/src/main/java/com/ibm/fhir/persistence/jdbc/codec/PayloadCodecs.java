@@ -0,0 +1,145 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.codec;
+
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_PAYLOAD_CODEC;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_ZSTD_DICTIONARY_DIR;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCache;
+
+/**
+ * This class holds the payload codec used to write resources and the codecs used to read them. Payloads are
+ * always read with the codec which wrote them, so resources written with a previously configured codec remain readable.
+ *
+ * <p>Each FHIR tenant/datastore combination has its own codecs. They are created from the tenant's configuration when
+ * they are first used, so Zstandard dictionaries are read once rather than for every request.
+ */
+public final class PayloadCodecs {
+    private static final String CLASSNAME = PayloadCodecs.class.getName();
+    private static final Logger log = Logger.getLogger(CLASSNAME);
+
+    /**
+     * The following is a map of payload codecs. Each FHIR tenant/datastore combination will have its own codecs.
+     */
+    private static final ConcurrentHashMap<String, PayloadCodecs> payloadCodecs = new ConcurrentHashMap<>();
+
+    private final PayloadCodec codec;
+    private final List<PayloadCodec> decoders;
+
+    private PayloadCodecs(PayloadCodec codec, List<PayloadCodec> decoders) {
+        this.codec = codec;
+        this.decoders = decoders;
+    }
+
+    /**
+     * Returns the payload codecs for the current tenant-datastore, creating them from the configuration of the
+     * current tenant the first time they are used.
+     *
+     * @return PayloadCodecs
+     * @throws IOException
+     *     if the Zstandard dictionaries could not be read
+     * @throws IllegalArgumentException
+     *     if the configured codec name is not supported
+     */
+    public static PayloadCodecs getInstance() throws IOException {
+        String tenantDatastoreCacheName = ResourceTypesCache.getCacheNameForTenantDatastore();
+        PayloadCodecs instance = payloadCodecs.get(tenantDatastoreCacheName);
+        if (instance == null) {
+            // created outside of the map, because reading the dictionaries can fail
+            instance = create(FHIRConfigHelper.getStringProperty(PROPERTY_JDBC_PAYLOAD_CODEC, GzipPayloadCodec.NAME),
+                FHIRConfigHelper.getStringProperty(PROPERTY_JDBC_ZSTD_DICTIONARY_DIR, null));
+            PayloadCodecs existing = payloadCodecs.putIfAbsent(tenantDatastoreCacheName, instance);
+            if (existing != null) {
+                instance = existing;
+            } else {
+                log.fine("Writing resource payloads with the '" + instance.codec.getName() + "' codec for tenantDatastore="
+                        + tenantDatastoreCacheName);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Create payload codecs.
+     *
+     * @param codecName
+     *     the name of the codec used to write resources: gzip, lz4 or zstd
+     * @param zstdDictionaryDir
+     *     the directory of the Zstandard dictionaries, or null for none
+     * @return PayloadCodecs
+     * @throws IOException
+     *     if the Zstandard dictionaries could not be read
+     * @throws IllegalArgumentException
+     *     if the codec name is not supported
+     */
+    public static PayloadCodecs create(String codecName, String zstdDictionaryDir) throws IOException {
+        GzipPayloadCodec gzipCodec = new GzipPayloadCodec();
+        LZ4PayloadCodec lz4Codec = new LZ4PayloadCodec();
+        ZstdPayloadCodec zstdCodec = zstdDictionaryDir != null ?
+                ZstdPayloadCodec.fromDictionaryDir(Paths.get(zstdDictionaryDir)) : new ZstdPayloadCodec();
+
+        List<PayloadCodec> codecs = Arrays.asList(gzipCodec, lz4Codec, zstdCodec);
+        for (PayloadCodec candidate : codecs) {
+            if (candidate.getName().equals(codecName)) {
+                return new PayloadCodecs(candidate, codecs);
+            }
+        }
+        throw new IllegalArgumentException("Unsupported payload codec: '" + codecName + "'");
+    }
+
+    /**
+     * @return the codec used to write resources
+     */
+    public PayloadCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @param data
+     *     a stored payload
+     * @return a stream over the JSON representation of the resource, decoded with the codec which wrote it
+     * @throws IOException
+     *     if the payload was not written by a supported codec or could not be decoded
+     */
+    public InputStream decode(byte[] data) throws IOException {
+        for (PayloadCodec decoder : decoders) {
+            if (decoder.isEncoded(data)) {
+                return decoder.decode(data);
+            }
+        }
+        throw new IOException("The resource payload was not written by a supported codec");
+    }
+
+    /**
+     * Discards the payload codecs of all tenant-datastores, so that they are recreated from the current
+     * configuration when they are next used.
+     */
+    public static void reset() {
+        payloadCodecs.clear();
+    }
+
+    static boolean startsWith(byte[] data, byte[] magic) {
+        if (data.length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (data[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * A payload codec which writes the Zstandard frame format, optionally with a trained dictionary for each resource type.
+ *
+ * <p>The JSON of resources of the same type is very repetitive, so a dictionary trained on samples of a resource type
+ * considerably improves the compression of small resources. Dictionaries are loaded from files named
+ * {@code <resourceType>.dict} in the configured dictionary directory. The id of the dictionary is written into each
+ * frame, so payloads remain readable as long as the dictionary which wrote them is still present.
+ */
+public class ZstdPayloadCodec implements PayloadCodec {
+    private static final String CLASSNAME = ZstdPayloadCodec.class.getName();
+    private static final Logger log = Logger.getLogger(CLASSNAME);
+
+    public static final String NAME = "zstd";
+    public static final String DICTIONARY_FILE_EXTENSION = ".dict";
+    public static final int DEFAULT_LEVEL = 3;
+
+    // the Zstandard frame magic number 0xFD2FB528, which is written in little-endian byte order
+    private static final byte[] MAGIC = { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd };
+
+    private final int level;
+    // resource type -> compression dictionary
+    private final Map<String, ZstdDictCompress> compressDictionaries;
+    // dictionary id -> decompression dictionary
+    private final Map<Long, ZstdDictDecompress> decompressDictionaries;
+
+    /**
+     * Create a codec which doesn't use dictionaries.
+     */
+    public ZstdPayloadCodec() {
+        this(Collections.emptyMap(), DEFAULT_LEVEL);
+    }
+
+    /**
+     * @param dictionaries
+     *     the trained dictionaries keyed by resource type
+     * @param level
+     *     the compression level
+     */
+    public ZstdPayloadCodec(Map<String, byte[]> dictionaries, int level) {
+        this.level = level;
+        Map<String, ZstdDictCompress> compressDictionaries = new HashMap<>();
+        Map<Long, ZstdDictDecompress> decompressDictionaries = new HashMap<>();
+        for (Map.Entry<String, byte[]> entry : dictionaries.entrySet()) {
+            long dictionaryId = Zstd.getDictIdFromDict(entry.getValue());
+            if (dictionaryId == 0) {
+                throw new IllegalArgumentException("The Zstandard dictionary for resource type '" + entry.getKey() + "' has no dictionary id");
+            }
+            if (decompressDictionaries.containsKey(dictionaryId)) {
+                throw new IllegalArgumentException("The Zstandard dictionary for resource type '" + entry.getKey()
+                        + "' has the same dictionary id as another dictionary: " + dictionaryId);
+            }
+            compressDictionaries.put(entry.getKey(), new ZstdDictCompress(entry.getValue(), level));
+            decompressDictionaries.put(dictionaryId, new ZstdDictDecompress(entry.getValue()));
+        }
+        this.compressDictionaries = Collections.unmodifiableMap(compressDictionaries);
+        this.decompressDictionaries = Collections.unmodifiableMap(decompressDictionaries);
+    }
+
+    /**
+     * Create a codec with the dictionaries in the passed directory.
+     *
+     * @param dictionaryDir
+     *     a directory containing a {@code <resourceType>.dict} file for each resource type which has a dictionary
+     * @return the codec
+     * @throws IOException
+     *     if the dictionaries could not be read
+     */
+    public static ZstdPayloadCodec fromDictionaryDir(Path dictionaryDir) throws IOException {
+        Map<String, byte[]> dictionaries = new HashMap<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(dictionaryDir, "*" + DICTIONARY_FILE_EXTENSION)) {
+            for (Path path : paths) {
+                String fileName = path.getFileName().toString();
+                String resourceType = fileName.substring(0, fileName.length() - DICTIONARY_FILE_EXTENSION.length());
+                dictionaries.put(resourceType, Files.readAllBytes(path));
+            }
+        }
+        log.info("Loaded " + dictionaries.size() + " Zstandard dictionaries from " + dictionaryDir);
+        return new ZstdPayloadCodec(dictionaries, DEFAULT_LEVEL);
+    }
+
+    /**
+     * Train a dictionary from the JSON representation of sample resources of a single resource type.
+     *
+     * @param samples
+     *     the uncompressed JSON of the sample resources
+     * @param dictionarySize
+     *     the maximum size of the dictionary in bytes, for example 64KB
+     * @return the dictionary, which can be written to a {@code <resourceType>.dict} file
+     */
+    public static byte[] trainDictionary(Iterable<byte[]> samples, int dictionarySize) {
+        int sampleSize = 0;
+        for (byte[] sample : samples) {
+            sampleSize += sample.length;
+        }
+        ZstdDictTrainer trainer = new ZstdDictTrainer(sampleSize, dictionarySize);
+        for (byte[] sample : samples) {
+            trainer.addSample(sample);
+        }
+        return trainer.trainSamples();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isEncoded(byte[] data) {
+        return PayloadCodecs.startsWith(data, MAGIC);
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out, String resourceType) throws IOException {
+        ZstdOutputStream zstdStream = new ZstdOutputStream(out, level);
+        ZstdDictCompress dictionary = compressDictionaries.get(resourceType);
+        if (dictionary != null) {
+            zstdStream.setDict(dictionary);
+        }
+        return zstdStream;
+    }
+
+    @Override
+    public InputStream decode(byte[] data) throws IOException {
+        ZstdInputStream zstdStream = new ZstdInputStream(new ByteArrayInputStream(data));
+        long dictionaryId = Zstd.getDictIdFromFrame(data);
+        if (dictionaryId != 0) {
+            ZstdDictDecompress dictionary = decompressDictionaries.get(dictionaryId);
+            if (dictionary == null) {
+                zstdStream.close();
+                throw new IOException("The Zstandard dictionary with id " + dictionaryId + " is not available");
+            }
+            zstdStream.setDict(dictionary);
+        }
+        return zstdStream;
+    }
+}
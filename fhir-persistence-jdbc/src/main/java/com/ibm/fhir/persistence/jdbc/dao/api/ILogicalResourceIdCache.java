@@ -0,0 +1,27 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dao.api;
+
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+
+/**
+ * Abstraction of the service managing the logical_resource_id values of the targets of references
+ */
+public interface ILogicalResourceIdCache {
+
+    /**
+     * Reads the logical_resource_id of the given resource from the logical_resources table. If the resource
+     * doesn't exist yet, a logical_resource_id is reserved for it, which is adopted by the resource when it
+     * is created. This is done in a thread-safe way
+     * @param resourceType the resource type of the target of the reference
+     * @param logicalId the logical id of the target of the reference
+     * @return the logical_resource_id, or null if the resource type is unknown
+     * @throws FHIRPersistenceException
+     */
+    Long readOrAddLogicalResourceId(String resourceType, String logicalId) throws FHIRPersistenceException;
+
+}
@@ -106,4 +106,11 @@ public interface ParameterDAO extends FHIRDbDAO {
      * @throws FHIRPersistenceException
      */
     void addParameterNamesCacheCandidate(String parameterName, Integer parameterId) throws FHIRPersistenceException;
+
+    /**
+     * Discards the code system and parameter name pairs collected for population into the CodeSystemsCache and
+     * ParameterNamesCache. This must be called after rolling back to a savepoint, because the rows they refer to
+     * may have been rolled back.
+     */
+    void clearCacheCandidates();
 }
@@ -7,6 +7,7 @@
 package com.ibm.fhir.persistence.jdbc.dao.api;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -36,6 +37,19 @@ public interface ResourceDAO extends FHIRDbDAO {
     Resource read(String logicalId, String resourceType)
             throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 
+    /**
+     * Reads the version id, last updated time, deleted flag and fingerprint of the latest version of the Resource
+     * with the passed logical id and resource type, without reading its data.
+     * If no matching resource is found, null is returned.
+     * @param logicalId
+     * @param resourceType
+     * @return Resource - The most recent version of the Resource without its data, or null if not found.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    Resource readFingerprint(String logicalId, String resourceType)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
     /**
      * Reads and returns the version of the Resource with the passed logical id, resource type, and version id.
      * If no matching resource is found, null is returned.
@@ -120,6 +134,17 @@ public interface ResourceDAO extends FHIRDbDAO {
      */
     List<Long> searchForIds(SqlQueryData  queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 
+    /**
+     * This method supports the execution of a specialized query designed to return Resource ids along with the
+     * values of the other selected columns, such as the sort key values of a sorted search.
+     * Note that the first column to be selected MUST be the Resource.id column.
+     * @param queryData - A select for Resource ids and other values.
+     * @return - A list with one array of column values for each row of the result, of which the first is the Resource id.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    List<Object[]> searchForIdsAndValues(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
     /**
      * Searches for Resources that contain one of the passed ids.
      * @param resourceType - The type of the FHIR Resource
@@ -139,6 +164,16 @@ public interface ResourceDAO extends FHIRDbDAO {
      */
     int searchCount(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 
+    /**
+     * Estimates the result of a count query from the database statistics, without running the query.
+     * @param queryData - Contains a count query string and (optionally) bind variables.
+     * @return Integer - The estimated count of FHIR Resources satisfying the passed search, or null if the database
+     *                   can't provide an estimate.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    Integer estimateCount(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
     /**
      * Executes the passed fully-formed SQL Select COUNT statement and returns the integer count.
      *
@@ -182,6 +217,12 @@ public interface ResourceDAO extends FHIRDbDAO {
      */
     void addResourceTypeCacheCandidate(String resourceType, Integer resourceTypeId) throws FHIRPersistenceException;
 
+    /**
+     * Discards the resource type / resource id pairs collected for population into the ResourceTypesCache.
+     * This must be called after rolling back to a savepoint, because the rows they refer to may have been rolled back.
+     */
+    void clearResourceTypeCacheCandidates();
+
     /**
      * Inserts the passed Resource DTO and its associated search parameters to the appropriate FHIR resource tables.
      * After insert, the generated primary key is acquired and set in the Resource object.
@@ -197,4 +238,32 @@ public interface ResourceDAO extends FHIRDbDAO {
     Resource insert(Resource resource, List<ExtractedParameterValue> parameters, ParameterDAO parameterDao)
             throws FHIRPersistenceException;
 
+    /**
+     * Inserts the passed Resource DTOs and their associated search parameters to the appropriate FHIR resource tables.
+     * The search parameters of all the Resources are accumulated and written using one JDBC batch per parameter table.
+     * After insert, the generated primary key is acquired and set in each Resource object.
+     * @param resources A list of Resource Data Transfer Objects
+     * @param parameters The search parameters to be persisted along with each of the passed Resources, in the same order
+     * @param parameterDao The Parameter DAO
+     * @return List<Resource> The Resource DTOs
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     * @throws FHIRPersistenceVersionIdMismatchException
+     * @throws FHIRPersistenceException
+     */
+    List<Resource> insertAll(List<Resource> resources, List<List<ExtractedParameterValue>> parameters, ParameterDAO parameterDao)
+            throws FHIRPersistenceException;
+
+    /**
+     * Reads the version id of the latest version of each of the passed logical ids of the given resource type.
+     * Logical ids with no matching resource are not included in the returned map.
+     * @param resourceType - The name of a FHIR Resource type
+     * @param logicalIds - The logical ids of the FHIR Resources
+     * @return Map<String, Integer> - A map containing key=logical-id, value=version-id
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    Map<String, Integer> readCurrentVersionIds(String resourceType, Collection<String> logicalIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
 }
@@ -0,0 +1,124 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dao.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.ibm.fhir.persistence.jdbc.dao.api.ILogicalResourceIdCache;
+import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
+
+/**
+ * DAO used to find, and reserve if necessary, the logical_resource_id of the targets of references.
+ * A reserved logical_resources record has no corresponding resource-specific logical_resources
+ * record until the resource is created by add_any_resource, which adopts the reserved id.
+ *
+ * <p>The ids are remembered for the life of this DAO, which must not be longer than the
+ * transaction, because a reserved id doesn't exist any more if the transaction is rolled back.
+ */
+public class LogicalResourceIdDAOImpl implements ILogicalResourceIdCache {
+    private static final String SELECT_ID = "SELECT lr.logical_resource_id FROM logical_resources lr, resource_types rt "
+            + " WHERE rt.resource_type = ? AND lr.resource_type_id = rt.resource_type_id AND lr.logical_id = ?";
+
+    // the connection to use for the reads and inserts
+    private final Connection connection;
+
+    private final String adminSchemaName;
+
+    private final boolean multitenant;
+
+    // the ids already resolved, keyed by resource type and logical id
+    private final Map<String, Long> logicalResourceIds = new HashMap<>();
+
+    /**
+     * Public constructor
+     * @param c
+     * @param adminSchemaName
+     * @param multitenant
+     */
+    public LogicalResourceIdDAOImpl(Connection c, String adminSchemaName, boolean multitenant) {
+        this.connection = c;
+        this.adminSchemaName = adminSchemaName;
+        this.multitenant = multitenant;
+    }
+
+    @Override
+    public Long readOrAddLogicalResourceId(String resourceType, String logicalId) throws FHIRPersistenceDataAccessException {
+        final String key = resourceType + "/" + logicalId;
+        Long result = logicalResourceIds.get(key);
+        if (result == null) {
+            try {
+                result = getLogicalResourceId(resourceType, logicalId);
+                if (result == null && addLogicalResource(resourceType, logicalId)) {
+                    result = getLogicalResourceId(resourceType, logicalId);
+                }
+            } catch (SQLException e) {
+                throw new FHIRPersistenceDataAccessException("reference=" + key, e);
+            }
+            if (result != null) {
+                logicalResourceIds.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read the logical_resource_id of the given resource
+     * @param resourceType
+     * @param logicalId
+     * @return the logical_resource_id, or null if there is no logical_resources record
+     * @throws SQLException
+     */
+    protected Long getLogicalResourceId(String resourceType, String logicalId) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(SELECT_ID)) {
+            stmt.setString(1, resourceType);
+            stmt.setString(2, logicalId);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getLong(1) : null;
+        }
+    }
+
+    /**
+     * Reserve a logical_resource_id for the given resource
+     * @param resourceType
+     * @param logicalId
+     * @return false if the resource type is unknown
+     * @throws SQLException
+     */
+    protected boolean addLogicalResource(String resourceType, String logicalId) throws SQLException {
+        final String insert = multitenant ?
+                "INSERT INTO logical_resources (mt_id, logical_resource_id, resource_type_id, logical_id) "
+                + "SELECT " + adminSchemaName + ".sv_tenant_id, NEXT VALUE FOR fhir_sequence, resource_type_id, CAST(? AS VARCHAR(255)) "
+                + "  FROM resource_types WHERE resource_type = ?"
+                :
+                "INSERT INTO logical_resources (logical_resource_id, resource_type_id, logical_id) "
+                + "SELECT NEXT VALUE FOR fhir_sequence, resource_type_id, CAST(? AS VARCHAR(255)) "
+                + "  FROM resource_types WHERE resource_type = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(insert)) {
+            stmt.setString(1, logicalId);
+            stmt.setString(2, resourceType);
+            return stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            if ("23505".equals(e.getSQLState())) {
+                // another thread snuck in and created the record, so the caller just reads it
+                return true;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the connection used by this DAO
+     */
+    protected Connection getConnection() {
+        return connection;
+    }
+}
@@ -244,6 +244,13 @@ public class ParameterDAOImpl extends FHIRDbDAOImpl implements ParameterDAO {
     }
 
 
+    @Override
+    public void clearCacheCandidates() {
+        // the cache updaters registered for this transaction hold the same maps
+        this.newParameterNameIds.clear();
+        this.newCodeSystemIds.clear();
+    }
+
     protected  Integer getParameterNameIdFromCaches(String parameterName) {
         // Get ParameterNameId from ParameterNameIdCache first.
         Integer parameterNameId = ParameterNamesCache.getParameterNameId(parameterName);
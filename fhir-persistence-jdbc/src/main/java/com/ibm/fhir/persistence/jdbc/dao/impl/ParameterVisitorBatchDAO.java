@@ -16,13 +16,17 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.jdbc.dao.api.ICodeSystemCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.ILogicalResourceIdCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.IParameterNameCache;
 import com.ibm.fhir.persistence.jdbc.dto.CompositeParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.DateParmVal;
@@ -31,9 +35,11 @@ import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValueVisitor;
 import com.ibm.fhir.persistence.jdbc.dto.LocationParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.NumberParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.QuantityParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.ReferenceParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.StringParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.TokenParmVal;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
+import com.ibm.fhir.persistence.jdbc.util.ParameterHashes;
 import com.ibm.fhir.schema.control.FhirSchemaConstants;
 
 /**
@@ -52,7 +58,10 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
     private final int batchSize;
 
     // FK to the logical resource for the parameters being added
-    private final long logicalResourceId;
+    private long logicalResourceId;
+
+    // the prefix of the resource type specific parameter tables
+    private final String tablePrefix;
 
     // Maintainers: remember to close all statements in AutoCloseable#close()
     private final String insertString;
@@ -83,6 +92,10 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
     private final PreparedStatement composites;
     private int compositesCount;
 
+    // The targets of local references
+    private final PreparedStatement refs;
+    private int refCount;
+
     // Searchable string attributes stored at the Resource (system) level
     private final PreparedStatement resourceStrings;
     private int resourceStringCount;
@@ -101,22 +114,27 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
     // For looking up code system ids
     private final ICodeSystemCache codeSystemCache;
 
+    // For looking up, or reserving, the logical_resource_id of reference targets
+    private final ILogicalResourceIdCache logicalResourceIdCache;
+
     /**
      * Public constructor
      * @param c
      * @param resourceId
      */
     public ParameterVisitorBatchDAO(Connection c, String adminSchemaName, String tablePrefix, boolean multitenant, long logicalResourceId, int batchSize,
-            IParameterNameCache pnc, ICodeSystemCache csc) throws SQLException {
+            IParameterNameCache pnc, ICodeSystemCache csc, ILogicalResourceIdCache lrc) throws SQLException {
         if (batchSize < 1) {
             throw new IllegalArgumentException("batchSize must be >= 1");
         }
 
         this.connection = c;
+        this.tablePrefix = tablePrefix;
         this.logicalResourceId = logicalResourceId;
         this.batchSize = batchSize;
         this.parameterNameCache = pnc;
         this.codeSystemCache = csc;
+        this.logicalResourceIdCache = lrc;
 
         insertString = multitenant ?
                 "INSERT INTO " + tablePrefix + "_str_values (mt_id, parameter_name_id, str_value, str_value_lcase, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
@@ -166,6 +184,15 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                 + ") VALUES (?,?,  ?,?,?,?,?,?,  ?,?,?,?,?,?,  ?,?,?,?,?,?)";
         composites = c.prepareStatement(insertComposite);
 
+        // The resource type id of the reference target is looked up as part of the insert
+        String insertRef = multitenant ?
+                "INSERT INTO " + tablePrefix + "_ref_values (mt_id, parameter_name_id, ref_resource_type_id, ref_logical_resource_id, logical_resource_id) "
+                + "SELECT " + adminSchemaName + ".sv_tenant_id, CAST(? AS INT), resource_type_id, CAST(? AS BIGINT), CAST(? AS BIGINT) FROM resource_types WHERE resource_type = ?"
+                :
+                "INSERT INTO " + tablePrefix + "_ref_values (parameter_name_id, ref_resource_type_id, ref_logical_resource_id, logical_resource_id) "
+                + "SELECT CAST(? AS INT), resource_type_id, CAST(? AS BIGINT), CAST(? AS BIGINT) FROM resource_types WHERE resource_type = ?";
+        refs = c.prepareStatement(insertRef);
+
         // Resource level string attributes
         String insertResourceString = multitenant ?
                 "INSERT INTO resource_str_values (mt_id, parameter_name_id, str_value, str_value_lcase, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
@@ -225,22 +252,7 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                     logger.fine("baseStringValue: " + parameterName + "[" + parameterNameId + "], " + value);
                 }
 
-                resourceStrings.setInt(1, parameterNameId);
-                if (value != null) {
-                    resourceStrings.setString(2, value);
-                    resourceStrings.setString(3, value.toLowerCase());
-                }
-                else {
-                    resourceStrings.setNull(2, Types.VARCHAR);
-                    resourceStrings.setNull(3, Types.VARCHAR);
-                }
-                resourceStrings.setLong(4, logicalResourceId);
-                resourceStrings.addBatch();
-
-                if (++resourceStringCount == this.batchSize) {
-                    resourceStrings.executeBatch();
-                    resourceStringCount = 0;
-                }
+                addResourceStringValue(parameterNameId, value);
             }
             else {
                 // standard resource property
@@ -248,13 +260,7 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                     logger.fine("stringValue: " + parameterName + "[" + parameterNameId + "], " + value);
                 }
 
-                setStringParms(strings, parameterNameId, value);
-                strings.addBatch();
-
-                if (++stringCount == this.batchSize) {
-                    strings.executeBatch();
-                    stringCount = 0;
-                }
+                addStringValue(parameterNameId, value);
             }
         }
         catch (SQLException x) {
@@ -262,6 +268,88 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         }
     }
 
+    @Override
+    public void visit(ReferenceParmVal param) throws FHIRPersistenceException {
+        String parameterName = param.getName();
+        String value = param.getValueString();
+
+        // the reference is stored as a string value as well, which is used for matching on the
+        // reference itself, sorting and :missing
+        visit((StringParmVal) param);
+
+        if (param.getRefResourceType() != null && param.getRefLogicalId() != null && !isBase(param)
+                && param.getRefLogicalId().getBytes().length <= FhirSchemaConstants.LOGICAL_ID_BYTES) {
+            try {
+                int parameterNameId = getParameterNameId(parameterName);
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("refValue: " + parameterName + "[" + parameterNameId + "], " + value);
+                }
+
+                // the target is identified by its logical_resource_id, which is reserved if the target doesn't
+                // exist yet. Targets with an unknown resource type are simply not added.
+                Long refLogicalResourceId = logicalResourceIdCache.readOrAddLogicalResourceId(param.getRefResourceType(), param.getRefLogicalId());
+                if (refLogicalResourceId != null) {
+                    addReferenceValue(parameterNameId, param.getRefResourceType(), refLogicalResourceId);
+                }
+            }
+            catch (SQLException x) {
+                throw new FHIRPersistenceDataAccessException(parameterName + "=" + value, x);
+            }
+        }
+    }
+
+    /**
+     * Add a row to the resource type specific reference values table
+     * @param parameterNameId
+     * @param refResourceType
+     * @param refLogicalResourceId
+     * @throws SQLException
+     */
+    protected void addReferenceValue(int parameterNameId, String refResourceType, long refLogicalResourceId) throws SQLException {
+        refs.setInt(1, parameterNameId);
+        refs.setLong(2, refLogicalResourceId);
+        refs.setLong(3, logicalResourceId);
+        refs.setString(4, refResourceType);
+        refs.addBatch();
+
+        if (++refCount == this.batchSize) {
+            refs.executeBatch();
+            refCount = 0;
+        }
+    }
+
+    /**
+     * Add a row to the resource type specific string values table
+     * @param parameterNameId
+     * @param value
+     * @throws SQLException
+     */
+    protected void addStringValue(int parameterNameId, String value) throws SQLException {
+        setStringParms(strings, parameterNameId, value);
+        strings.addBatch();
+
+        if (++stringCount == this.batchSize) {
+            strings.executeBatch();
+            stringCount = 0;
+        }
+    }
+
+    /**
+     * Add a row to the resource (system) level string values table
+     * @param parameterNameId
+     * @param value
+     * @throws SQLException
+     */
+    protected void addResourceStringValue(int parameterNameId, String value) throws SQLException {
+        setStringParms(resourceStrings, parameterNameId, value);
+        resourceStrings.addBatch();
+
+        if (++resourceStringCount == this.batchSize) {
+            resourceStrings.executeBatch();
+            resourceStringCount = 0;
+        }
+    }
+
     private void setStringParms(PreparedStatement insert, int parameterNameId, String value) throws SQLException {
         insert.setInt(1, parameterNameId);
         if (value != null) {
@@ -290,19 +378,31 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                         + value + " [" + valueLow + ", " + valueHigh + "]");
             }
 
-            setNumberParms(numbers, parameterNameId, value, valueLow, valueHigh);
-            numbers.addBatch();
-
-            if (++numberCount == this.batchSize) {
-                numbers.executeBatch();
-                numberCount = 0;
-            }
+            addNumberValue(parameterNameId, value, valueLow, valueHigh);
         }
         catch (SQLException x) {
             throw new FHIRPersistenceDataAccessException(parameterName + "={" + value + " ["+ valueLow + "," + valueHigh + "}", x);
         }
     }
 
+    /**
+     * Add a row to the resource type specific number values table
+     * @param parameterNameId
+     * @param value
+     * @param valueLow
+     * @param valueHigh
+     * @throws SQLException
+     */
+    protected void addNumberValue(int parameterNameId, BigDecimal value, BigDecimal valueLow, BigDecimal valueHigh) throws SQLException {
+        setNumberParms(numbers, parameterNameId, value, valueLow, valueHigh);
+        numbers.addBatch();
+
+        if (++numberCount == this.batchSize) {
+            numbers.executeBatch();
+            numberCount = 0;
+        }
+    }
+
     private void setNumberParms(PreparedStatement insert, int parameterNameId, BigDecimal value, BigDecimal valueLow, BigDecimal valueHigh) throws SQLException {
         insert.setInt(1, parameterNameId);
         insert.setBigDecimal(2, value);
@@ -327,13 +427,7 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                 }
 
                 // Insert record into the base level date attribute table
-                setDateParms(resourceDates, parameterNameId, dateStart, dateEnd);
-                resourceDates.addBatch();
-
-                if (++resourceDateCount == this.batchSize) {
-                    resourceDates.executeBatch();
-                    resourceDateCount = 0;
-                }
+                addResourceDateValue(parameterNameId, dateStart, dateEnd);
             }
             else {
                 if (logger.isLoggable(Level.FINE)) {
@@ -341,13 +435,7 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                             + "period: [" + dateStart + ", " + dateEnd + "]");
                 }
 
-                setDateParms(dates, parameterNameId, dateStart, dateEnd);
-                dates.addBatch();
-
-                if (++dateCount == this.batchSize) {
-                    dates.executeBatch();
-                    dateCount = 0;
-                }
+                addDateValue(parameterNameId, dateStart, dateEnd);
             }
         }
         catch (SQLException x) {
@@ -356,6 +444,40 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
 
     }
 
+    /**
+     * Add a row to the resource type specific date values table
+     * @param parameterNameId
+     * @param dateStart
+     * @param dateEnd
+     * @throws SQLException
+     */
+    protected void addDateValue(int parameterNameId, Timestamp dateStart, Timestamp dateEnd) throws SQLException {
+        setDateParms(dates, parameterNameId, dateStart, dateEnd);
+        dates.addBatch();
+
+        if (++dateCount == this.batchSize) {
+            dates.executeBatch();
+            dateCount = 0;
+        }
+    }
+
+    /**
+     * Add a row to the resource (system) level date values table
+     * @param parameterNameId
+     * @param dateStart
+     * @param dateEnd
+     * @throws SQLException
+     */
+    protected void addResourceDateValue(int parameterNameId, Timestamp dateStart, Timestamp dateEnd) throws SQLException {
+        setDateParms(resourceDates, parameterNameId, dateStart, dateEnd);
+        resourceDates.addBatch();
+
+        if (++resourceDateCount == this.batchSize) {
+            resourceDates.executeBatch();
+            resourceDateCount = 0;
+        }
+    }
+
     private void setDateParms(PreparedStatement insert, int parameterNameId, Timestamp dateStart, Timestamp dateEnd) throws SQLException {
         insert.setInt(1, parameterNameId);
         insert.setTimestamp(2, dateStart, UTC);
@@ -379,16 +501,7 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                             + codeSystem + "[" + codeSystemId + "], " + tokenValue);
                 }
 
-                resourceTokens.setInt(1, parameterNameId);
-                resourceTokens.setInt(2, codeSystemId);
-                resourceTokens.setString(3, tokenValue);
-                resourceTokens.setLong(4, logicalResourceId);
-                resourceTokens.addBatch();
-
-                if (++resourceTokenCount == this.batchSize) {
-                    resourceTokens.executeBatch();
-                    resourceTokenCount = 0;
-                }
+                addResourceTokenValue(parameterNameId, codeSystemId, tokenValue);
             }
             else {
                 if (logger.isLoggable(Level.FINE)) {
@@ -396,13 +509,7 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                             + codeSystem + "[" + codeSystemId + "], " + tokenValue);
                 }
 
-                setTokenParms(tokens, parameterNameId, codeSystemId, tokenValue);
-                tokens.addBatch();
-
-                if (++tokenCount == this.batchSize) {
-                    tokens.executeBatch();
-                    tokenCount = 0;
-                }
+                addTokenValue(parameterNameId, codeSystemId, tokenValue);
             }
         }
         catch (FHIRPersistenceDataAccessException x) {
@@ -413,6 +520,40 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         }
     }
 
+    /**
+     * Add a row to the resource type specific token values table
+     * @param parameterNameId
+     * @param codeSystemId
+     * @param tokenValue
+     * @throws SQLException
+     */
+    protected void addTokenValue(int parameterNameId, int codeSystemId, String tokenValue) throws SQLException {
+        setTokenParms(tokens, parameterNameId, codeSystemId, tokenValue);
+        tokens.addBatch();
+
+        if (++tokenCount == this.batchSize) {
+            tokens.executeBatch();
+            tokenCount = 0;
+        }
+    }
+
+    /**
+     * Add a row to the resource (system) level token values table
+     * @param parameterNameId
+     * @param codeSystemId
+     * @param tokenValue
+     * @throws SQLException
+     */
+    protected void addResourceTokenValue(int parameterNameId, int codeSystemId, String tokenValue) throws SQLException {
+        setTokenParms(resourceTokens, parameterNameId, codeSystemId, tokenValue);
+        resourceTokens.addBatch();
+
+        if (++resourceTokenCount == this.batchSize) {
+            resourceTokens.executeBatch();
+            resourceTokenCount = 0;
+        }
+    }
+
     private void setTokenParms(PreparedStatement insert, int parameterNameId, int codeSystemId, String tokenValue) throws SQLException {
         insert.setInt(1, parameterNameId);
         insert.setInt(2, codeSystemId);
@@ -446,13 +587,7 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                             + quantityValue + " [" + quantityLow + ", " + quantityHigh + "]");
                 }
 
-                setQuantityParms(quantities, parameterNameId, codeSystem, code, quantityValue, quantityLow, quantityHigh);
-                quantities.addBatch();
-
-                if (++quantityCount == batchSize) {
-                    quantities.executeBatch();
-                    quantityCount = 0;
-                }
+                addQuantityValue(parameterNameId, getCodeSystemId(codeSystem), code, quantityValue, quantityLow, quantityHigh);
             }
             catch (FHIRPersistenceDataAccessException x) {
                 // wrap the exception so we have more context about the parameter causing the problem
@@ -465,10 +600,31 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
 
     }
 
-    private void setQuantityParms(PreparedStatement insert, int parameterNameId, String codeSystem, String code, BigDecimal quantityValue, BigDecimal quantityLow, BigDecimal quantityHigh)
-            throws SQLException, FHIRPersistenceException {
+    /**
+     * Add a row to the resource type specific quantity values table
+     * @param parameterNameId
+     * @param codeSystemId
+     * @param code
+     * @param quantityValue
+     * @param quantityLow
+     * @param quantityHigh
+     * @throws SQLException
+     */
+    protected void addQuantityValue(int parameterNameId, int codeSystemId, String code, BigDecimal quantityValue, BigDecimal quantityLow, BigDecimal quantityHigh)
+            throws SQLException {
+        setQuantityParms(quantities, parameterNameId, codeSystemId, code, quantityValue, quantityLow, quantityHigh);
+        quantities.addBatch();
+
+        if (++quantityCount == batchSize) {
+            quantities.executeBatch();
+            quantityCount = 0;
+        }
+    }
+
+    private void setQuantityParms(PreparedStatement insert, int parameterNameId, int codeSystemId, String code, BigDecimal quantityValue, BigDecimal quantityLow, BigDecimal quantityHigh)
+            throws SQLException {
         insert.setInt(1, parameterNameId);
-        insert.setInt(2, getCodeSystemId(codeSystem));
+        insert.setInt(2, codeSystemId);
         insert.setString(3, code);
         insert.setBigDecimal(4, quantityValue);
         insert.setBigDecimal(5, quantityLow);
@@ -577,7 +733,7 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                 if (val instanceof QuantityParmVal) {
                     try (PreparedStatement insert = connection.prepareStatement(insertQuantity, Statement.RETURN_GENERATED_KEYS)) {
                         QuantityParmVal qVal = (QuantityParmVal) val;
-                        setQuantityParms(insert, parameterNameId, qVal.getValueSystem(), qVal.getValueCode(),
+                        setQuantityParms(insert, parameterNameId, getCodeSystemId(qVal.getValueSystem()), qVal.getValueCode(),
                                 qVal.getValueNumber(), qVal.getValueNumberLow(), qVal.getValueNumberHigh());
                         insert.executeUpdate();
                         // closing the insert statement also closes the resultset
@@ -620,8 +776,100 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         }
     }
 
-    @Override
-    public void close() throws Exception {
+    /**
+     * Bring the parameter rows of the current logical resource up to date with the parameters of its new version.
+     * Only the rows of the parameters which have been removed or whose values have changed are deleted, and only
+     * the values of the parameters which have been added or changed are inserted.
+     * @param parameters the parameters of the new version, or null if it has none
+     * @param parameterHashes the hashes of those parameters, or null if it has none
+     * @param previous the hashes of the parameter rows of the replaced version, or null if there are no rows
+     * @throws FHIRPersistenceException
+     */
+    public void replaceParameters(List<ExtractedParameterValue> parameters, ParameterHashes parameterHashes, ParameterHashes previous)
+            throws FHIRPersistenceException {
+        if (previous != null) {
+            deleteParameters(previous.getStaleParameters(parameterHashes));
+        }
+        if (parameters != null) {
+            for (ExtractedParameterValue p: parameterHashes.getChangedParameters(parameters, previous)) {
+                p.accept(this);
+            }
+        }
+    }
+
+    /**
+     * Delete the rows of the given parameters of the current logical resource, so that they can be replaced.
+     * The composites are deleted first, because they reference the rows of their components. The parameter names are
+     * matched in the database, because no parameter names are looked up (or added) for a soft delete.
+     * @param parameterTables the tables holding the rows of each parameter, as bits of {@link ParameterHashes}
+     * @throws FHIRPersistenceException
+     */
+    public void deleteParameters(Map<String, Integer> parameterTables) throws FHIRPersistenceException {
+        // the parameter tables in the order in which they are deleted from
+        Map<Integer, String> tableNames = new LinkedHashMap<>();
+        tableNames.put(ParameterHashes.COMPOSITES, tablePrefix + "_composites");
+        tableNames.put(ParameterHashes.STR_VALUES, tablePrefix + "_str_values");
+        tableNames.put(ParameterHashes.NUMBER_VALUES, tablePrefix + "_number_values");
+        tableNames.put(ParameterHashes.DATE_VALUES, tablePrefix + "_date_values");
+        tableNames.put(ParameterHashes.LATLNG_VALUES, tablePrefix + "_latlng_values");
+        tableNames.put(ParameterHashes.TOKEN_VALUES, tablePrefix + "_token_values");
+        tableNames.put(ParameterHashes.QUANTITY_VALUES, tablePrefix + "_quantity_values");
+        tableNames.put(ParameterHashes.REF_VALUES, tablePrefix + "_ref_values");
+        tableNames.put(ParameterHashes.RESOURCE_STR_VALUES, "resource_str_values");
+        tableNames.put(ParameterHashes.RESOURCE_DATE_VALUES, "resource_date_values");
+        tableNames.put(ParameterHashes.RESOURCE_TOKEN_VALUES, "resource_token_values");
+
+        for (Map.Entry<Integer, String> table : tableNames.entrySet()) {
+            List<String> parameterNames = new ArrayList<>();
+            for (Map.Entry<String, Integer> parameter : parameterTables.entrySet()) {
+                if ((parameter.getValue() & table.getKey()) != 0) {
+                    parameterNames.add(parameter.getKey());
+                }
+            }
+            if (parameterNames.isEmpty()) {
+                continue;
+            }
+
+            final String delete = "DELETE FROM " + table.getValue() + " WHERE logical_resource_id = ? AND parameter_name_id IN ("
+                    + "SELECT parameter_name_id FROM parameter_names WHERE parameter_name IN ("
+                    + parameterNames.stream().map(name -> "?").collect(Collectors.joining(",")) + "))";
+            try (PreparedStatement ps = connection.prepareStatement(delete)) {
+                int i = 1;
+                ps.setLong(i++, logicalResourceId);
+                for (String parameterName : parameterNames) {
+                    ps.setString(i++, parameterName);
+                }
+                ps.executeUpdate();
+            } catch (SQLException x) {
+                throw new FHIRPersistenceDataAccessException("Failed to delete parameters " + parameterTables.keySet()
+                        + " of logical resource " + logicalResourceId, x);
+            }
+        }
+    }
+
+    /**
+     * Switch the logical resource id used for any parameters visited from now on.
+     * Lets one visitor accumulate the parameters of several resources of the same
+     * type in a single batch per parameter table. Parameters already added to a
+     * batch keep the id they were bound with.
+     * @param logicalResourceId
+     */
+    public void setLogicalResourceId(long logicalResourceId) {
+        this.logicalResourceId = logicalResourceId;
+    }
+
+    /**
+     * @return the logical resource id used for the parameters being visited
+     */
+    protected long getLogicalResourceId() {
+        return logicalResourceId;
+    }
+
+    /**
+     * Execute any pending batches without closing the underlying statements
+     * @throws SQLException
+     */
+    public void flush() throws SQLException {
         // flush any stragglers, remembering to reset each count because
         // close() should be idempotent.
         try {
@@ -655,6 +903,11 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                 compositesCount = 0;
             }
 
+            if (refCount > 0) {
+                refs.executeBatch();
+                refCount = 0;
+            }
+
             if (resourceStringCount > 0) {
                 resourceStrings.executeBatch();
                 resourceStringCount = 0;
@@ -680,6 +933,11 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                 throw x;
             }
         }
+    }
+
+    @Override
+    public void close() throws Exception {
+        flush();
 
         closeStatement(strings);
         closeStatement(numbers);
@@ -687,6 +945,7 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         closeStatement(tokens);
         closeStatement(tokenComp);
         closeStatement(quantities);
+        closeStatement(refs);
         closeStatement(resourceStrings);
         closeStatement(resourceDates);
         closeStatement(resourceTokens);
@@ -15,16 +15,22 @@ import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -43,6 +49,7 @@ import com.ibm.fhir.persistence.jdbc.dto.Resource;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceFKVException;
+import com.ibm.fhir.persistence.jdbc.util.ParameterHashes;
 import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCache;
 import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCacheUpdater;
 import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
@@ -60,15 +67,28 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
                                             "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
                                            "LR.LOGICAL_ID = ? AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID";
 
+    // Read the version and fingerprint of the current version of the resource, without its data
+    private static final String SQL_READ_FINGERPRINT = "SELECT R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, LR.RESOURCE_FINGERPRINT " +
+                                                         "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
+                                                       "LR.LOGICAL_ID = ? AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID";
+
     // Read a specific version of the resource
     private static final String SQL_VERSION_READ = "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
                                                       "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
                                                       "LR.LOGICAL_ID = ? AND R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID AND R.VERSION_ID = ?";
 
+    // Read the current version id of a set of resources. The list of bind markers for the logical ids is appended
+    private static final String SQL_READ_CURRENT_VERSION_IDS = "SELECT LR.LOGICAL_ID, R.VERSION_ID " +
+                                                                 "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
+                                                               "R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND LR.LOGICAL_ID IN ";
+
+    // The max number of logical ids we bind into a single read of current version ids
+    private static final int MAX_LOGICAL_IDS_PER_READ = 500;
+
     //                                                                                 0
     //                                                                                 1 2 3 4 5 6 7 8
     // Don't forget that we must account for IN and OUT parameters.
-    private static final String SQL_INSERT_WITH_PARAMETERS = "CALL %s.add_any_resource(?,?,?,?,?,?,?,?)";
+    private static final String SQL_INSERT_WITH_PARAMETERS = "CALL %s.add_any_resource(?,?,?,?,?,?,?,?,?,?,?)";
 
     // Read version history of the resource identified by its logical-id
     private static final String SQL_HISTORY = "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
@@ -166,6 +186,41 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return resource;
     }
 
+    @Override
+    public Resource readFingerprint(String logicalId, String resourceType)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "readFingerprint";
+        log.entering(CLASSNAME, METHODNAME);
+
+        final Connection connection = getConnection(); // do not close
+        Resource resource = null;
+        String stmtString = null;
+
+        try {
+            stmtString = String.format(SQL_READ_FINGERPRINT, resourceType, resourceType);
+            try (PreparedStatement stmt = connection.prepareStatement(stmtString)) {
+                stmt.setString(1, logicalId);
+                ResultSet resultSet = stmt.executeQuery();
+                if (resultSet.next()) {
+                    resource = new Resource();
+                    resource.setLogicalId(logicalId);
+                    resource.setResourceType(resourceType);
+                    resource.setVersionId(resultSet.getInt(1));
+                    resource.setLastUpdated(resultSet.getTimestamp(2, UTC));
+                    resource.setDeleted("Y".equals(resultSet.getString(3)));
+                    resource.setResourceFingerprint(resultSet.getString(4));
+                }
+            }
+        } catch (Throwable e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure reading resource fingerprint");
+            final String errMsg = "Failure reading resource fingerprint. SQL=[" + stmtString + "]";
+            throw severe(log, fx, errMsg, e);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+        return resource;
+    }
+
     @Override
     public Resource versionRead(String logicalId, String resourceType, int versionId)
             throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
@@ -205,7 +260,7 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         try {
             resource.setData(resultSet.getBytes("DATA"));
             resource.setId(resultSet.getLong("RESOURCE_ID"));
-            resource.setLastUpdated(resultSet.getTimestamp("LAST_UPDATED"));
+            resource.setLastUpdated(resultSet.getTimestamp("LAST_UPDATED", UTC));
             resource.setLogicalId(resultSet.getString("LOGICAL_ID"));
             resource.setVersionId(resultSet.getInt("VERSION_ID"));
             resource.setDeleted(resultSet.getString("IS_DELETED").equals("Y") ? true : false);
@@ -311,6 +366,12 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return count;
     }
 
+    @Override
+    public Integer estimateCount(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        // no estimate is available by default, so the caller counts the search results instead
+        return null;
+    }
+
     @Override
     public void setPersistenceContext(FHIRPersistenceContext context) {
         this.context = context;
@@ -393,10 +454,19 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
 
     @Override
     public List<Long> searchForIds(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
-        final String METHODNAME = "searchForIds";
+        List<Long> resourceIds = new ArrayList<>();
+        for (Object[] row : searchForIdsAndValues(queryData)) {
+            resourceIds.add((Long) row[0]);
+        }
+        return resourceIds;
+    }
+
+    @Override
+    public List<Object[]> searchForIdsAndValues(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "searchForIdsAndValues";
         log.entering(CLASSNAME, METHODNAME);
 
-        List<Long> resourceIds = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
         Connection connection = getConnection(); // do not close
         PreparedStatement stmt = null;
         ResultSet resultSet = null;
@@ -420,8 +490,20 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
             if (log.isLoggable(Level.FINE)) {
                 log.fine("DB search for ids complete. " + queryData + "  executionTime=" + dbCallDuration + "ms");
             }
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            int columnCount = metaData.getColumnCount();
             while(resultSet.next()) {
-                resourceIds.add(resultSet.getLong(1));
+                Object[] row = new Object[columnCount];
+                row[0] = resultSet.getLong(1);
+                for (int i = 2; i <= columnCount; i++) {
+                    // timestamps are stored in UTC
+                    if (metaData.getColumnType(i) == Types.TIMESTAMP) {
+                        row[i-1] = resultSet.getTimestamp(i, JDBCConstants.UTC);
+                    } else {
+                        row[i-1] = resultSet.getObject(i);
+                    }
+                }
+                rows.add(row);
             }
         } catch (Throwable e) {
             FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure retrieving FHIR Resource Ids");
@@ -431,7 +513,7 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
             this.cleanup(resultSet, stmt);
             log.exiting(CLASSNAME, METHODNAME);
         }
-        return resourceIds;
+        return rows;
     }
 
 
@@ -465,6 +547,12 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
 
     }
 
+    @Override
+    public void clearResourceTypeCacheCandidates() {
+        // the cache updater registered for this transaction holds the same map
+        this.newResourceTypeIds.clear();
+    }
+
     protected  Integer getResourceTypeIdFromCaches(String resourceType) {
         // Get resourceTypeId from ResourceTypesCache first.
         Integer resourceTypeId = ResourceTypesCache.getResourceTypeId(resourceType);
@@ -487,7 +575,6 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         CallableStatement stmt = null;
         String stmtString = null;
         Integer resourceTypeId;
-        Timestamp lastUpdated;
         boolean acquiredFromCache;
         long dbCallStartTime = System.nanoTime();
 
@@ -505,37 +592,28 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
                          "  acquiredFromCache=" + acquiredFromCache + "  tenantDatastoreCacheName=" + ResourceTypesCache.getCacheNameForTenantDatastore());
             }
 
-            stmtString = String.format(SQL_INSERT_WITH_PARAMETERS, getSchemaName());
-            stmt = connection.prepareCall(stmtString);
-            stmt.setString(1, resource.getResourceType());
-            stmt.setString(2, resource.getLogicalId());
-            stmt.setBytes(3, resource.getData());
+            final ParameterHashes parameterHashes = ParameterHashes.of(parameters);
 
-            lastUpdated = resource.getLastUpdated();
-            stmt.setTimestamp(4, lastUpdated, UTC);
-            stmt.setString(5, resource.isDeleted() ? "Y": "N");
-            stmt.setString(6, UUID.randomUUID().toString());
-            stmt.setInt(7, resource.getVersionId());
-            stmt.registerOutParameter(8, Types.BIGINT);
+            stmtString = getInsertWithParametersSql();
+            stmt = connection.prepareCall(stmtString);
+            setInsertParameters(stmt, resource, parameterHashes);
 
             stmt.execute();
             long latestTime = System.nanoTime();
             double dbCallDuration = (latestTime-dbCallStartTime)/1e6;
             
-            resource.setId(stmt.getLong(8));
+            resource.setId(stmt.getLong(10));
 
-            // Parameter time
-            // TODO FHIR_ADMIN schema name needs to come from the configuration/context
+            // Parameter time. The procedure returns the parameter hashes of the replaced version if it has
+            // kept its parameter rows, in which case only the parameters which have changed are replaced
             long paramInsertStartTime = latestTime;
-            if (parameters != null) {
-                try (ParameterVisitorBatchDAO pvd = new ParameterVisitorBatchDAO(connection, "FHIR_ADMIN", resource.getResourceType(), true,
-                        resource.getId(), 100, new ParameterNameCacheAdapter(parameterDao), new CodeSystemCacheAdapter(parameterDao))) {
-                    for (ExtractedParameterValue p: parameters) {
-                        p.accept(pvd);
-                    }
+            final ParameterHashes currentParameterHashes = ParameterHashes.decode(stmt.getString(11));
+            if (!Objects.equals(parameterHashes, currentParameterHashes)) {
+                try (ParameterVisitorBatchDAO pvd = createParameterVisitor(connection, resource.getResourceType(), resource.getId(), parameterDao)) {
+                    pvd.replaceParameters(parameters, parameterHashes, currentParameterHashes);
                 }
             }
-            
+
 
             if (log.isLoggable(Level.FINE)) {
                 latestTime = System.nanoTime();
@@ -567,6 +645,201 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return resource;
     }
 
+    @Override
+    public List<Resource> insertAll(List<Resource> resources, List<List<ExtractedParameterValue>> parameters, ParameterDAO parameterDao)
+            throws FHIRPersistenceException {
+        final String METHODNAME = "insertAll(List<Resource>, List<List<ExtractedParameterValue>>";
+        log.entering(CLASSNAME, METHODNAME);
+
+        final Connection connection = getConnection(); // do not close
+        CallableStatement stmt = null;
+        // One parameter visitor per resource type, so the parameters of all the resources end up
+        // in a single batch per parameter table rather than one (small) batch per resource
+        Map<String, ParameterVisitorBatchDAO> visitors = new HashMap<>();
+        // The logical resources with parameters which may still be waiting in one of the batches
+        Set<String> pending = new HashSet<>();
+        long dbCallStartTime = System.nanoTime();
+        double dbCallDuration = 0;
+
+        try {
+            // The stored procedure returns the logical resource id via an OUT parameter, which
+            // rules out a JDBC batch for the resource rows, but we can at least reuse the statement
+            stmt = connection.prepareCall(getInsertWithParametersSql());
+            for (int i = 0; i < resources.size(); i++) {
+                Resource resource = resources.get(i);
+
+                // The parameter rows of the previous version are deleted when they are replaced, so any
+                // batched parameter rows for an earlier version of this resource must be written first
+                if (!pending.add(resource.getResourceType() + "/" + resource.getLogicalId())) {
+                    for (ParameterVisitorBatchDAO pvd : visitors.values()) {
+                        pvd.flush();
+                    }
+                    pending.clear();
+                    pending.add(resource.getResourceType() + "/" + resource.getLogicalId());
+                }
+
+                if (getResourceTypeIdFromCaches(resource.getResourceType()) == null) {
+                    this.addResourceTypeCacheCandidate(resource.getResourceType(), this.readResourceTypeId(resource.getResourceType()));
+                }
+
+                final List<ExtractedParameterValue> resourceParameters = parameters.get(i);
+                final ParameterHashes parameterHashes = ParameterHashes.of(resourceParameters);
+                setInsertParameters(stmt, resource, parameterHashes);
+
+                long callStartTime = System.nanoTime();
+                stmt.execute();
+                dbCallDuration += (System.nanoTime()-callStartTime)/1e6;
+
+                resource.setId(stmt.getLong(10));
+
+                final ParameterHashes currentParameterHashes = ParameterHashes.decode(stmt.getString(11));
+                if (!Objects.equals(parameterHashes, currentParameterHashes)) {
+                    ParameterVisitorBatchDAO pvd = visitors.get(resource.getResourceType());
+                    if (pvd == null) {
+                        pvd = createParameterVisitor(connection, resource.getResourceType(), resource.getId(), parameterDao);
+                        visitors.put(resource.getResourceType(), pvd);
+                    } else {
+                        pvd.setLogicalResourceId(resource.getId());
+                    }
+                    pvd.replaceParameters(resourceParameters, parameterHashes, currentParameterHashes);
+                }
+            }
+
+            // Flush the remaining parameter batches
+            Iterator<ParameterVisitorBatchDAO> it = visitors.values().iterator();
+            while (it.hasNext()) {
+                it.next().close();
+                it.remove();
+            }
+
+            if (log.isLoggable(Level.FINE)) {
+                double totalDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
+                log.fine("Successfully inserted " + resources.size() + " Resources. total=" + totalDuration + "ms, proc=" + dbCallDuration + "ms");
+            }
+        } catch(FHIRPersistenceDBConnectException | FHIRPersistenceDataAccessException e) {
+            throw e;
+        } catch(SQLIntegrityConstraintViolationException e) {
+            FHIRPersistenceFKVException fx = new FHIRPersistenceFKVException("Encountered FK violation while inserting Resources.");
+            throw severe(log, fx, e);
+        } catch(SQLException e) {
+            if ("99001".equals(e.getSQLState())) {
+                // this is just a concurrency update, so there's no need to log the SQLException here
+                throw new FHIRPersistenceVersionIdMismatchException("Encountered version id mismatch while inserting Resources");
+            } else {
+                FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("SQLException encountered while inserting Resources.");
+                throw severe(log, fx, e);
+            }
+        } catch(Throwable e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure inserting Resources.");
+            throw severe(log, fx, e);
+        } finally {
+            // Only left over if we failed part way through, in which case the transaction is going to be rolled back anyway
+            for (ParameterVisitorBatchDAO pvd : visitors.values()) {
+                try {
+                    pvd.close();
+                } catch (Exception x) {
+                    log.fine("Failed to close parameter visitor: " + x.getMessage());
+                }
+            }
+            this.cleanup(stmt);
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+
+        return resources;
+    }
+
+    @Override
+    public Map<String, Integer> readCurrentVersionIds(String resourceType, Collection<String> logicalIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "readCurrentVersionIds";
+        log.entering(CLASSNAME, METHODNAME);
+
+        final Connection connection = getConnection(); // do not close
+        Map<String, Integer> versionIds = new HashMap<>();
+        List<String> ids = new ArrayList<>(logicalIds);
+        String stmtString = null;
+
+        try {
+            for (int start = 0; start < ids.size(); start += MAX_LOGICAL_IDS_PER_READ) {
+                List<String> subList = ids.subList(start, Math.min(start + MAX_LOGICAL_IDS_PER_READ, ids.size()));
+                StringBuilder idQuery = new StringBuilder(String.format(SQL_READ_CURRENT_VERSION_IDS, resourceType, resourceType));
+                idQuery.append("(");
+                for (int i = 0; i < subList.size(); i++) {
+                    if (i > 0) {
+                        idQuery.append(",");
+                    }
+                    idQuery.append("?");
+                }
+                idQuery.append(")");
+                stmtString = idQuery.toString();
+
+                try (PreparedStatement stmt = connection.prepareStatement(stmtString)) {
+                    for (int i = 0; i < subList.size(); i++) {
+                        stmt.setString(i + 1, subList.get(i));
+                    }
+                    ResultSet resultSet = stmt.executeQuery();
+                    while (resultSet.next()) {
+                        versionIds.put(resultSet.getString(1), resultSet.getInt(2));
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure reading current version ids");
+            final String errMsg = "Failure reading current version ids. SQL=[" + stmtString + "]";
+            throw severe(log, fx, errMsg, e);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+        return versionIds;
+    }
+
+    /**
+     * Bind the resource to the statement returned by {@link #getInsertWithParametersSql()}. The logical resource id
+     * is returned in OUT parameter 10 and the parameter hashes of the replaced version in OUT parameter 11, if
+     * its parameter rows have been kept.
+     * @param stmt
+     * @param resource
+     * @param parameterHashes the hashes of the parameters of the resource, or null if it has none
+     * @throws SQLException
+     */
+    protected void setInsertParameters(CallableStatement stmt, Resource resource, ParameterHashes parameterHashes) throws SQLException {
+        stmt.setString(1, resource.getResourceType());
+        stmt.setString(2, resource.getLogicalId());
+        stmt.setBytes(3, resource.getData());
+        stmt.setTimestamp(4, resource.getLastUpdated(), UTC);
+        stmt.setString(5, resource.isDeleted() ? "Y": "N");
+        stmt.setString(6, UUID.randomUUID().toString());
+        stmt.setInt(7, resource.getVersionId());
+        stmt.setString(8, parameterHashes == null ? null : parameterHashes.encode());
+        stmt.setString(9, resource.getResourceFingerprint());
+        stmt.registerOutParameter(10, Types.BIGINT);
+        stmt.registerOutParameter(11, Types.VARCHAR);
+    }
+
+    /**
+     * Get the statement used to call the add_any_resource stored procedure
+     * @return
+     */
+    protected String getInsertWithParametersSql() {
+        return String.format(SQL_INSERT_WITH_PARAMETERS, getSchemaName());
+    }
+
+    /**
+     * Create the visitor used to batch the inserts into the parameter tables of the given resource type
+     * @param connection
+     * @param resourceType
+     * @param logicalResourceId
+     * @param parameterDao
+     * @return
+     * @throws SQLException
+     */
+    protected ParameterVisitorBatchDAO createParameterVisitor(Connection connection, String resourceType, long logicalResourceId,
+            ParameterDAO parameterDao) throws SQLException {
+        // TODO FHIR_ADMIN schema name needs to come from the configuration/context
+        return new ParameterVisitorBatchDAO(connection, "FHIR_ADMIN", resourceType, true, logicalResourceId, 100,
+                new ParameterNameCacheAdapter(parameterDao), new CodeSystemCacheAdapter(parameterDao),
+                new LogicalResourceIdDAOImpl(connection, "FHIR_ADMIN", true));
+    }
 
     @Override
     public List<Resource> search(String sqlSelect) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
@@ -15,6 +15,7 @@ import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Timestamp;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -27,6 +28,7 @@ import com.ibm.fhir.persistence.exception.FHIRPersistenceVersionIdMismatchExcept
 import com.ibm.fhir.persistence.jdbc.connection.FHIRDbFlavor;
 import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
 import com.ibm.fhir.persistence.jdbc.dao.impl.CodeSystemCacheAdapter;
+import com.ibm.fhir.persistence.jdbc.dao.impl.LogicalResourceIdDAOImpl;
 import com.ibm.fhir.persistence.jdbc.dao.impl.ParameterNameCacheAdapter;
 import com.ibm.fhir.persistence.jdbc.dao.impl.ParameterVisitorBatchDAO;
 import com.ibm.fhir.persistence.jdbc.dao.impl.ResourceDAOImpl;
@@ -35,6 +37,7 @@ import com.ibm.fhir.persistence.jdbc.dto.Resource;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceFKVException;
+import com.ibm.fhir.persistence.jdbc.util.ParameterHashes;
 import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCache;
 
 /**
@@ -71,6 +74,24 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
         super(connection, schemaName, flavor, trxSynchRegistry);
     }
 
+    /**
+     * Inserts the passed FHIR Resources and their associated search parameters one at a time, because Derby
+     * doesn't use the add_any_resource stored procedure (see {@link #insert(Resource, List, ParameterDAO)}).
+     * @param resources The FHIR Resources to be inserted.
+     * @param parameters The search parameters to be inserted for each of the Resources.
+     * @param parameterDao
+     * @return The Resource DTOs
+     * @throws FHIRPersistenceException
+     */
+    @Override
+    public List<Resource> insertAll(List<Resource> resources, List<List<ExtractedParameterValue>> parameters, ParameterDAO parameterDao)
+            throws FHIRPersistenceException {
+        for (int i = 0; i < resources.size(); i++) {
+            insert(resources.get(i), parameters.get(i), parameterDao);
+        }
+        return resources;
+    }
+
     /**
      * Inserts the passed FHIR Resource and associated search parameters to a Derby or PostgreSql FHIR database.
      * The search parameters are stored first by calling the passed parameterDao. Then the Resource is stored
@@ -124,6 +145,7 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
                 resource.isDeleted(),
                 sourceKey,
                 resource.getVersionId(),
+                resource.getResourceFingerprint(),
                 connection,
                 parameterDao
                 );
@@ -189,18 +211,20 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
      * @param p_is_deleted
      * @param p_source_key
      * @param p_version
+     * @param p_resource_fingerprint
      *
      * @return the resource_id for the entry we created
      * @throws Exception
      */
     public long storeResource(String tablePrefix, List<ExtractedParameterValue> parameters, String p_logical_id, byte[] p_payload, Timestamp p_last_updated, boolean p_is_deleted,
-        String p_source_key, Integer p_version, Connection conn, ParameterDAO parameterDao) throws Exception {
+        String p_source_key, Integer p_version, String p_resource_fingerprint, Connection conn, ParameterDAO parameterDao) throws Exception {
 
         final String METHODNAME = "storeResource() for " + tablePrefix + " resource";
         logger.entering(CLASSNAME, METHODNAME);
 
         Long v_logical_resource_id = null;
         Long v_current_resource_id = null;
+        String v_current_parameter_hash = null;
         Long v_resource_id = null;
         Integer v_resource_type_id = null;
         boolean v_new_resource = false;
@@ -211,6 +235,10 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
 
         String v_resource_type = tablePrefix;
 
+        // The hashes of the new parameters, which let us keep the existing rows of the parameters which haven't changed
+        final ParameterHashes v_parameter_hashes = ParameterHashes.of(parameters);
+        ParameterHashes v_current_parameter_hashes = null;
+
         // Map the resource type name to the normalized id value in the database
         v_resource_type_id = getResourceTypeId(v_resource_type, conn);
         if (v_resource_type_id == null) {
@@ -305,20 +333,32 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
         if (!v_new_resource) {
             // existing resource.  We need to know the current version from the
             // resource-specific logical resources table.
-            final String sql3 = "SELECT current_resource_id FROM " + tablePrefix + "_logical_resources WHERE logical_resource_id = ?";
+            final String sql3 = "SELECT current_resource_id, parameter_hash FROM " + tablePrefix + "_logical_resources WHERE logical_resource_id = ?";
             try (PreparedStatement stmt = conn.prepareStatement(sql3)) {
                 stmt.setLong(1, v_logical_resource_id);
                 ResultSet rs = stmt.executeQuery();
                 if (rs.next()) {
                     v_current_resource_id = rs.getLong(1);
+                    v_current_parameter_hash = rs.getString(2);
                 }
                 else {
-                    // This database is broken, because we shouldn't have logical_resource records without
-                    // corresponding resource-specific logical_resource records.
-                    throw new SQLException("Logical_id record '" + p_logical_id + "' missing for resource " + tablePrefix);
+                    // The logical resource was reserved by a reference to it before the resource was created,
+                    // so this is the first version and we create the resource-specific record now
+                    v_new_resource = true;
                 }
             }
 
+            if (v_new_resource) {
+                final String sql5 = "INSERT INTO " + tablePrefix + "_logical_resources (logical_resource_id, logical_id) VALUES (?, ?)";
+                try (PreparedStatement stmt = conn.prepareStatement(sql5)) {
+                    stmt.setLong(1, v_logical_resource_id);
+                    stmt.setString(2, p_logical_id);
+                    stmt.executeUpdate();
+                }
+            }
+        }
+
+        if (!v_new_resource) {
             // so if we are storing a specific version, do a quick check to make
             // sure that this version doesn't currently exist. This is only done when processing
             // replication messages which might be duplicated. We want the operation to be idempotent,
@@ -356,8 +396,12 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
             //If we have been passed a version number, this means that this is a replicated
             //resource, and so we only need to delete parameters if the given version is
             // later than the current version
-            if (p_version == null || p_version > v_version) {
-                // existing resource, so need to delete all its parameters
+            if ((p_version == null || p_version > v_version) && v_current_parameter_hash != null) {
+                // keep the existing parameter rows, and only replace the rows of the parameters which have changed
+                v_current_parameter_hashes = ParameterHashes.decode(v_current_parameter_hash);
+            }
+            else if (p_version == null || p_version > v_version) {
+                // existing resource without parameter hashes, so need to delete all its parameters
                 // delete composites first, or else the foreign keys there restrict deletes on referenced tables
                 deleteFromParameterTable(conn, tablePrefix + "_composites", v_logical_resource_id);
                 deleteFromParameterTable(conn, tablePrefix + "_str_values", v_logical_resource_id);
@@ -366,6 +410,10 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
                 deleteFromParameterTable(conn, tablePrefix + "_latlng_values", v_logical_resource_id);
                 deleteFromParameterTable(conn, tablePrefix + "_token_values", v_logical_resource_id);
                 deleteFromParameterTable(conn, tablePrefix + "_quantity_values", v_logical_resource_id);
+                deleteFromParameterTable(conn, tablePrefix + "_ref_values", v_logical_resource_id);
+                deleteFromParameterTable(conn, "resource_str_values", v_logical_resource_id);
+                deleteFromParameterTable(conn, "resource_date_values", v_logical_resource_id);
+                deleteFromParameterTable(conn, "resource_token_values", v_logical_resource_id);
             }
         }
 
@@ -413,24 +461,25 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
         if (p_version == null || p_version > v_version) {
             //only update the logical resource if the resource we are adding supercedes the
             //current resource
-            String sql4 = "UPDATE " + tablePrefix + "_logical_resources SET current_resource_id = ? WHERE logical_resource_id = ?";
+            String sql4 = "UPDATE " + tablePrefix + "_logical_resources SET current_resource_id = ?, parameter_hash = ?, resource_fingerprint = ? WHERE logical_resource_id = ?";
             try (PreparedStatement stmt = conn.prepareStatement(sql4)) {
                 // bind parameters
                 stmt.setLong(1, v_resource_id);
-                stmt.setLong(2, v_logical_resource_id);
+                stmt.setString(2, v_parameter_hashes == null ? null : v_parameter_hashes.encode());
+                stmt.setString(3, p_resource_fingerprint);
+                stmt.setLong(4, v_logical_resource_id);
                 stmt.executeUpdate();
             }
 
             // To keep things simple for the Derby use-case, we just use a visitor to
             // handle inserts of parameters directly in the resource parameter tables.
             // Note we don't get any parameters for the resource soft-delete operation
-            if (parameters != null) {
+            if (!Objects.equals(v_parameter_hashes, v_current_parameter_hashes)) {
                 // Derby doesn't support partitioned multi-tenancy, so we disable it on the DAO:
                 try (ParameterVisitorBatchDAO pvd = new ParameterVisitorBatchDAO(conn, null, tablePrefix, false, v_logical_resource_id, 100,
-                    new ParameterNameCacheAdapter(parameterDao), new CodeSystemCacheAdapter(parameterDao))) {
-                    for (ExtractedParameterValue p: parameters) {
-                        p.accept(pvd);
-                    }
+                    new ParameterNameCacheAdapter(parameterDao), new CodeSystemCacheAdapter(parameterDao),
+                    new LogicalResourceIdDAOImpl(conn, null, false))) {
+                    pvd.replaceParameters(parameters, v_parameter_hashes, v_current_parameter_hashes);
                 }
             }
         }
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017,2019
+ * (C) Copyright IBM Corp. 2017, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -9,42 +9,40 @@ package com.ibm.fhir.persistence.jdbc.dto;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.search.SearchConstants.Type;
 
-public class ReferenceParmVal implements ExtractedParameterValue {
-    
-    private String resourceType;
-    private String name;
-    private String valueString;
-    
-    // The SearchParameter base type. If "Resource", then this is a Resource-level attribute
-    private String base;
+/**
+ * This class defines the Data Transfer Object representing a row in the X_STR_VALUES tables for a reference
+ * search parameter. Local references (type/id) also get a row in the X_REF_VALUES tables.
+ */
+public class ReferenceParmVal extends StringParmVal {
+
+    // The target of a local reference, otherwise null
+    private String refResourceType;
+    private String refLogicalId;
 
     public ReferenceParmVal() {
         super();
     }
 
-    public void setName(String name) {
-        this.name = name;
-    }
-
-    public String getName() {
-        return name;
-    }
-
-    public String getValueString() {
-        return valueString;
+    /**
+     * @return the resource type of the reference target, or null if this isn't a local reference
+     */
+    public String getRefResourceType() {
+        return refResourceType;
     }
 
-    public void setValueString(String valueString) {
-        this.valueString = valueString;
+    public void setRefResourceType(String refResourceType) {
+        this.refResourceType = refResourceType;
     }
 
-
-    public String getResourceType() {
-        return resourceType;
+    /**
+     * @return the logical id of the reference target, or null if this isn't a local reference
+     */
+    public String getRefLogicalId() {
+        return refLogicalId;
     }
 
-    public void setResourceType(String resourceType) {
-        this.resourceType = resourceType;
+    public void setRefLogicalId(String refLogicalId) {
+        this.refLogicalId = refLogicalId;
     }
 
     public Type getType() {
@@ -54,21 +52,8 @@ public class ReferenceParmVal implements ExtractedParameterValue {
     /**
      * We know our type, so we can call the correct method on the visitor
      */
+    @Override
     public void accept(ExtractedParameterValueVisitor visitor) throws FHIRPersistenceException {
-//        visitor.visit(this);
-    }
-
-    /**
-     * @return the base
-     */
-    public String getBase() {
-        return base;
-    }
-
-    /**
-     * @param base the base to set
-     */
-    public void setBase(String base) {
-        this.base = base;
+        visitor.visit(this);
     }
 }
@@ -20,6 +20,7 @@ public class Resource {
     private Timestamp lastUpdated;
     private byte[] data;
     private boolean deleted;
+    private String resourceFingerprint;
 
     
     public Resource() {
@@ -82,6 +83,17 @@ public class Resource {
         this.deleted = deleted;
     }
     
+    /**
+     * @return the salted fingerprint of the resource (salt:hash), or null if it wasn't fingerprinted
+     */
+    public String getResourceFingerprint() {
+        return resourceFingerprint;
+    }
+
+    public void setResourceFingerprint(String resourceFingerprint) {
+        this.resourceFingerprint = resourceFingerprint;
+    }
+
     @Override
     public String toString() {
         return "Resource [id=" + id + ", logicalId=" + logicalId + ", versionId=" + versionId + ", resourceType="
@@ -8,17 +8,20 @@ package com.ibm.fhir.persistence.jdbc.impl;
 
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_ENABLE_CODE_SYSTEMS_CACHE;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_ENABLE_PARAMETER_NAMES_CACHE;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_ENABLE_POSTGRESQL_COPY;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_ENABLE_RESOURCE_TYPES_CACHE;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_SKIP_UNCHANGED_UPDATES;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_UPDATE_CREATE_ENABLED;
 import static com.ibm.fhir.model.type.String.string;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.MAX_NUM_OF_COMPOSITE_COMPONENTS;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Timestamp;
 import java.time.ZoneOffset;
 import java.time.temporal.TemporalAccessor;
@@ -27,6 +30,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -35,8 +39,6 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import javax.naming.InitialContext;
 import javax.transaction.TransactionSynchronizationRegistry;
@@ -71,6 +73,7 @@ import com.ibm.fhir.model.type.code.IssueSeverity;
 import com.ibm.fhir.model.type.code.IssueType;
 import com.ibm.fhir.model.type.code.SearchParamType;
 import com.ibm.fhir.model.util.FHIRUtil;
+import com.ibm.fhir.model.util.RawResource;
 import com.ibm.fhir.model.util.JsonSupport;
 import com.ibm.fhir.model.visitor.Visitable;
 import com.ibm.fhir.path.FHIRPathNode;
@@ -87,8 +90,11 @@ import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceNotSupportedException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceDeletedException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceNotFoundException;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
 import com.ibm.fhir.persistence.jdbc.FHIRResourceDAOFactory;
 import com.ibm.fhir.persistence.jdbc.JDBCConstants;
+import com.ibm.fhir.persistence.jdbc.codec.PayloadCodec;
+import com.ibm.fhir.persistence.jdbc.codec.PayloadCodecs;
 import com.ibm.fhir.persistence.jdbc.connection.Action;
 import com.ibm.fhir.persistence.jdbc.connection.FHIRDbConnectionStrategy;
 import com.ibm.fhir.persistence.jdbc.connection.FHIRDbProxyDatasourceConnectionStrategy;
@@ -112,21 +118,34 @@ import com.ibm.fhir.persistence.jdbc.dto.TokenParmVal;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceFKVException;
+import com.ibm.fhir.persistence.jdbc.postgresql.PostgreSqlResourceDAO;
 import com.ibm.fhir.persistence.jdbc.util.CodeSystemsCache;
 import com.ibm.fhir.persistence.jdbc.util.JDBCParameterBuildingVisitor;
 import com.ibm.fhir.persistence.jdbc.util.JDBCQueryBuilder;
 import com.ibm.fhir.persistence.jdbc.util.LogicalIdentityProvider;
+import com.ibm.fhir.persistence.jdbc.util.ParallelResourceDecoder;
 import com.ibm.fhir.persistence.jdbc.util.ParameterNamesCache;
+import com.ibm.fhir.persistence.jdbc.util.QuerySegmentAggregatorFactory;
+import com.ibm.fhir.persistence.jdbc.util.ResourceCache;
+import com.ibm.fhir.persistence.jdbc.util.ResourceCacheInvalidator;
 import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCache;
+import com.ibm.fhir.persistence.jdbc.util.SearchCountCache;
+import com.ibm.fhir.persistence.jdbc.util.SortedQuerySegmentAggregator;
 import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
 import com.ibm.fhir.persistence.jdbc.util.TimestampPrefixedUUID;
+import com.ibm.fhir.persistence.jdbc.util.type.LastUpdatedParmBehaviorUtil;
 import com.ibm.fhir.persistence.util.FHIRPersistenceUtil;
+import com.ibm.fhir.persistence.util.ResourceFingerprintVisitor;
+import com.ibm.fhir.persistence.util.SaltHash;
 import com.ibm.fhir.search.SearchConstants;
 import com.ibm.fhir.search.SearchConstants.Modifier;
 import com.ibm.fhir.search.SummaryValueSet;
+import com.ibm.fhir.search.TotalValueSet;
 import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.cursor.SearchCursor;
 import com.ibm.fhir.search.date.DateTimeHandler;
 import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.parameters.SortParameter;
 import com.ibm.fhir.search.util.SearchUtil;
 
 /**
@@ -194,6 +213,8 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                                     Boolean.TRUE));
         ResourceTypesCache.setEnabled(fhirConfig.getBooleanProperty(PROPERTY_JDBC_ENABLE_RESOURCE_TYPES_CACHE,
                                       Boolean.TRUE));
+        PostgreSqlResourceDAO.setCopyEnabled(fhirConfig.getBooleanProperty(PROPERTY_JDBC_ENABLE_POSTGRESQL_COPY,
+                                             Boolean.TRUE));
 
         // Set up the connection strategy for use within a JEE container. The actions
         // are processed the first time a connection is established to a particular tenant/datasource.
@@ -316,11 +337,13 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             resourceDTO.setResourceType(updatedResource.getClass().getSimpleName());
 
             // Serialize and compress the Resource
-            GZIPOutputStream zipStream = new GZIPOutputStream(stream);
-            FHIRGenerator.generator( Format.JSON, false).generate(updatedResource, zipStream);
-            zipStream.finish();
+            try (OutputStream out = PayloadCodecs.getInstance().getCodec().encode(stream, updatedResource.getClass().getSimpleName())) {
+                FHIRGenerator.generator(Format.JSON, false).generate(updatedResource, out);
+            }
             resourceDTO.setData(stream.toByteArray());
-            zipStream.close();
+            if (isSkipUnchangedUpdatesEnabled()) {
+                resourceDTO.setResourceFingerprint(computeFingerprint(updatedResource, null).toString());
+            }
 
             // The DAO objects are now created on-the-fly (not expensive to construct) and
             // given the connection to use while processing this request
@@ -374,7 +397,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
      * @throws FHIRPersistenceException
      * @throws FHIRPersistenceDataAccessException
      */
-    private ResourceDAO makeResourceDAO(Connection connection) throws FHIRPersistenceDataAccessException, FHIRPersistenceException, IllegalArgumentException {
+    protected ResourceDAO makeResourceDAO(Connection connection) throws FHIRPersistenceDataAccessException, FHIRPersistenceException, IllegalArgumentException {
         if (this.trxSynchRegistry != null) {
             return FHIRResourceDAOFactory.getResourceDAO(connection, schemaNameSupplier.getSchemaForRequestContext(connection), connectionStrategy.getFlavor(), this.trxSynchRegistry);
         } else {
@@ -417,11 +440,53 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             // Assume we have no existing resource.
             int existingVersion = 0;
 
+            // The fingerprint of the new resource, if unchanged updates are being skipped for this tenant
+            SaltHash fingerprint = null;
+
             // Compute the new version # from the existing version #.
 
+            // If unchanged updates are skipped, then compare the fingerprint of the new resource with the
+            // fingerprint of the existing version and return the existing version if the resource hasn't changed.
+            // The "previous resource" of the persistence event is fingerprinted when it is set, otherwise
+            // the existing version # is read along with the stored fingerprint of the existing version.
+            if (isSkipUnchangedUpdatesEnabled()) {
+                FHIRPersistenceEvent event = context.getPersistenceEvent();
+                if (event != null && event.isPrevFhirResourceSet()) {
+                    Resource existingResource = event.getPrevFhirResource();
+                    if (existingResource != null) {
+                        log.fine("Using pre-fetched 'previous' resource.");
+                        existingVersion = Integer.valueOf(existingResource.getMeta().getVersionId().getValue());
+                        if (!Boolean.TRUE.equals(event.getProperty(FHIRPersistenceEvent.PROPNAME_PREV_RESOURCE_DELETED))) {
+                            SaltHash existingFingerprint = computeFingerprint(existingResource, null);
+                            fingerprint = computeFingerprint(resource, existingFingerprint);
+                            if (fingerprint.equals(existingFingerprint)) {
+                                return buildUnchangedResult(resource, logicalId, existingVersion,
+                                    existingResource.getMeta().getLastUpdated());
+                            }
+                        }
+                    }
+                } else {
+                    existingResourceDTO = resourceDao.readFingerprint(logicalId, resourceType.getSimpleName());
+                    if (existingResourceDTO != null) {
+                        existingVersion = existingResourceDTO.getVersionId();
+                        if (!existingResourceDTO.isDeleted() && existingResourceDTO.getResourceFingerprint() != null) {
+                            SaltHash existingFingerprint = new SaltHash(existingResourceDTO.getResourceFingerprint());
+                            fingerprint = computeFingerprint(resource, existingFingerprint);
+                            if (fingerprint.equals(existingFingerprint)) {
+                                return buildUnchangedResult(resource, logicalId, existingVersion,
+                                    Instant.of(existingResourceDTO.getLastUpdated().toInstant().atZone(ZoneOffset.UTC)));
+                            }
+                        }
+                    }
+                }
+                if (fingerprint == null) {
+                    fingerprint = computeFingerprint(resource, null);
+                }
+            }
+
             // If the "previous resource" is set in the persistence event, then get the
             // existing version # from that.
-            if (context.getPersistenceEvent() != null && context.getPersistenceEvent().isPrevFhirResourceSet()) {
+            else if (context.getPersistenceEvent() != null && context.getPersistenceEvent().isPrevFhirResourceSet()) {
                 Resource existingResource = context.getPersistenceEvent().getPrevFhirResource();
                 if (existingResource != null) {
                     log.fine("Using pre-fetched 'previous' resource.");
@@ -480,13 +545,16 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             resourceDTO.setResourceType(updatedResource.getClass().getSimpleName());
 
             // Serialize and compress the Resource
-            GZIPOutputStream zipStream = new GZIPOutputStream(stream);
-            FHIRGenerator.generator(Format.JSON, false).generate(updatedResource, zipStream);
-            zipStream.finish();
+            try (OutputStream out = PayloadCodecs.getInstance().getCodec().encode(stream, updatedResource.getClass().getSimpleName())) {
+                FHIRGenerator.generator(Format.JSON, false).generate(updatedResource, out);
+            }
             resourceDTO.setData(stream.toByteArray());
-            zipStream.close();
+            if (fingerprint != null) {
+                resourceDTO.setResourceFingerprint(fingerprint.toString());
+            }
 
             // Persist the Resource DTO.
+            invalidateCachedResource(resourceDTO.getResourceType(), logicalId, newVersionNumber);
             resourceDao.setPersistenceContext(context);
             resourceDao.insert(resourceDTO, this.extractSearchParameters(updatedResource, resourceDTO), parameterDao);
             if (log.isLoggable(Level.FINE)) {
@@ -525,6 +593,328 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         }
     }
 
+    /**
+     * Whether updates which don't change the resource should return the existing version instead of creating
+     * a new one, for the tenant of the current request
+     * @return
+     */
+    private boolean isSkipUnchangedUpdatesEnabled() {
+        return FHIRConfigHelper.getBooleanProperty(PROPERTY_JDBC_SKIP_UNCHANGED_UPDATES, Boolean.FALSE);
+    }
+
+    /**
+     * Compute the fingerprint of the resource, ignoring its id, meta.versionId and meta.lastUpdated
+     * @param resource
+     * @param baseline the fingerprint whose salt should be used, or null to use a new salt
+     * @return
+     */
+    private SaltHash computeFingerprint(Resource resource, SaltHash baseline) {
+        ResourceFingerprintVisitor visitor = baseline == null ? new ResourceFingerprintVisitor() : new ResourceFingerprintVisitor(baseline);
+        resource.accept(visitor);
+        return visitor.getSaltAndHash();
+    }
+
+    /**
+     * Build the result of an update which didn't change the resource. The given resource is returned with the
+     * meta.versionId and meta.lastUpdated of the existing version, which makes it the same as the stored resource.
+     * @param resource
+     * @param logicalId
+     * @param existingVersion
+     * @param existingLastUpdated
+     * @return
+     */
+    private <T extends Resource> SingleResourceResult<T> buildUnchangedResult(T resource, String logicalId,
+            int existingVersion, Instant existingLastUpdated) {
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Skipping unchanged update of FHIR Resource '" + resource.getClass().getSimpleName() + "/"
+                    + logicalId + "', version=" + existingVersion);
+        }
+
+        Meta meta = resource.getMeta();
+        Meta.Builder metaBuilder = meta == null ? Meta.builder() : meta.toBuilder();
+        metaBuilder.versionId(Id.of(Integer.toString(existingVersion)));
+        metaBuilder.lastUpdated(existingLastUpdated);
+
+        @SuppressWarnings("unchecked")
+        T existingResource = (T) resource.toBuilder().meta(metaBuilder.build()).build();
+
+        List<OperationOutcome.Issue> issues = new ArrayList<>(supplementalIssues);
+        issues.add(FHIRUtil.buildOperationOutcomeIssue(IssueSeverity.INFORMATION, IssueType.INFORMATIONAL,
+                "Update skipped because the resource is unchanged from version " + existingVersion));
+
+        return new SingleResourceResult.Builder<T>()
+                .success(true)
+                .unchanged(true)
+                .resource(existingResource)
+                .outcome(OperationOutcome.builder()
+                .issue(issues)
+                    .build())
+                .build();
+    }
+
+    @Override
+    public <T extends Resource> List<SingleResourceResult<T>> createOrUpdateAll(FHIRPersistenceContext context, List<T> resources)
+            throws FHIRPersistenceException {
+        final String METHODNAME = "createOrUpdateAll";
+        log.entering(CLASSNAME, METHODNAME);
+
+        List<SingleResourceResult<T>> results = new ArrayList<>(Collections.nCopies(resources.size(), null));
+
+        try (Connection connection = openConnection()) {
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            ParameterDAO parameterDao = makeParameterDAO(connection);
+            boolean fingerprintResources = isSkipUnchangedUpdatesEnabled();
+
+            // Fetch the existing version # of all the resources being updated, using one query per resource type
+            // instead of reading each of the resources in turn.
+            Map<String, Set<String>> logicalIdsByType = new HashMap<>();
+            for (T resource : resources) {
+                if (resource.getId() != null) {
+                    logicalIdsByType.computeIfAbsent(resource.getClass().getSimpleName(), k -> new HashSet<>()).add(resource.getId());
+                }
+            }
+            Map<String, Map<String, Integer>> versionIdsByType = new HashMap<>();
+            for (Entry<String, Set<String>> entry : logicalIdsByType.entrySet()) {
+                versionIdsByType.put(entry.getKey(), new HashMap<>(resourceDao.readCurrentVersionIds(entry.getKey(), entry.getValue())));
+            }
+
+            PayloadCodec codec = PayloadCodecs.getInstance().getCodec();
+            List<Integer> indexes = new ArrayList<>(resources.size());
+            List<T> updatedResources = new ArrayList<>(resources.size());
+            List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOs = new ArrayList<>(resources.size());
+            List<List<ExtractedParameterValue>> parameters = new ArrayList<>(resources.size());
+            for (int i = 0; i < resources.size(); i++) {
+                T resource = resources.get(i);
+                String resourceTypeName = resource.getClass().getSimpleName();
+                Resource.Builder resultResourceBuilder = resource.toBuilder();
+                String logicalId = resource.getId();
+                int newVersionNumber;
+
+                if (logicalId == null) {
+                    // Same as create(): a brand new FHIR Resource with a system-generated id.
+                    logicalId = logicalIdentityProvider.createNewIdentityValue();
+                    resultResourceBuilder.id(logicalId);
+                    newVersionNumber = 1;
+                } else {
+                    Map<String, Integer> versionIds = versionIdsByType.get(resourceTypeName);
+                    Integer existingVersion = versionIds.get(logicalId);
+
+                    // Same as update(): if this logical resource didn't exist and the "updateCreate" feature
+                    // is not enabled, then this is an error. Report it for this resource only.
+                    if (existingVersion == null && !updateCreateEnabled) {
+                        String msg = "Resource '" + resourceTypeName + "/" + logicalId + "' not found.";
+                        log.log(Level.SEVERE, msg);
+                        results.set(i, new SingleResourceResult.Builder<T>()
+                                .success(false)
+                                .outcome(OperationOutcome.builder()
+                                    .issue(FHIRUtil.buildOperationOutcomeIssue(msg, IssueType.NOT_FOUND))
+                                    .build())
+                                .build());
+                        continue;
+                    }
+
+                    newVersionNumber = (existingVersion == null ? 0 : existingVersion) + 1;
+                }
+
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Storing new FHIR Resource '" + resourceTypeName + "/" + logicalId + "', version=" + newVersionNumber);
+                }
+
+                // Set the resource meta fields.
+                Instant lastUpdated = Instant.now(ZoneOffset.UTC);
+                Meta meta = resource.getMeta();
+                Meta.Builder metaBuilder = meta == null ? Meta.builder() : meta.toBuilder();
+                metaBuilder.versionId(Id.of(Integer.toString(newVersionNumber)));
+                metaBuilder.lastUpdated(lastUpdated);
+                resultResourceBuilder.meta(metaBuilder.build());
+
+                @SuppressWarnings("unchecked")
+                T updatedResource = (T) resultResourceBuilder.build();
+
+                // Create the new Resource DTO instance.
+                com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO = new com.ibm.fhir.persistence.jdbc.dto.Resource();
+                resourceDTO.setLogicalId(logicalId);
+                resourceDTO.setVersionId(newVersionNumber);
+                Timestamp timestamp = FHIRUtilities.convertToTimestamp(lastUpdated.getValue());
+                resourceDTO.setLastUpdated(timestamp);
+                resourceDTO.setResourceType(resourceTypeName);
+
+                // Serialize and compress the Resource and extract its search parameters. A failure here is
+                // caused by the content of this resource, so report it for this resource only.
+                List<ExtractedParameterValue> resourceParameters;
+                try {
+                    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                    try (OutputStream out = codec.encode(stream, updatedResource.getClass().getSimpleName())) {
+                        FHIRGenerator.generator(Format.JSON, false).generate(updatedResource, out);
+                    }
+                    resourceDTO.setData(stream.toByteArray());
+                    if (fingerprintResources) {
+                        // so that a later update() of the resource can tell whether it has changed
+                        resourceDTO.setResourceFingerprint(computeFingerprint(updatedResource, null).toString());
+                    }
+                    resourceParameters = this.extractSearchParameters(updatedResource, resourceDTO);
+                } catch (Exception e) {
+                    String msg = "Unable to store resource '" + resourceTypeName + "/" + logicalId + "': " + e.getMessage();
+                    log.log(Level.WARNING, msg, e);
+                    results.set(i, new SingleResourceResult.Builder<T>()
+                            .success(false)
+                            .outcome(OperationOutcome.builder()
+                                .issue(FHIRUtil.buildOperationOutcomeIssue(msg, IssueType.INVALID))
+                                .build())
+                            .build());
+                    continue;
+                }
+
+                if (resource.getId() != null) {
+                    // A later entry for the same resource in this list is a new version of this one
+                    versionIdsByType.get(resourceTypeName).put(logicalId, newVersionNumber);
+                    invalidateCachedResource(resourceTypeName, logicalId, newVersionNumber);
+                }
+
+                indexes.add(i);
+                updatedResources.add(updatedResource);
+                resourceDTOs.add(resourceDTO);
+                parameters.add(resourceParameters);
+            }
+
+            // Persist the Resource DTOs.
+            Map<Integer, FHIRPersistenceException> failures = Collections.emptyMap();
+            if (!resourceDTOs.isEmpty()) {
+                resourceDao.setPersistenceContext(context);
+                failures = insertAll(connection, resourceDao, parameterDao, resourceDTOs, parameters);
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Persisted " + (resourceDTOs.size() - failures.size()) + " FHIR Resources");
+                }
+            }
+
+            for (int j = 0; j < indexes.size(); j++) {
+                FHIRPersistenceException failure = failures.get(j);
+                if (failure != null) {
+                    results.set(indexes.get(j), new SingleResourceResult.Builder<T>()
+                            .success(false)
+                            .outcome(FHIRUtil.buildOperationOutcome(failure, false))
+                            .build());
+                    continue;
+                }
+                SingleResourceResult.Builder<T> resultBuilder = new SingleResourceResult.Builder<T>()
+                        .success(true)
+                        .resource(updatedResources.get(j));
+
+                // Add supplemental issues to an OperationOutcome
+                if (!supplementalIssues.isEmpty()) {
+                    resultBuilder.outcome(OperationOutcome.builder()
+                        .issue(supplementalIssues)
+                        .build());
+                }
+                results.set(indexes.get(j), resultBuilder.build());
+            }
+
+            return results;
+        }
+        catch(FHIRPersistenceFKVException e) {
+            log.log(Level.SEVERE, this.performCacheDiagnostics());
+            throw e;
+        }
+        catch(FHIRPersistenceException e) {
+            throw e;
+        }
+        catch(Throwable e) {
+            // don't chain the exception to avoid leaking secrets
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a createOrUpdateAll operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+        finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * Insert the resources with {@link ResourceDAO#insertAll(List, List, ParameterDAO)}. When that fails, the
+     * connection is rolled back to a savepoint taken before the insert and the resources are inserted again one at a
+     * time, each under its own savepoint, so that a resource which can't be stored doesn't fail the others. If the
+     * connection doesn't support savepoints (e.g. it is enlisted in a global transaction), the failure is thrown.
+     *
+     * @return the exception of each resource which could not be inserted, keyed by its position in resourceDTOs
+     */
+    private Map<Integer, FHIRPersistenceException> insertAll(Connection connection, ResourceDAO resourceDao, ParameterDAO parameterDao,
+            List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOs, List<List<ExtractedParameterValue>> parameters)
+            throws FHIRPersistenceException {
+        Savepoint savepoint = setSavepoint(connection);
+        try {
+            resourceDao.insertAll(resourceDTOs, parameters, parameterDao);
+            releaseSavepoint(connection, savepoint);
+            return Collections.emptyMap();
+        } catch (FHIRPersistenceDBConnectException e) {
+            throw e;
+        } catch (FHIRPersistenceException e) {
+            if (savepoint == null || resourceDTOs.size() == 1) {
+                throw e;
+            }
+            log.warning("Failed to insert " + resourceDTOs.size() + " resources together; inserting them one at a time");
+            rollbackToSavepoint(connection, savepoint, resourceDao, parameterDao, e);
+        }
+
+        Map<Integer, FHIRPersistenceException> failures = new HashMap<>();
+        for (int i = 0; i < resourceDTOs.size(); i++) {
+            com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO = resourceDTOs.get(i);
+            savepoint = setSavepoint(connection);
+            try {
+                resourceDao.insert(resourceDTO, parameters.get(i), parameterDao);
+                releaseSavepoint(connection, savepoint);
+            } catch (FHIRPersistenceDBConnectException e) {
+                throw e;
+            } catch (FHIRPersistenceException e) {
+                if (savepoint == null) {
+                    throw e;
+                }
+                log.warning("Failed to insert resource '" + resourceDTO.getResourceType() + "/" + resourceDTO.getLogicalId() + "'");
+                rollbackToSavepoint(connection, savepoint, resourceDao, parameterDao, e);
+                failures.put(i, e);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @return a new savepoint or null if the connection doesn't support savepoints
+     */
+    private Savepoint setSavepoint(Connection connection) {
+        try {
+            return connection.setSavepoint();
+        } catch (SQLException e) {
+            log.fine("Unable to set a savepoint: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void releaseSavepoint(Connection connection, Savepoint savepoint) {
+        if (savepoint != null) {
+            try {
+                connection.releaseSavepoint(savepoint);
+            } catch (SQLException e) {
+                // the savepoint is released when the transaction ends anyway
+                log.fine("Unable to release a savepoint: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Roll back to the savepoint and discard the ids cached since it was set, because their rows may have been
+     * rolled back too.
+     */
+    private void rollbackToSavepoint(Connection connection, Savepoint savepoint, ResourceDAO resourceDao, ParameterDAO parameterDao,
+            FHIRPersistenceException failure) throws FHIRPersistenceException {
+        try {
+            connection.rollback(savepoint);
+        } catch (SQLException e) {
+            log.log(Level.SEVERE, "Unable to roll back to a savepoint", e);
+            throw failure;
+        }
+        resourceDao.clearResourceTypeCacheCandidates();
+        parameterDao.clearCacheCandidates();
+    }
+
     @Override
     public MultiResourceResult<Resource> search(FHIRPersistenceContext context, Class<? extends Resource> resourceType)
             throws FHIRPersistenceException {
@@ -540,6 +930,10 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         int searchResultCount = 0;
         SqlQueryData countQuery;
         SqlQueryData query;
+        TotalValueSet total;
+        boolean countOnly;
+        boolean lookAhead = false;
+        boolean hasNextPage = false;
 
         try (Connection connection = openConnection()) {
             ResourceDAO resourceDao = makeResourceDAO(connection);
@@ -550,13 +944,31 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
 
             countQuery = queryBuilder.buildCountQuery(resourceType, searchContext);
             if (countQuery != null) {
-                searchResultCount = resourceDao.searchCount(countQuery);
+                // For _summary=count or pageSize == 0, we return only the count
+                countOnly = SummaryValueSet.COUNT.equals(searchContext.getSummaryParameter()) || searchContext.getPageSize() == 0;
+                total = getTotalMode(searchContext, countOnly);
+
+                if (total == TotalValueSet.ESTIMATE) {
+                    Integer estimate = resourceDao.estimateCount(countQuery);
+                    if (estimate != null) {
+                        searchResultCount = estimate;
+                        lookAhead = !countOnly;
+                    } else {
+                        total = TotalValueSet.ACCURATE;
+                    }
+                } else if (total == TotalValueSet.NONE) {
+                    lookAhead = true;
+                }
+                if (total == TotalValueSet.ACCURATE) {
+                    searchResultCount = countSearchResults(resourceDao, countQuery);
+                }
                 if (log.isLoggable(Level.FINE)) {
-                    log.fine("searchResultCount = " + searchResultCount);
+                    log.fine("searchResultCount = " + searchResultCount + ", total = " + total.value());
                 }
                 searchContext.setTotalCount(searchResultCount);
 
-                List<OperationOutcome.Issue> issues = validatePagingContext(searchContext);
+                // Without an accurate count, whether there is a next page is determined by fetching one more result
+                List<OperationOutcome.Issue> issues = validatePagingContext(searchContext, !lookAhead);
                 if (!issues.isEmpty()) {
                     resultBuilder.outcome(OperationOutcome.builder()
                         .issue(issues)
@@ -566,11 +978,8 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                     }
                 }
 
-                // For _summary=count or pageSize == 0, we return only the count
-                if (searchResultCount > 0
-                        && !SummaryValueSet.COUNT.equals(searchContext.getSummaryParameter())
-                        && searchContext.getPageSize() > 0) {
-                    query = queryBuilder.buildQuery(resourceType, searchContext);
+                if ((searchResultCount > 0 || lookAhead) && !countOnly) {
+                    query = queryBuilder.buildQuery(resourceType, searchContext, lookAhead);
 
                     List<String> elements = searchContext.getElementsParameters();
 
@@ -603,14 +1012,42 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                         // Sorting results of a system-level search is limited, and has a different logic path
                         // than other sorted searches.
                         if (resourceType.equals(Resource.class)) {
-                           resources = this.convertResourceDTOList(resourceDao.search(query), resourceType, elements);
+                            unsortedResultsList = resourceDao.search(query);
+                            hasNextPage = lookAhead && removeLookAheadResult(unsortedResultsList, searchContext.getPageSize());
+                            resources = this.convertResourceDTOList(unsortedResultsList, resourceType, elements);
+
+                            if (mayHaveNextPage(searchContext, unsortedResultsList.size(), lookAhead, hasNextPage)) {
+                                com.ibm.fhir.persistence.jdbc.dto.Resource last = unsortedResultsList.get(unsortedResultsList.size() - 1);
+                                setNextCursor(searchContext, resourceType, last.getId(), getSystemLevelSortValues(searchContext, last));
+                            }
                         } else {
-                            sortedIdList = resourceDao.searchForIds(query);
+                            // The sort key values of each result follow its id
+                            List<Object[]> sortedRows = resourceDao.searchForIdsAndValues(query);
+                            hasNextPage = lookAhead && removeLookAheadResult(sortedRows, searchContext.getPageSize());
+                            sortedIdList = new ArrayList<>(sortedRows.size());
+                            for (Object[] row : sortedRows) {
+                                sortedIdList.add((Long) row[0]);
+                            }
                             resources = this.buildSortedFhirResources(resourceDao, context, resourceType, sortedIdList, elements);
+
+                            if (mayHaveNextPage(searchContext, sortedRows.size(), lookAhead, hasNextPage)) {
+                                Object[] last = sortedRows.get(sortedRows.size() - 1);
+                                setNextCursor(searchContext, resourceType, (Long) last[0], Arrays.asList(last).subList(1, last.length));
+                            }
                         }
                     } else {
                         unsortedResultsList = resourceDao.search(query);
+                        hasNextPage = lookAhead && removeLookAheadResult(unsortedResultsList, searchContext.getPageSize());
                         resources = this.convertResourceDTOList(unsortedResultsList, resourceType, elements);
+
+                        if (mayHaveNextPage(searchContext, unsortedResultsList.size(), lookAhead, hasNextPage)) {
+                            long lastResourceId = unsortedResultsList.get(unsortedResultsList.size() - 1).getId();
+                            setNextCursor(searchContext, resourceType, lastResourceId, Collections.emptyList());
+                        }
+                    }
+
+                    if (lookAhead) {
+                        updatePagingContext(searchContext, total, resources.size(), hasNextPage);
                     }
                 }
             }
@@ -630,6 +1067,221 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         }
     }
 
+    @Override
+    public List<RawResource> searchRaw(FHIRPersistenceContext context, Class<? extends Resource> resourceType)
+            throws FHIRPersistenceException {
+        final String METHODNAME = "searchRaw";
+        log.entering(CLASSNAME, METHODNAME);
+
+        FHIRSearchContext searchContext = context.getSearchContext();
+
+        // Only searches whose results are read straight from the resources table, in RESOURCE_ID order, are supported
+        if (isSystemLevelSearch(resourceType)
+                || !QuerySegmentAggregatorFactory.supportsKeysetPagination(searchContext)
+                || searchContext.hasSortParameters()
+                || searchContext.getElementsParameters() != null
+                || searchContext.hasSummaryParameter()) {
+            log.exiting(CLASSNAME, METHODNAME);
+            return null;
+        }
+
+        List<RawResource> resources = new ArrayList<>();
+
+        try (Connection connection = openConnection()) {
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            ParameterDAO parameterDao = makeParameterDAO(connection);
+
+            checkModifiers(searchContext, false);
+            JDBCQueryBuilder queryBuilder = new JDBCQueryBuilder(parameterDao, resourceDao, connectionStrategy.getQueryHints());
+
+            SqlQueryData countQuery = queryBuilder.buildCountQuery(resourceType, searchContext);
+            if (countQuery != null) {
+                TotalValueSet total = getTotalMode(searchContext, searchContext.getPageSize() <= 0);
+                boolean lookAhead = false;
+                int searchResultCount = 0;
+
+                if (total == TotalValueSet.ESTIMATE) {
+                    Integer estimate = resourceDao.estimateCount(countQuery);
+                    if (estimate != null) {
+                        searchResultCount = estimate;
+                        lookAhead = true;
+                    } else {
+                        total = TotalValueSet.ACCURATE;
+                    }
+                } else if (total == TotalValueSet.NONE) {
+                    lookAhead = true;
+                }
+                if (total == TotalValueSet.ACCURATE) {
+                    searchResultCount = countSearchResults(resourceDao, countQuery);
+                }
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("searchResultCount = " + searchResultCount + ", total = " + total.value());
+                }
+                searchContext.setTotalCount(searchResultCount);
+
+                if ((searchResultCount > 0 || lookAhead) && searchContext.getPageSize() > 0
+                        && (lookAhead || searchContext.getPageNumber() <= searchContext.getLastPageNumber())) {
+                    SqlQueryData query = queryBuilder.buildQuery(resourceType, searchContext, lookAhead);
+                    List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOList = resourceDao.search(query);
+                    boolean hasNextPage = lookAhead && removeLookAheadResult(resourceDTOList, searchContext.getPageSize());
+                    PayloadCodecs payloadCodecs = PayloadCodecs.getInstance();
+                    for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : resourceDTOList) {
+                        resources.add(new RawResource(resourceType, resourceDTO.getLogicalId(), Integer.toString(resourceDTO.getVersionId()),
+                                resourceDTO.getLastUpdated().toInstant(), resourceDTO.getData(), payloadCodecs::decode));
+                    }
+
+                    if (mayHaveNextPage(searchContext, resourceDTOList.size(), lookAhead, hasNextPage)) {
+                        long lastResourceId = resourceDTOList.get(resourceDTOList.size() - 1).getId();
+                        setNextCursor(searchContext, resourceType, lastResourceId, Collections.emptyList());
+                    }
+
+                    if (lookAhead) {
+                        updatePagingContext(searchContext, total, resources.size(), hasNextPage);
+                    }
+                }
+            }
+
+            return resources;
+        } catch (FHIRPersistenceException e) {
+            throw e;
+        } catch (Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a search operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * Determines how the total count of a search is computed from its _total parameter. Searches which only return the
+     * count are never left uncounted, and searches with _include or _revinclude parameters are always counted accurately
+     * because the number of resources on their pages doesn't tell whether another page follows.
+     *
+     * @param searchContext
+     * @param countOnly true if the search returns only the count
+     * @return the total mode, which is ACCURATE if the search has no _total parameter
+     */
+    private TotalValueSet getTotalMode(FHIRSearchContext searchContext, boolean countOnly) {
+        TotalValueSet total = searchContext.hasTotalParameter() ? searchContext.getTotalParameter() : TotalValueSet.ACCURATE;
+        if (countOnly) {
+            return (total == TotalValueSet.NONE) ? TotalValueSet.ACCURATE : total;
+        }
+        if (searchContext.hasIncludeParameters() || searchContext.hasRevIncludeParameters()) {
+            return TotalValueSet.ACCURATE;
+        }
+        return total;
+    }
+
+    /**
+     * Runs the passed count query, or returns its result from the search count cache if the cache is enabled for the
+     * current tenant/datastore.
+     *
+     * @param resourceDao
+     * @param countQuery
+     * @return the count of resources matching the search
+     * @throws FHIRPersistenceException
+     */
+    private int countSearchResults(ResourceDAO resourceDao, SqlQueryData countQuery) throws FHIRPersistenceException {
+        SearchCountCache searchCountCache = SearchCountCache.getInstance();
+        if (searchCountCache == null) {
+            return resourceDao.searchCount(countQuery);
+        }
+
+        Integer count = searchCountCache.get(countQuery);
+        if (count == null) {
+            count = resourceDao.searchCount(countQuery);
+            searchCountCache.put(countQuery, count);
+        } else if (log.isLoggable(Level.FINE)) {
+            log.fine("Search count cache hit; count = " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Removes the extra result fetched by a look-ahead query, which is the first result of the next page.
+     *
+     * @param results the results of a look-ahead query
+     * @param pageSize
+     * @return true if the next page is not empty
+     */
+    /**
+     * A full page may be followed by another, which can be fetched by seeking past the last result.
+     *
+     * @param searchContext
+     * @param resultCount the number of results on the current page
+     * @param lookAhead true if the search fetched the first result of the next page
+     * @param hasNextPage true if the look-ahead query found a next page
+     * @return true if the search should issue a cursor for the next page
+     */
+    private boolean mayHaveNextPage(FHIRSearchContext searchContext, int resultCount, boolean lookAhead, boolean hasNextPage) {
+        return resultCount == searchContext.getPageSize() && (hasNextPage || !lookAhead)
+                && QuerySegmentAggregatorFactory.supportsKeysetPagination(searchContext);
+    }
+
+    /**
+     * Sets the cursor for the next page of a search, which is tied to the query of the search.
+     *
+     * @param searchContext
+     * @param resourceType
+     * @param lastResourceId the id of the last result on the current page
+     * @param lastSortValues the sort key values of the last result on the current page, or an empty list for an unsorted search
+     */
+    private void setNextCursor(FHIRSearchContext searchContext, Class<? extends Resource> resourceType, long lastResourceId,
+            List<Object> lastSortValues) {
+        String queryHash = SearchCursor.hashQuery(resourceType, searchContext);
+        searchContext.setNextCursor(new SearchCursor(searchContext.getPageNumber() + 1, queryHash, lastResourceId,
+                SortedQuerySegmentAggregator.encodeSortValues(lastSortValues)));
+    }
+
+    /**
+     * Returns the sort key values of a result of a sorted system-level search, which is sorted by _id and/or _lastUpdated.
+     */
+    private List<Object> getSystemLevelSortValues(FHIRSearchContext searchContext, com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO) {
+        List<Object> sortValues = new ArrayList<>();
+        for (SortParameter sortParameter : searchContext.getSortParameters()) {
+            if (LastUpdatedParmBehaviorUtil.LAST_UPDATED.equals(sortParameter.getCode())) {
+                sortValues.add(resourceDTO.getLastUpdated());
+            } else {
+                sortValues.add(resourceDTO.getLogicalId());
+            }
+        }
+        return sortValues;
+    }
+
+    private boolean removeLookAheadResult(List<?> results, int pageSize) {
+        if (results.size() > pageSize) {
+            results.subList(pageSize, results.size()).clear();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sets the last page number of a search which was paged without an accurate count, so that there is a next page
+     * only if the look-ahead query found one. An estimated count is corrected where it contradicts the results.
+     *
+     * @param searchContext
+     * @param total the total mode, NONE or ESTIMATE
+     * @param resultCount the number of results on the current page
+     * @param hasNextPage true if the next page is not empty
+     */
+    private void updatePagingContext(FHIRSearchContext searchContext, TotalValueSet total, int resultCount, boolean hasNextPage) {
+        int pageNumber = searchContext.getPageNumber();
+        searchContext.setLastPageNumber(hasNextPage ? pageNumber + 1 : pageNumber);
+
+        if (total == TotalValueSet.ESTIMATE) {
+            int precedingCount = (pageNumber - 1) * searchContext.getPageSize();
+            if (hasNextPage) {
+                // at least the results up to and including the first result of the next page
+                searchContext.setTotalCount(Math.max(searchContext.getTotalCount(), precedingCount + resultCount + 1));
+            } else if (resultCount > 0 || pageNumber == 1) {
+                // this is the last page, so the count is known
+                searchContext.setTotalCount(precedingCount + resultCount);
+            }
+        }
+    }
+
     /**
      * @return true if this instance represents a FHIR system level search
      */
@@ -743,11 +1395,10 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             resourceDTO.setVersionId(newVersionNumber);
 
             // Serialize and compress the Resource
-            GZIPOutputStream zipStream = new GZIPOutputStream(stream);
-            FHIRGenerator.generator(Format.JSON, false).generate(updatedResource, zipStream);
-            zipStream.finish();
+            try (OutputStream out = PayloadCodecs.getInstance().getCodec().encode(stream, updatedResource.getClass().getSimpleName())) {
+                FHIRGenerator.generator(Format.JSON, false).generate(updatedResource, out);
+            }
             resourceDTO.setData(stream.toByteArray());
-            zipStream.close();
 
             Timestamp timestamp = FHIRUtilities.convertToTimestamp(lastUpdated.getValue());
             resourceDTO.setLastUpdated(timestamp);
@@ -755,6 +1406,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             resourceDTO.setDeleted(true);
 
             // Persist the logically deleted Resource DTO.
+            invalidateCachedResource(resourceDTO.getResourceType(), logicalId, newVersionNumber);
             resourceDao.setPersistenceContext(context);
             resourceDao.insert(resourceDTO, null, null);
 
@@ -827,15 +1479,32 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             }
         }
 
+        // Resources filtered for _summary are not cached
+        ResourceCache resourceCache = (elements == null) ? getResourceCache(resourceType.getSimpleName()) : null;
+        if (resourceCache != null) {
+            Resource cachedResource = resourceCache.getCurrentVersion(resourceType.getSimpleName(), logicalId);
+            if (cachedResource != null) {
+                log.exiting(CLASSNAME, METHODNAME);
+                return new SingleResourceResult.Builder<T>()
+                        .success(true)
+                        .resource(resourceType.cast(cachedResource))
+                        .build();
+            }
+        }
+
         try (Connection connection = openConnection()) {
             ResourceDAO resourceDao = makeResourceDAO(connection);
 
+            long modificationCount = (resourceCache != null) ? resourceCache.getModificationCount(resourceType.getSimpleName()) : 0;
             resourceDTO = resourceDao.read(logicalId, resourceType.getSimpleName());
             if (resourceDTO != null && resourceDTO.isDeleted() && !context.includeDeleted()) {
                 throw new FHIRPersistenceResourceDeletedException("Resource '" +
                         resourceType.getSimpleName() + "/" + logicalId + "' is deleted.");
             }
             resource = this.convertResourceDTO(resourceDTO, resourceType, elements);
+            if (resourceCache != null && resource != null && !resourceDTO.isDeleted()) {
+                resourceCache.putCurrentVersion(resourceType.getSimpleName(), logicalId, resource, modificationCount);
+            }
 
             SingleResourceResult<T> result = new SingleResourceResult.Builder<T>()
                     .success(true)
@@ -938,6 +1607,22 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
      *     a list of operation outcome issues if the paging context has invalid parameters
      */
     private List<OperationOutcome.Issue> validatePagingContext(FHIRPagingContext pagingContext) {
+        return validatePagingContext(pagingContext, true);
+    }
+
+    /**
+     * Validates the paging context, as {@link #validatePagingContext(FHIRPagingContext)} does. If the total count is
+     * not known, the page number can't be compared to the last page number, which is set to the page number; it should
+     * be updated once the page has been fetched.
+     *
+     * @param pagingContext
+     *     the FHIRPagingContext instance (FHIRSearchContext or FHIRHistoryContext)
+     * @param totalCountKnown
+     *     true if the total count of the paging context is accurate
+     * @return
+     *     a list of operation outcome issues if the paging context has invalid parameters
+     */
+    private List<OperationOutcome.Issue> validatePagingContext(FHIRPagingContext pagingContext, boolean totalCountKnown) {
         List<OperationOutcome.Issue> issues = new ArrayList<>();
 
         int pageSize = pagingContext.getPageSize();
@@ -952,7 +1637,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             pagingContext.setPageSize(10);
         }
 
-        int lastPageNumber = Math.max(((pagingContext.getTotalCount() + pageSize - 1) / pageSize), 1);
+        int lastPageNumber = totalCountKnown ? Math.max(((pagingContext.getTotalCount() + pageSize - 1) / pageSize), 1) : Integer.MAX_VALUE;
         pagingContext.setLastPageNumber(lastPageNumber);
 
         int pageNumber = pagingContext.getPageNumber();
@@ -976,6 +1661,10 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             pagingContext.setPageNumber(lastPageNumber);
         }
 
+        if (!totalCountKnown) {
+            pagingContext.setLastPageNumber(pagingContext.getPageNumber());
+        }
+
         return issues;
     }
 
@@ -993,6 +1682,19 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO = null;
         int version;
 
+        // Specific versions never change, so they are cached until evicted
+        ResourceCache resourceCache = getResourceCache(resourceType.getSimpleName());
+        if (resourceCache != null) {
+            Resource cachedResource = getCachedVersion(resourceCache, resourceType.getSimpleName(), logicalId, versionId);
+            if (cachedResource != null) {
+                log.exiting(CLASSNAME, METHODNAME);
+                return new SingleResourceResult.Builder<T>()
+                        .success(true)
+                        .resource(resourceType.cast(cachedResource))
+                        .build();
+            }
+        }
+
         try (Connection connection = openConnection()) {
             ResourceDAO resourceDao = makeResourceDAO(connection);
 
@@ -1003,6 +1705,9 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                         resourceType.getSimpleName() + "/" + logicalId + "' version " + versionId + " is deleted.");
             }
             resource = this.convertResourceDTO(resourceDTO, resourceType, null);
+            if (resourceCache != null && resource != null && !resourceDTO.isDeleted()) {
+                resourceCache.putVersion(resourceType.getSimpleName(), logicalId, resource);
+            }
 
             SingleResourceResult<T> result = new SingleResourceResult.Builder<T>()
                     .success(true)
@@ -1027,6 +1732,130 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         }
     }
 
+    @Override
+    public RawResource readRaw(FHIRPersistenceContext context, Class<? extends Resource> resourceType, String logicalId)
+            throws FHIRPersistenceException {
+        final String METHODNAME = "readRaw";
+        log.entering(CLASSNAME, METHODNAME);
+
+        // Cached resources are served by read, which avoids the database altogether
+        if (getResourceCache(resourceType.getSimpleName()) != null) {
+            log.exiting(CLASSNAME, METHODNAME);
+            return null;
+        }
+
+        try (Connection connection = openConnection()) {
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO = resourceDao.read(logicalId, resourceType.getSimpleName());
+            return convertResourceDTOToRaw(resourceDTO, context, resourceType, logicalId, null);
+        }
+        catch(FHIRPersistenceResourceDeletedException | FHIRPersistenceResourceNotFoundException e) {
+            throw e;
+        }
+        catch(Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a read operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+        finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    @Override
+    public RawResource vreadRaw(FHIRPersistenceContext context, Class<? extends Resource> resourceType, String logicalId, String versionId)
+            throws FHIRPersistenceException {
+        final String METHODNAME = "vreadRaw";
+        log.entering(CLASSNAME, METHODNAME);
+
+        // Cached resources are served by vread, which avoids the database altogether
+        if (getResourceCache(resourceType.getSimpleName()) != null) {
+            log.exiting(CLASSNAME, METHODNAME);
+            return null;
+        }
+
+        try (Connection connection = openConnection()) {
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            int version = Integer.parseInt(versionId);
+            com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO = resourceDao.versionRead(logicalId, resourceType.getSimpleName(), version);
+            return convertResourceDTOToRaw(resourceDTO, context, resourceType, logicalId, versionId);
+        }
+        catch(FHIRPersistenceResourceDeletedException | FHIRPersistenceResourceNotFoundException e) {
+            throw e;
+        }
+        catch (NumberFormatException e) {
+            throw new FHIRPersistenceException("Invalid version id specified for vread operation: " + versionId);
+        }
+        catch(Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a version read operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+        finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * Wraps the stored data of the passed Resource DTO without parsing it.
+     * @param resourceDTO the Resource DTO that was read, or null if the resource (version) was not found
+     * @param context
+     * @param resourceType
+     * @param logicalId
+     * @param versionId the requested version, or null if the current version was requested
+     * @return the stored resource
+     * @throws FHIRPersistenceResourceNotFoundException if the resource (version) was not found
+     * @throws FHIRPersistenceResourceDeletedException if the resource (version) is deleted
+     * @throws IOException if the payload codecs could not be created
+     */
+    private RawResource convertResourceDTOToRaw(com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO, FHIRPersistenceContext context,
+            Class<? extends Resource> resourceType, String logicalId, String versionId) throws FHIRPersistenceException, IOException {
+        String resourceName = resourceType.getSimpleName() + "/" + logicalId + "'" + (versionId != null ? " version " + versionId : "");
+        if (resourceDTO == null) {
+            throw new FHIRPersistenceResourceNotFoundException("Resource '" + resourceName + " not found.");
+        }
+        if (resourceDTO.isDeleted() && !context.includeDeleted()) {
+            throw new FHIRPersistenceResourceDeletedException("Resource '" + resourceName + " is deleted.");
+        }
+        return new RawResource(resourceType, logicalId, Integer.toString(resourceDTO.getVersionId()),
+                resourceDTO.getLastUpdated().toInstant(), resourceDTO.getData(), PayloadCodecs.getInstance()::decode);
+    }
+
+    /**
+     * Returns the resource cache for the current tenant-datastore if it is enabled for the passed resource type.
+     * @param resourceType
+     * @return the resource cache, or null if resources of this type are not cached
+     */
+    private ResourceCache getResourceCache(String resourceType) {
+        ResourceCache resourceCache = ResourceCache.getInstance();
+        return (resourceCache != null && resourceCache.isCached(resourceType)) ? resourceCache : null;
+    }
+
+    /**
+     * Returns the cached version of a resource, or null if it is not cached or the version id is invalid (in which
+     * case the vread will fail as usual).
+     */
+    private Resource getCachedVersion(ResourceCache resourceCache, String resourceType, String logicalId, String versionId) {
+        try {
+            return resourceCache.getVersion(resourceType, logicalId, Integer.parseInt(versionId));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Removes the current version of a resource from the resource cache because a new version of it is being written.
+     * @param resourceType
+     * @param logicalId
+     * @param newVersionNumber
+     */
+    private void invalidateCachedResource(String resourceType, String logicalId, int newVersionNumber) {
+        ResourceCache resourceCache = getResourceCache(resourceType);
+        if (resourceCache != null) {
+            ResourceCacheInvalidator.invalidate(trxSynchRegistry, resourceCache, resourceType, logicalId, newVersionNumber);
+        }
+    }
+
     /**
      * This method takes the passed list of sorted Resource ids, acquires the Resource corresponding to each id, and returns those Resources in a List,
      * sorted according to the input sorted ids.
@@ -1047,6 +1876,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         Resource[] sortedFhirResources = new Resource[sortedIdList.size()];
         Resource fhirResource;
         int sortIndex;
+        List<Resource> fhirResources;
         List<Resource> sortedResourceList = new ArrayList<>();
         List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOList;
         Map<Long,Integer> idPositionMap = new HashMap<>();
@@ -1062,10 +1892,14 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
 
         // Convert the returned JPA Resources to FHIR Resources, and store each FHIRResource in its proper position
         // in the returned sorted resource list.
-        for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : resourceDTOList) {
-            fhirResource = this.convertResourceDTO(resourceDTO, resourceType, elements);
+        // the decoding threads don't have the request context, so the codecs of the tenant are looked up here
+        PayloadCodecs payloadCodecs = PayloadCodecs.getInstance();
+        fhirResources = ParallelResourceDecoder.decode(resourceDTOList,
+            resourceDTO -> this.convertResourceDTO(resourceDTO, resourceType, elements, payloadCodecs));
+        for (int i = 0; i < resourceDTOList.size(); i++) {
+            fhirResource = fhirResources.get(i);
             if (fhirResource != null) {
-                sortIndex = idPositionMap.get(resourceDTO.getId());
+                sortIndex = idPositionMap.get(resourceDTOList.get(i).getId());
                 sortedFhirResources[sortIndex] = fhirResource;
             }
         }
@@ -1108,9 +1942,13 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
 
         List<Resource> resources = new ArrayList<>();
         try {
-            for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : resourceDTOList) {
-                Resource existingResource = this.convertResourceDTO(resourceDTO, resourceType, elements);
-                if (resourceDTO.isDeleted()) {
+            // the decoding threads don't have the request context, so the codecs of the tenant are looked up here
+            PayloadCodecs payloadCodecs = PayloadCodecs.getInstance();
+            List<Resource> existingResources = ParallelResourceDecoder.decode(resourceDTOList,
+                resourceDTO -> this.convertResourceDTO(resourceDTO, resourceType, elements, payloadCodecs));
+            for (int i = 0; i < resourceDTOList.size(); i++) {
+                Resource existingResource = existingResources.get(i);
+                if (resourceDTOList.get(i).isDeleted()) {
                     Resource deletedResourceMarker = FHIRPersistenceUtil.createDeletedResourceMarker(existingResource);
                     resources.add(deletedResourceMarker);
                 } else {
@@ -1543,12 +2381,27 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
      */
     private <T extends Resource> T convertResourceDTO(com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO,
             Class<T> resourceType, List<String> elements) throws FHIRException, IOException {
+        return convertResourceDTO(resourceDTO, resourceType, elements, PayloadCodecs.getInstance());
+    }
+
+    /**
+     * Converts the passed Resource Data Transfer Object to a FHIR Resource object.
+     * @param resourceDTO - A valid Resource DTO
+     * @param resourceType - The FHIR type of resource to be converted.
+     * @param elements - An optional filter for including only specified elements inside a Resource.
+     * @param payloadCodecs - The payload codecs of the current tenant-datastore.
+     * @return Resource - A FHIR Resource object representation of the data portion of the passed Resource DTO.
+     * @throws FHIRException
+     * @throws IOException
+     */
+    private <T extends Resource> T convertResourceDTO(com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO,
+            Class<T> resourceType, List<String> elements, PayloadCodecs payloadCodecs) throws FHIRException, IOException {
         final String METHODNAME = "convertResourceDTO";
         log.entering(CLASSNAME, METHODNAME);
         T resource = null;
         try {
             if (resourceDTO != null) {
-                InputStream in = new GZIPInputStream(new ByteArrayInputStream(resourceDTO.getData()));
+                InputStream in = payloadCodecs.decode(resourceDTO.getData());
                 if (elements != null) {
                     // parse/filter the resource using elements
                     resource = FHIRParser.parser(Format.JSON).as(FHIRJsonParser.class).parseAndFilter(in, elements);
@@ -0,0 +1,153 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.postgresql;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import org.postgresql.copy.CopyManager;
+
+/**
+ * Accumulates rows for a single table in the PostgreSQL COPY text format, so that they
+ * can be sent to the database in one COPY ... FROM STDIN operation instead of one
+ * INSERT per row.
+ */
+public class PostgreSqlCopyBuffer {
+    private static final String NULL = "\\N";
+
+    // timestamps are stored as UTC without a time zone, matching PreparedStatement.setTimestamp(int, Timestamp, UTC)
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
+
+    private final String copySql;
+    private final StringBuilder data = new StringBuilder();
+    private int rowCount;
+    private boolean startOfRow = true;
+
+    /**
+     * Public constructor
+     * @param tableName the name of the table to copy into
+     * @param columnNames a comma-separated list of the columns, in the order they are added to each row
+     */
+    public PostgreSqlCopyBuffer(String tableName, String columnNames) {
+        this.copySql = "COPY " + tableName + " (" + columnNames + ") FROM STDIN";
+    }
+
+    public PostgreSqlCopyBuffer addInt(int value) {
+        return addColumn(Integer.toString(value));
+    }
+
+    public PostgreSqlCopyBuffer addLong(long value) {
+        return addColumn(Long.toString(value));
+    }
+
+    public PostgreSqlCopyBuffer addBigDecimal(BigDecimal value) {
+        return addColumn(value == null ? NULL : value.toPlainString());
+    }
+
+    public PostgreSqlCopyBuffer addTimestamp(Timestamp value) {
+        return addColumn(value == null ? NULL : TIMESTAMP_FORMATTER.format(LocalDateTime.ofInstant(value.toInstant(), ZoneOffset.UTC)));
+    }
+
+    public PostgreSqlCopyBuffer addString(String value) {
+        if (value == null) {
+            return addColumn(NULL);
+        }
+
+        startColumn();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '\\':
+                data.append("\\\\");
+                break;
+            case '\t':
+                data.append("\\t");
+                break;
+            case '\n':
+                data.append("\\n");
+                break;
+            case '\r':
+                data.append("\\r");
+                break;
+            default:
+                data.append(c);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * End the current row
+     */
+    public void endRow() {
+        data.append('\n');
+        startOfRow = true;
+        rowCount++;
+    }
+
+    /**
+     * @return the number of rows waiting to be copied
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the COPY statement used to copy the rows
+     */
+    public String getCopySql() {
+        return copySql;
+    }
+
+    /**
+     * @return the rows waiting to be copied, in the COPY text format
+     */
+    public String getData() {
+        return data.toString();
+    }
+
+    /**
+     * Copy the rows into the table, leaving this buffer empty
+     * @param copyManager
+     * @return the number of rows copied
+     * @throws SQLException
+     */
+    public long copyIn(CopyManager copyManager) throws SQLException {
+        if (rowCount == 0) {
+            return 0;
+        }
+
+        try {
+            return copyManager.copyIn(copySql, new StringReader(data.toString()));
+        } catch (IOException x) {
+            throw new SQLException("COPY failed: " + copySql, x);
+        } finally {
+            data.setLength(0);
+            rowCount = 0;
+        }
+    }
+
+    private PostgreSqlCopyBuffer addColumn(String text) {
+        startColumn();
+        data.append(text);
+        return this;
+    }
+
+    private void startColumn() {
+        if (startOfRow) {
+            startOfRow = false;
+        } else {
+            data.append('\t');
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.postgresql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import com.ibm.fhir.persistence.jdbc.dao.impl.LogicalResourceIdDAOImpl;
+
+/**
+ * PostgreSQL variant of the DAO used to reserve the logical_resource_id of the targets of references.
+ * A failed statement aborts a PostgreSQL transaction, so a concurrent insert of the same
+ * logical resource is handled with ON CONFLICT instead of catching the duplicate key error.
+ */
+public class PostgreSqlLogicalResourceIdDAO extends LogicalResourceIdDAOImpl {
+
+    /**
+     * Public constructor
+     * @param c
+     */
+    public PostgreSqlLogicalResourceIdDAO(Connection c) {
+        super(c, null, false);
+    }
+
+    @Override
+    protected boolean addLogicalResource(String resourceType, String logicalId) throws SQLException {
+        final String insert = "INSERT INTO logical_resources (logical_resource_id, resource_type_id, logical_id) "
+                + "SELECT nextval('fhir_sequence'), resource_type_id, CAST(? AS VARCHAR(255)) "
+                + "  FROM resource_types WHERE resource_type = ? ON CONFLICT DO NOTHING";
+        try (PreparedStatement stmt = getConnection().prepareStatement(insert)) {
+            stmt.setString(1, logicalId);
+            stmt.setString(2, resourceType);
+            stmt.executeUpdate();
+        }
+        // nothing is inserted for an unknown resource type, in which case the caller doesn't find the
+        // logical resource either
+        return true;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.postgresql;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import org.postgresql.copy.CopyManager;
+
+import com.ibm.fhir.persistence.jdbc.dao.api.ICodeSystemCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.ILogicalResourceIdCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.IParameterNameCache;
+import com.ibm.fhir.persistence.jdbc.dao.impl.ParameterVisitorBatchDAO;
+
+/**
+ * A parameter visitor for PostgreSQL which streams the rows of the parameter value tables
+ * to the database with COPY ... FROM STDIN instead of batched INSERT statements. The rows
+ * for each table are buffered until {@link #flush()} (or until a table has accumulated
+ * {@link #COPY_BATCH_SIZE} rows), then sent in a single COPY operation.
+ *
+ * <p>Composite parameters still use the INSERT statements of the superclass, because each of
+ * their component rows needs its generated key.
+ */
+public class PostgreSqlParameterVisitorCopyDAO extends ParameterVisitorBatchDAO {
+    // the max number of rows we accumulate in memory for a given table before we copy them
+    public static final int COPY_BATCH_SIZE = 10000;
+
+    private final CopyManager copyManager;
+
+    private final PostgreSqlCopyBuffer strings;
+    private final PostgreSqlCopyBuffer numbers;
+    private final PostgreSqlCopyBuffer dates;
+    private final PostgreSqlCopyBuffer tokens;
+    private final PostgreSqlCopyBuffer quantities;
+    private final PostgreSqlCopyBuffer resourceStrings;
+    private final PostgreSqlCopyBuffer resourceDates;
+    private final PostgreSqlCopyBuffer resourceTokens;
+
+    /**
+     * Public constructor
+     * @param c
+     * @param tablePrefix
+     * @param logicalResourceId
+     * @param batchSize
+     * @param pnc
+     * @param csc
+     * @param lrc
+     * @param copyManager the copy API of the connection c
+     * @throws SQLException
+     */
+    public PostgreSqlParameterVisitorCopyDAO(Connection c, String tablePrefix, long logicalResourceId, int batchSize,
+            IParameterNameCache pnc, ICodeSystemCache csc, ILogicalResourceIdCache lrc, CopyManager copyManager) throws SQLException {
+        // postgresql doesn't support partitioned multi-tenancy
+        super(c, null, tablePrefix, false, logicalResourceId, batchSize, pnc, csc, lrc);
+        this.copyManager = copyManager;
+
+        strings = new PostgreSqlCopyBuffer(tablePrefix + "_str_values", "parameter_name_id, str_value, str_value_lcase, logical_resource_id");
+        numbers = new PostgreSqlCopyBuffer(tablePrefix + "_number_values", "parameter_name_id, number_value, number_value_low, number_value_high, logical_resource_id");
+        dates = new PostgreSqlCopyBuffer(tablePrefix + "_date_values", "parameter_name_id, date_start, date_end, logical_resource_id");
+        tokens = new PostgreSqlCopyBuffer(tablePrefix + "_token_values", "parameter_name_id, code_system_id, token_value, logical_resource_id");
+        quantities = new PostgreSqlCopyBuffer(tablePrefix + "_quantity_values", "parameter_name_id, code_system_id, code, quantity_value, quantity_value_low, quantity_value_high, logical_resource_id");
+        resourceStrings = new PostgreSqlCopyBuffer("resource_str_values", "parameter_name_id, str_value, str_value_lcase, logical_resource_id");
+        resourceDates = new PostgreSqlCopyBuffer("resource_date_values", "parameter_name_id, date_start, date_end, logical_resource_id");
+        resourceTokens = new PostgreSqlCopyBuffer("resource_token_values", "parameter_name_id, code_system_id, token_value, logical_resource_id");
+    }
+
+    @Override
+    protected void addStringValue(int parameterNameId, String value) throws SQLException {
+        addStringRow(strings, parameterNameId, value);
+    }
+
+    @Override
+    protected void addResourceStringValue(int parameterNameId, String value) throws SQLException {
+        addStringRow(resourceStrings, parameterNameId, value);
+    }
+
+    private void addStringRow(PostgreSqlCopyBuffer buffer, int parameterNameId, String value) throws SQLException {
+        buffer.addInt(parameterNameId)
+            .addString(value)
+            .addString(value == null ? null : value.toLowerCase())
+            .addLong(getLogicalResourceId())
+            .endRow();
+        copyIfFull(buffer);
+    }
+
+    @Override
+    protected void addNumberValue(int parameterNameId, BigDecimal value, BigDecimal valueLow, BigDecimal valueHigh) throws SQLException {
+        numbers.addInt(parameterNameId)
+            .addBigDecimal(value)
+            .addBigDecimal(valueLow)
+            .addBigDecimal(valueHigh)
+            .addLong(getLogicalResourceId())
+            .endRow();
+        copyIfFull(numbers);
+    }
+
+    @Override
+    protected void addDateValue(int parameterNameId, Timestamp dateStart, Timestamp dateEnd) throws SQLException {
+        addDateRow(dates, parameterNameId, dateStart, dateEnd);
+    }
+
+    @Override
+    protected void addResourceDateValue(int parameterNameId, Timestamp dateStart, Timestamp dateEnd) throws SQLException {
+        addDateRow(resourceDates, parameterNameId, dateStart, dateEnd);
+    }
+
+    private void addDateRow(PostgreSqlCopyBuffer buffer, int parameterNameId, Timestamp dateStart, Timestamp dateEnd) throws SQLException {
+        buffer.addInt(parameterNameId)
+            .addTimestamp(dateStart)
+            .addTimestamp(dateEnd)
+            .addLong(getLogicalResourceId())
+            .endRow();
+        copyIfFull(buffer);
+    }
+
+    @Override
+    protected void addTokenValue(int parameterNameId, int codeSystemId, String tokenValue) throws SQLException {
+        addTokenRow(tokens, parameterNameId, codeSystemId, tokenValue);
+    }
+
+    @Override
+    protected void addResourceTokenValue(int parameterNameId, int codeSystemId, String tokenValue) throws SQLException {
+        addTokenRow(resourceTokens, parameterNameId, codeSystemId, tokenValue);
+    }
+
+    private void addTokenRow(PostgreSqlCopyBuffer buffer, int parameterNameId, int codeSystemId, String tokenValue) throws SQLException {
+        buffer.addInt(parameterNameId)
+            .addInt(codeSystemId)
+            .addString(tokenValue)
+            .addLong(getLogicalResourceId())
+            .endRow();
+        copyIfFull(buffer);
+    }
+
+    @Override
+    protected void addQuantityValue(int parameterNameId, int codeSystemId, String code, BigDecimal quantityValue, BigDecimal quantityLow,
+            BigDecimal quantityHigh) throws SQLException {
+        quantities.addInt(parameterNameId)
+            .addInt(codeSystemId)
+            .addString(code)
+            .addBigDecimal(quantityValue)
+            .addBigDecimal(quantityLow)
+            .addBigDecimal(quantityHigh)
+            .addLong(getLogicalResourceId())
+            .endRow();
+        copyIfFull(quantities);
+    }
+
+    private void copyIfFull(PostgreSqlCopyBuffer buffer) throws SQLException {
+        if (buffer.getRowCount() >= COPY_BATCH_SIZE) {
+            buffer.copyIn(copyManager);
+        }
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        super.flush();
+
+        strings.copyIn(copyManager);
+        numbers.copyIn(copyManager);
+        dates.copyIn(copyManager);
+        tokens.copyIn(copyManager);
+        quantities.copyIn(copyManager);
+        resourceStrings.copyIn(copyManager);
+        resourceDates.copyIn(copyManager);
+        resourceTokens.copyIn(copyManager);
+    }
+}
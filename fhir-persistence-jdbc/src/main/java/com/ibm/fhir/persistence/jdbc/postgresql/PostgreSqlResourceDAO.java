@@ -8,6 +8,7 @@ package com.ibm.fhir.persistence.jdbc.postgresql;
 
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.UTC;
 
+import java.io.StringReader;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -17,12 +18,22 @@ import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.List;
-import java.util.UUID;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
 import javax.transaction.TransactionSynchronizationRegistry;
 
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceVersionIdMismatchException;
 import com.ibm.fhir.persistence.jdbc.connection.FHIRDbFlavor;
@@ -37,7 +48,9 @@ import com.ibm.fhir.persistence.jdbc.dto.Resource;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceFKVException;
+import com.ibm.fhir.persistence.jdbc.util.ParameterHashes;
 import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCache;
+import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
 
 /**
  * Data access object for writing FHIR resources to an postgresql database.
@@ -50,7 +63,13 @@ public class PostgreSqlResourceDAO extends ResourceDAOImpl {
     private static final String CLASSNAME = PostgreSqlResourceDAO.class.getSimpleName();
 
     private static final String SQL_READ_RESOURCE_TYPE = "{CALL %s.add_resource_type(?, ?)}";
-    private static final String SQL_INSERT_WITH_PARAMETERS = "{CALL %s.add_any_resource(?,?,?,?,?,?,?,?)}";
+    private static final String SQL_INSERT_WITH_PARAMETERS = "{CALL %s.add_any_resource(?,?,?,?,?,?,?,?,?,?,?)}";
+    private static final String SQL_EXPLAIN_JSON = "EXPLAIN (FORMAT JSON) ";
+
+    // The COUNT(DISTINCT ...) at the start of a count query, which is replaced by a SELECT DISTINCT to estimate the count
+    private static final Pattern COUNT_DISTINCT = Pattern.compile("^\\s*SELECT\\s+COUNT\\(DISTINCT\\s+([^)]+)\\)", Pattern.CASE_INSENSITIVE);
+
+    private static boolean copyEnabled = true;
 
     // DAO used to obtain sequence values from FHIR_REF_SEQUENCE
     private FhirRefSequenceDAO fhirRefSequenceDAO;
@@ -81,7 +100,6 @@ public class PostgreSqlResourceDAO extends ResourceDAOImpl {
         CallableStatement stmt = null;
         String stmtString = null;
         Integer resourceTypeId;
-        Timestamp lastUpdated;
         boolean acquiredFromCache;
         long dbCallStartTime;
         double dbCallDuration;
@@ -100,36 +118,28 @@ public class PostgreSqlResourceDAO extends ResourceDAOImpl {
                          "  acquiredFromCache=" + acquiredFromCache + "  tenantDatastoreCacheName=" + ResourceTypesCache.getCacheNameForTenantDatastore());
             }
 
-            stmtString = String.format(SQL_INSERT_WITH_PARAMETERS, getSchemaName());
-            stmt = connection.prepareCall(stmtString);
-            stmt.setString(1, resource.getResourceType());
-            stmt.setString(2, resource.getLogicalId());
-            stmt.setBytes(3, resource.getData());
+            final ParameterHashes parameterHashes = ParameterHashes.of(parameters);
 
-            lastUpdated = resource.getLastUpdated();
-            stmt.setTimestamp(4, lastUpdated, UTC);
-            stmt.setString(5, resource.isDeleted() ? "Y": "N");
-            stmt.setString(6, UUID.randomUUID().toString());
-            stmt.setInt(7, resource.getVersionId());
-            stmt.registerOutParameter(8, Types.BIGINT);
+            stmtString = getInsertWithParametersSql();
+            stmt = connection.prepareCall(stmtString);
+            setInsertParameters(stmt, resource, parameterHashes);
 
             dbCallStartTime = System.nanoTime();
             stmt.execute();
             dbCallDuration = (System.nanoTime()-dbCallStartTime)/1e6;
 
-            resource.setId(stmt.getLong(8));
+            resource.setId(stmt.getLong(10));
 
             // Parameter time
             // To keep things simple for the postgresql use-case, we just use a visitor to
             // handle inserts of parameters directly in the resource parameter tables.
-            // Note we don't get any parameters for the resource soft-delete operation
-            if (parameters != null) {
-                // postgresql doesn't support partitioned multi-tenancy, so we disable it on the DAO:
-                try (ParameterVisitorBatchDAO pvd = new ParameterVisitorBatchDAO(connection, null, resource.getResourceType(), false, resource.getId(), 100,
-                    new ParameterNameCacheAdapter(parameterDao), new CodeSystemCacheAdapter(parameterDao))) {
-                    for (ExtractedParameterValue p: parameters) {
-                        p.accept(pvd);
-                    }
+            // Note we don't get any parameters for the resource soft-delete operation, and the
+            // function returns the parameter hashes of the replaced version if it has kept its
+            // parameter rows, in which case only the parameters which have changed are replaced
+            final ParameterHashes currentParameterHashes = ParameterHashes.decode(stmt.getString(11));
+            if (!Objects.equals(parameterHashes, currentParameterHashes)) {
+                try (ParameterVisitorBatchDAO pvd = createParameterVisitor(connection, resource.getResourceType(), resource.getId(), parameterDao)) {
+                    pvd.replaceParameters(parameters, parameterHashes, currentParameterHashes);
                 }
             }
 
@@ -159,6 +169,173 @@ public class PostgreSqlResourceDAO extends ResourceDAOImpl {
         return resource;
     }
 
+    @Override
+    protected String getInsertWithParametersSql() {
+        return String.format(SQL_INSERT_WITH_PARAMETERS, getSchemaName());
+    }
+
+    @Override
+    protected ParameterVisitorBatchDAO createParameterVisitor(Connection connection, String resourceType, long logicalResourceId,
+            ParameterDAO parameterDao) throws SQLException {
+        CopyManager copyManager = copyEnabled ? getCopyManager(connection) : null;
+        if (copyManager != null) {
+            return new PostgreSqlParameterVisitorCopyDAO(connection, resourceType, logicalResourceId, 100,
+                    new ParameterNameCacheAdapter(parameterDao), new CodeSystemCacheAdapter(parameterDao),
+                    new PostgreSqlLogicalResourceIdDAO(connection), copyManager);
+        }
+
+        // postgresql doesn't support partitioned multi-tenancy, so we disable it on the DAO:
+        return new ParameterVisitorBatchDAO(connection, null, resourceType, false, logicalResourceId, 100,
+                new ParameterNameCacheAdapter(parameterDao), new CodeSystemCacheAdapter(parameterDao),
+                new PostgreSqlLogicalResourceIdDAO(connection));
+    }
+
+    /**
+     * Estimates the count from the number of rows which the query planner expects the count query to count.
+     */
+    @Override
+    public Integer estimateCount(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "estimateCount";
+        logger.entering(CLASSNAME, METHODNAME);
+
+        Integer estimate = null;
+        List<? extends Object> bindVariables = queryData.getBindVariables();
+        final String estimateSql = getEstimateSql(queryData.getQueryString());
+        try (PreparedStatement stmt = getConnection().prepareStatement(SQL_EXPLAIN_JSON + estimateSql)) {
+            for (int i = 0; i < bindVariables.size(); i++) {
+                Object bindVariable = bindVariables.get(i);
+                if (bindVariable instanceof Timestamp) {
+                    stmt.setTimestamp(i + 1, (Timestamp) bindVariable, UTC);
+                } else {
+                    stmt.setObject(i + 1, bindVariable);
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    estimate = getEstimatedCount(rs.getString(1));
+                }
+            }
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Estimated count=" + estimate + " for SQL=" + estimateSql);
+            }
+        } catch (SQLException | RuntimeException x) {
+            // an estimate is optional, so the caller falls back to counting the search results
+            logger.log(Level.WARNING, "Unable to estimate the search result count", x);
+        } finally {
+            logger.exiting(CLASSNAME, METHODNAME);
+        }
+        return estimate;
+    }
+
+    /**
+     * Get the query which is explained to estimate the result of a count query. A COUNT(DISTINCT ...) count query is
+     * turned into the SELECT DISTINCT query of the values it counts, because the planner estimates the number of
+     * distinct values, whereas the rows input to the count can include the same resource several times when the
+     * query joins the parameter tables.
+     * @param countSql the count query
+     * @return the query to explain
+     */
+    public static String getEstimateSql(String countSql) {
+        Matcher matcher = COUNT_DISTINCT.matcher(countSql);
+        if (matcher.find()) {
+            return "SELECT DISTINCT " + matcher.group(1) + countSql.substring(matcher.end());
+        }
+        return countSql;
+    }
+
+    /**
+     * Get the number of rows which the plan of a query returned by {@link #getEstimateSql(String)} is expected to
+     * count, or to return if it doesn't count them
+     * @param jsonPlan the output of EXPLAIN (FORMAT JSON) for the query
+     * @return the estimated count, or null if the plan doesn't include one
+     */
+    public static Integer getEstimatedCount(String jsonPlan) {
+        JsonObject node;
+        try (JsonReader reader = Json.createReader(new StringReader(jsonPlan))) {
+            node = reader.readArray().getJsonObject(0).getJsonObject("Plan");
+        }
+
+        Double rows = getEstimatedRows(node);
+        if (rows == null) {
+            return null;
+        }
+        return (int) Math.min(Math.round(rows), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the number of rows counted by a count aggregate node, or the number of rows returned by any other node.
+     * The rows of the nodes under a Gather are the rows returned by each process, so they are scaled up by the
+     * number of processes in the same way as the planner does.
+     */
+    private static Double getEstimatedRows(JsonObject node) {
+        final String nodeType = node.getString("Node Type", "");
+        final JsonArray plans = node.getJsonArray("Plans");
+        if (plans != null && !plans.isEmpty()) {
+            if ("Aggregate".equals(nodeType) && "Plain".equals(node.getString("Strategy", "Plain"))) {
+                // the aggregate which computes the count (or a partial count in each parallel process)
+                return getEstimatedRows(plans.getJsonObject(0));
+            }
+            if (nodeType.startsWith("Gather")) {
+                Double rows = getEstimatedRows(plans.getJsonObject(0));
+                return (rows == null) ? null : rows * getParallelDivisor(node.getInt("Workers Planned", 0));
+            }
+            if ("Append".equals(nodeType) || "Subquery Scan".equals(nodeType)) {
+                // the counts of the resource types of a system level search are added up
+                double rows = 0;
+                for (int i = 0; i < plans.size(); i++) {
+                    Double planRows = getEstimatedRows(plans.getJsonObject(i));
+                    if (planRows == null) {
+                        return null;
+                    }
+                    rows += planRows;
+                }
+                return rows;
+            }
+        }
+
+        JsonNumber rows = node.getJsonNumber("Plan Rows");
+        return (rows == null) ? null : rows.doubleValue();
+    }
+
+    /**
+     * Get the number of processes which the planner expects to share the rows of a parallel plan, with the leader
+     * participating (the default): each worker process counts once, and the leader counts for whatever part of its
+     * time it isn't busy with the workers.
+     * @param workers the number of planned worker processes
+     */
+    private static double getParallelDivisor(int workers) {
+        double leaderContribution = 1.0 - (0.3 * workers);
+        return workers + Math.max(leaderContribution, 0);
+    }
+
+    /**
+     * Get the COPY API of the PostgreSQL driver connection underlying the passed connection
+     * @param connection
+     * @return the copy manager, or null if the connection isn't a PostgreSQL driver connection
+     */
+    private CopyManager getCopyManager(Connection connection) {
+        try {
+            if (connection.isWrapperFor(PGConnection.class)) {
+                return connection.unwrap(PGConnection.class).getCopyAPI();
+            }
+        } catch (SQLException x) {
+            logger.log(Level.FINE, "Unable to unwrap PGConnection; using batch inserts for parameters", x);
+        }
+        return null;
+    }
+
+    public static boolean isCopyEnabled() {
+        return copyEnabled;
+    }
+
+    /**
+     * Use COPY instead of batched INSERT statements to store search parameter values
+     * @param copyEnabled
+     */
+    public static void setCopyEnabled(boolean copyEnabled) {
+        PostgreSqlResourceDAO.copyEnabled = copyEnabled;
+    }
+
     /**
      * Delete all parameters for the given resourceId from the parameters table
      *
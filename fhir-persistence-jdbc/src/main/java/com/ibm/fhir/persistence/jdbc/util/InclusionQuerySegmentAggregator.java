@@ -6,7 +6,9 @@
 
 package com.ibm.fhir.persistence.jdbc.util;
 
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_SEARCH_REFERENCE_VALUES;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.AND;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.BIND_VAR;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMBINED_RESULTS;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.COMMA;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.LEFT_PAREN;
@@ -14,9 +16,12 @@ import static com.ibm.fhir.persistence.jdbc.JDBCConstants.QUOTE;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.RIGHT_PAREN;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 
+import com.ibm.fhir.config.FHIRConfigHelper;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.jdbc.connection.QueryHints;
 import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
@@ -44,17 +49,23 @@ public class InclusionQuerySegmentAggregator extends QuerySegmentAggregator {
             "JOIN ";
     private static final String REVINCLUDE_JOIN_END =
             "_STR_VALUES P1 ON P1.LOGICAL_RESOURCE_ID = R.LOGICAL_RESOURCE_ID ";
+    private static final String REVINCLUDE_REF_JOIN_END =
+            "_REF_VALUES P1 ON P1.LOGICAL_RESOURCE_ID = R.LOGICAL_RESOURCE_ID ";
     private static final String ORDERING = " ORDER BY R.LOGICAL_RESOURCE_ID ASC ";
 
     private List<InclusionParameter> includeParameters;
     private List<InclusionParameter> revIncludeParameters;
 
+    // Match references using the X_REF_VALUES tables instead of strings
+    private final boolean searchReferenceValues;
+
     protected InclusionQuerySegmentAggregator(Class<?> resourceType, int offset, int pageSize,
             ParameterDAO parameterDao, ResourceDAO resourceDao,
             List<InclusionParameter> includeParameters, List<InclusionParameter> revIncludeParameters, QueryHints queryHints) {
         super(resourceType, offset, pageSize, parameterDao, resourceDao, queryHints);
         this.includeParameters    = includeParameters;
         this.revIncludeParameters = revIncludeParameters;
+        this.searchReferenceValues = FHIRConfigHelper.getBooleanProperty(PROPERTY_JDBC_SEARCH_REFERENCE_VALUES, Boolean.FALSE);
     }
 
     /**
@@ -193,7 +204,7 @@ public class InclusionQuerySegmentAggregator extends QuerySegmentAggregator {
 
         // Add ordering
         queryString.append(ORDERING);
-        this.addPaginationClauses(queryString);
+        this.addPaginationClauses(queryString, allBindVariables);
         queryString.append(") RESULT ");
         this.processIncludeParameters(queryString, allBindVariables);
         this.processRevIncludeParameters(queryString, allBindVariables);
@@ -208,17 +219,29 @@ public class InclusionQuerySegmentAggregator extends QuerySegmentAggregator {
     }
 
     /**
-     * Appends values like
-     * ({@code ('Patient/<resource_id>', 'Patient/<resource_id>' ...)}) to the
-     * queryString
+     * Appends bind variables like ({@code (?, ? ...)}) to the queryString, and adds the distinct values
+     * ({@code 'Patient/<resource_id>'}, or the logical_resource_id of the target if the reference values are used)
+     * returned by the sub query to the bind variables
      */
     private void executeIncludeSubQuery(StringBuilder queryString, InclusionParameter includeParm,
             List<Object> bindVariables) throws Exception {
         StringBuilder subQueryString = new StringBuilder();
-        // SELECT P1.STR_VALUE FROM OBSERVATION_STR_VALUES P1 WHERE
-        subQueryString.append("SELECT P1.STR_VALUE FROM ")
-                .append(this.resourceType.getSimpleName())
-                .append("_STR_VALUES P1 WHERE ");
+        if (this.searchReferenceValues) {
+            // SELECT P1.REF_LOGICAL_RESOURCE_ID FROM OBSERVATION_REF_VALUES P1 WHERE
+            subQueryString.append("SELECT P1.REF_LOGICAL_RESOURCE_ID FROM ")
+                    .append(this.resourceType.getSimpleName())
+                    .append("_REF_VALUES P1 WHERE ");
+
+            // P1.REF_RESOURCE_TYPE_ID=xx AND
+            subQueryString.append("P1.REF_RESOURCE_TYPE_ID=")
+                    .append(getResourceTypeId(this.resourceDao, includeParm.getSearchParameterTargetType()))
+                    .append(AND);
+        } else {
+            // SELECT P1.STR_VALUE FROM OBSERVATION_STR_VALUES P1 WHERE
+            subQueryString.append("SELECT P1.STR_VALUE FROM ")
+                    .append(this.resourceType.getSimpleName())
+                    .append("_STR_VALUES P1 WHERE ");
+        }
 
         // P1.PARAMETER_NAME_ID=xx AND 
         subQueryString.append("P1.PARAMETER_NAME_ID=")
@@ -233,34 +256,48 @@ public class InclusionQuerySegmentAggregator extends QuerySegmentAggregator {
         // Add FROM clause for "root" resource type
         buildFromClause(subQueryString, resourceType.getSimpleName());
 
+        // The sub query has the _id and _lastUpdated bind variables, then the regular bind variables
+        List<Object> subQueryBindVariables = new ArrayList<>();
+        subQueryBindVariables.addAll(this.idsObjects);
+        subQueryBindVariables.addAll(this.lastUpdatedObjects);
+        this.addBindVariables(subQueryBindVariables);
+
         // Add WHERE clause for "root" resource type
         buildWhereClause(subQueryString, null);
 
         // ORDER BY R.LOGICAL_RESOURCE_ID ASC
         subQueryString.append(ORDERING);
         // Only include resources related to the required page of the main resources.
-        this.addPaginationClauses(subQueryString);
+        this.addPaginationClauses(subQueryString, subQueryBindVariables);
         subQueryString.append(RIGHT_PAREN);
 
         queryString.append(LEFT_PAREN);
         //The subquery should return a list of strings in the FHIR Reference String value format 
         //(e.g. {@code "Patient/<resource_id>"})
-        SqlQueryData subQueryData = new SqlQueryData(subQueryString.toString(), bindVariables);
+        SqlQueryData subQueryData = new SqlQueryData(subQueryString.toString(), subQueryBindVariables);
+
+        // Resources on the same page often reference the same target, which only needs to be matched once
+        Set<Object> values = new LinkedHashSet<>(this.searchReferenceValues ? this.resourceDao.searchForIds(subQueryData)
+                : this.resourceDao.searchStringValues(subQueryData));
+        values.remove(null);
 
         boolean isFirstItem = true;
-        for (String strValue : this.resourceDao.searchStringValues(subQueryData)) {
+        for (Object value : values) {
             if (!isFirstItem) {
                 queryString.append(COMMA);
             }
-            if (strValue != null) {
-                queryString.append(QUOTE).append(SqlParameterEncoder.encode(strValue)).append(QUOTE);
-                isFirstItem = false;
-            }
+            queryString.append(BIND_VAR);
+            bindVariables.add(value);
+            isFirstItem = false;
         }
 
-        // if nothing added so far, then need to add '', otherwise sql will fail. 
+        // if nothing added so far, then need to add a value which matches nothing, otherwise sql will fail. 
         if (isFirstItem) {
-            queryString.append(QUOTE).append(QUOTE);
+            if (this.searchReferenceValues) {
+                queryString.append("-1");
+            } else {
+                queryString.append(QUOTE).append(QUOTE);
+            }
         }
         queryString.append(RIGHT_PAREN);
     }
@@ -298,9 +335,14 @@ public class InclusionQuerySegmentAggregator extends QuerySegmentAggregator {
             queryString.append(QuerySegmentAggregator.WHERE_CLAUSE_ROOT).append(" AND ");
             // R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND
             queryString.append("R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND ");
-            // ('Organization/' || LR.LOGICAL_ID IN 
-            queryString.append("('").append(includeParm.getSearchParameterTargetType())
-                    .append("/' || LR.LOGICAL_ID IN ");
+            if (this.searchReferenceValues) {
+                // (LR.LOGICAL_RESOURCE_ID IN
+                queryString.append("(LR.LOGICAL_RESOURCE_ID IN ");
+            } else {
+                // ('Organization/' || LR.LOGICAL_ID IN 
+                queryString.append("('").append(includeParm.getSearchParameterTargetType())
+                        .append("/' || LR.LOGICAL_ID IN ");
+            }
 
             // Execute sub query to get the string values for constructing the query string.
             // This avoids DB engine to run this sub query once for each record in the previously joined tables.
@@ -324,17 +366,26 @@ public class InclusionQuerySegmentAggregator extends QuerySegmentAggregator {
             // JOIN Observation_STR_VALUES P1 ON P1.RESOURCE_ID = R.RESOURCE_ID
             queryString.append(REVINCLUDE_JOIN_START);
             queryString.append(includeParm.getJoinResourceType());
-            queryString.append(REVINCLUDE_JOIN_END);
+            queryString.append(this.searchReferenceValues ? REVINCLUDE_REF_JOIN_END : REVINCLUDE_JOIN_END);
             // WHERE R.IS_DELETED <> 'Y' AND
             queryString.append(QuerySegmentAggregator.WHERE_CLAUSE_ROOT).append(" AND ");
             // P1.PARAMETER_NAME_ID=xx AND 
             queryString.append("P1.PARAMETER_NAME_ID=")
                     .append(this.getParameterNameId(includeParm.getSearchParameter())).append(" AND ");
-            // P1.STR_VALUE IN 
-            queryString.append("P1.STR_VALUE IN ");
-            // (SELECT 'Patient/' || LR.LOGICAL_ID
-            queryString.append("(SELECT '").append(includeParm.getSearchParameterTargetType())
-                    .append("/' || LR.LOGICAL_ID ");
+            if (this.searchReferenceValues) {
+                // P1.REF_RESOURCE_TYPE_ID=xx AND P1.REF_LOGICAL_RESOURCE_ID IN
+                queryString.append("P1.REF_RESOURCE_TYPE_ID=")
+                        .append(getResourceTypeId(this.resourceDao, includeParm.getSearchParameterTargetType())).append(" AND ");
+                queryString.append("P1.REF_LOGICAL_RESOURCE_ID IN ");
+                // (SELECT LR.LOGICAL_RESOURCE_ID
+                queryString.append("(SELECT LR.LOGICAL_RESOURCE_ID ");
+            } else {
+                // P1.STR_VALUE IN 
+                queryString.append("P1.STR_VALUE IN ");
+                // (SELECT 'Patient/' || LR.LOGICAL_ID
+                queryString.append("(SELECT '").append(includeParm.getSearchParameterTargetType())
+                        .append("/' || LR.LOGICAL_ID ");
+            }
 
             // Add FROM clause for "root" resource type
             buildFromClause(queryString, resourceType.getSimpleName());
@@ -350,7 +401,7 @@ public class InclusionQuerySegmentAggregator extends QuerySegmentAggregator {
             // ORDER BY R.LOGICAL_RESOURCE_ID ASC
             queryString.append(ORDERING);
             // Only include resources related to the required page of the main resources.
-            this.addPaginationClauses(queryString);
+            this.addPaginationClauses(queryString, bindVariables);
 
             queryString.append(RIGHT_PAREN);
         }
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017,2019
+ * (C) Copyright IBM Corp. 2017, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -52,6 +52,7 @@ import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
 import com.ibm.fhir.persistence.jdbc.dto.LocationParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.NumberParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.QuantityParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.ReferenceParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.StringParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.TokenParmVal;
 import com.ibm.fhir.persistence.jdbc.util.type.NumberParmBehaviorUtil;
@@ -587,9 +588,21 @@ public class JDBCParameterBuildingVisitor extends DefaultVisitor {
             throw invalidComboException(searchParamType, reference);
         }
         if (reference.getReference() != null) {
-            StringParmVal p = new StringParmVal();
+            String value = reference.getReference().getValue();
+            ReferenceParmVal p = new ReferenceParmVal();
             p.setName(searchParamCode);
-            p.setValueString(reference.getReference().getValue());
+            p.setValueString(value);
+            // A local reference of the form type/id also identifies the target for the X_REF_VALUES tables
+            if (value != null) {
+                int slash = value.indexOf('/');
+                if (slash > 0 && slash < value.length() - 1 && value.indexOf('/', slash + 1) == -1) {
+                    String refResourceType = value.substring(0, slash);
+                    if (ModelSupport.isResourceType(refResourceType)) {
+                        p.setRefResourceType(refResourceType);
+                        p.setRefLogicalId(value.substring(slash + 1));
+                    }
+                }
+            }
             result.add(p);
         }
         return false;
@@ -6,6 +6,7 @@
 
 package com.ibm.fhir.persistence.jdbc.util;
 
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_SEARCH_REFERENCE_VALUES;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.AND;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.BIND_VAR;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.CODE_SYSTEM_ID;
@@ -47,7 +48,9 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import com.ibm.fhir.config.FHIRConfigHelper;
 import com.ibm.fhir.model.resource.Location;
+import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.resource.SearchParameter;
 import com.ibm.fhir.model.type.Code;
 import com.ibm.fhir.model.util.ModelSupport;
@@ -67,6 +70,7 @@ import com.ibm.fhir.persistence.util.AbstractQueryBuilder;
 import com.ibm.fhir.search.SearchConstants.Modifier;
 import com.ibm.fhir.search.SearchConstants.Type;
 import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.cursor.SearchCursor;
 import com.ibm.fhir.search.exception.FHIRSearchException;
 import com.ibm.fhir.search.location.NearLocationHandler;
 import com.ibm.fhir.search.location.bounding.Bounding;
@@ -112,10 +116,14 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
     // Hints to use for certain queries
     private final QueryHints queryHints;
 
+    // Resolve chained references and compartment membership using the X_REF_VALUES tables instead of matching strings
+    private final boolean searchReferenceValues;
+
     public JDBCQueryBuilder(ParameterDAO parameterDao, ResourceDAO resourceDao, QueryHints queryHints) {
         this.parameterDao = parameterDao;
         this.resourceDao  = resourceDao;
         this.queryHints = queryHints;
+        this.searchReferenceValues = FHIRConfigHelper.getBooleanProperty(PROPERTY_JDBC_SEARCH_REFERENCE_VALUES, Boolean.FALSE);
     }
 
     /**
@@ -149,6 +157,24 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
 
     @Override
     public SqlQueryData buildQuery(Class<?> resourceType, FHIRSearchContext searchContext) throws Exception {
+        return buildQuery(resourceType, searchContext, false);
+    }
+
+    /**
+     * Builds a query that returns a page of the search results that would be found by applying the search
+     * parameters contained within the passed search context.
+     *
+     * @param resourceType
+     *                      - The type of resource being searched for.
+     * @param searchContext
+     *                      - The search context containing the search parameters.
+     * @param lookAhead
+     *                      - Whether the query also returns the first result of the following page, which
+     *                        indicates that the following page is not empty.
+     * @return SqlQueryData - A search query, or null if the search parameters can't match any resource
+     * @throws Exception
+     */
+    public SqlQueryData buildQuery(Class<?> resourceType, FHIRSearchContext searchContext, boolean lookAhead) throws Exception {
         final String METHODNAME = "buildQuery";
         log.entering(CLASSNAME, METHODNAME,
                 new Object[] { resourceType.getSimpleName(), searchContext.getSearchParameters() });
@@ -158,6 +184,13 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
 
         helper = this.buildQueryCommon(resourceType, searchContext);
         if (helper != null) {
+            // A cursor is only honored for the page and the query it was issued for; otherwise fall back to the offset
+            SearchCursor cursor = searchContext.getCursor();
+            if (cursor != null && cursor.matches(resourceType, searchContext)
+                    && QuerySegmentAggregatorFactory.supportsKeysetPagination(searchContext)) {
+                helper.setCursor(cursor);
+            }
+            helper.setLookAhead(lookAhead);
             query = helper.buildQuery();
         }
 
@@ -345,9 +378,9 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                     break;
                 case REFERENCE:
                     if (queryParm.isChained()) {
-                        databaseQueryParm = this.processChainedReferenceParm(queryParm);
+                        databaseQueryParm = this.processChainedReferenceParm(resourceType, queryParm);
                     } else if (queryParm.isInclusionCriteria()) {
-                        databaseQueryParm = this.processInclusionCriteria(queryParm);
+                        databaseQueryParm = this.processInclusionCriteria(resourceType, queryParm);
                     } else {
                         databaseQueryParm = this.processReferenceParm(resourceType, queryParm, tableAlias);
                     }
@@ -596,6 +629,31 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
      */
     @Override
     protected SqlQueryData processChainedReferenceParm(QueryParameter queryParm) throws Exception {
+        return processChainedReferenceParm(null, queryParm);
+    }
+
+    /**
+     * Builds the query segment for a chained parameter reference search. When the search of reference values is
+     * enabled and the type of the resources being searched is known, each link of the chain is resolved with a join
+     * on the {@code <resourceType>_REF_VALUES} table of the referencing resource type:
+     *
+     * <pre>
+     * P1.PARAMETER_NAME_ID = 107 AND (P1.LOGICAL_RESOURCE_ID IN
+     *    (SELECT RV1.LOGICAL_RESOURCE_ID FROM Observation_REF_VALUES RV1, Device_RESOURCES CR1, Device_LOGICAL_RESOURCES CLR1, Device_STR_VALUES CP1 WHERE
+     *        RV1.PARAMETER_NAME_ID = 107 AND RV1.REF_RESOURCE_TYPE_ID = 12 AND RV1.REF_LOGICAL_RESOURCE_ID = CLR1.LOGICAL_RESOURCE_ID AND
+     *        CR1.RESOURCE_ID = CLR1.CURRENT_RESOURCE_ID AND CR1.IS_DELETED <> 'Y' AND CP1.LOGICAL_RESOURCE_ID = CR1.LOGICAL_RESOURCE_ID AND
+     *        CP1.PARAMETER_NAME_ID = 5 AND CP1.STR_VALUE = 'Monella'))
+     * </pre>
+     *
+     * @param resourceType
+     *                  - The type of resource being searched for, or null if not known.
+     * @param queryParm
+     *                  - A Parameter representing a chained query.
+     * @return SqlQueryData - The query segment for a chained parameter reference
+     *         search.
+     * @throws Exception
+     */
+    private SqlQueryData processChainedReferenceParm(Class<?> resourceType, QueryParameter queryParm) throws Exception {
         final String METHODNAME = "processChainedReferenceParm";
         log.entering(CLASSNAME, METHODNAME, queryParm.toString());
 
@@ -612,6 +670,9 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         List<Object> bindVariables = new ArrayList<>();
         SqlQueryData queryData;
 
+        // The type holding the reference for the current link of the chain, if resolved using reference values
+        String referencingResourceTypeName = isSearchReferenceValues(resourceType) ? resourceType.getSimpleName() : null;
+
         currentParm = queryParm;
         while (currentParm != null) {
             QueryParameter nextParameter = currentParm.getNextParameter();
@@ -623,10 +684,11 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                     this.populateNameIdSubSegment(whereClauseSegment, currentParm.getCode(), PARAMETER_TABLE_ALIAS);
                     whereClauseSegment.append(AND);
                     whereClauseSegment.append(LEFT_PAREN);
-                    whereClauseSegment.append(PARAMETER_TABLE_ALIAS + DOT).append(STR_VALUE).append(IN);
+                    whereClauseSegment.append(PARAMETER_TABLE_ALIAS + DOT)
+                            .append(referencingResourceTypeName != null ? "LOGICAL_RESOURCE_ID" : STR_VALUE).append(IN);
                 } else {
                     // Build this piece: CP1.PARAMETER_NAME_ID = x AND CP1.STR_VALUE IN
-                    appendMidChainParm(whereClauseSegment, currentParm, chainedParmVar);
+                    appendMidChainParm(whereClauseSegment, currentParm, chainedParmVar, referencingResourceTypeName != null);
                 }
 
                 refParmIndex++;
@@ -641,15 +703,18 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                 // For this situation, a separate method is called, and further processing of the chain by this method
                 // is halted.
                 if (currentParm.getModifierResourceTypeName().equals("*")) {
-                    this.processWildcardChainedRefParm(currentParm, chainedResourceVar, chainedLogicalResourceVar,
-                            chainedParmVar, whereClauseSegment, bindVariables);
+                    this.processWildcardChainedRefParm(currentParm, referencingResourceTypeName, chainedResourceVar,
+                            chainedLogicalResourceVar, chainedParmVar, whereClauseSegment, bindVariables);
                     break;
                 }
                 resourceTypeName = currentParm.getModifierResourceTypeName();
                 // Build this piece: (SELECT 'resource-type-name' || '/' || CLRx.LOGICAL_ID ...
                 whereClauseSegment.append(LEFT_PAREN);
-                appendInnerSelect(whereClauseSegment, currentParm, resourceTypeName,
+                appendInnerSelect(whereClauseSegment, currentParm, referencingResourceTypeName, resourceTypeName,
                         chainedResourceVar, chainedLogicalResourceVar, chainedParmVar);
+                if (referencingResourceTypeName != null) {
+                    referencingResourceTypeName = resourceTypeName;
+                }
             } else {
                 // This logic processes the LAST parameter in the chain.
                 // Build this piece: CPx.PARAMETER_NAME_ID = x AND CPx.STR_VALUE = ?
@@ -717,35 +782,41 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         return new SqlQueryData(whereClauseSegment.toString(), bindVariables);
     }
 
-    private void appendMidChainParm(StringBuilder whereClauseSegment, QueryParameter currentParm, String chainedParmVar)
-            throws FHIRPersistenceDBConnectException, FHIRPersistenceDataAccessException, FHIRPersistenceException {
-        Integer parameterNameId = ParameterNamesCache.getParameterNameId(currentParm.getCode());
-        if (parameterNameId == null) {
-            parameterNameId = this.parameterDao.readParameterNameId(currentParm.getCode());
-            if (parameterNameId != null) {
-                this.parameterDao.addParameterNamesCacheCandidate(currentParm.getCode(), parameterNameId);
-            }
-        }
+    private void appendMidChainParm(StringBuilder whereClauseSegment, QueryParameter currentParm, String chainedParmVar,
+            boolean referenceValues) throws FHIRPersistenceDBConnectException, FHIRPersistenceDataAccessException, FHIRPersistenceException {
+        Integer parameterNameId = getParameterNameId(currentParm.getCode());
         whereClauseSegment.append(chainedParmVar).append(DOT).append("PARAMETER_NAME_ID").append(EQ)
                 .append(parameterNameId)
-                .append(AND).append(chainedParmVar).append(DOT).append(STR_VALUE).append(IN);
+                .append(AND).append(chainedParmVar).append(DOT).append(referenceValues ? "LOGICAL_RESOURCE_ID" : STR_VALUE).append(IN);
     }
 
-    private void appendInnerSelect(StringBuilder whereClauseSegment, QueryParameter currentParm,
-            String resourceTypeName, String chainedResourceVar, String chainedLogicalResourceVar, String chainedParmVar) {
+    /**
+     * Builds the SELECT for one link of a chain. If referencingResourceTypeName is not null, the SELECT returns the
+     * LOGICAL_RESOURCE_ID of the referencing resources, joined on their REF_VALUES table, instead of reference strings.
+     */
+    private void appendInnerSelect(StringBuilder whereClauseSegment, QueryParameter currentParm, String referencingResourceTypeName,
+            String resourceTypeName, String chainedResourceVar, String chainedLogicalResourceVar, String chainedParmVar)
+            throws FHIRPersistenceException {
         String chainedResourceTableAlias = chainedResourceVar + ".";
         String chainedLogicalResourceTableAlias = chainedLogicalResourceVar + ".";
         String chainedParmTableAlias = chainedParmVar + ".";
-
-        // Build this piece: SELECT 'resource-type-name' || '/' || CLRx.LOGICAL_ID
-        whereClauseSegment.append("SELECT ").append("'" + resourceTypeName
-                + "'").append(" || ").append("'/'").append(" || ").append(chainedLogicalResourceTableAlias)
-                .append("LOGICAL_ID");
+        String refValuesVar = chainedResourceVar.replace("CR", "RV");
+
+        if (referencingResourceTypeName != null) {
+            // Build this piece: SELECT RVx.LOGICAL_RESOURCE_ID FROM Observation_REF_VALUES RVx,
+            whereClauseSegment.append("SELECT ").append(refValuesVar).append(DOT).append("LOGICAL_RESOURCE_ID")
+                    .append(FROM).append(referencingResourceTypeName).append("_REF_VALUES ").append(refValuesVar).append(", ");
+        } else {
+            // Build this piece: SELECT 'resource-type-name' || '/' || CLRx.LOGICAL_ID FROM
+            whereClauseSegment.append("SELECT ").append("'" + resourceTypeName
+                    + "'").append(" || ").append("'/'").append(" || ").append(chainedLogicalResourceTableAlias)
+                    .append("LOGICAL_ID").append(FROM);
+        }
 
         QueryParameter nextParameter = currentParm.getNextParameter();
 
-        // Build this piece: FROM Device_RESOURCES CR1, Device_LOGICAL_RESOURCES CLR1, Device_STR_VALUES CP1 WHERE
-        whereClauseSegment.append(FROM)
+        // Build this piece: Device_RESOURCES CR1, Device_LOGICAL_RESOURCES CLR1, Device_STR_VALUES CP1 WHERE
+        whereClauseSegment
                 .append(resourceTypeName).append("_RESOURCES ").append(chainedResourceVar).append(", ")
                 .append(resourceTypeName).append("_LOGICAL_RESOURCES ").append(chainedLogicalResourceVar);
 
@@ -775,6 +846,17 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
 
         whereClauseSegment.append(" WHERE ");
 
+        if (referencingResourceTypeName != null) {
+            // RV1.PARAMETER_NAME_ID = x AND RV1.REF_RESOURCE_TYPE_ID = y AND RV1.REF_LOGICAL_RESOURCE_ID = CLR1.LOGICAL_RESOURCE_ID AND
+            whereClauseSegment.append(refValuesVar).append(DOT).append("PARAMETER_NAME_ID").append(EQ)
+                    .append(nullCheck(getParameterNameId(currentParm.getCode())))
+                    .append(AND).append(refValuesVar).append(DOT).append("REF_RESOURCE_TYPE_ID").append(EQ)
+                    .append(QuerySegmentAggregator.getResourceTypeId(resourceDao, resourceTypeName))
+                    .append(AND).append(refValuesVar).append(DOT).append("REF_LOGICAL_RESOURCE_ID").append(EQ)
+                    .append(chainedLogicalResourceTableAlias).append("LOGICAL_RESOURCE_ID")
+                    .append(AND);
+        }
+
         // CR1.RESOURCE_ID = CLR1.CURRENT_RESOURCE_ID AND CR1.IS_DELETED <> 'Y' AND
         // CP1.LOGICAL_RESOURCE_ID = CLR1.LOGICAL_RESOURCE_ID AND
         whereClauseSegment.append(chainedResourceTableAlias).append("RESOURCE_ID = ")
@@ -797,8 +879,8 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
      *
      * @throws Exception
      */
-    private void processWildcardChainedRefParm(QueryParameter currentParm, String chainedResourceVar,
-            String chainedLogicalResourceVar, String chainedParmVar,
+    private void processWildcardChainedRefParm(QueryParameter currentParm, String referencingResourceTypeName,
+            String chainedResourceVar, String chainedLogicalResourceVar, String chainedParmVar,
             StringBuilder whereClauseSegment, List<Object> bindVariables) throws Exception {
         final String METHODNAME = "processWildcardChainedRefParm";
         log.entering(CLASSNAME, METHODNAME, currentParm.toString());
@@ -830,8 +912,8 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                 whereClauseSegment.append(LEFT_PAREN);
             }
 
-            appendInnerSelect(whereClauseSegment, currentParm, resourceTypeName, chainedResourceVar,
-                    chainedLogicalResourceVar, chainedParmVar);
+            appendInnerSelect(whereClauseSegment, currentParm, referencingResourceTypeName, resourceTypeName,
+                    chainedResourceVar, chainedLogicalResourceVar, chainedParmVar);
 
             // This logic processes the LAST parameter in the chain.
             // Build this piece: CPx.PARAMETER_NAME_ID = x AND CPx.STR_VALUE = ?
@@ -915,6 +997,20 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
      */
     @Override
     protected SqlQueryData processInclusionCriteria(QueryParameter queryParm) throws Exception {
+        return processInclusionCriteria(null, queryParm);
+    }
+
+    /**
+     * Builds the query segment for the inclusion criteria of a compartment search on the passed resource type.
+     * The inclusion criteria use the reference values of that type, if enabled.
+     *
+     * @param resourceType
+     *                  - The type of resource being searched for, or null if not known.
+     * @param queryParm
+     * @return SqlQueryData
+     * @throws Exception
+     */
+    private SqlQueryData processInclusionCriteria(Class<?> resourceType, QueryParameter queryParm) throws Exception {
         final String METHODNAME = "processInclusionCriteria";
         log.entering(CLASSNAME, METHODNAME, queryParm.toString());
 
@@ -935,7 +1031,7 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
             // Handle the special case of chained inclusion criteria.
             if (currentParm.getCode().contains(DOT)) {
                 whereClauseSegment.append(LEFT_PAREN);
-                chainedIncQueryData = this.processChainedInclusionCriteria(currentParm);
+                chainedIncQueryData = this.processChainedInclusionCriteria(resourceType, currentParm);
                 whereClauseSegment.append(chainedIncQueryData.getQueryString());
                 bindVariables.addAll(chainedIncQueryData.getBindVariables());
                 whereClauseSegment.append(RIGHT_PAREN);
@@ -945,11 +1041,19 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                 // (pX.PARAMETER_NAME_ID = x AND
                 this.populateNameIdSubSegment(whereClauseSegment, currentParm.getCode(), PARAMETER_TABLE_ALIAS);
                 whereClauseSegment.append(AND);
-                // Build this piece: pX.str_value = search-attribute-value
-                whereClauseSegment.append(PARAMETER_TABLE_ALIAS + DOT).append(STR_VALUE).append(operator)
-                        .append(BIND_VAR);
+                int slash = currentParmValue.indexOf('/');
+                if (isSearchReferenceValues(resourceType) && slash > 0) {
+                    // Build this piece: pX.LOGICAL_RESOURCE_ID IN (SELECT RV.LOGICAL_RESOURCE_ID ...)
+                    appendCompartmentReferenceSelect(whereClauseSegment, resourceType.getSimpleName(), currentParm.getCode(),
+                            currentParmValue.substring(0, slash));
+                    bindVariables.add(currentParmValue.substring(slash + 1));
+                } else {
+                    // Build this piece: pX.str_value = search-attribute-value
+                    whereClauseSegment.append(PARAMETER_TABLE_ALIAS + DOT).append(STR_VALUE).append(operator)
+                            .append(BIND_VAR);
+                    bindVariables.add(currentParmValue);
+                }
                 whereClauseSegment.append(RIGHT_PAREN);
-                bindVariables.add(currentParmValue);
             }
 
             currentParm = currentParm.getNextParameter();
@@ -1212,6 +1316,58 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         return queryData;
     }
 
+    /**
+     * Returns the id of the passed search parameter name, or null if it isn't known to the database.
+     *
+     * @param queryParmName
+     * @return Integer
+     * @throws FHIRPersistenceException
+     */
+    private Integer getParameterNameId(String queryParmName) throws FHIRPersistenceException {
+        Integer parameterNameId = ParameterNamesCache.getParameterNameId(queryParmName);
+        if (parameterNameId == null) {
+            // only try to read, not create
+            parameterNameId = this.parameterDao.readParameterNameId(queryParmName);
+            if (parameterNameId != null) {
+                this.parameterDao.addParameterNamesCacheCandidate(queryParmName, parameterNameId);
+            }
+        }
+        return parameterNameId;
+    }
+
+    /**
+     * Builds the test of a direct compartment inclusion criterion on the REF_VALUES table of the searched resource
+     * type, which matches the logical_resource_id of the compartment resource rather than its reference string.
+     * The logical id of the compartment resource is the only bind variable:
+     *
+     * <pre>
+     * P1.LOGICAL_RESOURCE_ID IN (SELECT RV.LOGICAL_RESOURCE_ID FROM Observation_REF_VALUES RV, LOGICAL_RESOURCES RLR WHERE
+     *     RV.PARAMETER_NAME_ID = 14 AND RV.REF_LOGICAL_RESOURCE_ID = RLR.LOGICAL_RESOURCE_ID AND
+     *     RLR.RESOURCE_TYPE_ID = 3 AND RLR.LOGICAL_ID = ?)
+     * </pre>
+     */
+    private void appendCompartmentReferenceSelect(StringBuilder whereClauseSegment, String resourceTypeName, String code,
+            String compartmentResourceTypeName) throws FHIRPersistenceException {
+        whereClauseSegment.append(PARAMETER_TABLE_ALIAS + DOT).append("LOGICAL_RESOURCE_ID").append(IN)
+                .append("(SELECT RV.LOGICAL_RESOURCE_ID FROM ").append(resourceTypeName).append("_REF_VALUES RV, LOGICAL_RESOURCES RLR")
+                .append(" WHERE RV.PARAMETER_NAME_ID").append(EQ).append(nullCheck(getParameterNameId(code)))
+                .append(AND).append("RV.REF_LOGICAL_RESOURCE_ID = RLR.LOGICAL_RESOURCE_ID")
+                .append(AND).append("RLR.RESOURCE_TYPE_ID").append(EQ)
+                .append(QuerySegmentAggregator.getResourceTypeId(resourceDao, compartmentResourceTypeName))
+                .append(AND).append("RLR.LOGICAL_ID").append(EQ).append(BIND_VAR).append(RIGHT_PAREN);
+    }
+
+    /**
+     * Returns true if references from the passed resource type are searched using the X_REF_VALUES tables.
+     * The system-level Resource type has no such table.
+     *
+     * @param resourceType
+     * @return boolean
+     */
+    private boolean isSearchReferenceValues(Class<?> resourceType) {
+        return searchReferenceValues && resourceType != null && !Resource.class.equals(resourceType);
+    }
+
     /**
      * Populates the parameter name sub-segment of the passed where clause segment.
      *
@@ -1228,15 +1384,7 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
 
         // Build this piece of the segment:
         // (P1.PARAMETER_NAME_ID = x
-        parameterNameId = ParameterNamesCache.getParameterNameId(queryParmName);
-        if (parameterNameId == null) {
-            // only try to read, not create
-            parameterNameId = this.parameterDao.readParameterNameId(queryParmName);
-
-            if (parameterNameId != null) {
-                this.parameterDao.addParameterNamesCacheCandidate(queryParmName, parameterNameId);
-            }
-        }
+        parameterNameId = getParameterNameId(queryParmName);
         whereClauseSegment.append(LEFT_PAREN);
         whereClauseSegment.append(parameterTableAlias + DOT).append("PARAMETER_NAME_ID=")
                 .append(nullCheck(parameterNameId));
@@ -1269,7 +1417,7 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
      *         chained inclusion criterion.
      * @throws Exception
      */
-    private SqlQueryData processChainedInclusionCriteria(QueryParameter queryParm) throws Exception {
+    private SqlQueryData processChainedInclusionCriteria(Class<?> resourceType, QueryParameter queryParm) throws Exception {
         final String METHODNAME = "processChainedInclusionCriteria";
         log.entering(CLASSNAME, METHODNAME, queryParm.toString());
 
@@ -1279,7 +1427,7 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         // Transform the passed query parm into a chained parameter representation.
         rootParameter = SearchUtil.parseChainedInclusionCriteria(queryParm);
         // Call method to process the Parameter built by this method as a chained parameter.
-        queryData     = this.processChainedReferenceParm(rootParameter);
+        queryData     = this.processChainedReferenceParm(resourceType, rootParameter);
 
         log.exiting(CLASSNAME, METHODNAME);
         return queryData;
@@ -0,0 +1,221 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_PARALLEL_DECODE_ENABLED;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_PARALLEL_DECODE_MIN_PAGE_SIZE;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_PARALLEL_DECODE_PARALLELISM;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.config.PropertyGroup;
+import com.ibm.fhir.exception.FHIRException;
+import com.ibm.fhir.persistence.jdbc.dto.Resource;
+
+/**
+ * Decodes the resources on a page of results. Pages with at least {@code minPageSize} resources are split into
+ * chunks which are decoded concurrently in a shared {@link ForkJoinPool}; smaller pages are decoded on the calling
+ * thread. Either way, the decoded resources are returned in the order of the resource DTOs.
+ *
+ * <p>Whether parallel decoding is enabled and the minimum page size are read from the configuration of the tenant
+ * of each request. The pool is shared by all tenants, so its parallelism is read from the default configuration
+ * when the pool is created.
+ */
+public final class ParallelResourceDecoder {
+    private static final String CLASSNAME = ParallelResourceDecoder.class.getName();
+    private static final Logger log = Logger.getLogger(CLASSNAME);
+
+    public static final int DEFAULT_MIN_PAGE_SIZE = 16;
+
+    // the number of chunks per worker thread, so that a slow chunk doesn't hold up the whole page
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static ForkJoinPool pool;
+
+    /**
+     * Decodes a single resource DTO
+     */
+    @FunctionalInterface
+    public interface Decoder<T> {
+        /**
+         * @param resourceDTO
+         *     the resource DTO to decode
+         * @return the decoded resource, or null
+         */
+        T decode(Resource resourceDTO) throws FHIRException, IOException;
+    }
+
+    private ParallelResourceDecoder() { }
+
+    /**
+     * Decode each of the passed resource DTOs, using the parallel decode configuration of the current tenant.
+     *
+     * @param resourceDTOList
+     *     the resource DTOs on a page of results
+     * @param decoder
+     *     the function which decodes each resource DTO
+     * @return a list of the decoded resources in the same order as resourceDTOList; it contains null wherever the
+     *     decoder returned null
+     * @throws FHIRException
+     * @throws IOException
+     */
+    public static <T> List<T> decode(List<Resource> resourceDTOList, Decoder<T> decoder) throws FHIRException, IOException {
+        return decode(resourceDTOList, decoder,
+            FHIRConfigHelper.getBooleanProperty(PROPERTY_JDBC_PARALLEL_DECODE_ENABLED, Boolean.TRUE),
+            FHIRConfigHelper.getIntProperty(PROPERTY_JDBC_PARALLEL_DECODE_MIN_PAGE_SIZE, DEFAULT_MIN_PAGE_SIZE));
+    }
+
+    /**
+     * Decode each of the passed resource DTOs.
+     *
+     * @param resourceDTOList
+     *     the resource DTOs on a page of results
+     * @param decoder
+     *     the function which decodes each resource DTO
+     * @param enabled
+     *     whether the page may be decoded in parallel
+     * @param minPageSize
+     *     the smallest page which is decoded in parallel
+     * @return a list of the decoded resources in the same order as resourceDTOList; it contains null wherever the
+     *     decoder returned null
+     * @throws FHIRException
+     * @throws IOException
+     */
+    public static <T> List<T> decode(List<Resource> resourceDTOList, Decoder<T> decoder, boolean enabled, int minPageSize)
+            throws FHIRException, IOException {
+        final int size = resourceDTOList.size();
+        final boolean parallel = enabled && size > 1 && size >= minPageSize && getPool().getParallelism() > 1;
+        final long start = System.nanoTime();
+
+        final Object[] resources = new Object[size];
+        if (parallel) {
+            decodeParallel(resourceDTOList, decoder, resources);
+        } else {
+            decodeRange(resourceDTOList, decoder, resources, 0, size);
+        }
+
+        if (log.isLoggable(Level.FINE)) {
+            long elapsed = (System.nanoTime() - start) / 1000000;
+            log.fine("Decoded " + size + " resources " + (parallel ? "in parallel" : "serially") + " in " + elapsed + " ms");
+        }
+
+        @SuppressWarnings("unchecked")
+        List<T> result = (List<T>) Arrays.asList(resources);
+        return result;
+    }
+
+    private static <T> void decodeParallel(List<Resource> resourceDTOList, Decoder<T> decoder, Object[] resources)
+            throws FHIRException, IOException {
+        final ForkJoinPool pool = getPool();
+        final int size = resourceDTOList.size();
+        final int chunkCount = Math.min(size, pool.getParallelism() * CHUNKS_PER_THREAD);
+        final int chunkSize = (size + chunkCount - 1) / chunkCount;
+
+        // each chunk returns the checked exception which stopped it (if any), because the pool wraps thrown ones
+        List<Callable<Exception>> tasks = new ArrayList<>(chunkCount);
+        for (int from = 0; from < size; from += chunkSize) {
+            final int chunkFrom = from;
+            final int chunkTo = Math.min(size, from + chunkSize);
+            tasks.add(() -> {
+                try {
+                    decodeRange(resourceDTOList, decoder, resources, chunkFrom, chunkTo);
+                    return null;
+                } catch (FHIRException | IOException e) {
+                    return e;
+                }
+            });
+        }
+
+        // invokeAll waits for every chunk, so the first failure (in page order) is the one reported
+        for (Future<Exception> future : pool.invokeAll(tasks)) {
+            Exception exception;
+            try {
+                exception = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FHIRException("Interrupted while decoding resources", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new FHIRException("Unexpected error while decoding resources", cause);
+            }
+            if (exception instanceof FHIRException) {
+                throw (FHIRException) exception;
+            }
+            if (exception != null) {
+                throw (IOException) exception;
+            }
+        }
+    }
+
+    private static <T> void decodeRange(List<Resource> resourceDTOList, Decoder<T> decoder, Object[] resources, int from, int to)
+            throws FHIRException, IOException {
+        for (int i = from; i < to; i++) {
+            resources[i] = decoder.decode(resourceDTOList.get(i));
+        }
+    }
+
+    /**
+     * @return the pool shared by all requests, which is created the first time it is used
+     */
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            int threads = getParallelism();
+            log.info("Creating parallel resource decode pool with parallelism=" + threads);
+
+            // the worker threads load classes (e.g. the model classes) using the loader of the persistence layer
+            ClassLoader classLoader = ParallelResourceDecoder.class.getClassLoader();
+            ForkJoinWorkerThreadFactory factory = p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setContextClassLoader(classLoader);
+                thread.setName("fhir-decode-" + thread.getPoolIndex());
+                return thread;
+            };
+            pool = new ForkJoinPool(threads, factory, null, false);
+        }
+        return pool;
+    }
+
+    /**
+     * @return the parallelism of the pool, from the default configuration
+     */
+    private static int getParallelism() {
+        final int availableProcessors = Runtime.getRuntime().availableProcessors();
+        int parallelism = availableProcessors;
+        try {
+            PropertyGroup fhirConfig = FHIRConfiguration.getInstance().loadConfiguration();
+            if (fhirConfig != null) {
+                parallelism = fhirConfig.getIntProperty(PROPERTY_JDBC_PARALLEL_DECODE_PARALLELISM, availableProcessors);
+            }
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Unable to read the parallel decode parallelism; using " + availableProcessors, e);
+        }
+        if (parallelism < 1) {
+            log.warning("Invalid parallel decode parallelism: " + parallelism + "; using " + availableProcessors);
+            parallelism = availableProcessors;
+        }
+        return parallelism;
+    }
+}
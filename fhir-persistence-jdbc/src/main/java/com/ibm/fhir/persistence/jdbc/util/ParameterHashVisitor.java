@@ -0,0 +1,165 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.dto.CompositeParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.DateParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
+import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValueVisitor;
+import com.ibm.fhir.persistence.jdbc.dto.LocationParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.NumberParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.QuantityParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.ReferenceParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.StringParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.TokenParmVal;
+
+/**
+ * Computes the hash of the extracted values of each search parameter, and records the parameter tables the values
+ * are written to by the {@link com.ibm.fhir.persistence.jdbc.dao.impl.ParameterVisitorBatchDAO}.
+ *
+ * <p>Each value is encoded separately and the encodings of a parameter are sorted before they are digested, so the
+ * hash does not depend on the order in which the values were extracted.
+ */
+public class ParameterHashVisitor implements ExtractedParameterValueVisitor {
+    // the number of bytes of the SHA-256 digest which are kept for each parameter
+    private static final int HASH_BYTES = 8;
+
+    private final Map<String, List<String>> values = new HashMap<>();
+    private final Map<String, Integer> tables = new HashMap<>();
+
+    /**
+     * @return the hashes of the parameters visited so far
+     */
+    public ParameterHashes getParameterHashes() {
+        SortedMap<String, ParameterHashes.Entry> entries = new TreeMap<>();
+        for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+            entries.put(entry.getKey(), new ParameterHashes.Entry(tables.get(entry.getKey()), hash(entry.getValue())));
+        }
+        return new ParameterHashes(entries);
+    }
+
+    private static String hash(List<String> values) {
+        List<String> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String value : sorted) {
+                digest.update(value.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return Base64.getEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest.digest(), HASH_BYTES));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void visit(StringParmVal param) throws FHIRPersistenceException {
+        add(param, isBase(param) ? ParameterHashes.RESOURCE_STR_VALUES : ParameterHashes.STR_VALUES, param.getValueString());
+    }
+
+    @Override
+    public void visit(ReferenceParmVal param) throws FHIRPersistenceException {
+        // the reference is also stored as a string value
+        add(param, isBase(param) ? ParameterHashes.RESOURCE_STR_VALUES : ParameterHashes.STR_VALUES | ParameterHashes.REF_VALUES,
+            param.getValueString());
+    }
+
+    @Override
+    public void visit(NumberParmVal param) throws FHIRPersistenceException {
+        add(param, ParameterHashes.NUMBER_VALUES, param.getValueNumber(), param.getValueNumberLow(), param.getValueNumberHigh());
+    }
+
+    @Override
+    public void visit(DateParmVal param) throws FHIRPersistenceException {
+        Timestamp start = param.getValueDateStart();
+        Timestamp end = param.getValueDateEnd();
+        // Timestamp.toString() formats the instant in the default time zone, which gives the same text for
+        // different instants in the hour which is repeated when daylight saving time ends
+        add(param, isBase(param) ? ParameterHashes.RESOURCE_DATE_VALUES : ParameterHashes.DATE_VALUES,
+            start == null ? null : start.getTime(), start == null ? null : start.getNanos(),
+            end == null ? null : end.getTime(), end == null ? null : end.getNanos());
+    }
+
+    @Override
+    public void visit(TokenParmVal param) throws FHIRPersistenceException {
+        add(param, isBase(param) ? ParameterHashes.RESOURCE_TOKEN_VALUES : ParameterHashes.TOKEN_VALUES,
+            param.getValueSystem(), param.getValueCode());
+    }
+
+    @Override
+    public void visit(QuantityParmVal param) throws FHIRPersistenceException {
+        add(param, ParameterHashes.QUANTITY_VALUES, param.getValueSystem(), param.getValueCode(), param.getValueNumber(),
+            param.getValueNumberLow(), param.getValueNumberHigh());
+    }
+
+    @Override
+    public void visit(LocationParmVal param) throws FHIRPersistenceException {
+        add(param, ParameterHashes.LATLNG_VALUES, param.getValueLatitude(), param.getValueLongitude());
+    }
+
+    @Override
+    public void visit(CompositeParmVal param) throws FHIRPersistenceException {
+        // the components are encoded in order, because their position determines the composite columns they go in,
+        // and their rows are written to the tables of their types under the name of the composite
+        ParameterHashVisitor components = new ParameterHashVisitor();
+        int compositeTables = ParameterHashes.COMPOSITES;
+        List<Object> fields = new ArrayList<>();
+        for (ExtractedParameterValue component : param.getComponent()) {
+            component.accept(components);
+            compositeTables |= components.tables.get(component.getName());
+            List<String> componentValues = components.values.get(component.getName());
+            fields.add(componentValues.get(componentValues.size() - 1));
+        }
+        add(param, compositeTables, fields.toArray());
+    }
+
+    /**
+     * Add the encoding of the type, name and values of a parameter, prefixing each field with its length so that
+     * different parameters can't produce the same encoding
+     */
+    private void add(ExtractedParameterValue param, int parameterTables, Object... fields) {
+        StringBuilder result = new StringBuilder();
+        append(result, param.getClass().getSimpleName());
+        append(result, param.getBase());
+        append(result, param.getName());
+        for (Object field : fields) {
+            append(result, field);
+        }
+        values.computeIfAbsent(param.getName(), k -> new ArrayList<>()).add(result.toString());
+        tables.merge(param.getName(), parameterTables, (a, b) -> a | b);
+    }
+
+    private static void append(StringBuilder result, Object field) {
+        if (field == null) {
+            result.append("-1:");
+        } else {
+            String value = field.toString();
+            result.append(value.length()).append(':').append(value);
+        }
+    }
+
+    private static boolean isBase(ExtractedParameterValue param) {
+        return "Resource".equals(param.getBase());
+    }
+}
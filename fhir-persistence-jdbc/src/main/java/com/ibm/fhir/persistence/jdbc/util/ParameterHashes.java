@@ -0,0 +1,214 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
+import com.ibm.fhir.schema.control.FhirSchemaConstants;
+
+/**
+ * The hash of the values of each search parameter of a resource, and the parameter tables which hold the rows of
+ * each parameter. These are stored with the current version of a resource (in the PARAMETER_HASH column of its
+ * xx_logical_resources table), so that an update only deletes and inserts the rows of the parameters whose values
+ * have changed. The rows of a parameter are replaced as a whole, because the parameter tables have no key for an
+ * individual value.
+ *
+ * <p>The encoded form is a sequence of entries sorted by parameter name, each of which is
+ * <pre>
+ * &lt;length of name&gt;:&lt;name&gt;:&lt;tables (base 36)&gt;:&lt;hash&gt;;
+ * </pre>
+ *
+ * @see ParameterHashVisitor
+ */
+public final class ParameterHashes {
+    // The parameter tables, which are combined as bits to give the tables of a parameter. The rows of a composite
+    // parameter are in the composites table and in the tables of its components, all with the name of the composite
+    public static final int COMPOSITES = 1;
+    public static final int STR_VALUES = 1 << 1;
+    public static final int NUMBER_VALUES = 1 << 2;
+    public static final int DATE_VALUES = 1 << 3;
+    public static final int LATLNG_VALUES = 1 << 4;
+    public static final int TOKEN_VALUES = 1 << 5;
+    public static final int QUANTITY_VALUES = 1 << 6;
+    public static final int REF_VALUES = 1 << 7;
+    public static final int RESOURCE_STR_VALUES = 1 << 8;
+    public static final int RESOURCE_DATE_VALUES = 1 << 9;
+    public static final int RESOURCE_TOKEN_VALUES = 1 << 10;
+
+    private static final ParameterHashes EMPTY = new ParameterHashes(new TreeMap<>());
+
+    private final SortedMap<String, Entry> entries;
+
+    ParameterHashes(SortedMap<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Compute the hashes of the given parameter values.
+     *
+     * @param parameters
+     *     the extracted parameter values, may be null
+     * @return
+     *     the hashes, or null if there are no parameters
+     * @throws FHIRPersistenceException
+     */
+    public static ParameterHashes of(List<ExtractedParameterValue> parameters) throws FHIRPersistenceException {
+        if (parameters == null) {
+            return null;
+        }
+        ParameterHashVisitor visitor = new ParameterHashVisitor();
+        for (ExtractedParameterValue parameter : parameters) {
+            parameter.accept(visitor);
+        }
+        return visitor.getParameterHashes();
+    }
+
+    /**
+     * @return the encoded hashes, or null if they are too long to be stored, in which case the next update replaces
+     *     all the parameter rows of the resource
+     */
+    public String encode() {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            String name = entry.getKey();
+            result.append(name.length()).append(':').append(name).append(':')
+                .append(Integer.toString(entry.getValue().tables, Character.MAX_RADIX)).append(':')
+                .append(entry.getValue().hash).append(';');
+        }
+        return (result.length() > FhirSchemaConstants.PARAMETER_HASH_BYTES) ? null : result.toString();
+    }
+
+    /**
+     * Decode the hashes returned by {@link #encode()}.
+     *
+     * @param encoded
+     *     the encoded hashes, may be null
+     * @return
+     *     the hashes, or null if encoded is null
+     * @throws IllegalArgumentException
+     *     if encoded is not a valid encoding
+     */
+    public static ParameterHashes decode(String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        SortedMap<String, Entry> entries = new TreeMap<>();
+        try {
+            int position = 0;
+            while (position < encoded.length()) {
+                int separator = encoded.indexOf(':', position);
+                int nameEnd = separator + 1 + Integer.parseInt(encoded.substring(position, separator));
+                String name = encoded.substring(separator + 1, nameEnd);
+                if (encoded.charAt(nameEnd) != ':') {
+                    throw new IllegalArgumentException("Invalid parameter hashes: " + encoded);
+                }
+                separator = encoded.indexOf(':', nameEnd + 1);
+                int tables = Integer.parseInt(encoded.substring(nameEnd + 1, separator), Character.MAX_RADIX);
+                int end = encoded.indexOf(';', separator + 1);
+                entries.put(name, new Entry(tables, encoded.substring(separator + 1, end)));
+                position = end + 1;
+            }
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid parameter hashes: " + encoded, e);
+        }
+        return new ParameterHashes(entries);
+    }
+
+    /**
+     * Find the parameters of the replaced version whose rows have to be deleted, because they are not parameters of
+     * the new version or their values have changed.
+     *
+     * @param next
+     *     the hashes of the parameters of the new version, or null if it has no parameters
+     * @return
+     *     the tables which hold the rows of each of those parameters, keyed by parameter name
+     */
+    public Map<String, Integer> getStaleParameters(ParameterHashes next) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (!entry.getValue().equals((next == null ? EMPTY : next).entries.get(entry.getKey()))) {
+                result.put(entry.getKey(), entry.getValue().tables);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Select the parameter values whose rows have to be inserted, because they belong to a parameter which is new or
+     * whose values have changed.
+     *
+     * @param parameters
+     *     the parameter values from which these hashes were computed
+     * @param previous
+     *     the hashes of the parameters of the replaced version, or null if it has no parameter rows
+     * @return
+     *     the parameter values to insert
+     */
+    public List<ExtractedParameterValue> getChangedParameters(List<ExtractedParameterValue> parameters, ParameterHashes previous) {
+        if (previous == null) {
+            return parameters;
+        }
+        List<ExtractedParameterValue> result = new ArrayList<>();
+        for (ExtractedParameterValue parameter : parameters) {
+            if (!Objects.equals(entries.get(parameter.getName()), previous.entries.get(parameter.getName()))) {
+                result.add(parameter);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param name
+     * @return the tables which hold the rows of the named parameter, or 0 if it is not one of these parameters
+     */
+    public int getTables(String name) {
+        Entry entry = entries.get(name);
+        return (entry == null) ? 0 : entry.tables;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return (obj instanceof ParameterHashes) && entries.equals(((ParameterHashes) obj).entries);
+    }
+
+    @Override
+    public int hashCode() {
+        return entries.hashCode();
+    }
+
+    static final class Entry {
+        private final int tables;
+        private final String hash;
+
+        Entry(int tables, String hash) {
+            this.tables = tables;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Entry)) {
+                return false;
+            }
+            Entry other = (Entry) obj;
+            return tables == other.tables && hash.equals(other.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tables, hash);
+        }
+    }
+}
@@ -24,9 +24,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 import com.ibm.fhir.database.utils.common.DataDefinitionUtil;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.jdbc.JDBCConstants;
 import com.ibm.fhir.persistence.jdbc.connection.QueryHints;
 import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
@@ -34,6 +36,7 @@ import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
 import com.ibm.fhir.persistence.jdbc.util.type.LastUpdatedParmBehaviorUtil;
 import com.ibm.fhir.search.SearchConstants.Modifier;
 import com.ibm.fhir.search.SearchConstants.Type;
+import com.ibm.fhir.search.cursor.SearchCursor;
 import com.ibm.fhir.search.parameters.QueryParameter;
 import com.ibm.fhir.search.parameters.QueryParameterValue;
 
@@ -63,6 +66,9 @@ public class QuerySegmentAggregator {
     protected static final String SYSTEM_LEVEL_SUBSELECT_COUNT_ROOT = " SELECT COUNT(DISTINCT LR.LOGICAL_RESOURCE_ID) AS CNT ";
     protected static final String WHERE_CLAUSE_ROOT = "WHERE R.IS_DELETED <> 'Y'";
 
+    // Matches the parameter table alias in the query segments, compiled once rather than for every segment
+    private static final Pattern PARAMETER_TABLE_ALIAS_PATTERN = Pattern.compile(PARAMETER_TABLE_ALIAS + "\\.");
+
     // Enables the SKIP_WHERE of WHERE clauses.
     public static final String ID = "_id";
     public static final String ID_COLUMN_NAME = "LOGICAL_ID ";
@@ -94,6 +100,12 @@ public class QuerySegmentAggregator {
 
     private int offset;
     private int pageSize;
+
+    // When set, the page starts with the first RESOURCE_ID after this one rather than at the offset
+    protected Long lastResourceId;
+
+    // When set, one row more than the page size is fetched
+    private boolean lookAhead;
     protected ParameterDAO parameterDao;
     protected ResourceDAO resourceDao;
 
@@ -121,6 +133,30 @@ public class QuerySegmentAggregator {
         this.resourceTypes = resourceTypes;
     }
 
+    /**
+     * Use keyset pagination for the query built by {@link #buildQuery()}. Instead of skipping over the
+     * rows of the preceding pages, the query seeks directly to the first RESOURCE_ID after the last
+     * one on the preceding page. Results are ordered by RESOURCE_ID, so a cursor with sort values,
+     * which was issued by a sorted search, is ignored.
+     *
+     * @param cursor the cursor for the page, issued by the same search for the preceding page
+     */
+    public void setCursor(SearchCursor cursor) {
+        if (cursor.getSortValues().isEmpty()) {
+            this.lastResourceId = cursor.getLastResourceId();
+        }
+    }
+
+    /**
+     * Fetch one row more than the page size in the query built by {@link #buildQuery()}, so that the caller can tell
+     * whether another page follows without counting the search results. The extra row is not part of the page.
+     *
+     * @param lookAhead whether to fetch the first row of the following page
+     */
+    public void setLookAhead(boolean lookAhead) {
+        this.lookAhead = lookAhead;
+    }
+
     /**
      * Adds a query segment, which is a where clause segment corresponding to the
      * passed query Parameter and its encapsulated search values.
@@ -196,6 +232,7 @@ public class QuerySegmentAggregator {
             queryString.append("     R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID ");
             queryString.append(" AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID ");
             queryString.append(" AND R.IS_DELETED <> 'Y'");
+            addKeysetClause(queryString);
 
 
             // An important step here is to add _id, _lastUpdated, and then values table bind variables
@@ -205,10 +242,11 @@ public class QuerySegmentAggregator {
             for (SqlQueryData querySegment : this.querySegments) {
                 allBindVariables.addAll(querySegment.getBindVariables());
             }
+            addKeysetBindVariables(allBindVariables);
 
             // Add default ordering
             queryString.append(DEFAULT_ORDERING);
-            this.addPaginationClauses(queryString);
+            this.addPaginationClauses(queryString, allBindVariables);
             addOptimizerHint(queryString);
             queryData = new SqlQueryData(queryString.toString(), allBindVariables);
         }
@@ -362,6 +400,9 @@ public class QuerySegmentAggregator {
                 queryString.append("     R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID ");
                 queryString.append(" AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID ");
                 queryString.append(" AND R.IS_DELETED <> 'Y'");
+                if (addFinalClauses) {
+                    addKeysetClause(queryString);
+                }
 
                 // An important step here is to add _id, values table bind variables, and then _lastUpdated
                 allBindVariables.addAll(idsObjects);
@@ -370,6 +411,9 @@ public class QuerySegmentAggregator {
                     allBindVariables.addAll(querySegment.getBindVariables());
                 }
                 allBindVariables.addAll(lastUpdatedObjects);
+                if (addFinalClauses) {
+                    addKeysetBindVariables(allBindVariables);
+                }
             }
         }
 
@@ -379,7 +423,7 @@ public class QuerySegmentAggregator {
         // Add Ordering and Pagination
         if (addFinalClauses) {
             queryString.append(DEFAULT_ORDERING);
-            this.addPaginationClauses(queryString);
+            this.addPaginationClauses(queryString, allBindVariables);
         }
 
         addOptimizerHint(queryString);
@@ -551,7 +595,7 @@ public class QuerySegmentAggregator {
             if (!SKIP_WHERE.contains(code)) {
 
                 if (Modifier.MISSING.equals(param.getModifier())) {
-                    whereClauseSegment = querySegment.getQueryString().replaceAll(PARAMETER_TABLE_ALIAS + "\\.", "");
+                    whereClauseSegment = PARAMETER_TABLE_ALIAS_PATTERN.matcher(querySegment.getQueryString()).replaceAll("");
                     whereClause.append(whereClauseSegment);
                 } else {
                     if (!Type.COMPOSITE.equals(param.getType())) {
@@ -561,7 +605,7 @@ public class QuerySegmentAggregator {
                         //    AND param0.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID
 
                         final String paramTableAlias = "param" + i;
-                        final String onFilter = querySegment.getQueryString().replaceAll(PARAMETER_TABLE_ALIAS + "\\.", paramTableAlias + ".");
+                        final String onFilter = PARAMETER_TABLE_ALIAS_PATTERN.matcher(querySegment.getQueryString()).replaceAll(paramTableAlias + ".");
 
                         whereClause.append(JOIN);
                         whereClause.append(tableName(overrideType, param));
@@ -573,8 +617,8 @@ public class QuerySegmentAggregator {
                         // add an alias for the composite table
                         String compositeAlias = "comp" + (i + 1);
                         whereClauseSegment =
-                                querySegment.getQueryString().replaceAll(PARAMETER_TABLE_ALIAS + "\\.",
-                                        compositeAlias + ".");
+                                PARAMETER_TABLE_ALIAS_PATTERN.matcher(querySegment.getQueryString())
+                                        .replaceAll(compositeAlias + ".");
 
                         whereClause.append(JOIN)
                                 .append("(SELECT " + compositeAlias + ".LOGICAL_RESOURCE_ID FROM ");
@@ -610,6 +654,27 @@ public class QuerySegmentAggregator {
         log.exiting(CLASSNAME, METHODNAME);
     }
 
+    /**
+     * Returns the id of the passed resource type, or -1 if it isn't known to the database, which
+     * keeps the query syntax valid.
+     *
+     * @param resourceDao
+     * @param resourceTypeName
+     * @return int
+     * @throws FHIRPersistenceException
+     */
+    static int getResourceTypeId(ResourceDAO resourceDao, String resourceTypeName) throws FHIRPersistenceException {
+        Integer resourceTypeId = ResourceTypesCache.getResourceTypeId(resourceTypeName);
+        if (resourceTypeId == null) {
+            // only read, the stored procedure behind readResourceTypeId would create the resource type
+            resourceTypeId = resourceDao.readAllResourceTypeNames().get(resourceTypeName);
+            if (resourceTypeId != null) {
+                resourceDao.addResourceTypeCacheCandidate(resourceTypeName, resourceTypeId);
+            }
+        }
+        return resourceTypeId == null ? -1 : resourceTypeId;
+    }
+
     public static String tableName(String resourceType, QueryParameter param) {
         StringBuilder name = new StringBuilder(resourceType);
         switch (param.getType()) {
@@ -664,17 +729,52 @@ public class QuerySegmentAggregator {
      * Adds the appropriate pagination clauses to the passed query string buffer,
      * based on the type
      * of database we're running against.
+     * The offset and row count are bind variables, so every page of a search
+     * uses the same statement text and the database can reuse its access plan.
      *
      * @param queryString A query string buffer.
+     * @param bindVariables the bind variables for the query being built; the
+     *        pagination clause must be the last part of the query with bind variables.
      * @throws Exception
      */
-    protected void addPaginationClauses(StringBuilder queryString) throws Exception {
+    protected void addPaginationClauses(StringBuilder queryString, List<Object> bindVariables) throws Exception {
+        // With keyset pagination, the preceding pages have already been excluded by the keyset clause
+        int offset = this.lastResourceId != null ? 0 : this.offset;
+        int rows = this.lookAhead ? this.pageSize + 1 : this.pageSize;
 
         if (this.parameterDao.isDb2Database()) {
-            queryString.append(" LIMIT ").append(this.pageSize).append(" OFFSET ").append(this.offset);
+            queryString.append(" LIMIT ").append(JDBCConstants.BIND_VAR)
+                    .append(" OFFSET ").append(JDBCConstants.BIND_VAR);
+            bindVariables.add(rows);
+            bindVariables.add(offset);
         } else {
-            queryString.append(" OFFSET ").append(this.offset).append(" ROWS")
-                    .append(" FETCH NEXT ").append(this.pageSize).append(" ROWS ONLY");
+            queryString.append(" OFFSET ").append(JDBCConstants.BIND_VAR).append(" ROWS")
+                    .append(" FETCH NEXT ").append(JDBCConstants.BIND_VAR).append(" ROWS ONLY");
+            bindVariables.add(offset);
+            bindVariables.add(rows);
+        }
+    }
+
+    /**
+     * Adds the keyset predicate to the join with the RESOURCES table when keyset pagination is in use.
+     * The corresponding bind variable is added by {@link #addKeysetBindVariables(List)}.
+     *
+     * @param queryString A query string buffer.
+     */
+    protected void addKeysetClause(StringBuilder queryString) {
+        if (this.lastResourceId != null) {
+            queryString.append(" AND R.RESOURCE_ID > ").append(JDBCConstants.BIND_VAR);
+        }
+    }
+
+    /**
+     * Adds the bind variable for the predicate added by {@link #addKeysetClause(StringBuilder)}.
+     *
+     * @param bindVariables the bind variables for the query being built.
+     */
+    protected void addKeysetBindVariables(List<Object> bindVariables) {
+        if (this.lastResourceId != null) {
+            bindVariables.add(this.lastResourceId);
         }
     }
 }
\ No newline at end of file
@@ -50,4 +50,16 @@ public class QuerySegmentAggregatorFactory {
         log.exiting(CLASSNAME, METHODNAME);
         return qsa;
     }
+
+    /**
+     * Keyset pagination relies on the results being ordered by RESOURCE_ID, or by their sort keys and
+     * then RESOURCE_ID, so it's only supported for searches built by the QuerySegmentAggregator and
+     * the SortedQuerySegmentAggregator.
+     *
+     * @param searchContext
+     * @return true if the search can be paged by seeking past the last result of the preceding page
+     */
+    public static boolean supportsKeysetPagination(FHIRSearchContext searchContext) {
+        return !searchContext.hasIncludeParameters() && !searchContext.hasRevIncludeParameters();
+    }
 }
\ No newline at end of file
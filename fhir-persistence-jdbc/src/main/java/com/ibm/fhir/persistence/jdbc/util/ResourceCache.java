@@ -0,0 +1,225 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_RESOURCE_CACHE_CURRENT_VERSION_TTL;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_RESOURCE_CACHE_ENABLED;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_RESOURCE_CACHE_MAX_ENTRIES;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_RESOURCE_CACHE_RESOURCE_TYPES;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.core.util.ConcurrentCache;
+import com.ibm.fhir.model.resource.Resource;
+
+/**
+ * This class provides a static cache of parsed FHIR resources for the read and vread interactions, so that frequently
+ * read resources are neither fetched from the database nor decompressed and parsed again. It is disabled by default,
+ * and can be limited to some resource types.
+ *
+ * <p>Specific versions of a resource never change, so they are held until they are evicted to make room for others.
+ * The current version of a resource is held separately and is removed when the resource is updated or deleted on this
+ * server. Because updates made by other servers sharing the same database are not seen, current version entries also
+ * expire after a configurable time to live.
+ */
+public class ResourceCache {
+    private static final String CLASSNAME = ResourceCache.class.getName();
+    private static final Logger log = Logger.getLogger(CLASSNAME);
+
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+    private static final int DEFAULT_CURRENT_VERSION_TTL = 60;
+
+    private static final TenantDatastoreCaches<ResourceCache> resourceCaches = new TenantDatastoreCaches<>(ResourceCache::createResourceCache);
+
+    private final ConcurrentCache<String, Resource> versionCache;
+    private final ConcurrentCache<String, Resource> currentVersionCache;
+
+    // the resource types to cache, or null if all resource types are cached
+    private final Set<String> resourceTypes;
+
+    // incremented for each update or delete of a resource type, so that a reader can tell whether the current version
+    // it read from the database may have been replaced while it was being read
+    private final ConcurrentHashMap<String, AtomicLong> modificationCounts = new ConcurrentHashMap<>();
+
+    private ResourceCache(int maxEntries, int currentVersionTtl, List<String> resourceTypes) {
+        this.versionCache = ConcurrentCache.<String, Resource>builder()
+                .maximumSize(maxEntries)
+                .build();
+        this.currentVersionCache = ConcurrentCache.<String, Resource>builder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(currentVersionTtl))
+                .build();
+        this.resourceTypes = (resourceTypes == null) ? null : new HashSet<>(resourceTypes);
+    }
+
+    /**
+     * Returns the resource cache for the current tenant-datastore, or null if the resource cache is not enabled
+     * for it.
+     * @return ResourceCache
+     */
+    public static ResourceCache getInstance() {
+        return resourceCaches.get();
+    }
+
+    /**
+     * Creates the resource cache for a tenant-datastore from the configuration of the current tenant.
+     * @param tenantDatastoreCacheName
+     * @return ResourceCache, or null if it is disabled
+     */
+    private static ResourceCache createResourceCache(String tenantDatastoreCacheName) {
+        if (!FHIRConfigHelper.getBooleanProperty(PROPERTY_JDBC_RESOURCE_CACHE_ENABLED, Boolean.FALSE)) {
+            return null;
+        }
+
+        int maxEntries = FHIRConfigHelper.getIntProperty(PROPERTY_JDBC_RESOURCE_CACHE_MAX_ENTRIES, DEFAULT_MAX_ENTRIES);
+        int currentVersionTtl = FHIRConfigHelper.getIntProperty(PROPERTY_JDBC_RESOURCE_CACHE_CURRENT_VERSION_TTL, DEFAULT_CURRENT_VERSION_TTL);
+        List<String> resourceTypes = FHIRConfigHelper.getStringListProperty(PROPERTY_JDBC_RESOURCE_CACHE_RESOURCE_TYPES);
+        if (maxEntries < 1 || currentVersionTtl < 1) {
+            log.warning("Resource cache disabled for tenantDatastore=" + tenantDatastoreCacheName
+                    + "; maxEntries and currentVersionTimeToLive must be greater than zero");
+            return null;
+        }
+
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Created resource cache for tenantDatastore=" + tenantDatastoreCacheName + ", maxEntries=" + maxEntries
+                    + ", currentVersionTimeToLive=" + currentVersionTtl + ", resourceTypes=" + resourceTypes);
+        }
+        return new ResourceCache(maxEntries, currentVersionTtl, resourceTypes);
+    }
+
+    /**
+     * @param resourceType A valid FHIR resource type name.
+     * @return true if resources of the passed type are cached
+     */
+    public boolean isCached(String resourceType) {
+        return resourceTypes == null || resourceTypes.contains(resourceType);
+    }
+
+    /**
+     * Returns the cached current version of a resource, or null if it is not cached.
+     * @param resourceType A valid FHIR resource type name.
+     * @param logicalId The logical id of the resource.
+     * @return Resource
+     */
+    public Resource getCurrentVersion(String resourceType, String logicalId) {
+        return currentVersionCache.get(key(resourceType, logicalId));
+    }
+
+    /**
+     * Returns the cached version of a resource, or null if it is not cached.
+     * @param resourceType A valid FHIR resource type name.
+     * @param logicalId The logical id of the resource.
+     * @param versionId The version of the resource.
+     * @return Resource
+     */
+    public Resource getVersion(String resourceType, String logicalId, int versionId) {
+        return versionCache.get(key(resourceType, logicalId, versionId));
+    }
+
+    /**
+     * Returns the modification count for the passed resource type, which must be obtained before the current version
+     * of a resource is read from the database and then passed to {@link #putCurrentVersion(String, String, Resource, long)}.
+     * @param resourceType A valid FHIR resource type name.
+     * @return long
+     */
+    public long getModificationCount(String resourceType) {
+        return modificationCount(resourceType).get();
+    }
+
+    /**
+     * Adds the current version of a resource, which was read from the database, to the cache. The resource is also
+     * cached as a specific version.
+     * @param resourceType A valid FHIR resource type name.
+     * @param logicalId The logical id of the resource.
+     * @param resource The resource, which must have a meta.versionId.
+     * @param modificationCount The modification count obtained before the resource was read from the database.
+     */
+    public void putCurrentVersion(String resourceType, String logicalId, Resource resource, long modificationCount) {
+        putVersion(resourceType, logicalId, resource);
+
+        AtomicLong currentModificationCount = modificationCount(resourceType);
+        if (currentModificationCount.get() != modificationCount) {
+            // a resource of this type was updated or deleted after we read from the database
+            return;
+        }
+        String key = key(resourceType, logicalId);
+        currentVersionCache.put(key, resource);
+        if (currentModificationCount.get() != modificationCount) {
+            // raced with an invalidation which may have run before our put
+            currentVersionCache.remove(key);
+        }
+    }
+
+    /**
+     * Adds a specific version of a resource, which was read from the database, to the cache.
+     * @param resourceType A valid FHIR resource type name.
+     * @param logicalId The logical id of the resource.
+     * @param resource The resource, which must have a meta.versionId.
+     */
+    public void putVersion(String resourceType, String logicalId, Resource resource) {
+        int versionId = Integer.parseInt(resource.getMeta().getVersionId().getValue());
+        versionCache.put(key(resourceType, logicalId, versionId), resource);
+    }
+
+    /**
+     * Removes the current version of a resource from the cache, because a new version of it is being written.
+     * This must be called both before the new version is written and after its transaction completes; if the
+     * transaction rolls back, the new version must also be removed with {@link #invalidateVersion(String, String, int)}
+     * since its version number will be reused.
+     * @param resourceType A valid FHIR resource type name.
+     * @param logicalId The logical id of the resource.
+     */
+    public void invalidate(String resourceType, String logicalId) {
+        modificationCount(resourceType).incrementAndGet();
+        currentVersionCache.remove(key(resourceType, logicalId));
+    }
+
+    /**
+     * Removes a specific version of a resource from the cache.
+     * @param resourceType A valid FHIR resource type name.
+     * @param logicalId The logical id of the resource.
+     * @param versionId The version of the resource.
+     */
+    public void invalidateVersion(String resourceType, String logicalId, int versionId) {
+        versionCache.remove(key(resourceType, logicalId, versionId));
+    }
+
+    /**
+     * @return A formatted representation of the statistics of this cache.
+     */
+    public String getStats() {
+        return "versions: " + versionCache.stats() + ", currentVersions: " + currentVersionCache.stats();
+    }
+
+    private AtomicLong modificationCount(String resourceType) {
+        return modificationCounts.computeIfAbsent(resourceType, k -> new AtomicLong());
+    }
+
+    private static String key(String resourceType, String logicalId) {
+        return resourceType + "/" + logicalId;
+    }
+
+    private static String key(String resourceType, String logicalId, int versionId) {
+        return resourceType + "/" + logicalId + "/_history/" + versionId;
+    }
+
+    /**
+     * Discards the resource caches of all tenant-datastores, so that they are recreated from the current
+     * configuration when they are next used.
+     */
+    public static void reset() {
+        resourceCaches.clear();
+    }
+}
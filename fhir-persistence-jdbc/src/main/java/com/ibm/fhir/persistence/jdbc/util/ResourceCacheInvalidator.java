@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * This class removes the resources written by a transaction from the ResourceCache once the transaction completes.
+ * The current versions are removed again after the commit, in case another thread cached a version it read before
+ * the commit; if the transaction rolls back, the versions it wrote are removed, since their version numbers will
+ * be reused.
+ */
+public class ResourceCacheInvalidator implements Synchronization {
+    private static final String CLASSNAME = ResourceCacheInvalidator.class.getName();
+    private static final Logger log = Logger.getLogger(CLASSNAME);
+
+    private final ResourceCache resourceCache;
+    private final List<String> resourceTypes = new ArrayList<>();
+    private final List<String> logicalIds = new ArrayList<>();
+    private final List<Integer> versionIds = new ArrayList<>();
+
+    public ResourceCacheInvalidator(ResourceCache resourceCache) {
+        this.resourceCache = resourceCache;
+    }
+
+    /**
+     * Removes the current version of the passed resource from the resource cache, and registers it to be removed
+     * again when the transaction on the current thread completes.
+     * @param trxSynchRegistry The registry for the current transaction, or null if not running in a JEE container.
+     * @param resourceCache The resource cache for the current tenant-datastore.
+     * @param resourceType A valid FHIR resource type name.
+     * @param logicalId The logical id of the resource.
+     * @param versionId The version being written.
+     */
+    public static void invalidate(TransactionSynchronizationRegistry trxSynchRegistry, ResourceCache resourceCache,
+            String resourceType, String logicalId, int versionId) {
+        resourceCache.invalidate(resourceType, logicalId);
+
+        if (trxSynchRegistry != null && trxSynchRegistry.getTransactionStatus() == Status.STATUS_ACTIVE) {
+            ResourceCacheInvalidator invalidator = (ResourceCacheInvalidator) trxSynchRegistry.getResource(CLASSNAME);
+            if (invalidator == null) {
+                invalidator = new ResourceCacheInvalidator(resourceCache);
+                trxSynchRegistry.putResource(CLASSNAME, invalidator);
+                trxSynchRegistry.registerInterposedSynchronization(invalidator);
+                log.fine("Registered ResourceCacheInvalidator.");
+            }
+            invalidator.add(resourceType, logicalId, versionId);
+        }
+    }
+
+    private void add(String resourceType, String logicalId, int versionId) {
+        resourceTypes.add(resourceType);
+        logicalIds.add(logicalId);
+        versionIds.add(versionId);
+    }
+
+    @Override
+    public void afterCompletion(int completionStatus) {
+        final String METHODNAME = "afterCompletion";
+        log.entering(CLASSNAME, METHODNAME);
+
+        for (int i = 0; i < resourceTypes.size(); i++) {
+            resourceCache.invalidate(resourceTypes.get(i), logicalIds.get(i));
+            if (completionStatus != Status.STATUS_COMMITTED) {
+                resourceCache.invalidateVersion(resourceTypes.get(i), logicalIds.get(i), versionIds.get(i));
+            }
+        }
+
+        log.exiting(CLASSNAME, METHODNAME);
+    }
+
+    @Override
+    public void beforeCompletion() {
+    }
+}
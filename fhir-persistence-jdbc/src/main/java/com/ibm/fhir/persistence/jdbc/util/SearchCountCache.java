@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_SEARCH_COUNT_CACHE_ENABLED;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_SEARCH_COUNT_CACHE_MAX_ENTRIES;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_SEARCH_COUNT_CACHE_TTL;
+
+import java.time.Duration;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.core.util.ConcurrentCache;
+
+/**
+ * Remembers the result of the count query of a search for a short time. A client paging through a search result
+ * repeats the same count query for every page, and counting a large result set can cost more than fetching the page.
+ * It is disabled by default.
+ *
+ * <p>The key is the text of the count query plus its bind variables, so two searches share an entry only if they
+ * produce the same SQL. Writes never invalidate entries, because any write may change any count. Instead, every entry
+ * expires after the configured time to live, which limits how stale the total of a search bundle can be.
+ */
+public class SearchCountCache {
+    private static final String CLASSNAME = SearchCountCache.class.getName();
+    private static final Logger log = Logger.getLogger(CLASSNAME);
+
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final int DEFAULT_TTL = 30;
+
+    private static final TenantDatastoreCaches<SearchCountCache> searchCountCaches =
+            new TenantDatastoreCaches<>(SearchCountCache::createSearchCountCache);
+
+    private final ConcurrentCache<String, Integer> countCache;
+
+    private SearchCountCache(int maxEntries, int ttl) {
+        this.countCache = ConcurrentCache.<String, Integer>builder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(ttl))
+                .build();
+    }
+
+    /**
+     * Returns the search count cache for the current tenant-datastore, or null if the search count cache is not
+     * enabled for it.
+     * @return SearchCountCache
+     */
+    public static SearchCountCache getInstance() {
+        return searchCountCaches.get();
+    }
+
+    /**
+     * Creates the search count cache for a tenant-datastore from the configuration of the current tenant.
+     * @param tenantDatastoreCacheName
+     * @return SearchCountCache, or null if it is disabled
+     */
+    private static SearchCountCache createSearchCountCache(String tenantDatastoreCacheName) {
+        if (!FHIRConfigHelper.getBooleanProperty(PROPERTY_JDBC_SEARCH_COUNT_CACHE_ENABLED, Boolean.FALSE)) {
+            return null;
+        }
+
+        int maxEntries = FHIRConfigHelper.getIntProperty(PROPERTY_JDBC_SEARCH_COUNT_CACHE_MAX_ENTRIES, DEFAULT_MAX_ENTRIES);
+        int ttl = FHIRConfigHelper.getIntProperty(PROPERTY_JDBC_SEARCH_COUNT_CACHE_TTL, DEFAULT_TTL);
+        if (maxEntries < 1 || ttl < 1) {
+            log.warning("Search count cache disabled for tenantDatastore=" + tenantDatastoreCacheName
+                    + "; maxEntries and timeToLive must be greater than zero");
+            return null;
+        }
+
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Created search count cache for tenantDatastore=" + tenantDatastoreCacheName + ", maxEntries=" + maxEntries
+                    + ", timeToLive=" + ttl);
+        }
+        return new SearchCountCache(maxEntries, ttl);
+    }
+
+    /**
+     * Returns the cached count for a count query, or null if it is not cached.
+     * @param countQuery A count query built by the JDBCQueryBuilder.
+     * @return Integer
+     */
+    public Integer get(SqlQueryData countQuery) {
+        return countCache.get(key(countQuery));
+    }
+
+    /**
+     * Adds the count returned by a count query to the cache.
+     * @param countQuery A count query built by the JDBCQueryBuilder.
+     * @param count The count returned by the query.
+     */
+    public void put(SqlQueryData countQuery, int count) {
+        countCache.put(key(countQuery), count);
+    }
+
+    /**
+     * @return A formatted representation of the statistics of this cache.
+     */
+    public String getStats() {
+        return "counts: " + countCache.stats();
+    }
+
+    private static String key(SqlQueryData countQuery) {
+        return countQuery.getQueryString() + " " + countQuery.getBindVariables();
+    }
+
+    /**
+     * Discards the search count caches of all tenant-datastores, so that they are recreated from the current
+     * configuration when they are next used.
+     */
+    public static void reset() {
+        searchCountCaches.clear();
+    }
+}
@@ -26,16 +26,21 @@ import static com.ibm.fhir.persistence.jdbc.JDBCConstants.SPACE;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.STR_VALUE;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.TOKEN_VALUE;
 
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceNotSupportedException;
+import com.ibm.fhir.persistence.jdbc.JDBCConstants;
 import com.ibm.fhir.persistence.jdbc.connection.QueryHints;
 import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
 import com.ibm.fhir.persistence.jdbc.util.type.LastUpdatedParmBehaviorUtil;
+import com.ibm.fhir.search.cursor.SearchCursor;
 import com.ibm.fhir.search.parameters.SortParameter;
 import com.ibm.fhir.search.sort.Sort;
 
@@ -53,6 +58,9 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
 
     private List<SortParameter> sortParameters;
 
+    // The sort values of the cursor for keyset pagination, decoded when the query is built
+    private List<String> cursorSortValues;
+
     /**
      * Constructs a new SortedQuerySegmentAggregator
      * 
@@ -68,6 +76,19 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
         this.sortParameters = sortParms;
     }
 
+    /**
+     * Use keyset pagination for the query built by {@link #buildQuery()}. The results are ordered by
+     * their sort keys and then by RESOURCE_ID, so the query seeks directly to the first result after
+     * the sort key values and RESOURCE_ID of the last result on the preceding page.
+     *
+     * @param cursor the cursor for the page, issued by the same search for the preceding page
+     */
+    @Override
+    public void setCursor(SearchCursor cursor) {
+        this.lastResourceId = cursor.getLastResourceId();
+        this.cursorSortValues = cursor.getSortValues();
+    }
+
     /**
      * Builds a complete SQL Query based upon the encapsulated query segments and
      * bind variables. This query
@@ -85,9 +106,12 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
      *         P1.RESOURCE_ID = R.RESOURCE_ID AND 
      *         (P1.PARAMETER_NAME_ID=196 AND ((P1.TOKEN_VALUE = false))) 
      * GROUP BY R.RESOURCE_ID  
-     * ORDER BY MIN(S1.STR_VALUE) asc NULLS LAST 
-     * OFFSET 0 ROWS FETCH NEXT 100 ROWS ONLY;
+     * ORDER BY MIN(S1.STR_VALUE) asc NULLS LAST, R.RESOURCE_ID 
+     * OFFSET ? ROWS FETCH NEXT ? ROWS ONLY;
      * </pre>
+     * With keyset pagination, the GROUP BY clause is followed by a HAVING clause
+     * which selects the results after the last result of the preceding page (see
+     * {@link #buildKeysetCondition(List, List, List)}).
      * 
      * @return SqlQueryData - contains the complete SQL query string and any
      *         associated bind variables.
@@ -102,6 +126,9 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
             throw new FHIRPersistenceException("No sort parameters found.");
         }
 
+        List<SortKey> sortKeys = this.getSortKeys();
+        List<Object> keysetValues = this.decodeCursorSortValues(sortKeys);
+
         // For system level search, the sort parameters are limited to a couple of columns in the *_resources  
         // and *_logical_resources tables. Execute the following special logic for sorted system-level-searches.
         SqlQueryData queryData;
@@ -110,11 +137,16 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
             queryData =
                     this.buildSystemLevelQuery(SYSTEM_LEVEL_SELECT_ROOT, SYSTEM_LEVEL_SUBSELECT_ROOT, false);
             StringBuilder sysLvlQueryString = new StringBuilder(queryData.getQueryString());
+            List<Object> allBindVariables = new ArrayList<>(queryData.getBindVariables());
+            // Add in keyset clause, which is applied to the combined results.
+            if (keysetValues != null) {
+                sysLvlQueryString.append(" WHERE ").append(this.buildKeysetCondition(sortKeys, keysetValues, allBindVariables));
+            }
             // Add in order-by clause.
             sysLvlQueryString.append(this.buildSysLvlOrderByClause());
             // Add pagination clauses.
-            this.addPaginationClauses(sysLvlQueryString);
-            queryData = new SqlQueryData(sysLvlQueryString.toString(), queryData.getBindVariables());
+            this.addPaginationClauses(sysLvlQueryString, allBindVariables);
+            queryData = new SqlQueryData(sysLvlQueryString.toString(), allBindVariables);
         } else {
             StringBuilder sqlSortQuery = new StringBuilder();
             // Build SELECT clause
@@ -142,11 +174,16 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
             // Build GROUP BY clause
             sqlSortQuery.append(GROUP_BY);
 
+            // Build HAVING clause for keyset pagination
+            if (keysetValues != null) {
+                sqlSortQuery.append(" HAVING ").append(this.buildKeysetCondition(sortKeys, keysetValues, allBindVariables));
+            }
+
             // Build ORDER BY clause
             sqlSortQuery.append(this.buildOrderByClause());
 
             // Add in clauses to support pagination
-            this.addPaginationClauses(sqlSortQuery);
+            this.addPaginationClauses(sqlSortQuery, allBindVariables);
 
             addOptimizerHint(sqlSortQuery);
 
@@ -379,7 +416,7 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
      * For example:
      * 
      * <pre>
-     * ORDER BY MIN(S1.STR_VALUE) asc NULLS LAST,MAX(S2.CODE_SYSTEM_ID) desc NULLS LAST, MAX(S2.TOKEN_VALUE) desc NULLS LAST
+     * ORDER BY MIN(S1.STR_VALUE) asc NULLS LAST,MAX(S2.CODE_SYSTEM_ID) desc NULLS LAST, MAX(S2.TOKEN_VALUE) desc NULLS LAST,R.RESOURCE_ID
      * </pre>
      * 
      * @throws FHIRPersistenceException
@@ -398,6 +435,8 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
             }
             orderByBuffer.append(this.buildAggregateExpression(this.sortParameters.get(i), i + 1, true));
         }
+        // Order results with the same sort key values by RESOURCE_ID, so that the order is stable across pages
+        orderByBuffer.append(COMMA_CHAR).append("R.RESOURCE_ID");
 
         log.exiting(CLASSNAME, METHODNAME);
         return orderByBuffer.toString();
@@ -448,8 +487,181 @@ public class SortedQuerySegmentAggregator extends QuerySegmentAggregator {
                 break;
             }
         }
+        // Order results with the same sort key values by RESOURCE_ID, so that the order is stable across pages
+        orderByBuffer.append(COMMA_CHAR).append("RESOURCE_ID");
 
         log.exiting(CLASSNAME, METHODNAME);
         return orderByBuffer.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the sort keys of the query, in the order of the ORDER BY clause (without the final RESOURCE_ID).
+     * There is one sort key for each value attribute of each sort parameter.
+     *
+     * @throws FHIRPersistenceException
+     */
+    private List<SortKey> getSortKeys() throws FHIRPersistenceException {
+        List<SortKey> sortKeys = new ArrayList<>();
+        for (int i = 0; i < this.sortParameters.size(); i++) {
+            SortParameter sortParm = this.sortParameters.get(i);
+            boolean ascending = Sort.Direction.INCREASING.equals(sortParm.getDirection());
+            if (this.isSystemLevelSearch()) {
+                String code = sortParm.getCode();
+                if (ID.equals(code)) {
+                    sortKeys.add(new SortKey("LOGICAL_ID", ascending, String.class));
+                } else if (LastUpdatedParmBehaviorUtil.LAST_UPDATED.equals(code)) {
+                    sortKeys.add(new SortKey("LAST_UPDATED", ascending, Timestamp.class));
+                } else {
+                    throw new FHIRPersistenceNotSupportedException(
+                            "'" + code + "' is an unsupported sort parameter for system level search.");
+                }
+            } else {
+                for (String attributeName : this.getValueAttributeNames(sortParm)) {
+                    String expression = (ascending ? MIN : MAX) + LEFT_PAREN + SORT_PARAMETER_ALIAS + (i + 1) + DOT_CHAR
+                            + attributeName + RIGHT_PAREN;
+                    sortKeys.add(new SortKey(expression, ascending, getValueAttributeType(attributeName)));
+                }
+            }
+        }
+        return sortKeys;
+    }
+
+    /**
+     * Returns the Java type of the values of the passed value attribute, which is the type
+     * they are bound as in the keyset condition.
+     */
+    private static Class<?> getValueAttributeType(String attributeName) {
+        switch (attributeName) {
+        case DATE_START:
+            return Timestamp.class;
+        case CODE_SYSTEM_ID:
+            return Integer.class;
+        case NUMBER_VALUE:
+        case QUANTITY_VALUE:
+            return Double.class;
+        default:
+            return String.class;
+        }
+    }
+
+    /**
+     * Decodes the sort values of the cursor, if any, for binding to the keyset condition.
+     *
+     * @param sortKeys the sort keys of the query
+     * @return the sort values, or null if keyset pagination isn't used. A cursor whose sort values don't
+     *         fit the sort keys is ignored, so that the query falls back to the offset.
+     */
+    private List<Object> decodeCursorSortValues(List<SortKey> sortKeys) {
+        if (this.lastResourceId == null) {
+            return null;
+        }
+        List<Object> values = new ArrayList<>();
+        try {
+            if (this.cursorSortValues.size() != sortKeys.size()) {
+                throw new IllegalArgumentException("expected " + sortKeys.size() + " sort values");
+            }
+            for (int i = 0; i < sortKeys.size(); i++) {
+                values.add(decodeSortValue(this.cursorSortValues.get(i), sortKeys.get(i).type));
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            log.fine("Ignoring cursor with invalid sort values " + this.cursorSortValues + ": " + e.getMessage());
+            this.lastResourceId = null;
+            return null;
+        }
+        return values;
+    }
+
+    /**
+     * Builds the condition which selects the results after the last result of the preceding page, in the
+     * order of the ORDER BY clause. This is the equivalent of
+     * <pre>
+     * (sortkey1, sortkey2, ..., RESOURCE_ID) &gt; (?, ?, ..., ?)
+     * </pre>
+     * taking the direction of each sort key into account, and the fact that resources without a value
+     * for a sort key come last. For example, with a single ascending sort key:
+     * <pre>
+     * (MIN(S1.STR_VALUE) &gt; ? OR MIN(S1.STR_VALUE) IS NULL OR (MIN(S1.STR_VALUE) = ? AND R.RESOURCE_ID &gt; ?))
+     * </pre>
+     *
+     * @param sortKeys the sort keys of the query
+     * @param values the sort key values of the last result of the preceding page
+     * @param bindVariables the bind variables of the query, to which the bind variables of the condition are added
+     */
+    private String buildKeysetCondition(List<SortKey> sortKeys, List<Object> values, List<Object> bindVariables) {
+        StringBuilder condition = new StringBuilder();
+        int openParens = 0;
+        for (int i = 0; i < sortKeys.size(); i++) {
+            SortKey sortKey = sortKeys.get(i);
+            Object value = values.get(i);
+            condition.append(LEFT_PAREN);
+            openParens++;
+            if (value == null) {
+                // nothing comes after a missing value except other resources without a value
+                condition.append(sortKey.expression).append(" IS NULL");
+            } else {
+                condition.append(sortKey.expression).append(sortKey.ascending ? " > " : " < ").append(JDBCConstants.BIND_VAR)
+                        .append(" OR ").append(sortKey.expression).append(" IS NULL")
+                        .append(" OR ").append(LEFT_PAREN)
+                        .append(sortKey.expression).append(" = ").append(JDBCConstants.BIND_VAR);
+                openParens++;
+                bindVariables.add(value);
+                bindVariables.add(value);
+            }
+            condition.append(AND);
+        }
+        condition.append(this.isSystemLevelSearch() ? "RESOURCE_ID" : "R.RESOURCE_ID").append(" > ").append(JDBCConstants.BIND_VAR);
+        bindVariables.add(this.lastResourceId);
+        for (int i = 0; i < openParens; i++) {
+            condition.append(RIGHT_PAREN);
+        }
+        return condition.toString();
+    }
+
+    /**
+     * Encodes the sort key values of a result for a {@link SearchCursor}.
+     *
+     * @param values the sort key values, in the order of the sort keys
+     * @return the encoded values
+     */
+    public static List<String> encodeSortValues(List<Object> values) {
+        List<String> result = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if (value == null) {
+                result.add(null);
+            } else if (value instanceof Timestamp) {
+                result.add(((Timestamp) value).toInstant().toString());
+            } else {
+                result.add(value.toString());
+            }
+        }
+        return result;
+    }
+
+    private static Object decodeSortValue(String value, Class<?> type) {
+        if (value == null) {
+            return null;
+        } else if (type == Timestamp.class) {
+            return Timestamp.from(Instant.parse(value));
+        } else if (type == Integer.class) {
+            return Integer.valueOf(value);
+        } else if (type == Double.class) {
+            return Double.valueOf(value);
+        }
+        return value;
+    }
+
+    /**
+     * A sort key of the query: the expression it orders the results by, its direction, and the type of its values.
+     */
+    private static class SortKey {
+        private final String expression;
+        private final boolean ascending;
+        private final Class<?> type;
+
+        private SortKey(String expression, boolean ascending, Class<?> type) {
+            this.expression = expression;
+            this.ascending = ascending;
+            this.type = type;
+        }
+    }
+}
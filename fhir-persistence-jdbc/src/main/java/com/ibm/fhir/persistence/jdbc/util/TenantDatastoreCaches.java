@@ -0,0 +1,49 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Holds one instance of a cache for each FHIR tenant/datastore combination. Each instance is created from the
+ * configuration of the current tenant the first time it is requested for that tenant/datastore.
+ *
+ * <p>The factory returns null if the cache is disabled for the tenant/datastore. That result is remembered as well, so
+ * the configuration is only read once either way.
+ *
+ * @param <T> the type of the cache
+ */
+final class TenantDatastoreCaches<T> {
+    private final ConcurrentHashMap<String, Optional<T>> caches = new ConcurrentHashMap<>();
+    private final Function<String, T> factory;
+
+    /**
+     * @param factory creates the cache for the passed tenant/datastore cache name, or returns null if it is disabled
+     */
+    TenantDatastoreCaches(Function<String, T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the cache for the current tenant-datastore, or null if it is not enabled for it.
+     * @return T
+     */
+    T get() {
+        String tenantDatastoreCacheName = ResourceTypesCache.getCacheNameForTenantDatastore();
+        return caches.computeIfAbsent(tenantDatastoreCacheName, k -> Optional.ofNullable(factory.apply(k))).orElse(null);
+    }
+
+    /**
+     * Discards the caches of all tenant-datastores, so that they are recreated from the current configuration when
+     * they are next used.
+     */
+    void clear() {
+        caches.clear();
+    }
+}
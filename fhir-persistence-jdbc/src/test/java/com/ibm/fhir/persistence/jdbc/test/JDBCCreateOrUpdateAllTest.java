@@ -0,0 +1,144 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.api.IConnectionProvider;
+import com.ibm.fhir.database.utils.pool.PoolConnectionProvider;
+import com.ibm.fhir.model.resource.Device;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.SingleResourceResult;
+import com.ibm.fhir.persistence.context.FHIRHistoryContext;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
+import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
+import com.ibm.fhir.persistence.jdbc.dto.Resource;
+import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
+import com.ibm.fhir.persistence.jdbc.impl.FHIRPersistenceJDBCImpl;
+import com.ibm.fhir.persistence.jdbc.test.util.DerbyInitializer;
+import com.ibm.fhir.persistence.test.common.AbstractCreateOrUpdateAllTest;
+
+/**
+ * Concrete subclass for createOrUpdateAll tests run against the JDBC schema.
+ */
+public class JDBCCreateOrUpdateAllTest extends AbstractCreateOrUpdateAllTest {
+
+    // test properties
+    private Properties testProps;
+    
+    // Connection pool used to provide connections for the FHIRPersistenceJDBCImpl
+    private PoolConnectionProvider connectionPool;
+    
+    public JDBCCreateOrUpdateAllTest() throws Exception {
+        this.testProps = TestUtil.readTestProperties("test.jdbc.properties");
+    }
+
+    @Override
+    public void bootstrapDatabase() throws Exception {
+        DerbyInitializer derbyInit;
+        String dbDriverName = this.testProps.getProperty("dbDriverName");
+        if (dbDriverName != null && dbDriverName.contains("derby")) {
+            derbyInit = new DerbyInitializer(this.testProps);
+            IConnectionProvider cp = derbyInit.getConnectionProvider(false);
+            this.connectionPool = new PoolConnectionProvider(cp, 1);
+        }
+    }
+    
+    @Override
+    public FHIRPersistence getPersistenceImpl() throws Exception {
+        if (this.connectionPool == null) {
+            throw new IllegalStateException("Database not bootstrapped");
+        }
+        return new FHIRPersistenceJDBCImpl(this.testProps, this.connectionPool);
+    }
+    
+    @Test
+    public void testCreateOrUpdateAllWithFailure() throws Exception {
+        String prefix = "bulk-fail-" + System.currentTimeMillis();
+        List<Device> devices = Arrays.asList(
+            device.toBuilder().id(prefix + "-1").build(),
+            device.toBuilder().id(prefix + "-2").build(),
+            device.toBuilder().id(prefix + "-3").build());
+
+        // the DAO fails to insert the second resource, after the first one has been written
+        FHIRPersistence failingPersistence = new FHIRPersistenceJDBCImpl(this.testProps, this.connectionPool) {
+            @Override
+            protected ResourceDAO makeResourceDAO(Connection connection) throws FHIRPersistenceException {
+                return failingResourceDAO(super.makeResourceDAO(connection), prefix + "-2");
+            }
+        };
+        List<SingleResourceResult<Device>> results = failingPersistence.createOrUpdateAll(getDefaultPersistenceContext(), devices);
+        assertEquals(results.size(), 3);
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertNotNull(results.get(1).getOutcome());
+        assertTrue(results.get(2).isSuccess());
+
+        // the first resource was rolled back with the failed batch and then written again
+        FHIRHistoryContext historyContext = FHIRPersistenceContextFactory.createHistoryContext();
+        List<Device> history = persistence.history(getPersistenceContextForHistory(historyContext), Device.class, prefix + "-1").getResource();
+        assertEquals(history.size(), 1);
+        assertEquals(history.get(0).getMeta().getVersionId().getValue(), "1");
+        assertNull(persistence.read(getDefaultPersistenceContext(), Device.class, prefix + "-2").getResource());
+        assertNotNull(persistence.read(getDefaultPersistenceContext(), Device.class, prefix + "-3").getResource());
+    }
+
+    /**
+     * Wrap the resource DAO so that inserting the resource with the given logical id fails. The resources
+     * in a list are inserted one at a time, so those before the failing one are written.
+     */
+    private static ResourceDAO failingResourceDAO(ResourceDAO delegate, String failingLogicalId) {
+        return (ResourceDAO) Proxy.newProxyInstance(ResourceDAO.class.getClassLoader(), new Class<?>[] { ResourceDAO.class },
+            (proxy, method, args) -> {
+                if ("insert".equals(method.getName())) {
+                    if (failingLogicalId.equals(((Resource) args[0]).getLogicalId())) {
+                        throw new FHIRPersistenceDataAccessException("Failure inserting Resource.");
+                    }
+                } else if ("insertAll".equals(method.getName())) {
+                    @SuppressWarnings("unchecked")
+                    List<Resource> resources = (List<Resource>) args[0];
+                    @SuppressWarnings("unchecked")
+                    List<List<ExtractedParameterValue>> parameters = (List<List<ExtractedParameterValue>>) args[1];
+                    for (int i = 0; i < resources.size(); i++) {
+                        ((ResourceDAO) proxy).insert(resources.get(i), parameters.get(i), (ParameterDAO) args[2]);
+                    }
+                    return resources;
+                }
+                try {
+                    return method.invoke(delegate, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+    }
+
+    @Override
+    protected void shutdownPools() throws Exception {
+        // Mark the pool as no longer in use. This allows the pool to check for
+        // lingering open connections/transactions.
+        if (this.connectionPool != null) {
+            this.connectionPool.close();
+        }
+    }
+}
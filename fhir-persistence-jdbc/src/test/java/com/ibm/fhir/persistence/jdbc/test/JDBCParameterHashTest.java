@@ -0,0 +1,237 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.api.IConnectionProvider;
+import com.ibm.fhir.database.utils.model.DbType;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.persistence.jdbc.connection.FHIRDbFlavor;
+import com.ibm.fhir.persistence.jdbc.connection.FHIRDbFlavorImpl;
+import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
+import com.ibm.fhir.persistence.jdbc.dao.impl.ParameterDAOImpl;
+import com.ibm.fhir.persistence.jdbc.derby.DerbyResourceDAO;
+import com.ibm.fhir.persistence.jdbc.dto.DateParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
+import com.ibm.fhir.persistence.jdbc.dto.StringParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.TokenParmVal;
+import com.ibm.fhir.persistence.jdbc.test.util.DerbyInitializer;
+import com.ibm.fhir.persistence.jdbc.util.ParameterHashes;
+
+/**
+ * Tests that updates of a resource leave the rows of the search parameters which haven't changed in place.
+ */
+public class JDBCParameterHashTest {
+    private static final String SCHEMA_NAME = "FHIRDATA";
+
+    private Properties testProps;
+    private Connection connection;
+    private DerbyResourceDAO resourceDao;
+    private ParameterDAO parameterDao;
+
+    public JDBCParameterHashTest() throws Exception {
+        this.testProps = TestUtil.readTestProperties("test.jdbc.properties");
+    }
+
+    @BeforeClass
+    public void setup() throws Exception {
+        String dbDriverName = this.testProps.getProperty("dbDriverName");
+        if (dbDriverName == null || !dbDriverName.contains("derby")) {
+            throw new IllegalStateException("This test requires a Derby database");
+        }
+        IConnectionProvider cp = new DerbyInitializer(this.testProps).getConnectionProvider(false);
+        this.connection = cp.getConnection();
+        FHIRDbFlavor flavor = new FHIRDbFlavorImpl(DbType.DERBY, false);
+        this.resourceDao = new DerbyResourceDAO(connection, SCHEMA_NAME, flavor);
+        this.parameterDao = new ParameterDAOImpl(connection, SCHEMA_NAME, flavor);
+        this.resourceDao.getOrCreateResourceType("Basic", connection);
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void teardown() throws Exception {
+        if (this.connection != null) {
+            this.connection.rollback();
+            this.connection.close();
+        }
+    }
+
+    @Test
+    public void testParameterHash() throws Exception {
+        List<ExtractedParameterValue> parameters = Arrays.asList(string("name", "a"), token("code", "http://example.org", "b"));
+        List<ExtractedParameterValue> reordered = new ArrayList<>(parameters);
+        Collections.reverse(reordered);
+
+        ParameterHashes hashes = ParameterHashes.of(parameters);
+        assertNotNull(hashes.encode());
+        assertEquals(ParameterHashes.decode(hashes.encode()), hashes);
+        assertEquals(ParameterHashes.of(reordered), hashes);
+        assertEquals(hashes.getTables("name"), ParameterHashes.STR_VALUES);
+        assertEquals(hashes.getTables("code"), ParameterHashes.TOKEN_VALUES);
+        assertNull(ParameterHashes.of(null));
+        assertNull(ParameterHashes.decode(null));
+
+        // only the parameter whose value has changed is stale
+        ParameterHashes changed = ParameterHashes.of(Arrays.asList(string("name", "a"), token("code", "http://example.org", "c")));
+        assertNotEquals(changed, hashes);
+        assertEquals(hashes.getStaleParameters(changed), Collections.singletonMap("code", ParameterHashes.TOKEN_VALUES));
+        assertEquals(changed.getChangedParameters(parameters, hashes), Arrays.asList(parameters.get(1)));
+
+        // a removed parameter is stale, and there is nothing to insert for it
+        ParameterHashes removed = ParameterHashes.of(Arrays.asList(string("name", "a")));
+        assertEquals(hashes.getStaleParameters(removed), Collections.singletonMap("code", ParameterHashes.TOKEN_VALUES));
+        assertTrue(removed.getChangedParameters(Arrays.asList(string("name", "a")), hashes).isEmpty());
+        assertEquals(hashes.getStaleParameters(null).keySet(), new HashSet<>(Arrays.asList("name", "code")));
+    }
+
+    @Test
+    public void testDateParameterHash() throws Exception {
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            // 01:30 EDT and 01:30 EST on the day daylight saving time ends are an hour apart but format the same
+            TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+            Timestamp daylight = Timestamp.from(Instant.parse("2020-11-01T05:30:00Z"));
+            Timestamp standard = Timestamp.from(Instant.parse("2020-11-01T06:30:00Z"));
+            assertEquals(standard.toString(), daylight.toString());
+
+            ParameterHashes hashes = ParameterHashes.of(Arrays.asList(date("date", daylight)));
+            assertEquals(ParameterHashes.of(Arrays.asList(date("date", new Timestamp(daylight.getTime())))), hashes);
+            assertNotEquals(ParameterHashes.of(Arrays.asList(date("date", standard))), hashes);
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+    }
+
+    @Test
+    public void testUnchangedParametersAreKept() throws Exception {
+        String logicalId = UUID.randomUUID().toString();
+
+        store(logicalId, Arrays.asList(string("name", "a"), token("code", "http://example.org", "b")));
+        long logicalResourceId = getLogicalResourceId(logicalId);
+        List<Long> stringRowIds = getRowIds(logicalResourceId, "basic_str_values");
+        List<Long> tokenRowIds = getRowIds(logicalResourceId, "basic_token_values");
+        assertEquals(stringRowIds.size(), 1);
+        assertEquals(tokenRowIds.size(), 1);
+        assertNotNull(getParameterHash(logicalResourceId));
+
+        // the same parameters, extracted in a different order
+        store(logicalId, Arrays.asList(token("code", "http://example.org", "b"), string("name", "a")));
+        assertEquals(getRowIds(logicalResourceId, "basic_str_values"), stringRowIds);
+        assertEquals(getRowIds(logicalResourceId, "basic_token_values"), tokenRowIds);
+
+        // a changed parameter only replaces its own rows
+        store(logicalId, Arrays.asList(string("name", "changed"), token("code", "http://example.org", "b")));
+        List<Long> changedRowIds = getRowIds(logicalResourceId, "basic_str_values");
+        assertEquals(changedRowIds.size(), 1);
+        assertTrue(Collections.disjoint(changedRowIds, stringRowIds));
+        assertEquals(getStringValue(logicalResourceId), "changed");
+        assertEquals(getRowIds(logicalResourceId, "basic_token_values"), tokenRowIds);
+
+        // a removed parameter only deletes its own rows
+        store(logicalId, Arrays.asList(string("name", "changed")));
+        assertEquals(getRowIds(logicalResourceId, "basic_str_values"), changedRowIds);
+        assertTrue(getRowIds(logicalResourceId, "basic_token_values").isEmpty());
+
+        // a soft delete removes the rows and the hash
+        store(logicalId, null);
+        assertTrue(getRowIds(logicalResourceId, "basic_str_values").isEmpty());
+        assertNull(getParameterHash(logicalResourceId));
+    }
+
+    private void store(String logicalId, List<ExtractedParameterValue> parameters) throws Exception {
+        resourceDao.storeResource("Basic", parameters, logicalId, "{}".getBytes(StandardCharsets.UTF_8),
+            new Timestamp(System.currentTimeMillis()), parameters == null, UUID.randomUUID().toString(), null, null, connection, parameterDao);
+    }
+
+    private long getLogicalResourceId(String logicalId) throws Exception {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT logical_resource_id FROM basic_logical_resources WHERE logical_id = ?")) {
+            stmt.setString(1, logicalId);
+            ResultSet rs = stmt.executeQuery();
+            assertTrue(rs.next());
+            return rs.getLong(1);
+        }
+    }
+
+    private String getParameterHash(long logicalResourceId) throws Exception {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT parameter_hash FROM basic_logical_resources WHERE logical_resource_id = ?")) {
+            stmt.setLong(1, logicalResourceId);
+            ResultSet rs = stmt.executeQuery();
+            assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+
+    private String getStringValue(long logicalResourceId) throws Exception {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT str_value FROM basic_str_values WHERE logical_resource_id = ?")) {
+            stmt.setLong(1, logicalResourceId);
+            ResultSet rs = stmt.executeQuery();
+            assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+
+    private List<Long> getRowIds(long logicalResourceId, String table) throws Exception {
+        List<Long> rowIds = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT row_id FROM " + table + " WHERE logical_resource_id = ? ORDER BY row_id")) {
+            stmt.setLong(1, logicalResourceId);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                rowIds.add(rs.getLong(1));
+            }
+        }
+        return rowIds;
+    }
+
+    private static StringParmVal string(String name, String value) {
+        StringParmVal parameter = new StringParmVal();
+        parameter.setResourceType("Basic");
+        parameter.setName(name);
+        parameter.setValueString(value);
+        return parameter;
+    }
+
+    private static DateParmVal date(String name, Timestamp value) {
+        DateParmVal parameter = new DateParmVal();
+        parameter.setResourceType("Basic");
+        parameter.setName(name);
+        parameter.setValueDateStart(value);
+        parameter.setValueDateEnd(value);
+        return parameter;
+    }
+
+    private static TokenParmVal token(String name, String system, String code) {
+        TokenParmVal parameter = new TokenParmVal();
+        parameter.setResourceType("Basic");
+        parameter.setName(name);
+        parameter.setValueSystem(system);
+        parameter.setValueCode(code);
+        return parameter;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.database.utils.api.IConnectionProvider;
+import com.ibm.fhir.database.utils.pool.PoolConnectionProvider;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.resource.Basic;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.model.util.RawResource;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceDeletedException;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceNotFoundException;
+import com.ibm.fhir.persistence.jdbc.impl.FHIRPersistenceJDBCImpl;
+import com.ibm.fhir.persistence.jdbc.test.util.DerbyInitializer;
+import com.ibm.fhir.persistence.test.common.AbstractPersistenceTest;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.cursor.SearchCursor;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Tests reading resources in the form in which they were stored by the JDBC persistence layer.
+ */
+public class JDBCRawResourceTest extends AbstractPersistenceTest {
+    // test properties
+    private Properties testProps;
+
+    // Connection pool used to provide connections for the FHIRPersistenceJDBCImpl
+    private PoolConnectionProvider connectionPool;
+
+    public JDBCRawResourceTest() throws Exception {
+        this.testProps = TestUtil.readTestProperties("test.jdbc.properties");
+    }
+
+    @Override
+    public void bootstrapDatabase() throws Exception {
+        DerbyInitializer derbyInit;
+        String dbDriverName = this.testProps.getProperty("dbDriverName");
+        if (dbDriverName != null && dbDriverName.contains("derby")) {
+            derbyInit = new DerbyInitializer(this.testProps);
+            IConnectionProvider cp = derbyInit.getConnectionProvider(false);
+            this.connectionPool = new PoolConnectionProvider(cp, 1);
+        }
+    }
+
+    @Override
+    public FHIRPersistence getPersistenceImpl() throws Exception {
+        if (this.connectionPool == null) {
+            throw new IllegalStateException("Database not bootstrapped");
+        }
+        return new FHIRPersistenceJDBCImpl(this.testProps, this.connectionPool);
+    }
+
+    @Override
+    protected void shutdownPools() throws Exception {
+        if (this.connectionPool != null) {
+            this.connectionPool.close();
+        }
+    }
+
+    @Test
+    public void testReadRaw() throws Exception {
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        patient = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+        String logicalId = patient.getId();
+        persistence.update(getDefaultPersistenceContext(), logicalId, patient);
+
+        Patient current = persistence.read(getDefaultPersistenceContext(), Patient.class, logicalId).getResource();
+        RawResource rawResource = persistence.readRaw(getDefaultPersistenceContext(), Patient.class, logicalId);
+        assertNotNull(rawResource);
+        assertEquals(rawResource.getResourceType(), Patient.class);
+        assertEquals(rawResource.getLogicalId(), logicalId);
+        assertEquals(rawResource.getVersionId(), "2");
+        assertEquals(rawResource.getLastUpdated(), current.getMeta().getLastUpdated().getValue().toInstant());
+        assertEquals(rawResource.toResource(), current);
+
+        // the stored JSON is what the generator would have written
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        rawResource.writeJson(out);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        FHIRGenerator.generator(Format.JSON).generate(current, expected);
+        assertEquals(new String(out.toByteArray(), StandardCharsets.UTF_8), new String(expected.toByteArray(), StandardCharsets.UTF_8));
+
+        RawResource rawVersion = persistence.vreadRaw(getDefaultPersistenceContext(), Patient.class, logicalId, "1");
+        assertNotNull(rawVersion);
+        assertEquals(rawVersion.getVersionId(), "1");
+        assertEquals(rawVersion.toResource(), patient);
+    }
+
+    @Test(expectedExceptions = FHIRPersistenceResourceNotFoundException.class)
+    public void testReadRawNotFound() throws Exception {
+        persistence.readRaw(getDefaultPersistenceContext(), Patient.class, "does-not-exist");
+    }
+
+    @Test(expectedExceptions = FHIRPersistenceResourceNotFoundException.class)
+    public void testVreadRawNotFound() throws Exception {
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        String logicalId = persistence.create(getDefaultPersistenceContext(), patient).getResource().getId();
+        persistence.vreadRaw(getDefaultPersistenceContext(), Patient.class, logicalId, "2");
+    }
+
+    @Test(expectedExceptions = FHIRPersistenceResourceDeletedException.class)
+    public void testReadRawDeleted() throws Exception {
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        String logicalId = persistence.create(getDefaultPersistenceContext(), patient).getResource().getId();
+        persistence.delete(getDefaultPersistenceContext(), Patient.class, logicalId);
+        persistence.readRaw(getDefaultPersistenceContext(), Patient.class, logicalId);
+    }
+
+    @Test
+    public void testSearchRaw() throws Exception {
+        FHIRRequestContext.get().setTenantId("string");
+        try {
+            Basic basic = TestUtil.readExampleResource("json/ibm/basic/BasicString.json");
+            for (int i = 0; i < 3; i++) {
+                persistence.create(getDefaultPersistenceContext(), basic);
+            }
+            Map<String, List<String>> queryParameters = Collections.singletonMap("string", Collections.singletonList("testString"));
+
+            // each raw page holds the same resources as the corresponding page of the regular search
+            FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+            searchContext.setPageSize(2);
+            List<RawResource> page1 = persistence.searchRaw(getPersistenceContextForSearch(searchContext), Basic.class);
+            assertNotNull(page1);
+            assertEquals(page1.size(), 2);
+            assertTrue(searchContext.getTotalCount() >= 3);
+            SearchCursor nextCursor = searchContext.getNextCursor();
+            assertNotNull(nextCursor);
+            assertEquals(nextCursor.getPageNumber(), 2);
+            assertEquals(getLogicalIds(page1), search(queryParameters, 2, 1, null));
+
+            searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+            searchContext.setPageSize(2);
+            searchContext.setPageNumber(2);
+            searchContext.setCursor(nextCursor);
+            List<RawResource> page2 = persistence.searchRaw(getPersistenceContextForSearch(searchContext), Basic.class);
+            assertNotNull(page2);
+            assertEquals(getLogicalIds(page2), search(queryParameters, 2, 2, nextCursor));
+
+            Basic current = persistence.read(getDefaultPersistenceContext(), Basic.class, page2.get(0).getLogicalId()).getResource();
+            assertEquals(page2.get(0).toResource(), current);
+        } finally {
+            FHIRRequestContext.get().setTenantId("default");
+        }
+    }
+
+    @Test
+    public void testSearchRawSorted() throws Exception {
+        FHIRRequestContext.get().setTenantId("string");
+        try {
+            Map<String, List<String>> queryParameters = Collections.singletonMap("_sort", Collections.singletonList("string"));
+            FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+            assertNull(persistence.searchRaw(getPersistenceContextForSearch(searchContext), Basic.class));
+        } finally {
+            FHIRRequestContext.get().setTenantId("default");
+        }
+    }
+
+    private List<String> search(Map<String, List<String>> queryParameters, int pageSize, int pageNumber, SearchCursor cursor) throws Exception {
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setPageSize(pageSize);
+        searchContext.setPageNumber(pageNumber);
+        searchContext.setCursor(cursor);
+        List<String> logicalIds = new ArrayList<>();
+        for (Resource resource : persistence.search(getPersistenceContextForSearch(searchContext), Basic.class).getResource()) {
+            logicalIds.add(resource.getId());
+        }
+        return logicalIds;
+    }
+
+    private List<String> getLogicalIds(List<RawResource> rawResources) {
+        List<String> logicalIds = new ArrayList<>();
+        for (RawResource rawResource : rawResources) {
+            logicalIds.add(rawResource.getLogicalId());
+        }
+        return logicalIds;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.database.utils.api.IConnectionProvider;
+import com.ibm.fhir.database.utils.model.DbType;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.persistence.jdbc.connection.FHIRDbFlavor;
+import com.ibm.fhir.persistence.jdbc.connection.FHIRDbFlavorImpl;
+import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
+import com.ibm.fhir.persistence.jdbc.dao.impl.ParameterDAOImpl;
+import com.ibm.fhir.persistence.jdbc.derby.DerbyResourceDAO;
+import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
+import com.ibm.fhir.persistence.jdbc.dto.ReferenceParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.Resource;
+import com.ibm.fhir.persistence.jdbc.dto.StringParmVal;
+import com.ibm.fhir.persistence.jdbc.test.util.DerbyInitializer;
+import com.ibm.fhir.persistence.jdbc.util.JDBCQueryBuilder;
+import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
+import com.ibm.fhir.search.SearchConstants.Modifier;
+import com.ibm.fhir.search.SearchConstants.Type;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.context.FHIRSearchContextFactory;
+import com.ibm.fhir.search.parameters.InclusionParameter;
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.parameters.QueryParameterValue;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Tests that chained searches, compartment searches, _include and _revinclude find the same resources when references
+ * are resolved with the reference values tables (the "referencevalues" tenant) as when they are matched as strings
+ * (the "default" tenant).
+ */
+public class JDBCReferenceValuesTest {
+    private static final String SCHEMA_NAME = "FHIRDATA";
+
+    private Properties testProps;
+    private Connection connection;
+    private DerbyResourceDAO resourceDao;
+    private ParameterDAO parameterDao;
+
+    private String orgName = UUID.randomUUID().toString();
+    private String orgId = UUID.randomUUID().toString();
+    private String patientId = UUID.randomUUID().toString();
+    private String forwardPatientId = UUID.randomUUID().toString();
+    private String observationId = UUID.randomUUID().toString();
+    private String forwardObservationId = UUID.randomUUID().toString();
+    private String absoluteObservationId = UUID.randomUUID().toString();
+
+    public JDBCReferenceValuesTest() throws Exception {
+        this.testProps = TestUtil.readTestProperties("test.jdbc.properties");
+    }
+
+    @BeforeClass
+    public void setup() throws Exception {
+        String dbDriverName = this.testProps.getProperty("dbDriverName");
+        if (dbDriverName == null || !dbDriverName.contains("derby")) {
+            throw new IllegalStateException("This test requires a Derby database");
+        }
+        FHIRConfiguration.setConfigHome("../fhir-persistence/target/test-classes");
+        IConnectionProvider cp = new DerbyInitializer(this.testProps).getConnectionProvider(false);
+        this.connection = cp.getConnection();
+        FHIRDbFlavor flavor = new FHIRDbFlavorImpl(DbType.DERBY, false);
+        this.resourceDao = new DerbyResourceDAO(connection, SCHEMA_NAME, flavor);
+        this.parameterDao = new ParameterDAOImpl(connection, SCHEMA_NAME, flavor);
+        for (String resourceType : Arrays.asList("Organization", "Patient", "Observation")) {
+            this.resourceDao.getOrCreateResourceType(resourceType, connection);
+        }
+
+        store("Organization", orgId, string("Organization", "name", orgName));
+        store("Patient", patientId, reference("Patient", "organization", "Organization", orgId));
+        store("Observation", observationId, reference("Observation", "subject", "Patient", patientId));
+        // the target of this reference is stored afterwards
+        store("Observation", forwardObservationId, reference("Observation", "subject", "Patient", forwardPatientId));
+        store("Patient", forwardPatientId, reference("Patient", "organization", "Organization", orgId));
+        // an absolute reference is only stored as a string
+        ReferenceParmVal absolute = reference("Observation", "subject", null, null);
+        absolute.setValueString("http://example.org/fhir/Patient/" + patientId);
+        store("Observation", absoluteObservationId, absolute);
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void teardown() throws Exception {
+        FHIRRequestContext.get().setTenantId("default");
+        if (this.connection != null) {
+            this.connection.rollback();
+            this.connection.close();
+        }
+    }
+
+    @DataProvider(name = "tenants")
+    public Object[][] tenants() {
+        return new Object[][] { { "default" }, { "referencevalues" } };
+    }
+
+    @Test
+    public void testReferenceValues() throws Exception {
+        assertEquals(getRefLogicalIds("observation", observationId), Collections.singletonList(patientId));
+        assertEquals(getRefLogicalIds("observation", forwardObservationId), Collections.singletonList(forwardPatientId));
+        assertTrue(getRefLogicalIds("observation", absoluteObservationId).isEmpty());
+
+        // the patient stored after the reference to it adopts the logical_resource_id reserved by the reference
+        assertEquals(getRefLogicalResourceIds("observation", forwardObservationId),
+            Collections.singletonList(getLogicalResourceId("patient", forwardPatientId)));
+    }
+
+    @Test(dataProvider = "tenants")
+    public void testChainedSearch(String tenantId) throws Exception {
+        FHIRRequestContext.get().setTenantId(tenantId);
+
+        // subject:Patient.organization:Organization.name=orgName
+        QueryParameter subject = new QueryParameter(Type.REFERENCE, "subject", Modifier.TYPE, "Patient");
+        QueryParameter organization = new QueryParameter(Type.REFERENCE, "organization", Modifier.TYPE, "Organization");
+        QueryParameter name = new QueryParameter(Type.STRING, "name", null, null);
+        name.getValues().add(value(orgName));
+        subject.setNextParameter(organization);
+        organization.setNextParameter(name);
+
+        FHIRSearchContext searchContext = FHIRSearchContextFactory.createSearchContext();
+        searchContext.setSearchParameters(Collections.singletonList(subject));
+        assertEquals(search(Observation.class, searchContext, "_REF_VALUES"), set(observationId, forwardObservationId));
+    }
+
+    @Test(dataProvider = "tenants")
+    public void testCompartmentSearch(String tenantId) throws Exception {
+        FHIRRequestContext.get().setTenantId(tenantId);
+
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters("Patient", patientId, Observation.class, queryParameters, null);
+        assertEquals(search(Observation.class, searchContext, "_REF_VALUES RV, LOGICAL_RESOURCES RLR"), set(observationId));
+
+        searchContext = SearchUtil.parseQueryParameters("Patient", forwardPatientId, Observation.class, queryParameters, null);
+        assertEquals(search(Observation.class, searchContext, "_REF_VALUES RV, LOGICAL_RESOURCES RLR"), set(forwardObservationId));
+    }
+
+    @Test(dataProvider = "tenants")
+    public void testInclude(String tenantId) throws Exception {
+        FHIRRequestContext.get().setTenantId(tenantId);
+
+        FHIRSearchContext searchContext = idSearchContext(patientId);
+        searchContext.getIncludeParameters().add(new InclusionParameter("Patient", "organization", "Organization"));
+        // the ids of the included resources are read before the query is built
+        assertEquals(search(Patient.class, searchContext, "(LR.LOGICAL_RESOURCE_ID IN "), set(patientId, orgId));
+    }
+
+    @Test(dataProvider = "tenants")
+    public void testRevinclude(String tenantId) throws Exception {
+        FHIRRequestContext.get().setTenantId(tenantId);
+
+        FHIRSearchContext searchContext = idSearchContext(patientId);
+        searchContext.getRevIncludeParameters().add(new InclusionParameter("Observation", "subject", "Patient"));
+        assertEquals(search(Patient.class, searchContext, "_REF_VALUES"), set(patientId, observationId));
+    }
+
+    /**
+     * Runs the search, checking that the query uses the reference values tables only for the "referencevalues" tenant
+     */
+    private Set<String> search(Class<?> resourceType, FHIRSearchContext searchContext, String referenceValuesSql) throws Exception {
+        JDBCQueryBuilder queryBuilder = new JDBCQueryBuilder(parameterDao, resourceDao, null);
+        SqlQueryData query = queryBuilder.buildQuery(resourceType, searchContext);
+        assertEquals(query.getQueryString().contains(referenceValuesSql), "referencevalues".equals(FHIRRequestContext.get().getTenantId()));
+        Set<String> logicalIds = new HashSet<>();
+        for (Resource resource : resourceDao.search(query)) {
+            logicalIds.add(resource.getLogicalId());
+        }
+        return logicalIds;
+    }
+
+    private static FHIRSearchContext idSearchContext(String logicalId) {
+        QueryParameter id = new QueryParameter(Type.TOKEN, "_id", null, null);
+        QueryParameterValue value = new QueryParameterValue();
+        value.setValueCode(logicalId);
+        id.getValues().add(value);
+
+        FHIRSearchContext searchContext = FHIRSearchContextFactory.createSearchContext();
+        searchContext.setSearchParameters(Collections.singletonList(id));
+        return searchContext;
+    }
+
+    private void store(String resourceType, String logicalId, ExtractedParameterValue parameter) throws Exception {
+        resourceDao.storeResource(resourceType, Collections.singletonList(parameter), logicalId, "{}".getBytes(StandardCharsets.UTF_8),
+            new Timestamp(System.currentTimeMillis()), false, UUID.randomUUID().toString(), null, null, connection, parameterDao);
+    }
+
+    private List<String> getRefLogicalIds(String tablePrefix, String logicalId) throws Exception {
+        final String select = "SELECT tlr.logical_id FROM " + tablePrefix + "_ref_values rv, " + tablePrefix + "_logical_resources lr, logical_resources tlr"
+                + " WHERE rv.logical_resource_id = lr.logical_resource_id AND lr.logical_id = ? AND tlr.logical_resource_id = rv.ref_logical_resource_id";
+        try (PreparedStatement stmt = connection.prepareStatement(select)) {
+            stmt.setString(1, logicalId);
+            ResultSet rs = stmt.executeQuery();
+            List<String> result = new ArrayList<>();
+            while (rs.next()) {
+                result.add(rs.getString(1));
+            }
+            return result;
+        }
+    }
+
+    private List<Long> getRefLogicalResourceIds(String tablePrefix, String logicalId) throws Exception {
+        final String select = "SELECT rv.ref_logical_resource_id FROM " + tablePrefix + "_ref_values rv, " + tablePrefix + "_logical_resources lr"
+                + " WHERE rv.logical_resource_id = lr.logical_resource_id AND lr.logical_id = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(select)) {
+            stmt.setString(1, logicalId);
+            ResultSet rs = stmt.executeQuery();
+            List<Long> result = new ArrayList<>();
+            while (rs.next()) {
+                result.add(rs.getLong(1));
+            }
+            return result;
+        }
+    }
+
+    private Long getLogicalResourceId(String tablePrefix, String logicalId) throws Exception {
+        final String select = "SELECT logical_resource_id FROM " + tablePrefix + "_logical_resources WHERE logical_id = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(select)) {
+            stmt.setString(1, logicalId);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getLong(1) : null;
+        }
+    }
+
+    private static StringParmVal string(String resourceType, String name, String value) {
+        StringParmVal parameter = new StringParmVal();
+        parameter.setResourceType(resourceType);
+        parameter.setName(name);
+        parameter.setValueString(value);
+        return parameter;
+    }
+
+    private static ReferenceParmVal reference(String resourceType, String name, String refResourceType, String refLogicalId) {
+        ReferenceParmVal parameter = new ReferenceParmVal();
+        parameter.setResourceType(resourceType);
+        parameter.setName(name);
+        parameter.setValueString(refResourceType + "/" + refLogicalId);
+        parameter.setRefResourceType(refResourceType);
+        parameter.setRefLogicalId(refLogicalId);
+        return parameter;
+    }
+
+    private static QueryParameterValue value(String valueString) {
+        QueryParameterValue value = new QueryParameterValue();
+        value.setValueString(valueString);
+        return value;
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
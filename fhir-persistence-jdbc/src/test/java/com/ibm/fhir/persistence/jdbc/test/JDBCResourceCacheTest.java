@@ -0,0 +1,139 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.util.Properties;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.database.utils.api.IConnectionProvider;
+import com.ibm.fhir.database.utils.pool.PoolConnectionProvider;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.model.type.HumanName;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceDeletedException;
+import com.ibm.fhir.persistence.jdbc.impl.FHIRPersistenceJDBCImpl;
+import com.ibm.fhir.persistence.jdbc.test.util.DerbyInitializer;
+import com.ibm.fhir.persistence.jdbc.util.ResourceCache;
+import com.ibm.fhir.persistence.test.common.AbstractPersistenceTest;
+
+/**
+ * Tests the cache of resources read by the JDBC persistence layer. The "resourcecache" tenant enables the cache
+ * for Patient resources only.
+ */
+public class JDBCResourceCacheTest extends AbstractPersistenceTest {
+    private static final String TENANT_ID = "resourcecache";
+
+    // test properties
+    private Properties testProps;
+
+    // Connection pool used to provide connections for the FHIRPersistenceJDBCImpl
+    private PoolConnectionProvider connectionPool;
+
+    public JDBCResourceCacheTest() throws Exception {
+        this.testProps = TestUtil.readTestProperties("test.jdbc.properties");
+    }
+
+    @Override
+    public void bootstrapDatabase() throws Exception {
+        DerbyInitializer derbyInit;
+        String dbDriverName = this.testProps.getProperty("dbDriverName");
+        if (dbDriverName != null && dbDriverName.contains("derby")) {
+            derbyInit = new DerbyInitializer(this.testProps);
+            IConnectionProvider cp = derbyInit.getConnectionProvider(false);
+            this.connectionPool = new PoolConnectionProvider(cp, 1);
+        }
+    }
+
+    @Override
+    public FHIRPersistence getPersistenceImpl() throws Exception {
+        if (this.connectionPool == null) {
+            throw new IllegalStateException("Database not bootstrapped");
+        }
+        return new FHIRPersistenceJDBCImpl(this.testProps, this.connectionPool);
+    }
+
+    @Override
+    protected void shutdownPools() throws Exception {
+        if (this.connectionPool != null) {
+            this.connectionPool.close();
+        }
+    }
+
+    @BeforeMethod(alwaysRun = true)
+    public void setTenant() throws Exception {
+        FHIRRequestContext.get().setTenantId(TENANT_ID);
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void resetTenant() throws Exception {
+        FHIRRequestContext.get().setTenantId("default");
+        ResourceCache.reset();
+    }
+
+    @Test
+    public void testReadAndUpdate() throws Exception {
+        Patient patient = persistence.create(getDefaultPersistenceContext(), patient("Doe")).getResource();
+        String logicalId = patient.getId();
+
+        Patient read1 = persistence.read(getDefaultPersistenceContext(), Patient.class, logicalId).getResource();
+        Patient read2 = persistence.read(getDefaultPersistenceContext(), Patient.class, logicalId).getResource();
+        assertNotNull(read1);
+        assertSame(read2, read1);
+        assertSame(persistence.vread(getDefaultPersistenceContext(), Patient.class, logicalId, "1").getResource(), read1);
+
+        Patient updated = patient("Smith").toBuilder().id(logicalId).build();
+        persistence.update(getDefaultPersistenceContext(), logicalId, updated);
+
+        Patient read3 = persistence.read(getDefaultPersistenceContext(), Patient.class, logicalId).getResource();
+        assertEquals(read3.getMeta().getVersionId().getValue(), "2");
+        assertEquals(read3.getName().get(0).getFamily().getValue(), "Smith");
+        assertSame(persistence.read(getDefaultPersistenceContext(), Patient.class, logicalId).getResource(), read3);
+
+        // the first version is still cached
+        assertSame(persistence.vread(getDefaultPersistenceContext(), Patient.class, logicalId, "1").getResource(), read1);
+    }
+
+    @Test(expectedExceptions = FHIRPersistenceResourceDeletedException.class)
+    public void testReadAfterDelete() throws Exception {
+        Patient patient = persistence.create(getDefaultPersistenceContext(), patient("Doe")).getResource();
+        String logicalId = patient.getId();
+        assertNotNull(persistence.read(getDefaultPersistenceContext(), Patient.class, logicalId).getResource());
+
+        persistence.delete(getDefaultPersistenceContext(), Patient.class, logicalId);
+        persistence.read(getDefaultPersistenceContext(), Patient.class, logicalId);
+    }
+
+    @Test
+    public void testResourceTypeNotCached() throws Exception {
+        Observation observation = TestUtil.readExampleResource("json/ibm/minimal/Observation-1.json");
+        String logicalId = persistence.create(getDefaultPersistenceContext(), observation).getResource().getId();
+
+        Observation read1 = persistence.read(getDefaultPersistenceContext(), Observation.class, logicalId).getResource();
+        Observation read2 = persistence.read(getDefaultPersistenceContext(), Observation.class, logicalId).getResource();
+        assertEquals(read2, read1);
+        assertNotSame(read2, read1);
+    }
+
+    private static Patient patient(String family) throws Exception {
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        return patient.toBuilder()
+                .name(HumanName.builder().family(string(family)).build())
+                .build();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test;
+
+import static org.testng.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.database.utils.api.IConnectionProvider;
+import com.ibm.fhir.database.utils.model.DbType;
+import com.ibm.fhir.model.resource.Organization;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.persistence.jdbc.connection.FHIRDbFlavor;
+import com.ibm.fhir.persistence.jdbc.connection.FHIRDbFlavorImpl;
+import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
+import com.ibm.fhir.persistence.jdbc.dao.impl.ParameterDAOImpl;
+import com.ibm.fhir.persistence.jdbc.derby.DerbyResourceDAO;
+import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
+import com.ibm.fhir.persistence.jdbc.dto.ReferenceParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.Resource;
+import com.ibm.fhir.persistence.jdbc.test.util.DerbyInitializer;
+import com.ibm.fhir.persistence.jdbc.util.JDBCQueryBuilder;
+import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
+import com.ibm.fhir.search.SearchConstants.Type;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.context.FHIRSearchContextFactory;
+import com.ibm.fhir.search.parameters.InclusionParameter;
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.parameters.QueryParameterValue;
+
+/**
+ * Tests that the pages of a search use the same query text, with the offset and page size as bind variables
+ */
+public class JDBCSearchPaginationTest {
+    private static final String SCHEMA_NAME = "FHIRDATA";
+
+    private Properties testProps;
+    private Connection connection;
+    private DerbyResourceDAO resourceDao;
+    private ParameterDAO parameterDao;
+
+    private String orgId = UUID.randomUUID().toString();
+    private List<String> patientIds = Arrays.asList(UUID.randomUUID().toString(), UUID.randomUUID().toString(),
+        UUID.randomUUID().toString());
+
+    public JDBCSearchPaginationTest() throws Exception {
+        this.testProps = TestUtil.readTestProperties("test.jdbc.properties");
+    }
+
+    @BeforeClass
+    public void setup() throws Exception {
+        String dbDriverName = this.testProps.getProperty("dbDriverName");
+        if (dbDriverName == null || !dbDriverName.contains("derby")) {
+            throw new IllegalStateException("This test requires a Derby database");
+        }
+        FHIRConfiguration.setConfigHome("../fhir-persistence/target/test-classes");
+        FHIRRequestContext.get().setTenantId("default");
+        IConnectionProvider cp = new DerbyInitializer(this.testProps).getConnectionProvider(false);
+        this.connection = cp.getConnection();
+        FHIRDbFlavor flavor = new FHIRDbFlavorImpl(DbType.DERBY, false);
+        this.resourceDao = new DerbyResourceDAO(connection, SCHEMA_NAME, flavor);
+        this.parameterDao = new ParameterDAOImpl(connection, SCHEMA_NAME, flavor);
+        for (String resourceType : Arrays.asList("Organization", "Patient")) {
+            this.resourceDao.getOrCreateResourceType(resourceType, connection);
+        }
+
+        store("Organization", orgId, Collections.emptyList());
+        for (String patientId : patientIds) {
+            ReferenceParmVal organization = new ReferenceParmVal();
+            organization.setResourceType("Patient");
+            organization.setName("organization");
+            organization.setValueString("Organization/" + orgId);
+            store("Patient", patientId, Collections.singletonList(organization));
+        }
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void teardown() throws Exception {
+        if (this.connection != null) {
+            this.connection.rollback();
+            this.connection.close();
+        }
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        SqlQueryData page1 = buildQuery(Patient.class, idSearchContext(1, 2, patientIds));
+        SqlQueryData page2 = buildQuery(Patient.class, idSearchContext(2, 2, patientIds));
+        assertEquals(page2.getQueryString(), page1.getQueryString());
+        assertPagination(page1, 0, 2);
+        assertPagination(page2, 2, 2);
+
+        Set<String> page1Ids = search(page1);
+        Set<String> page2Ids = search(page2);
+        assertEquals(page1Ids.size(), 2);
+        assertEquals(page2Ids.size(), 1);
+        page1Ids.addAll(page2Ids);
+        assertEquals(page1Ids, new HashSet<>(patientIds));
+    }
+
+    @Test
+    public void testInclude() throws Exception {
+        FHIRSearchContext searchContext1 = idSearchContext(1, 2, patientIds);
+        searchContext1.getIncludeParameters().add(new InclusionParameter("Patient", "organization", "Organization"));
+        FHIRSearchContext searchContext2 = idSearchContext(2, 2, patientIds);
+        searchContext2.getIncludeParameters().add(new InclusionParameter("Patient", "organization", "Organization"));
+
+        SqlQueryData page1 = buildQuery(Patient.class, searchContext1);
+        SqlQueryData page2 = buildQuery(Patient.class, searchContext2);
+        // both pages include the same organization, which is bound once after the page bounds
+        assertEquals(page2.getQueryString(), page1.getQueryString());
+        assertEquals(page1.getBindVariables().subList(3, 6), Arrays.asList(0, 2, "Organization/" + orgId));
+        assertEquals(page2.getBindVariables().subList(3, 6), Arrays.asList(2, 2, "Organization/" + orgId));
+
+        Set<String> page1Ids = search(page1);
+        Set<String> page2Ids = search(page2);
+        assertEquals(page1Ids.size(), 3);
+        assertEquals(page2Ids.size(), 2);
+        page1Ids.addAll(page2Ids);
+        Set<String> expected = new HashSet<>(patientIds);
+        expected.add(orgId);
+        assertEquals(page1Ids, expected);
+    }
+
+    @Test
+    public void testRevinclude() throws Exception {
+        FHIRSearchContext searchContext = idSearchContext(1, 1, Collections.singletonList(orgId));
+        searchContext.getRevIncludeParameters().add(new InclusionParameter("Patient", "organization", "Organization"));
+
+        SqlQueryData page1 = buildQuery(Organization.class, searchContext);
+        // the page bounds of the main query and the revinclude sub query are bound
+        assertEquals(page1.getBindVariables().subList(0, 3), Arrays.asList(orgId, 0, 1));
+        assertPagination(page1, 0, 1);
+
+        Set<String> expected = new HashSet<>(patientIds);
+        expected.add(orgId);
+        assertEquals(search(page1), expected);
+    }
+
+    /**
+     * Checks that the offset and page size are the last bind variables of the query
+     */
+    private static void assertPagination(SqlQueryData query, int offset, int pageSize) {
+        List<? extends Object> bindVariables = query.getBindVariables();
+        assertEquals(bindVariables.subList(bindVariables.size() - 2, bindVariables.size()), Arrays.asList(offset, pageSize));
+    }
+
+    private SqlQueryData buildQuery(Class<?> resourceType, FHIRSearchContext searchContext) throws Exception {
+        return new JDBCQueryBuilder(parameterDao, resourceDao, null).buildQuery(resourceType, searchContext);
+    }
+
+    private Set<String> search(SqlQueryData query) throws Exception {
+        Set<String> logicalIds = new HashSet<>();
+        for (Resource resource : resourceDao.search(query)) {
+            logicalIds.add(resource.getLogicalId());
+        }
+        return logicalIds;
+    }
+
+    private static FHIRSearchContext idSearchContext(int pageNumber, int pageSize, List<String> logicalIds) {
+        QueryParameter id = new QueryParameter(Type.TOKEN, "_id", null, null);
+        for (String logicalId : logicalIds) {
+            QueryParameterValue value = new QueryParameterValue();
+            value.setValueCode(logicalId);
+            id.getValues().add(value);
+        }
+
+        FHIRSearchContext searchContext = FHIRSearchContextFactory.createSearchContext();
+        searchContext.setSearchParameters(Collections.singletonList(id));
+        searchContext.setPageNumber(pageNumber);
+        searchContext.setPageSize(pageSize);
+        return searchContext;
+    }
+
+    private void store(String resourceType, String logicalId, List<ExtractedParameterValue> parameters) throws Exception {
+        resourceDao.storeResource(resourceType, parameters, logicalId, "{}".getBytes(StandardCharsets.UTF_8),
+            new Timestamp(System.currentTimeMillis()), false, UUID.randomUUID().toString(), null, null, connection, parameterDao);
+    }
+}
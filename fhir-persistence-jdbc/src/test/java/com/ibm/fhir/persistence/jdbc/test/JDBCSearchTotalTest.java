@@ -0,0 +1,298 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.database.utils.api.IConnectionProvider;
+import com.ibm.fhir.database.utils.pool.PoolConnectionProvider;
+import com.ibm.fhir.model.resource.Basic;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.jdbc.impl.FHIRPersistenceJDBCImpl;
+import com.ibm.fhir.persistence.jdbc.postgresql.PostgreSqlResourceDAO;
+import com.ibm.fhir.persistence.jdbc.test.util.DerbyInitializer;
+import com.ibm.fhir.persistence.jdbc.util.SearchCountCache;
+import com.ibm.fhir.persistence.test.common.AbstractPersistenceTest;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.cursor.SearchCursor;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Tests the _total search result parameter, the search count cache and the cursors for the next page of the JDBC
+ * persistence layer.
+ */
+public class JDBCSearchTotalTest extends AbstractPersistenceTest {
+    private static final int PAGE_SIZE = 2;
+
+    // test properties
+    private Properties testProps;
+
+    // Connection pool used to provide connections for the FHIRPersistenceJDBCImpl
+    private PoolConnectionProvider connectionPool;
+
+    public JDBCSearchTotalTest() throws Exception {
+        this.testProps = TestUtil.readTestProperties("test.jdbc.properties");
+    }
+
+    @Override
+    public void bootstrapDatabase() throws Exception {
+        DerbyInitializer derbyInit;
+        String dbDriverName = this.testProps.getProperty("dbDriverName");
+        if (dbDriverName != null && dbDriverName.contains("derby")) {
+            derbyInit = new DerbyInitializer(this.testProps);
+            IConnectionProvider cp = derbyInit.getConnectionProvider(false);
+            this.connectionPool = new PoolConnectionProvider(cp, 1);
+        }
+    }
+
+    @Override
+    public FHIRPersistence getPersistenceImpl() throws Exception {
+        if (this.connectionPool == null) {
+            throw new IllegalStateException("Database not bootstrapped");
+        }
+        return new FHIRPersistenceJDBCImpl(this.testProps, this.connectionPool);
+    }
+
+    @Override
+    protected void shutdownPools() throws Exception {
+        if (this.connectionPool != null) {
+            this.connectionPool.close();
+        }
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void resetTenant() throws Exception {
+        FHIRRequestContext.get().setTenantId("default");
+        SearchCountCache.reset();
+    }
+
+    @Test
+    public void testTotalNone() throws Exception {
+        FHIRRequestContext.get().setTenantId("string");
+        createBasics(3);
+
+        FHIRSearchContext accurateContext = searchContext(null, null, 1);
+        List<String> accuratePage1 = search(accurateContext);
+        int count = accurateContext.getTotalCount();
+        int lastPageNumber = (count + PAGE_SIZE - 1) / PAGE_SIZE;
+        assertTrue(count >= 3);
+
+        // the first page is followed by another, which is found without counting
+        FHIRSearchContext searchContext = searchContext("none", null, 1);
+        assertEquals(search(searchContext), accuratePage1);
+        assertEquals(searchContext.getLastPageNumber(), 2);
+        assertNotNull(searchContext.getNextCursor());
+
+        // the last page has no next page
+        accurateContext = searchContext(null, null, lastPageNumber);
+        List<String> accurateLastPage = search(accurateContext);
+        searchContext = searchContext("none", null, lastPageNumber);
+        assertEquals(search(searchContext), accurateLastPage);
+        assertEquals(searchContext.getLastPageNumber(), lastPageNumber);
+        assertNull(searchContext.getNextCursor());
+
+        // a page past the end is empty rather than invalid, since the last page number isn't known in advance
+        searchContext = searchContext("none", null, lastPageNumber + 1);
+        searchContext.setLenient(false);
+        MultiResourceResult<Resource> result = persistence.search(getPersistenceContextForSearch(searchContext), Basic.class);
+        assertTrue(result.isSuccess());
+        assertTrue(result.getResource().isEmpty());
+        assertNull(result.getOutcome());
+    }
+
+    @Test
+    public void testTotalNoneSorted() throws Exception {
+        FHIRRequestContext.get().setTenantId("string");
+        createBasics(3);
+
+        FHIRSearchContext accurateContext = searchContext(null, "string", 1);
+        List<String> accuratePage1 = search(accurateContext);
+
+        FHIRSearchContext searchContext = searchContext("none", "string", 1);
+        assertEquals(search(searchContext), accuratePage1);
+        assertEquals(searchContext.getLastPageNumber(), 2);
+    }
+
+    @Test
+    public void testTotalEstimate() throws Exception {
+        FHIRRequestContext.get().setTenantId("string");
+        createBasics(1);
+
+        FHIRSearchContext accurateContext = searchContext(null, null, 1);
+        List<String> accuratePage1 = search(accurateContext);
+
+        // Derby can't estimate the count, so it is counted accurately
+        FHIRSearchContext searchContext = searchContext("estimate", null, 1);
+        assertEquals(search(searchContext), accuratePage1);
+        assertEquals(searchContext.getTotalCount(), accurateContext.getTotalCount());
+        assertEquals(searchContext.getLastPageNumber(), accurateContext.getLastPageNumber());
+    }
+
+    @Test
+    public void testSummaryCountWithTotalNone() throws Exception {
+        FHIRRequestContext.get().setTenantId("string");
+        createBasics(1);
+
+        FHIRSearchContext accurateContext = searchContext(null, null, 1);
+        search(accurateContext);
+
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("string", Collections.singletonList("testString"));
+        queryParameters.put("_summary", Collections.singletonList("count"));
+        queryParameters.put("_total", Collections.singletonList("none"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        assertTrue(search(searchContext).isEmpty());
+        assertEquals(searchContext.getTotalCount(), accurateContext.getTotalCount());
+    }
+
+    @Test
+    public void testSearchCountCache() throws Exception {
+        FHIRRequestContext.get().setTenantId("searchcountcache");
+        createBasics(1);
+
+        FHIRSearchContext searchContext = searchContext(null, null, 1);
+        search(searchContext);
+        int count = searchContext.getTotalCount();
+        assertTrue(count >= 1);
+
+        // the count is cached, so the new resource isn't counted until the cache entry expires
+        createBasics(1);
+        searchContext = searchContext("accurate", null, 1);
+        search(searchContext);
+        assertEquals(searchContext.getTotalCount(), count);
+
+        SearchCountCache.reset();
+        searchContext = searchContext(null, null, 1);
+        search(searchContext);
+        assertEquals(searchContext.getTotalCount(), count + 1);
+    }
+
+    @Test
+    public void testEstimatedCountFromPlan() throws Exception {
+        String plan = "[{\"Plan\": {\"Node Type\": \"Aggregate\", \"Strategy\": \"Plain\", \"Plan Rows\": 1, \"Plans\": ["
+                + "{\"Node Type\": \"Hash Join\", \"Plan Rows\": 1234, \"Plans\": ["
+                + "{\"Node Type\": \"Seq Scan\", \"Plan Rows\": 5000}]}]}}]";
+        assertEquals(PostgreSqlResourceDAO.getEstimatedCount(plan), Integer.valueOf(1234));
+
+        // the rows under the Gather are the rows of each of the 2 workers and of the leader
+        String parallelPlan = "[{\"Plan\": {\"Node Type\": \"Aggregate\", \"Strategy\": \"Plain\", \"Partial Mode\": \"Finalize\", \"Plan Rows\": 1, \"Plans\": ["
+                + "{\"Node Type\": \"Gather\", \"Workers Planned\": 2, \"Plan Rows\": 2, \"Plans\": ["
+                + "{\"Node Type\": \"Aggregate\", \"Strategy\": \"Plain\", \"Partial Mode\": \"Partial\", \"Plan Rows\": 1, \"Plans\": ["
+                + "{\"Node Type\": \"Seq Scan\", \"Parallel Aware\": true, \"Plan Rows\": 41667}]}]}]}}]";
+        assertEquals(PostgreSqlResourceDAO.getEstimatedCount(parallelPlan), Integer.valueOf(100001));
+
+        // a count query which joins the parameter tables is estimated from the plan of its distinct resources
+        String countSql = "SELECT COUNT(DISTINCT R.RESOURCE_ID) FROM Basic_RESOURCES R JOIN Basic_STR_VALUES P1 ON P1.LOGICAL_RESOURCE_ID = R.LOGICAL_RESOURCE_ID";
+        assertEquals(PostgreSqlResourceDAO.getEstimateSql(countSql),
+            "SELECT DISTINCT R.RESOURCE_ID FROM Basic_RESOURCES R JOIN Basic_STR_VALUES P1 ON P1.LOGICAL_RESOURCE_ID = R.LOGICAL_RESOURCE_ID");
+        String joinPlan = "[{\"Plan\": {\"Node Type\": \"Aggregate\", \"Strategy\": \"Hashed\", \"Plan Rows\": 300, \"Plans\": ["
+                + "{\"Node Type\": \"Hash Join\", \"Plan Rows\": 1234, \"Plans\": ["
+                + "{\"Node Type\": \"Seq Scan\", \"Plan Rows\": 5000}]}]}}]";
+        assertEquals(PostgreSqlResourceDAO.getEstimatedCount(joinPlan), Integer.valueOf(300));
+        String parallelJoinPlan = "[{\"Plan\": {\"Node Type\": \"Unique\", \"Plan Rows\": 300, \"Plans\": ["
+                + "{\"Node Type\": \"Gather Merge\", \"Workers Planned\": 2, \"Plan Rows\": 600, \"Plans\": ["
+                + "{\"Node Type\": \"Sort\", \"Plan Rows\": 250}]}]}}]";
+        assertEquals(PostgreSqlResourceDAO.getEstimatedCount(parallelJoinPlan), Integer.valueOf(300));
+
+        String hugePlan = "[{\"Plan\": {\"Node Type\": \"Aggregate\", \"Plan Rows\": 1, \"Plans\": ["
+                + "{\"Node Type\": \"Seq Scan\", \"Plan Rows\": 1e12}]}}]";
+        assertEquals(PostgreSqlResourceDAO.getEstimatedCount(hugePlan), Integer.valueOf(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testSortedCursorPaging() throws Exception {
+        FHIRRequestContext.get().setTenantId("string");
+        createBasics(5);
+
+        // all the resources have the same sort key value (the least or greatest of their string values, which include
+        // special characters), so the pages are ordered by resource id
+        for (String sort : new String[] { "string", "-string" }) {
+            FHIRSearchContext searchContext = searchContext(null, sort, 1);
+            List<String> page = search(searchContext);
+            int lastPageNumber = searchContext.getLastPageNumber();
+            Set<String> seen = new HashSet<>(page);
+            SearchCursor cursor = searchContext.getNextCursor();
+
+            // the query seeks to the position of the cursor, so a cursor positioned before the first result gives the first page
+            FHIRSearchContext seekContext = searchContext(null, sort, 2);
+            seekContext.setCursor(new SearchCursor(2, cursor.getQueryHash(), 0, cursor.getSortValues()));
+            assertEquals(search(seekContext), page);
+            for (int pageNumber = 2; pageNumber <= lastPageNumber; pageNumber++) {
+                assertNotNull(cursor, "cursor for page " + pageNumber);
+                assertEquals(cursor.getSortValues().size(), 1);
+
+                List<String> offsetPage = search(searchContext(null, sort, pageNumber));
+                searchContext = searchContext(null, sort, pageNumber);
+                searchContext.setCursor(cursor);
+                page = search(searchContext);
+                assertEquals(page, offsetPage, "page " + pageNumber + " sorted by " + sort);
+                for (String logicalId : page) {
+                    assertTrue(seen.add(logicalId), logicalId + " is on more than one page");
+                }
+                cursor = searchContext.getNextCursor();
+            }
+        }
+
+        // the cursor of a sorted search is ignored by an unsorted search, since it was issued by a different query
+        FHIRSearchContext sortedContext = searchContext(null, "-string", 1);
+        search(sortedContext);
+        FHIRSearchContext searchContext = searchContext(null, null, 2);
+        searchContext.setCursor(sortedContext.getNextCursor());
+        assertEquals(search(searchContext), search(searchContext(null, null, 2)));
+    }
+
+    private void createBasics(int count) throws Exception {
+        Basic basic = TestUtil.readExampleResource("json/ibm/basic/BasicString.json");
+        for (int i = 0; i < count; i++) {
+            persistence.create(getDefaultPersistenceContext(), basic);
+        }
+    }
+
+    private FHIRSearchContext searchContext(String total, String sort, int pageNumber) throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("string", Collections.singletonList("testString"));
+        if (total != null) {
+            queryParameters.put("_total", Collections.singletonList(total));
+        }
+        if (sort != null) {
+            queryParameters.put("_sort", Collections.singletonList(sort));
+        }
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setPageSize(PAGE_SIZE);
+        searchContext.setPageNumber(pageNumber);
+        return searchContext;
+    }
+
+    private List<String> search(FHIRSearchContext searchContext) throws Exception {
+        MultiResourceResult<Resource> result = persistence.search(getPersistenceContextForSearch(searchContext), Basic.class);
+        assertTrue(result.isSuccess());
+        List<String> logicalIds = new ArrayList<>();
+        for (Resource resource : result.getResource()) {
+            logicalIds.add(resource.getId());
+        }
+        return logicalIds;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.database.utils.api.IConnectionProvider;
+import com.ibm.fhir.database.utils.pool.PoolConnectionProvider;
+import com.ibm.fhir.model.resource.OperationOutcome;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.model.type.HumanName;
+import com.ibm.fhir.model.type.Id;
+import com.ibm.fhir.model.type.code.IssueSeverity;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.SingleResourceResult;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
+import com.ibm.fhir.persistence.jdbc.impl.FHIRPersistenceJDBCImpl;
+import com.ibm.fhir.persistence.jdbc.test.util.DerbyInitializer;
+import com.ibm.fhir.persistence.test.common.AbstractPersistenceTest;
+
+/**
+ * Tests that updates which don't change a resource return the existing version. The "skipunchanged" tenant
+ * enables the check.
+ */
+public class JDBCSkipUnchangedUpdateTest extends AbstractPersistenceTest {
+    private static final String TENANT_ID = "skipunchanged";
+
+    // test properties
+    private Properties testProps;
+
+    // Connection pool used to provide connections for the FHIRPersistenceJDBCImpl
+    private PoolConnectionProvider connectionPool;
+
+    public JDBCSkipUnchangedUpdateTest() throws Exception {
+        this.testProps = TestUtil.readTestProperties("test.jdbc.properties");
+    }
+
+    @Override
+    public void bootstrapDatabase() throws Exception {
+        DerbyInitializer derbyInit;
+        String dbDriverName = this.testProps.getProperty("dbDriverName");
+        if (dbDriverName != null && dbDriverName.contains("derby")) {
+            derbyInit = new DerbyInitializer(this.testProps);
+            IConnectionProvider cp = derbyInit.getConnectionProvider(false);
+            this.connectionPool = new PoolConnectionProvider(cp, 1);
+        }
+    }
+
+    @Override
+    public FHIRPersistence getPersistenceImpl() throws Exception {
+        if (this.connectionPool == null) {
+            throw new IllegalStateException("Database not bootstrapped");
+        }
+        return new FHIRPersistenceJDBCImpl(this.testProps, this.connectionPool);
+    }
+
+    @Override
+    protected void shutdownPools() throws Exception {
+        if (this.connectionPool != null) {
+            this.connectionPool.close();
+        }
+    }
+
+    @BeforeMethod(alwaysRun = true)
+    public void setTenant() throws Exception {
+        FHIRRequestContext.get().setTenantId(TENANT_ID);
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void resetTenant() throws Exception {
+        FHIRRequestContext.get().setTenantId("default");
+    }
+
+    @Test
+    public void testUnchangedUpdate() throws Exception {
+        Patient created = persistence.create(getDefaultPersistenceContext(), patient("Doe")).getResource();
+        String logicalId = created.getId();
+
+        // the same content, as a client would send it back
+        SingleResourceResult<Patient> result = persistence.update(getDefaultPersistenceContext(), logicalId, created);
+        Patient unchanged = result.getResource();
+        assertTrue(result.isUnchanged());
+        assertEquals(unchanged.getMeta().getVersionId().getValue(), "1");
+        assertEquals(unchanged.getMeta().getLastUpdated(), created.getMeta().getLastUpdated());
+        assertEquals(unchanged, created);
+        assertNotNull(result.getOutcome());
+        OperationOutcome.Issue issue = result.getOutcome().getIssue().get(result.getOutcome().getIssue().size() - 1);
+        assertEquals(issue.getSeverity(), IssueSeverity.INFORMATION);
+
+        // no new version was stored
+        assertEquals(persistence.read(getDefaultPersistenceContext(), Patient.class, logicalId).getResource(), created);
+        assertNull(persistence.vread(getDefaultPersistenceContext(), Patient.class, logicalId, "2").getResource());
+    }
+
+    @Test
+    public void testChangedUpdate() throws Exception {
+        Patient created = persistence.create(getDefaultPersistenceContext(), patient("Doe")).getResource();
+        String logicalId = created.getId();
+
+        Patient changed = patient("Smith").toBuilder().id(logicalId).build();
+        SingleResourceResult<Patient> result = persistence.update(getDefaultPersistenceContext(), logicalId, changed);
+        assertFalse(result.isUnchanged());
+        Patient updated = result.getResource();
+        assertEquals(updated.getMeta().getVersionId().getValue(), "2");
+
+        // sending the new version again doesn't create a third one
+        Patient unchanged = persistence.update(getDefaultPersistenceContext(), logicalId, changed).getResource();
+        assertEquals(unchanged.getMeta().getVersionId().getValue(), "2");
+        assertEquals(unchanged, updated);
+    }
+
+    @Test
+    public void testUpdateAfterDelete() throws Exception {
+        Patient created = persistence.create(getDefaultPersistenceContext(), patient("Doe")).getResource();
+        String logicalId = created.getId();
+        persistence.delete(getDefaultPersistenceContext(), Patient.class, logicalId);
+
+        // the same content undeletes the resource with a new version
+        Patient updated = persistence.update(getDefaultPersistenceContext(), logicalId, created).getResource();
+        assertEquals(updated.getMeta().getVersionId().getValue(), "3");
+    }
+
+    @Test
+    public void testUnchangedUpdateOfPrevResource() throws Exception {
+        Patient created = persistence.create(getDefaultPersistenceContext(), patient("Doe")).getResource();
+        String logicalId = created.getId();
+
+        // the existing version read by the REST layer is compared instead of the stored fingerprint
+        SingleResourceResult<Patient> result = persistence.update(prevResourceContext(created, false), logicalId, created);
+        assertTrue(result.isUnchanged());
+        assertEquals(result.getResource(), created);
+
+        Patient changed = patient("Smith").toBuilder().id(logicalId).build();
+        result = persistence.update(prevResourceContext(created, false), logicalId, changed);
+        assertFalse(result.isUnchanged());
+        assertEquals(result.getResource().getMeta().getVersionId().getValue(), "2");
+    }
+
+    @Test
+    public void testUpdateOfDeletedPrevResource() throws Exception {
+        Patient created = persistence.create(getDefaultPersistenceContext(), patient("Doe")).getResource();
+        String logicalId = created.getId();
+        persistence.delete(getDefaultPersistenceContext(), Patient.class, logicalId);
+        Patient deleted = created.toBuilder()
+                .meta(created.getMeta().toBuilder().versionId(Id.of("2")).build())
+                .build();
+
+        SingleResourceResult<Patient> result = persistence.update(prevResourceContext(deleted, true), logicalId, created);
+        assertFalse(result.isUnchanged());
+        assertEquals(result.getResource().getMeta().getVersionId().getValue(), "3");
+    }
+
+    private static FHIRPersistenceContext prevResourceContext(Patient prevResource, boolean deleted) throws Exception {
+        FHIRPersistenceEvent event = new FHIRPersistenceEvent(null, new HashMap<>());
+        event.setPrevFhirResource(prevResource);
+        if (deleted) {
+            event.getProperties().put(FHIRPersistenceEvent.PROPNAME_PREV_RESOURCE_DELETED, Boolean.TRUE);
+        }
+        return FHIRPersistenceContextFactory.createPersistenceContext(event);
+    }
+
+    private static Patient patient(String family) throws Exception {
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        return patient.toBuilder()
+                .name(HumanName.builder().family(string(family)).build())
+                .build();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.exception.FHIRException;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Basic;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.persistence.jdbc.codec.GzipPayloadCodec;
+import com.ibm.fhir.persistence.jdbc.util.ParallelResourceDecoder;
+
+/**
+ * Tests the parallel decoding of search result pages
+ */
+public class ParallelResourceDecoderTest {
+    private static final int PAGE_SIZE = 200;
+    private static final GzipPayloadCodec CODEC = new GzipPayloadCodec();
+
+    @Test
+    public void testParallelDecodeKeepsOrder() throws Exception {
+        List<com.ibm.fhir.persistence.jdbc.dto.Resource> page = buildPage(PAGE_SIZE);
+        List<Resource> parallel = ParallelResourceDecoder.decode(page, ParallelResourceDecoderTest::parse, true, 2);
+        List<Resource> serial = ParallelResourceDecoder.decode(page, ParallelResourceDecoderTest::parse, false, 2);
+
+        assertEquals(parallel.size(), PAGE_SIZE);
+        assertEquals(parallel, serial);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            assertEquals(parallel.get(i).getId(), "basic-" + i);
+        }
+    }
+
+    @Test
+    public void testNullsArePositional() throws Exception {
+        List<com.ibm.fhir.persistence.jdbc.dto.Resource> page = buildPage(PAGE_SIZE);
+        List<Resource> resources = ParallelResourceDecoder.decode(page,
+            resourceDTO -> resourceDTO.getId() % 3 == 0 ? null : parse(resourceDTO), true, 2);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            if (i % 3 == 0) {
+                assertNull(resources.get(i));
+            } else {
+                assertEquals(resources.get(i).getId(), "basic-" + i);
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyPage() throws Exception {
+        assertTrue(ParallelResourceDecoder.decode(Collections.emptyList(), ParallelResourceDecoderTest::parse).isEmpty());
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testIOExceptionIsPropagated() throws Exception {
+        List<com.ibm.fhir.persistence.jdbc.dto.Resource> page = buildPage(PAGE_SIZE);
+        page.get(PAGE_SIZE - 1).setData(new byte[] { 1, 2, 3 });
+        ParallelResourceDecoder.decode(page, ParallelResourceDecoderTest::parse, true, 2);
+    }
+
+    @Test(expectedExceptions = FHIRException.class)
+    public void testFHIRExceptionIsPropagated() throws Exception {
+        List<com.ibm.fhir.persistence.jdbc.dto.Resource> page = buildPage(PAGE_SIZE);
+        ParallelResourceDecoder.decode(page, resourceDTO -> {
+            if (resourceDTO.getId() == 7) {
+                throw new FHIRException("bad resource");
+            }
+            return parse(resourceDTO);
+        }, true, 2);
+    }
+
+    private static Resource parse(com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO) throws FHIRException, IOException {
+        try (InputStream in = CODEC.decode(resourceDTO.getData())) {
+            return FHIRParser.parser(Format.JSON).parse(in);
+        }
+    }
+
+    private List<com.ibm.fhir.persistence.jdbc.dto.Resource> buildPage(int size) throws Exception {
+        List<com.ibm.fhir.persistence.jdbc.dto.Resource> page = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Basic basic = Basic.builder()
+                    .id("basic-" + i)
+                    .code(CodeableConcept.builder().coding(com.ibm.fhir.model.type.Coding.builder().code(Code.of("test")).build()).build())
+                    .build();
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            try (OutputStream out = CODEC.encode(stream, "Basic")) {
+                FHIRGenerator.generator(Format.JSON, false).generate(basic, out);
+            }
+            com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO = new com.ibm.fhir.persistence.jdbc.dto.Resource();
+            resourceDTO.setId(i);
+            resourceDTO.setResourceType("Basic");
+            resourceDTO.setData(stream.toByteArray());
+            page.add(resourceDTO);
+        }
+        return page;
+    }
+}
@@ -60,6 +60,7 @@ import com.ibm.fhir.persistence.jdbc.dto.DateParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
 import com.ibm.fhir.persistence.jdbc.dto.NumberParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.QuantityParmVal;
+import com.ibm.fhir.persistence.jdbc.dto.ReferenceParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.StringParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.TokenParmVal;
 import com.ibm.fhir.persistence.jdbc.util.JDBCParameterBuildingVisitor;
@@ -653,6 +654,34 @@ public class ParameterExtractionTest {
         assertEquals(((StringParmVal) params.get(0)).getValueString(), SAMPLE_REF);
     }
     
+    @Test
+    public void testReference_local() throws FHIRPersistenceProcessorException {
+        JDBCParameterBuildingVisitor parameterBuilder = new JDBCParameterBuildingVisitor(referenceSearchParam);
+        Reference.builder()
+                 .reference(string("Patient/" + SAMPLE_REF))
+                 .build()
+                 .accept(parameterBuilder);
+        List<ExtractedParameterValue> params = parameterBuilder.getResult();
+        assertEquals(params.size(), 1, "Number of extracted parameters");
+        ReferenceParmVal param = (ReferenceParmVal) params.get(0);
+        assertEquals(param.getValueString(), "Patient/" + SAMPLE_REF);
+        assertEquals(param.getRefResourceType(), "Patient");
+        assertEquals(param.getRefLogicalId(), SAMPLE_REF);
+
+        // only local references of the form type/id identify their target
+        for (String reference : new String[] { SAMPLE_REF, "http://example.com/Patient/" + SAMPLE_REF, "Patient/" + SAMPLE_REF + "/_history/1", "NotAType/" + SAMPLE_REF }) {
+            parameterBuilder = new JDBCParameterBuildingVisitor(referenceSearchParam);
+            Reference.builder()
+                     .reference(string(reference))
+                     .build()
+                     .accept(parameterBuilder);
+            param = (ReferenceParmVal) parameterBuilder.getResult().get(0);
+            assertEquals(param.getValueString(), reference);
+            assertNull(param.getRefResourceType(), reference);
+            assertNull(param.getRefLogicalId(), reference);
+        }
+    }
+
     @Test
     public void testReference_null() throws FHIRPersistenceProcessorException {
         assertNullValueReturnsNoParameters(referenceSearchParam, Reference.builder());
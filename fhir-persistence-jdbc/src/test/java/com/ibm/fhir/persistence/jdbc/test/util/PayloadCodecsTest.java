@@ -0,0 +1,205 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.examples.ExamplesUtil;
+import com.ibm.fhir.examples.Index;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.persistence.jdbc.codec.GzipPayloadCodec;
+import com.ibm.fhir.persistence.jdbc.codec.LZ4PayloadCodec;
+import com.ibm.fhir.persistence.jdbc.codec.PayloadCodec;
+import com.ibm.fhir.persistence.jdbc.codec.PayloadCodecs;
+import com.ibm.fhir.persistence.jdbc.codec.ZstdPayloadCodec;
+
+/**
+ * Tests the compression codecs for stored resource payloads
+ */
+public class PayloadCodecsTest {
+    private static final String OBSERVATION = "Observation";
+
+    private List<byte[]> observations = new ArrayList<>();
+
+    @BeforeClass
+    public void setup() throws Exception {
+        List<String> paths;
+        try (BufferedReader reader = new BufferedReader(ExamplesUtil.indexReader(Index.SPEC_JSON))) {
+            paths = reader.lines()
+                    .filter(line -> line.startsWith("OK"))
+                    .map(line -> line.substring(2).trim())
+                    .filter(path -> path.startsWith("json/spec/observation-example"))
+                    .collect(Collectors.toList());
+        }
+        for (String path : paths) {
+            try (Reader reader = ExamplesUtil.resourceReader(path)) {
+                Resource resource = FHIRParser.parser(Format.JSON).parse(reader);
+                StringWriter writer = new StringWriter();
+                FHIRGenerator.generator(Format.JSON, false).generate(resource, writer);
+                observations.add(writer.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        assertTrue(observations.size() > 20);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<PayloadCodec> codecs = Arrays.asList(new GzipPayloadCodec(), new LZ4PayloadCodec(), new ZstdPayloadCodec());
+        byte[] json = observations.get(0);
+        for (PayloadCodec codec : codecs) {
+            byte[] data = encode(codec, json);
+            for (PayloadCodec other : codecs) {
+                assertEquals(other.isEncoded(data), other == codec, codec.getName() + " payload checked by " + other.getName());
+            }
+            assertEquals(decode(codec.decode(data)), json, codec.getName());
+            assertEquals(decode(PayloadCodecs.create(GzipPayloadCodec.NAME, null).decode(data)), json, codec.getName());
+        }
+    }
+
+    @Test
+    public void testConfiguredCodec() throws Exception {
+        byte[] json = observations.get(1);
+        byte[] gzipData = encode(new GzipPayloadCodec(), json);
+        PayloadCodecs payloadCodecs = PayloadCodecs.create(LZ4PayloadCodec.NAME, null);
+        assertEquals(payloadCodecs.getCodec().getName(), LZ4PayloadCodec.NAME);
+        byte[] lz4Data = encode(payloadCodecs.getCodec(), json);
+        assertTrue(new LZ4PayloadCodec().isEncoded(lz4Data));
+
+        // payloads written by the previous codec can still be read
+        assertEquals(decode(payloadCodecs.decode(lz4Data)), json);
+        assertEquals(decode(payloadCodecs.decode(gzipData)), json);
+    }
+
+    @Test
+    public void testTenantCodecs() throws Exception {
+        FHIRConfiguration.setConfigHome("../fhir-persistence/target/test-classes");
+        PayloadCodecs.reset();
+        try {
+            FHIRRequestContext.get().setTenantId("payloadcodec");
+            PayloadCodecs payloadCodecs = PayloadCodecs.getInstance();
+            assertEquals(payloadCodecs.getCodec().getName(), LZ4PayloadCodec.NAME);
+            // the codecs are only created the first time they are used
+            assertSame(PayloadCodecs.getInstance(), payloadCodecs);
+
+            // each tenant has its own codecs
+            FHIRRequestContext.get().setTenantId("default");
+            assertEquals(PayloadCodecs.getInstance().getCodec().getName(), GzipPayloadCodec.NAME);
+        } finally {
+            FHIRRequestContext.get().setTenantId("default");
+            PayloadCodecs.reset();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnsupportedCodec() throws Exception {
+        PayloadCodecs.create("unknown", null);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testUnsupportedPayload() throws Exception {
+        PayloadCodecs.create(GzipPayloadCodec.NAME, null).decode("{\"resourceType\":\"Basic\"}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testZstdDictionary() throws Exception {
+        // train on every other example and compress one of the others
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < observations.size(); i += 2) {
+            samples.add(observations.get(i));
+        }
+        byte[] dictionary = ZstdPayloadCodec.trainDictionary(samples, 16 * 1024);
+        byte[] json = observations.get(3);
+
+        ZstdPayloadCodec plainCodec = new ZstdPayloadCodec();
+        ZstdPayloadCodec dictionaryCodec = new ZstdPayloadCodec(Collections.singletonMap(OBSERVATION, dictionary), ZstdPayloadCodec.DEFAULT_LEVEL);
+        byte[] plainData = encode(plainCodec, json);
+        byte[] dictionaryData = encode(dictionaryCodec, json);
+        assertTrue(dictionaryData.length < plainData.length, dictionaryData.length + " >= " + plainData.length);
+        assertEquals(decode(dictionaryCodec.decode(dictionaryData)), json);
+
+        // payloads without a dictionary can be read by a codec with dictionaries, but not the other way around
+        assertEquals(decode(dictionaryCodec.decode(plainData)), json);
+        try {
+            decode(plainCodec.decode(dictionaryData));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+
+        // resource types without a dictionary are compressed without one
+        assertEquals(encode(dictionaryCodec, json, "Patient"), plainData);
+    }
+
+    @Test
+    public void testZstdDictionaryDir() throws Exception {
+        Path dictionaryDir = Files.createTempDirectory("zstd");
+        Path dictionaryFile = dictionaryDir.resolve(OBSERVATION + ZstdPayloadCodec.DICTIONARY_FILE_EXTENSION);
+        try {
+            Files.write(dictionaryFile, ZstdPayloadCodec.trainDictionary(observations, 16 * 1024));
+            PayloadCodecs payloadCodecs = PayloadCodecs.create(ZstdPayloadCodec.NAME, dictionaryDir.toString());
+            byte[] json = observations.get(5);
+            byte[] data = encode(payloadCodecs.getCodec(), json);
+            assertFalse(new GzipPayloadCodec().isEncoded(data));
+            assertEquals(decode(payloadCodecs.decode(data)), json);
+        } finally {
+            Files.delete(dictionaryFile);
+            Files.delete(dictionaryDir);
+        }
+    }
+
+    private byte[] encode(PayloadCodec codec, byte[] json) throws IOException {
+        return encode(codec, json, OBSERVATION);
+    }
+
+    private byte[] encode(PayloadCodec codec, byte[] json, String resourceType) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (OutputStream out = codec.encode(stream, resourceType)) {
+            out.write(json);
+        }
+        return stream.toByteArray();
+    }
+
+    private byte[] decode(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.jdbc.postgresql.PostgreSqlCopyBuffer;
+
+/**
+ * Tests the encoding of rows in the PostgreSQL COPY text format
+ */
+public class PostgreSqlCopyBufferTest {
+
+    @Test
+    public void testCopySql() {
+        PostgreSqlCopyBuffer buffer = new PostgreSqlCopyBuffer("Patient_str_values", "parameter_name_id, str_value");
+        assertEquals(buffer.getCopySql(), "COPY Patient_str_values (parameter_name_id, str_value) FROM STDIN");
+    }
+
+    @Test
+    public void testRows() {
+        PostgreSqlCopyBuffer buffer = new PostgreSqlCopyBuffer("Patient_number_values", "parameter_name_id, number_value, number_value_low, logical_resource_id");
+        buffer.addInt(1).addBigDecimal(new BigDecimal("1.50")).addBigDecimal(null).addLong(12345678901L).endRow();
+        buffer.addInt(2).addBigDecimal(new BigDecimal("1E+3")).addBigDecimal(BigDecimal.ZERO).addLong(2).endRow();
+        assertEquals(buffer.getRowCount(), 2);
+        assertEquals(buffer.getData(), "1\t1.50\t\\N\t12345678901\n2\t1000\t0\t2\n");
+    }
+
+    @Test
+    public void testStringEscapes() {
+        PostgreSqlCopyBuffer buffer = new PostgreSqlCopyBuffer("Patient_str_values", "str_value");
+        buffer.addString("a\tb\nc\rd\\e 'f' \"g\" h,i").endRow();
+        buffer.addString(null).endRow();
+        buffer.addString("").endRow();
+        buffer.addString("\\N").endRow();
+        assertEquals(buffer.getData(), "a\\tb\\nc\\rd\\\\e 'f' \"g\" h,i\n\\N\n\n\\\\N\n");
+    }
+
+    @Test
+    public void testTimestamps() {
+        PostgreSqlCopyBuffer buffer = new PostgreSqlCopyBuffer("Patient_date_values", "date_start, date_end");
+        Timestamp start = Timestamp.from(Instant.parse("2019-12-31T23:59:59.999999Z"));
+        Timestamp end = Timestamp.from(Instant.parse("0001-01-01T00:00:00Z"));
+        buffer.addTimestamp(start).addTimestamp(end).endRow();
+        buffer.addTimestamp(null).addTimestamp(null).endRow();
+        assertEquals(buffer.getData(), "2019-12-31 23:59:59.999999\t0001-01-01 00:00:00.000000\n\\N\t\\N\n");
+    }
+}
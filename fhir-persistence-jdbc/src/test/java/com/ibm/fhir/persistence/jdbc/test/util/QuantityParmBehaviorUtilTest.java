@@ -243,6 +243,11 @@ public class QuantityParmBehaviorUtilTest {
                 // do nothing
             }
 
+            @Override
+            public void clearCacheCandidates() {
+                // do nothing
+            }
+
             @Override
             public FHIRDbFlavor getFlavor() {
                 // do nothing
@@ -0,0 +1,185 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.model.DbType;
+import com.ibm.fhir.persistence.jdbc.connection.FHIRDbFlavorImpl;
+import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
+import com.ibm.fhir.persistence.jdbc.dao.impl.ParameterVisitorBatchDAO;
+import com.ibm.fhir.persistence.jdbc.dao.impl.ResourceDAOImpl;
+import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
+import com.ibm.fhir.persistence.jdbc.dto.Resource;
+import com.ibm.fhir.persistence.jdbc.dto.StringParmVal;
+
+/**
+ * Tests the order in which ResourceDAOImpl.insertAll calls the add_any_resource procedure and writes the
+ * batched parameter rows, using a connection which records the statements instead of a database.
+ * The Derby DAO overrides insertAll, so this isn't covered by the Derby tests.
+ */
+public class ResourceDAOInsertAllTest {
+
+    @Test
+    public void testFlushBeforeRepeatedResource() throws Exception {
+        List<String> events = new ArrayList<>();
+        List<Resource> resources = Arrays.asList(
+            resource("Patient", "a", 1), resource("Observation", "x", 1), resource("Patient", "b", 1), resource("Patient", "a", 2));
+        List<List<ExtractedParameterValue>> parameters = Arrays.asList(
+            parameters("a1"), parameters("x1"), parameters("b1"), parameters("a2"));
+
+        newResourceDAO(events, false).insertAll(resources, parameters, null);
+
+        // Each resource gets the id of its position in the list. Version 2 of Patient/a replaces the
+        // parameters of version 1, so all the batches must be written before the procedure is called for it
+        assertEquals(events.subList(0, 6), Arrays.asList(
+            "call Patient/a", "add Patient_str_values 1",
+            "call Observation/x", "add Observation_str_values 2",
+            "call Patient/b", "add Patient_str_values 3"));
+        assertEquals(new HashSet<>(events.subList(6, 8)),
+            new HashSet<>(Arrays.asList("execute Patient_str_values", "execute Observation_str_values")));
+        assertEquals(events.subList(8, events.size()), Arrays.asList(
+            "call Patient/a", "add Patient_str_values 4",
+            "execute Patient_str_values"));
+        assertEquals(resources.get(3).getId(), 4L);
+    }
+
+    @Test
+    public void testUnchangedParameters() throws Exception {
+        List<String> events = new ArrayList<>();
+        List<Resource> resources = Arrays.asList(resource("Patient", "a", 2), resource("Patient", "b", 2));
+        List<List<ExtractedParameterValue>> parameters = Arrays.asList(parameters("a"), parameters("b"));
+
+        newResourceDAO(events, true).insertAll(resources, parameters, null);
+
+        // the procedure returns the hash of the parameters being inserted, so they're kept
+        assertEquals(events, Arrays.asList("call Patient/a", "call Patient/b"));
+        assertEquals(resources.get(0).getId(), 1L);
+        assertEquals(resources.get(1).getId(), 2L);
+    }
+
+    private static Resource resource(String resourceType, String logicalId, int versionId) {
+        Resource resource = new Resource();
+        resource.setResourceType(resourceType);
+        resource.setLogicalId(logicalId);
+        resource.setVersionId(versionId);
+        resource.setLastUpdated(new Timestamp(System.currentTimeMillis()));
+        resource.setData(new byte[0]);
+        return resource;
+    }
+
+    private static List<ExtractedParameterValue> parameters(String value) {
+        StringParmVal p = new StringParmVal();
+        p.setName("name");
+        p.setValueString(value);
+        return Collections.singletonList(p);
+    }
+
+    /**
+     * @param events
+     *     the list to record the procedure calls and the parameter batches in
+     * @param unchanged
+     *     whether the procedure reports that the parameters of each resource are unchanged
+     */
+    private static ResourceDAOImpl newResourceDAO(List<String> events, boolean unchanged) {
+        return new ResourceDAOImpl(recordingConnection(events, unchanged), "FHIRDATA", new FHIRDbFlavorImpl(DbType.DB2, true)) {
+            @Override
+            public Integer readResourceTypeId(String resourceType) {
+                return 1;
+            }
+
+            @Override
+            protected ParameterVisitorBatchDAO createParameterVisitor(Connection connection, String resourceType, long logicalResourceId,
+                    ParameterDAO parameterDao) throws SQLException {
+                return new ParameterVisitorBatchDAO(connection, "FHIR_ADMIN", resourceType, true, logicalResourceId, 100,
+                        parameterName -> 1, codeSystem -> 1, (refResourceType, refLogicalId) -> 1L);
+            }
+        };
+    }
+
+    private static Connection recordingConnection(List<String> events, boolean unchanged) {
+        return (Connection) Proxy.newProxyInstance(ResourceDAOInsertAllTest.class.getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "prepareCall":
+                    return procedureCall(events, unchanged);
+                case "prepareStatement":
+                    return parameterInsert(events, ((String) args[0]).split(" ")[2]);
+                default:
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * A call of the add_any_resource procedure which returns the number of calls so far as the logical resource id
+     */
+    private static CallableStatement procedureCall(List<String> events, boolean unchanged) {
+        String[] bound = new String[3];
+        long[] calls = new long[1];
+        return (CallableStatement) Proxy.newProxyInstance(ResourceDAOInsertAllTest.class.getClassLoader(), new Class<?>[] { CallableStatement.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "setString":
+                    int index = (Integer) args[0];
+                    if (index == 1 || index == 2) {
+                        bound[index - 1] = (String) args[1];
+                    } else if (index == 8) {
+                        bound[2] = (String) args[1];
+                    }
+                    return null;
+                case "execute":
+                    events.add("call " + bound[0] + "/" + bound[1]);
+                    calls[0]++;
+                    return false;
+                case "getLong":
+                    return calls[0];
+                case "getString":
+                    return unchanged ? bound[2] : null;
+                default:
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * An insert into one of the parameter tables which records the logical resource id of each row added to the batch
+     */
+    private static PreparedStatement parameterInsert(List<String> events, String table) {
+        long[] logicalResourceId = new long[1];
+        return (PreparedStatement) Proxy.newProxyInstance(ResourceDAOInsertAllTest.class.getClassLoader(), new Class<?>[] { PreparedStatement.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "setLong":
+                    logicalResourceId[0] = (Long) args[1];
+                    return null;
+                case "addBatch":
+                    events.add("add " + table + " " + logicalResourceId[0]);
+                    return null;
+                case "executeBatch":
+                    events.add("execute " + table);
+                    return new int[0];
+                default:
+                    return null;
+                }
+            });
+    }
+}
@@ -36,6 +36,8 @@ import static com.ibm.fhir.schema.control.FhirSchemaConstants.MT_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.NUMBER_VALUE;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.NUMBER_VALUE_HIGH;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.NUMBER_VALUE_LOW;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.PARAMETER_HASH;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.PARAMETER_HASH_BYTES;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.PARAMETER_NAMES;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.PARAMETER_NAME_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.PATIENT_CURRENT_REFS;
@@ -44,6 +46,10 @@ import static com.ibm.fhir.schema.control.FhirSchemaConstants.PK;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.QUANTITY_VALUE;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.QUANTITY_VALUE_HIGH;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.QUANTITY_VALUE_LOW;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.REF_LOGICAL_RESOURCE_ID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.REF_RESOURCE_TYPE_ID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_FINGERPRINT;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_FINGERPRINT_BYTES;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_TYPES;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_TYPE_ID;
@@ -76,6 +82,7 @@ import com.ibm.fhir.database.utils.model.ObjectGroup;
 import com.ibm.fhir.database.utils.model.PhysicalDataModel;
 import com.ibm.fhir.database.utils.model.SessionVariableDef;
 import com.ibm.fhir.database.utils.model.Table;
+import com.ibm.fhir.database.utils.model.VarcharColumn;
 import com.ibm.fhir.database.utils.model.Tablespace;
 
 /**
@@ -144,6 +151,7 @@ public class FhirResourceTableGroup {
      * <li>patient_number_values
      * <li>patient_latlng_values
      * <li>patient_quantity_values
+     * <li>patient_ref_values
      * </ul>
      * @param resourceTypeName
      */
@@ -163,6 +171,7 @@ public class FhirResourceTableGroup {
         addLatLngValues(group, tablePrefix);
         addQuantityValues(group, tablePrefix);
         addComposites(group, tablePrefix);
+        addRefValues(group, tablePrefix);
 
         // group all the tables under one object so that we can perform everything within one
         // transaction. This helps to eliminate deadlocks when adding the FK constraints due to
@@ -183,11 +192,14 @@ public class FhirResourceTableGroup {
         // We also have a FK constraint pointing back to that table to try and keep
         // things sensible.
         Table tbl = Table.builder(schemaName, tableName)
+                .setVersion(FhirSchemaVersion.V0007.vid())
                 .setTenantColumnName(MT_ID)
                 .addTag(FhirSchemaTags.RESOURCE_TYPE, prefix)
                 .addBigIntColumn(LOGICAL_RESOURCE_ID, false)
                 .addVarcharColumn(LOGICAL_ID, LOGICAL_ID_BYTES, false)
                 .addBigIntColumn(CURRENT_RESOURCE_ID, true)
+                .addVarcharColumn(PARAMETER_HASH, PARAMETER_HASH_BYTES, true)
+                .addVarcharColumn(RESOURCE_FINGERPRINT, RESOURCE_FINGERPRINT_BYTES, true)
                 .addPrimaryKey(tableName + "_PK", LOGICAL_RESOURCE_ID)
                 .addForeignKeyConstraint("FK_" + tableName + "_LRID", schemaName, LOGICAL_RESOURCES, LOGICAL_RESOURCE_ID)
                 .setTablespace(fhirTablespace)
@@ -198,6 +210,18 @@ public class FhirResourceTableGroup {
                 // used instead of row lock, which can cause dead lock issue frequently during concurrent accesses.
                 .addIndex(IDX + tableName + CURRENT_RESOURCE_ID, CURRENT_RESOURCE_ID)
                 .addIndex(IDX + tableName + LOGICAL_ID, LOGICAL_ID)
+                .addMigration(priorVersion -> {
+                    List<IDatabaseStatement> statements = new ArrayList<>();
+                    if (priorVersion < FhirSchemaVersion.V0006.vid()) {
+                        // hash of the current search parameters, so that updates can skip unchanged parameters
+                        statements.add(new AddColumn(schemaName, tableName, new VarcharColumn(PARAMETER_HASH, PARAMETER_HASH_BYTES, true)));
+                    }
+                    if (priorVersion < FhirSchemaVersion.V0007.vid()) {
+                        // fingerprint of the current version, so that updates which don't change the resource can be skipped
+                        statements.add(new AddColumn(schemaName, tableName, new VarcharColumn(RESOURCE_FINGERPRINT, RESOURCE_FINGERPRINT_BYTES, true)));
+                    }
+                    return statements;
+                })
                 .build(model);
 
         group.add(tbl);
@@ -572,6 +596,61 @@ ALTER TABLE device_latlng_values ADD CONSTRAINT fk_device_latlng_values_r  FOREI
         group.add(alterTable);
     }
 
+    /**
+     * Add the REF_VALUES table, which holds the resource type and logical_resource_id of the target of each
+     * local (type/id) reference so that chained searches, _include, _revinclude and compartment membership
+     * can resolve references with integer joins instead of string matching. A reference to a resource which
+     * has not been stored yet reserves the logical_resource_id of its target in LOGICAL_RESOURCES, which the
+     * target takes over when it is created
+     * <pre>
+CREATE TABLE device_ref_values  (
+  row_id                   BIGINT NOT NULL,
+  parameter_name_id           INT NOT NULL,
+  ref_resource_type_id        INT NOT NULL,
+  ref_logical_resource_id  BIGINT NOT NULL,
+  logical_resource_id      BIGINT NOT NULL
+)
+CREATE INDEX idx_device_ref_values_prl ON device_ref_values(parameter_name_id, ref_logical_resource_id, logical_resource_id);
+CREATE INDEX idx_device_ref_values_lpr ON device_ref_values(logical_resource_id, parameter_name_id, ref_logical_resource_id);
+     * </pre>
+     * @param group
+     * @param prefix
+     */
+    public void addRefValues(List<IDatabaseObject> group, String prefix) {
+        final String tableName = prefix + "_REF_VALUES";
+        final String logicalResourcesTable = prefix + _LOGICAL_RESOURCES;
+
+        Table tbl = Table.builder(schemaName, tableName)
+                .setVersion(FhirSchemaVersion.V0008.vid())
+                .addTag(FhirSchemaTags.RESOURCE_TYPE, prefix)
+                .setTenantColumnName(MT_ID)
+                .addBigIntColumn(              ROW_ID,                  false)
+                .addIntColumn(      PARAMETER_NAME_ID,                  false)
+                .addIntColumn(   REF_RESOURCE_TYPE_ID,                  false)
+                .addBigIntColumn(REF_LOGICAL_RESOURCE_ID,               false)
+                .addBigIntColumn( LOGICAL_RESOURCE_ID,                  false)
+                .addIndex(IDX + tableName + "_PRL", PARAMETER_NAME_ID, REF_LOGICAL_RESOURCE_ID, LOGICAL_RESOURCE_ID)
+                .addIndex(IDX + tableName + "_LPR", LOGICAL_RESOURCE_ID, PARAMETER_NAME_ID, REF_LOGICAL_RESOURCE_ID)
+                .addPrimaryKey(PK + tableName, ROW_ID)
+                .setIdentityColumn(ROW_ID, Generated.BY_DEFAULT)
+                .addForeignKeyConstraint(FK + tableName + "_PN", schemaName, PARAMETER_NAMES, PARAMETER_NAME_ID)
+                .addForeignKeyConstraint(FK + tableName + "_RT", schemaName, RESOURCE_TYPES, REF_RESOURCE_TYPE_ID)
+                .addForeignKeyConstraint(FK + tableName + "_RLR", schemaName, LOGICAL_RESOURCES, REF_LOGICAL_RESOURCE_ID)
+                .addForeignKeyConstraint(FK + tableName + "_RID", schemaName, logicalResourcesTable, LOGICAL_RESOURCE_ID)
+                .setTablespace(fhirTablespace)
+                .addPrivileges(resourceTablePrivileges)
+                .enableAccessControl(this.sessionVariable)
+                .build(model)
+                ;
+
+        group.add(tbl);
+        model.addTable(tbl);
+
+        AlterTableIdentityCache alterTable = new AlterTableIdentityCache(schemaName, tableName, ROW_ID, FhirSchemaConstants.FHIR_IDENTITY_SEQUENCE_CACHE, FhirSchemaVersion.V0008.vid());
+        alterTable.addDependency(tbl); // Depends on the CREATE TABLE, which obviously must be executed first
+        group.add(alterTable);
+    }
+
     /**
      * <pre>
 CREATE TABLE device_quantity_values  (
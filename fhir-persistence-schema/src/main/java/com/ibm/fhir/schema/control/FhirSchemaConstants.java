@@ -71,6 +71,14 @@ public class FhirSchemaConstants {
     public static final String DATA = "DATA";
     public static final String RESOURCE_ID = "RESOURCE_ID";
     public static final String CURRENT_RESOURCE_ID = "CURRENT_RESOURCE_ID";
+
+    // Hash of the values of each search parameter extracted from the current resource version (see ParameterHashes)
+    public static final String PARAMETER_HASH = "PARAMETER_HASH";
+    public static final int PARAMETER_HASH_BYTES = 2048;
+
+    // Salted fingerprint (Base64 salt:hash) of the current resource version
+    public static final String RESOURCE_FINGERPRINT = "RESOURCE_FINGERPRINT";
+    public static final int RESOURCE_FINGERPRINT_BYTES = 89;
     public static final String VERSION_ID = "VERSION_ID";
     public static final String IS_DELETED = "IS_DELETED";
     public static final String LAST_UPDATED = "LAST_UPDATED";
@@ -85,6 +93,8 @@ public class FhirSchemaConstants {
     public static final String RESOURCE_TYPES = "RESOURCE_TYPES";
     public static final String RESOURCE_TYPE = "RESOURCE_TYPE";
     public static final String RESOURCE_TYPE_ID = "RESOURCE_TYPE_ID";
+    public static final String REF_RESOURCE_TYPE_ID = "REF_RESOURCE_TYPE_ID";
+    public static final String REF_LOGICAL_RESOURCE_ID = "REF_LOGICAL_RESOURCE_ID";
 
     public static final String DATE_VALUE_DROPPED_COLUMN = "DATE_VALUE";
     public static final String DATE_START = "DATE_START";
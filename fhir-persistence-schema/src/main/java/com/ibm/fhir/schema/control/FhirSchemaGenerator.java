@@ -383,11 +383,17 @@ public class FhirSchemaGenerator {
 
         pd = model.addProcedure(this.schemaName,
                 ADD_ANY_RESOURCE,
-                FhirSchemaVersion.V0001.vid(),
+                FhirSchemaVersion.V0008.vid(),
                 () -> SchemaGeneratorUtil.readTemplate(adminSchemaName, schemaName, ROOT_DIR + ADD_ANY_RESOURCE.toLowerCase() + ".sql", null),
                 Arrays.asList(fhirSequence, resourceTypesTable, allTablesComplete),
                 procedurePrivileges);
         pd.addTag(SCHEMA_GROUP_TAG, FHIRDATA_GROUP);
+        // Db2 identifies a procedure by the types of all its parameters
+        // V0001: without the parameter hash and the resource fingerprint
+        pd.addPreviousSignature("VARCHAR()", "VARCHAR()", "BLOB()", "TIMESTAMP()", "CHAR()", "VARCHAR()", "INT", "BIGINT");
+        // V0006: without the resource fingerprint
+        pd.addPreviousSignature("VARCHAR()", "VARCHAR()", "BLOB()", "TIMESTAMP()", "CHAR()", "VARCHAR()", "INT", "VARCHAR()",
+            "BIGINT", "VARCHAR()");
     }
 
     public void buildDatabaseSpecificArtifactsPostgres(PhysicalDataModel model) {
@@ -420,11 +426,16 @@ public class FhirSchemaGenerator {
 
         fd = model.addFunction(this.schemaName,
                 ADD_ANY_RESOURCE,
-                FhirSchemaVersion.V0001.vid(),
+                FhirSchemaVersion.V0008.vid(),
                 () -> SchemaGeneratorUtil.readTemplate(adminSchemaName, schemaName, ROOT_DIR + ADD_ANY_RESOURCE.toLowerCase()
                         + ".sql", null),
                 Arrays.asList(fhirSequence, resourceTypesTable, allTablesComplete), procedurePrivileges);
         fd.addTag(SCHEMA_GROUP_TAG, FHIRDATA_GROUP);
+        // PostgreSQL identifies a function by the types of its IN parameters
+        // V0001: without the parameter hash and the resource fingerprint
+        fd.addPreviousSignature("VARCHAR", "VARCHAR", "BYTEA", "TIMESTAMP", "CHAR", "VARCHAR", "INT");
+        // V0006: without the resource fingerprint
+        fd.addPreviousSignature("VARCHAR", "VARCHAR", "BYTEA", "TIMESTAMP", "CHAR", "VARCHAR", "INT", "VARCHAR");
     }
 
     /**
@@ -20,6 +20,9 @@ public enum FhirSchemaVersion {
     ,V0003(3, "issue-1263 fhir_ref_sequence start with 20000")
     ,V0004(4, "row_id sequence cache 20 to 1000")
     ,V0005(5, "issue-1331 add index for resource.last_updated")
+    ,V0006(6, "parameter_hash to skip unchanged search parameters on update")
+    ,V0007(7, "resource_fingerprint to detect updates which do not change the resource")
+    ,V0008(8, "ref_values tables to resolve references with joins instead of string matching")
     ;
     
     // The version number recorded in the VERSION_HISTORY
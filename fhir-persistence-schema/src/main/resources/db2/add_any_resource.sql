@@ -13,7 +13,15 @@
 -- p_last_updated the last_updated time given by the FHIR server
 -- p_is_deleted: the soft delete flag
 -- p_version_id: the version id if this is a replicated message
+-- p_parameter_hash_b64: the hash of each parameter of the new version (see ParameterHashes)
+-- p_resource_fingerprint: salted fingerprint of the new version, used to detect
+--                         updates which don't change the resource
 -- o_resource_id: output field returning the newly assigned resource_id value
+-- o_current_parameter_hash: output field returning the parameter hashes of the
+--                           replaced version when its parameters have been kept,
+--                           in which case the caller only replaces the rows of the
+--                           parameters which have changed. When NULL, the caller
+--                           inserts all the parameters of the new version
 -- ----------------------------------------------------------------------------
     ( IN p_resource_type                 VARCHAR( 36 OCTETS),
       IN p_logical_id                    VARCHAR(255 OCTETS), 
@@ -22,7 +30,10 @@
       IN p_is_deleted                       CHAR(  1),
       IN p_source_key                    VARCHAR( 64),
       IN p_version                           INT,
-      OUT o_logical_resource_id            BIGINT
+      IN p_parameter_hash_b64            VARCHAR(2048 OCTETS),
+      IN p_resource_fingerprint          VARCHAR( 89 OCTETS),
+      OUT o_logical_resource_id            BIGINT,
+      OUT o_current_parameter_hash       VARCHAR(2048 OCTETS)
     )
     LANGUAGE SQL
     MODIFIES SQL DATA
@@ -30,7 +41,9 @@ BEGIN
 
   DECLARE v_schema_name         VARCHAR(128 OCTETS);
   DECLARE v_logical_resource_id  BIGINT     DEFAULT NULL;
+  DECLARE v_type_logical_resource_id BIGINT DEFAULT NULL;
   DECLARE v_current_resource_id  BIGINT     DEFAULT NULL;
+  DECLARE v_current_parameter_hash VARCHAR(2048 OCTETS) DEFAULT NULL;
   DECLARE v_resource_id          BIGINT     DEFAULT NULL;
   DECLARE v_resource_type_id        INT     DEFAULT NULL;
   DECLARE v_new_resource            INT     DEFAULT 0;
@@ -99,11 +112,24 @@ BEGIN
     -- as this is an existing resource, we need to know the current resource id.
     -- This is only available at the resource-specific logical_resources level
     PREPARE stmt FROM
-         'SET (?) = ('
-      || 'SELECT current_resource_id FROM ' || v_schema_name || '.' || p_resource_type || '_logical_resources '
+         'SET (?, ?, ?) = ('
+      || 'SELECT logical_resource_id, current_resource_id, parameter_hash FROM ' || v_schema_name || '.' || p_resource_type || '_logical_resources '
       || ' WHERE logical_resource_id = ? )';
-    EXECUTE stmt INTO v_current_resource_id USING v_logical_resource_id;
-    
+    EXECUTE stmt INTO v_type_logical_resource_id, v_current_resource_id, v_current_parameter_hash USING v_logical_resource_id;
+
+    IF v_type_logical_resource_id IS NULL
+    THEN
+      -- the logical resource was reserved by a reference to it before the resource was created,
+      -- so this is the first version and we create the resource-type-specific record now
+      PREPARE stmt FROM
+         'INSERT INTO ' || v_schema_name || '.' || p_resource_type || '_logical_resources (mt_id, logical_resource_id, logical_id) '
+      || '     VALUES (?, ?, ?)';
+      EXECUTE stmt USING {{ADMIN_SCHEMA_NAME}}.sv_tenant_id, v_logical_resource_id, p_logical_id;
+      SET v_new_resource = 1;
+    END IF;
+  END IF;
+
+  IF v_new_resource = 0 THEN
     IF v_current_resource_id IS NULL
     THEN
         -- our concurrency protection means that this shouldn't happen
@@ -142,10 +168,15 @@ BEGIN
     -- resource, and so we only need to delete parameters if the given version is later 
     -- than the current version. This allows versions (from custom ops)
     -- to arrive out of order, and we're just filling in the gaps
-    IF p_version IS NULL OR p_version > v_version
+    IF (p_version IS NULL OR p_version > v_version) AND v_current_parameter_hash IS NOT NULL
+    THEN
+      -- keep the existing parameter rows and hand their hashes back to the caller,
+      -- which only replaces the rows of the parameters whose values have changed
+      SET o_current_parameter_hash = v_current_parameter_hash;
+    ELSEIF p_version IS NULL OR p_version > v_version
     THEN
-      -- existing resource, so need to delete all its parameters. 
-      -- TODO patch parameter sets instead of all delete/all insert.
+      -- existing resource without parameter hashes (stored before they were added, or
+      -- too long to store), so need to delete all its parameters
       PREPARE stmt FROM 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_composites      WHERE logical_resource_id = ?';
       EXECUTE stmt USING v_logical_resource_id;
       PREPARE stmt FROM 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_str_values      WHERE logical_resource_id = ?';
@@ -160,6 +191,14 @@ BEGIN
       EXECUTE stmt USING v_logical_resource_id;
       PREPARE stmt FROM 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_quantity_values WHERE logical_resource_id = ?';
       EXECUTE stmt USING v_logical_resource_id;
+      PREPARE stmt FROM 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_ref_values      WHERE logical_resource_id = ?';
+      EXECUTE stmt USING v_logical_resource_id;
+      PREPARE stmt FROM 'DELETE FROM ' || v_schema_name || '.resource_str_values   WHERE logical_resource_id = ?';
+      EXECUTE stmt USING v_logical_resource_id;
+      PREPARE stmt FROM 'DELETE FROM ' || v_schema_name || '.resource_date_values  WHERE logical_resource_id = ?';
+      EXECUTE stmt USING v_logical_resource_id;
+      PREPARE stmt FROM 'DELETE FROM ' || v_schema_name || '.resource_token_values WHERE logical_resource_id = ?';
+      EXECUTE stmt USING v_logical_resource_id;
     END IF;
 
   END IF;
@@ -185,8 +224,8 @@ BEGIN
   THEN
     -- only update the logical resource if the resource we are adding supercedes the
     -- the current resource. mt_id isn't needed here...implied via permission
-    PREPARE stmt FROM 'UPDATE ' || v_schema_name || '.' || p_resource_type || '_logical_resources SET current_resource_id = ? WHERE logical_resource_id = ?';
-    EXECUTE stmt USING v_resource_id, v_logical_resource_id;
+    PREPARE stmt FROM 'UPDATE ' || v_schema_name || '.' || p_resource_type || '_logical_resources SET current_resource_id = ?, parameter_hash = ?, resource_fingerprint = ? WHERE logical_resource_id = ?';
+    EXECUTE stmt USING v_resource_id, p_parameter_hash_b64, p_resource_fingerprint, v_logical_resource_id;
 
     -- DB2 doesn't support user defined array types in dynamic SQL UNNEST/CAST statements,
     -- so we can no longer insert the parameters here - instead we have to use individual
@@ -13,7 +13,15 @@
 -- p_last_updated the last_updated time given by the FHIR server
 -- p_is_deleted: the soft delete flag
 -- p_version_id: the version id if this is a replicated message
+-- p_parameter_hash_b64: the hash of each parameter of the new version (see ParameterHashes)
+-- p_resource_fingerprint: salted fingerprint of the new version, used to detect
+--                         updates which don't change the resource
 -- o_resource_id: output field returning the newly assigned resource_id value
+-- o_current_parameter_hash: output field returning the parameter hashes of the
+--                           replaced version when its parameters have been kept,
+--                           in which case the caller only replaces the rows of the
+--                           parameters which have changed. When NULL, the caller
+--                           inserts all the parameters of the new version
 -- ----------------------------------------------------------------------------
     ( IN p_resource_type                 VARCHAR( 36),
       IN p_logical_id                    VARCHAR(255), 
@@ -22,7 +30,10 @@
       IN p_is_deleted                       CHAR(  1),
       IN p_source_key                    VARCHAR( 64),
       IN p_version                           INT,
-      OUT o_logical_resource_id            BIGINT)
+      IN p_parameter_hash_b64            VARCHAR(2048),
+      IN p_resource_fingerprint          VARCHAR( 89),
+      OUT o_logical_resource_id            BIGINT,
+      OUT o_current_parameter_hash       VARCHAR(2048))
     LANGUAGE plpgsql
      AS $$
 
@@ -31,6 +42,7 @@
   v_logical_resource_id  BIGINT := NULL;
   t_logical_resource_id  BIGINT := NULL;
   v_current_resource_id  BIGINT := NULL;
+  v_current_parameter_hash VARCHAR(2048) := NULL;
   v_resource_id          BIGINT := NULL;
   v_resource_type_id        INT := NULL;
   v_new_resource            INT := 0;
@@ -83,10 +95,21 @@ BEGIN
     -- as this is an existing resource, we need to know the current resource id.
     -- This is only available at the resource-specific logical_resources level
     EXECUTE
-         'SELECT current_resource_id FROM ' || v_schema_name || '.' || p_resource_type || '_logical_resources '
+         'SELECT logical_resource_id, current_resource_id, parameter_hash FROM ' || v_schema_name || '.' || p_resource_type || '_logical_resources '
       || ' WHERE logical_resource_id = $1 '
-    INTO v_current_resource_id USING v_logical_resource_id;
-    
+    INTO t_logical_resource_id, v_current_resource_id, v_current_parameter_hash USING v_logical_resource_id;
+
+    IF t_logical_resource_id IS NULL
+    THEN
+      -- the logical resource was reserved by a reference to it before the resource was created,
+      -- so this is the first version and we create the resource-type-specific record now
+      EXECUTE 'INSERT INTO ' || v_schema_name || '.' || p_resource_type || '_logical_resources (logical_resource_id, logical_id) '
+      || '     VALUES ($1, $2)' USING v_logical_resource_id, p_logical_id;
+      v_new_resource := 1;
+    END IF;
+  END IF;
+
+  IF v_new_resource = 0 THEN
     IF v_current_resource_id IS NULL
     THEN
         -- our concurrency protection means that this shouldn't happen
@@ -123,10 +146,15 @@ BEGIN
     -- resource, and so we only need to delete parameters if the given version is later 
     -- than the current version. This allows versions (from custom ops)
     -- to arrive out of order, and we're just filling in the gaps
-    IF p_version IS NULL OR p_version > v_version
+    IF (p_version IS NULL OR p_version > v_version) AND v_current_parameter_hash IS NOT NULL
     THEN
-      -- existing resource, so need to delete all its parameters. 
-      -- TODO patch parameter sets instead of all delete/all insert.
+      -- keep the existing parameter rows and hand their hashes back to the caller,
+      -- which only replaces the rows of the parameters whose values have changed
+      o_current_parameter_hash := v_current_parameter_hash;
+    ELSIF p_version IS NULL OR p_version > v_version
+    THEN
+      -- existing resource without parameter hashes (stored before they were added, or
+      -- too long to store), so need to delete all its parameters
       EXECUTE 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_composites      WHERE logical_resource_id = $1'
         USING v_logical_resource_id;
       EXECUTE 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_str_values      WHERE logical_resource_id = $1'
@@ -141,6 +169,14 @@ BEGIN
         USING v_logical_resource_id;
       EXECUTE 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_quantity_values WHERE logical_resource_id = $1'
         USING v_logical_resource_id;
+      EXECUTE 'DELETE FROM ' || v_schema_name || '.' || p_resource_type || '_ref_values      WHERE logical_resource_id = $1'
+        USING v_logical_resource_id;
+      EXECUTE 'DELETE FROM ' || v_schema_name || '.resource_str_values   WHERE logical_resource_id = $1'
+        USING v_logical_resource_id;
+      EXECUTE 'DELETE FROM ' || v_schema_name || '.resource_date_values  WHERE logical_resource_id = $1'
+        USING v_logical_resource_id;
+      EXECUTE 'DELETE FROM ' || v_schema_name || '.resource_token_values WHERE logical_resource_id = $1'
+        USING v_logical_resource_id;
     END IF;
 
   END IF;
@@ -166,8 +202,8 @@ BEGIN
   THEN
     -- only update the logical resource if the resource we are adding supercedes the
     -- the current resource. mt_id isn't needed here...implied via permission
-    EXECUTE 'UPDATE ' || v_schema_name || '.' || p_resource_type || '_logical_resources SET current_resource_id = $1 WHERE logical_resource_id = $2'
-      USING v_resource_id, v_logical_resource_id;
+    EXECUTE 'UPDATE ' || v_schema_name || '.' || p_resource_type || '_logical_resources SET current_resource_id = $1, parameter_hash = $2, resource_fingerprint = $3 WHERE logical_resource_id = $4'
+      USING v_resource_id, p_parameter_hash_b64, p_resource_fingerprint, v_logical_resource_id;
   END IF;
 
   -- Hand back the id of the logical resource we created earlier. In the new R4 schema
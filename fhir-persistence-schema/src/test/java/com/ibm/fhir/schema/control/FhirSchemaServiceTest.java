@@ -6,6 +6,9 @@
 
 package com.ibm.fhir.schema.control;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -15,12 +18,17 @@ import java.util.logging.Logger;
 
 import org.testng.annotations.Test;
 
+import com.ibm.fhir.database.utils.api.IDatabaseStatement;
+import com.ibm.fhir.database.utils.api.IDatabaseSupplier;
+import com.ibm.fhir.database.utils.api.IDatabaseTarget;
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
 import com.ibm.fhir.database.utils.common.PrintTarget;
 import com.ibm.fhir.database.utils.db2.Db2Adapter;
 import com.ibm.fhir.database.utils.db2.Db2Translator;
 import com.ibm.fhir.database.utils.derby.DerbyAdapter;
 import com.ibm.fhir.database.utils.model.PhysicalDataModel;
 import com.ibm.fhir.database.utils.model.Table;
+import com.ibm.fhir.database.utils.postgresql.PostgreSqlAdapter;
 import com.ibm.fhir.database.utils.version.CreateVersionHistory;
 import com.ibm.fhir.schema.control.FhirSchemaConstants;
 import com.ibm.fhir.schema.control.FhirSchemaGenerator;
@@ -147,4 +155,82 @@ public class FhirSchemaServiceTest {
         CreateVersionHistory.createTableIfNeeded(ADMIN_SCHEMA_NAME, adapter);
 
     }
+
+    @Test
+    public void testDb2PreviousProcedureSignatures() {
+        FhirSchemaGenerator gen = new FhirSchemaGenerator(ADMIN_SCHEMA_NAME, SCHEMA_NAME);
+        PhysicalDataModel model = new PhysicalDataModel();
+        gen.buildDatabaseSpecificArtifactsDb2(model);
+
+        List<String> ddl = new ArrayList<>();
+        model.applyProcedures(new Db2Adapter(new PrintTarget(new CollectingTarget(ddl), logger.isLoggable(Level.FINE))));
+
+        // the overloads left by previous versions are dropped before add_any_resource is replaced
+        List<String> addAnyResource = statementsFor(ddl, "PTNG.ADD_ANY_RESOURCE");
+        assertEquals(addAnyResource.size(), 3);
+        assertEquals(addAnyResource.get(0), "DROP PROCEDURE PTNG.ADD_ANY_RESOURCE("
+                + "VARCHAR(), VARCHAR(), BLOB(), TIMESTAMP(), CHAR(), VARCHAR(), INT, BIGINT)");
+        assertEquals(addAnyResource.get(1), "DROP PROCEDURE PTNG.ADD_ANY_RESOURCE("
+                + "VARCHAR(), VARCHAR(), BLOB(), TIMESTAMP(), CHAR(), VARCHAR(), INT, VARCHAR(), BIGINT, VARCHAR())");
+        assertTrue(addAnyResource.get(2).startsWith("CREATE OR REPLACE PROCEDURE PTNG.ADD_ANY_RESOURCE"));
+    }
+
+    @Test
+    public void testPostgresPreviousFunctionSignatures() {
+        FhirSchemaGenerator gen = new FhirSchemaGenerator(ADMIN_SCHEMA_NAME, SCHEMA_NAME);
+        PhysicalDataModel model = new PhysicalDataModel();
+        gen.buildDatabaseSpecificArtifactsPostgres(model);
+
+        List<String> ddl = new ArrayList<>();
+        model.applyFunctions(new PostgreSqlAdapter(new PrintTarget(new CollectingTarget(ddl), logger.isLoggable(Level.FINE))));
+
+        List<String> addAnyResource = statementsFor(ddl, "PTNG.ADD_ANY_RESOURCE");
+        assertEquals(addAnyResource.size(), 3);
+        assertEquals(addAnyResource.get(0), "DROP FUNCTION IF EXISTS PTNG.ADD_ANY_RESOURCE("
+                + "VARCHAR, VARCHAR, BYTEA, TIMESTAMP, CHAR, VARCHAR, INT)");
+        assertEquals(addAnyResource.get(1), "DROP FUNCTION IF EXISTS PTNG.ADD_ANY_RESOURCE("
+                + "VARCHAR, VARCHAR, BYTEA, TIMESTAMP, CHAR, VARCHAR, INT, VARCHAR)");
+        assertTrue(addAnyResource.get(2).startsWith("CREATE OR REPLACE FUNCTION PTNG.ADD_ANY_RESOURCE"));
+    }
+
+    private static List<String> statementsFor(List<String> ddl, String objectName) {
+        List<String> result = new ArrayList<>();
+        for (String statement : ddl) {
+            if (statement.contains(objectName)) {
+                result.add(statement);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Collects the DDL statements instead of running them
+     */
+    private static class CollectingTarget implements IDatabaseTarget {
+        private final List<String> ddl;
+
+        CollectingTarget(List<String> ddl) {
+            this.ddl = ddl;
+        }
+
+        @Override
+        public void runStatement(IDatabaseTranslator translator, String ddl) {
+            this.ddl.add(ddl);
+        }
+
+        @Override
+        public void runStatementWithInt(IDatabaseTranslator translator, String sql, int value) {
+            this.ddl.add(sql);
+        }
+
+        @Override
+        public void runStatement(IDatabaseTranslator translator, IDatabaseStatement statement) {
+            // not DDL text
+        }
+
+        @Override
+        public <T> T runStatement(IDatabaseTranslator translator, IDatabaseSupplier<T> supplier) {
+            return null;
+        }
+    }
 }
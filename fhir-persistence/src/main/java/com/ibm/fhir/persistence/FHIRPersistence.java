@@ -6,11 +6,17 @@
 
 package com.ibm.fhir.persistence;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.util.FHIRUtil;
+import com.ibm.fhir.model.util.RawResource;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceNotSupportedException;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceNotFoundException;
 
 /**
  * This interface defines the contract between the FHIR Server's REST API layer and the underlying
@@ -57,6 +63,45 @@ public interface FHIRPersistence {
     <T extends Resource> SingleResourceResult<T> vread(FHIRPersistenceContext context, Class<T> resourceType, String logicalId, String versionId)
             throws FHIRPersistenceException;
 
+    /**
+     * Retrieves the most recent version of a FHIR Resource from the datastore in the form in which it was stored,
+     * without parsing it.
+     *
+     * <p>This default implementation returns null, which indicates that the caller must use
+     * {@link #read(FHIRPersistenceContext, Class, String)} instead.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resourceType the resource type of the Resource instance to be retrieved
+     * @param logicalId the logical id of the Resource instance to be retrieved
+     * @return the stored FHIR Resource, or null if it must be retrieved with {@link #read(FHIRPersistenceContext, Class, String)}
+     * @throws FHIRPersistenceResourceNotFoundException if the resource does not exist
+     * @throws FHIRPersistenceException
+     */
+    default RawResource readRaw(FHIRPersistenceContext context, Class<? extends Resource> resourceType, String logicalId)
+            throws FHIRPersistenceException {
+        return null;
+    }
+
+    /**
+     * Retrieves a specific version of a FHIR Resource from the datastore in the form in which it was stored,
+     * without parsing it.
+     *
+     * <p>This default implementation returns null, which indicates that the caller must use
+     * {@link #vread(FHIRPersistenceContext, Class, String, String)} instead.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resourceType the resource type of the Resource instance to be retrieved
+     * @param logicalId the logical id of the Resource instance to be retrieved
+     * @param versionId the version of the Resource instance to be retrieved
+     * @return the stored FHIR Resource, or null if it must be retrieved with {@link #vread(FHIRPersistenceContext, Class, String, String)}
+     * @throws FHIRPersistenceResourceNotFoundException if the resource version does not exist
+     * @throws FHIRPersistenceException
+     */
+    default RawResource vreadRaw(FHIRPersistenceContext context, Class<? extends Resource> resourceType, String logicalId, String versionId)
+            throws FHIRPersistenceException {
+        return null;
+    }
+
     /**
      * Updates an existing FHIR Resource by storing a new version in the datastore.
      *
@@ -69,6 +114,44 @@ public interface FHIRPersistence {
      */
     <T extends Resource> SingleResourceResult<T> update(FHIRPersistenceContext context, String logicalId, T resource) throws FHIRPersistenceException;
 
+    /**
+     * Stores a list of FHIR Resources in the datastore as a single unit of work.
+     * Resources without an id are created with a system-generated id; resources with an id
+     * are updated (or created with that id when update-create is enabled).
+     *
+     * <p>This default implementation simply calls {@link #create(FHIRPersistenceContext, Resource)} or
+     * {@link #update(FHIRPersistenceContext, String, Resource)} for each resource. Persistence layers
+     * which can amortize the cost of the writes over the whole list (e.g. by batching statements) should
+     * override it.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resources the FHIR Resource instances to be stored in the datastore
+     * @return a list of SingleResourceResult in the same order as resources; a resource which could not be
+     *         updated because it doesn't exist is reported as an unsuccessful result rather than an exception, and
+     *         implementations which can undo the writes of a single resource report its other failures the same way
+     * @throws FHIRPersistenceException if the list could not be stored; the caller should roll back the
+     *         current transaction because some of the resources may already have been written
+     */
+    default <T extends Resource> List<SingleResourceResult<T>> createOrUpdateAll(FHIRPersistenceContext context, List<T> resources)
+            throws FHIRPersistenceException {
+        List<SingleResourceResult<T>> results = new ArrayList<>(resources.size());
+        for (T resource : resources) {
+            if (resource.getId() == null) {
+                results.add(create(context, resource));
+            } else {
+                try {
+                    results.add(update(context, resource.getId(), resource));
+                } catch (FHIRPersistenceResourceNotFoundException e) {
+                    results.add(new SingleResourceResult.Builder<T>()
+                            .success(false)
+                            .outcome(FHIRUtil.buildOperationOutcome(e, false))
+                            .build());
+                }
+            }
+        }
+        return results;
+    }
+
     /**
      * Deletes the specified FHIR Resource from the datastore.
      *
@@ -106,6 +189,28 @@ public interface FHIRPersistence {
      */
     MultiResourceResult<Resource> search(FHIRPersistenceContext context, Class<? extends Resource> resourceType) throws FHIRPersistenceException;
 
+    /**
+     * Performs a search on the specified target resource type using the specified search parameters, and returns
+     * the matching FHIR Resources in the form in which they were stored, without parsing them.
+     * The total count and the cursor for the next page are set on the search context, as they are by
+     * {@link #search(FHIRPersistenceContext, Class)}.
+     *
+     * <p>This default implementation returns null, which indicates that the caller must use
+     * {@link #search(FHIRPersistenceContext, Class)} instead. Implementations may also return null for searches
+     * whose results can't be returned unparsed, such as those with _sort, _include, _revinclude, _elements or
+     * _summary parameters.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resourceType the resource type which is the target of the search
+     * @return the stored FHIR Resources on the requested page of the search result set, or null if they must be
+     *         retrieved with {@link #search(FHIRPersistenceContext, Class)}
+     * @throws FHIRPersistenceException
+     */
+    default List<RawResource> searchRaw(FHIRPersistenceContext context, Class<? extends Resource> resourceType)
+            throws FHIRPersistenceException {
+        return null;
+    }
+
     /**
      * Returns true iff the persistence layer implementation supports transactions.
      */
@@ -20,11 +20,13 @@ import com.ibm.fhir.model.util.ValidationSupport;
 public class SingleResourceResult<T extends Resource> {
     @Required
     final boolean success;
+    final boolean unchanged;
     final T resource;
     final OperationOutcome outcome;
     
     private SingleResourceResult(Builder<T> builder) {
         success = ValidationSupport.requireNonNull(builder.success, "success");
+        unchanged = builder.unchanged;
         resource = builder.resource;
         outcome = builder.outcome;
         if (!success && (outcome == null || outcome.getIssue().isEmpty())) {
@@ -41,6 +43,16 @@ public class SingleResourceResult<T extends Resource> {
     public boolean isSuccess() {
         return success;
     }
+    /**
+     * Whether the interaction left the resource unchanged, e.g. an update which was skipped because the
+     * new resource is the same as the existing version
+     * 
+     * @return
+     *     whether no new version of the resource was written
+     */
+    public boolean isUnchanged() {
+        return unchanged;
+    }
     /**
      * The resource resulting from the interaction
      * 
@@ -63,6 +75,7 @@ public class SingleResourceResult<T extends Resource> {
     // result builder
     public static class Builder<T extends Resource> {
         boolean success;
+        boolean unchanged;
         T resource;
         OperationOutcome outcome;
         
@@ -82,6 +95,20 @@ public class SingleResourceResult<T extends Resource> {
             return this;
         }
         
+        /**
+         * Whether the interaction left the resource unchanged
+         * 
+         * @param unchanged
+         *     whether no new version of the resource was written; defaults to false
+         * 
+         * @return
+         *     A reference to this Builder instance
+         */
+        public Builder<T> unchanged(boolean unchanged) {
+            this.unchanged = unchanged;
+            return this;
+        }
+        
         /**
          * The resulting resource from the interaction
          * 
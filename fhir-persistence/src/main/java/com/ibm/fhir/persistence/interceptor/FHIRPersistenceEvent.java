@@ -55,6 +55,12 @@ public class FHIRPersistenceEvent {
      * This property holds the FHIRPatch instance associated with the request.
      */
     public static final String PROPNAME_PATCH = "PATCH";
+
+    /**
+     * This property is of type Boolean and is true when the "previous resource" of an update is
+     * the most recent version of a resource which has been deleted.
+     */
+    public static final String PROPNAME_PREV_RESOURCE_DELETED = "PREV_RESOURCE_DELETED";
     
     private Resource fhirResource;
     private Resource prevFhirResource = null;
@@ -83,6 +83,41 @@ public class FHIRPersistenceInterceptorMgr {
         interceptors.add(0, interceptor);
     }
     
+    /**
+     * Indicates whether any registered interceptor implements the 'beforeRead' or 'afterRead' methods.
+     * If not, a read can be performed without building the resource object which is passed to them.
+     */
+    public boolean hasReadInterceptors() {
+        return implementsAny("beforeRead", "afterRead");
+    }
+
+    /**
+     * Indicates whether any registered interceptor implements the 'beforeVread' or 'afterVread' methods.
+     * If not, a vread can be performed without building the resource object which is passed to them.
+     */
+    public boolean hasVreadInterceptors() {
+        return implementsAny("beforeVread", "afterVread");
+    }
+
+    /**
+     * Indicates whether any registered interceptor overrides one of the passed (default) interceptor methods.
+     */
+    private boolean implementsAny(String... methodNames) {
+        for (FHIRPersistenceInterceptor interceptor : interceptors) {
+            for (String methodName : methodNames) {
+                try {
+                    if (interceptor.getClass().getMethod(methodName, FHIRPersistenceEvent.class).getDeclaringClass() != FHIRPersistenceInterceptor.class) {
+                        return true;
+                    }
+                } catch (NoSuchMethodException e) {
+                    // not possible for a FHIRPersistenceInterceptor, but be safe
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * The following methods will invoke the respective interceptor methods on each registered interceptor.
      */
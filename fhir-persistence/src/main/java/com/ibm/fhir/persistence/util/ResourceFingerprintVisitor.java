@@ -104,8 +104,8 @@ public class ResourceFingerprintVisitor extends PathAwareVisitor {
     @Override
     public void visit(java.lang.String elementName, byte[] value) {
         if (includePath()) {
-            digest.update(getPath().getBytes(StandardCharsets.UTF_8));
-            digest.update(value);
+            updateDigest(getPath().getBytes(StandardCharsets.UTF_8));
+            updateDigest(value);
         }
     }
     
@@ -126,9 +126,7 @@ public class ResourceFingerprintVisitor extends PathAwareVisitor {
     @Override
     public void visit(java.lang.String elementName, java.lang.Integer value) {
         if (includePath()) {
-            ByteBuffer bb = ByteBuffer.allocate(4);
-            bb.putInt(value);
-            digest.update(bb);
+            updateDigest(getPath(), value.toString());
         }
     }
 
@@ -182,8 +180,18 @@ public class ResourceFingerprintVisitor extends PathAwareVisitor {
      * @param value
      */
     protected void updateDigest(String name, String value) {
-        digest.update(name.getBytes(StandardCharsets.UTF_8));
-        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        updateDigest(name.getBytes(StandardCharsets.UTF_8));
+        updateDigest(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Update the digest with the length of the given bytes followed by the bytes
+     * themselves, so that adjacent names and values can't run into each other
+     * @param bytes
+     */
+    private void updateDigest(byte[] bytes) {
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
     }
     
     /**
@@ -195,7 +203,18 @@ public class ResourceFingerprintVisitor extends PathAwareVisitor {
         String versionIdName = currentResourceName + ".meta.versionId";
         String lastUpdatedName = currentResourceName + ".meta.lastUpdated";
         String path = getPath();
-        return !path.startsWith(idName) && !path.startsWith(versionIdName) && !path.startsWith(lastUpdatedName);
-        
+        return !isPathOrChild(path, idName) && !isPathOrChild(path, versionIdName) && !isPathOrChild(path, lastUpdatedName);
+    }
+
+    /**
+     * Test whether the path is the given element or one of its children (such as an extension of the element).
+     * Note that a plain prefix test isn't enough, because Resource.id is a prefix of Resource.identifier
+     * @param path
+     * @param elementPath
+     * @return
+     */
+    private static boolean isPathOrChild(String path, String elementPath) {
+        return path.startsWith(elementPath)
+                && (path.length() == elementPath.length() || path.charAt(elementPath.length()) == '.');
     }
 }
@@ -0,0 +1,78 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.HumanName;
+import com.ibm.fhir.model.type.Id;
+import com.ibm.fhir.model.type.Identifier;
+import com.ibm.fhir.model.type.Instant;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.persistence.util.ResourceFingerprintVisitor;
+import com.ibm.fhir.persistence.util.SaltHash;
+
+/**
+ * Tests for the ResourceFingerprintVisitor
+ */
+public class ResourceFingerprintVisitorTest {
+
+    @Test
+    public void testIgnoresIdAndMeta() {
+        Patient patient = patient("Doe", "123");
+        SaltHash baseline = fingerprint(patient, null);
+
+        Patient stored = patient.toBuilder()
+                .id("abc")
+                .meta(Meta.builder()
+                    .versionId(Id.of("2"))
+                    .lastUpdated(Instant.now())
+                    .build())
+                .build();
+        assertEquals(fingerprint(stored, baseline), baseline);
+
+        // the same resource with a different salt has a different hash
+        assertNotEquals(fingerprint(patient, null), baseline);
+    }
+
+    @Test
+    public void testDetectsChanges() {
+        Patient patient = patient("Doe", "123");
+        SaltHash baseline = fingerprint(patient, null);
+
+        assertNotEquals(fingerprint(patient("Smith", "123"), baseline), baseline);
+
+        // identifier starts with the same characters as id, but is part of the content
+        assertNotEquals(fingerprint(patient("Doe", "456"), baseline), baseline);
+    }
+
+    @Test
+    public void testSaltHashString() {
+        SaltHash baseline = fingerprint(patient("Doe", "123"), null);
+        assertEquals(new SaltHash(baseline.toString()), baseline);
+    }
+
+    private static SaltHash fingerprint(Resource resource, SaltHash baseline) {
+        ResourceFingerprintVisitor visitor = baseline == null ? new ResourceFingerprintVisitor() : new ResourceFingerprintVisitor(baseline);
+        resource.accept(visitor);
+        return visitor.getSaltAndHash();
+    }
+
+    private static Patient patient(String family, String identifier) {
+        return Patient.builder()
+                .id("1")
+                .name(HumanName.builder().family(string(family)).build())
+                .identifier(Identifier.builder().value(string(identifier)).build())
+                .build();
+    }
+}
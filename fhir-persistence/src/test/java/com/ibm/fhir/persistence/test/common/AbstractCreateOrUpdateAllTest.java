@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.test.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Device;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.persistence.SingleResourceResult;
+import com.ibm.fhir.persistence.context.FHIRHistoryContext;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+
+/**
+ * This class contains tests for writing a list of resources with createOrUpdateAll.
+ */
+public abstract class AbstractCreateOrUpdateAllTest extends AbstractPersistenceTest {
+    protected Device device;
+    protected String deviceId1;
+
+    @BeforeClass
+    public void createResources() throws Exception {
+        device = TestUtil.readExampleResource("json/ibm/minimal/Device-1.json");
+
+        Device device1 = persistence.create(getDefaultPersistenceContext(), device).getResource();
+        assertNotNull(device1.getId());
+        this.deviceId1 = device1.getId();
+    }
+
+    @Test
+    public void testCreateOrUpdateAll() throws Exception {
+        String newId = "bulk-" + System.currentTimeMillis();
+        List<Device> devices = Arrays.asList(
+            device,
+            device.toBuilder().id(this.deviceId1).build(),
+            device.toBuilder().id(newId).build(),
+            device.toBuilder().id(newId).build());
+
+        List<SingleResourceResult<Device>> results = persistence.createOrUpdateAll(getDefaultPersistenceContext(), devices);
+        assertEquals(results.size(), 4);
+        for (SingleResourceResult<Device> result : results) {
+            assertTrue(result.isSuccess());
+            assertNotNull(result.getResource());
+        }
+
+        // create
+        Device created = results.get(0).getResource();
+        assertNotNull(created.getId());
+        assertEquals(created.getMeta().getVersionId().getValue(), "1");
+
+        // update of an existing resource
+        assertEquals(results.get(1).getResource().getId(), this.deviceId1);
+        assertEquals(results.get(1).getResource().getMeta().getVersionId().getValue(), "2");
+
+        // update-create followed by an update of the same resource in the same list
+        assertEquals(results.get(2).getResource().getId(), newId);
+        assertEquals(results.get(2).getResource().getMeta().getVersionId().getValue(), "1");
+        assertEquals(results.get(3).getResource().getId(), newId);
+        assertEquals(results.get(3).getResource().getMeta().getVersionId().getValue(), "2");
+    }
+
+    @Test(dependsOnMethods = { "testCreateOrUpdateAll" })
+    public void testReadAfterCreateOrUpdateAll() throws Exception {
+        Device device1 = persistence.read(getDefaultPersistenceContext(), Device.class, this.deviceId1).getResource();
+        assertNotNull(device1);
+        assertEquals(device1.getMeta().getVersionId().getValue(), "2");
+
+        FHIRHistoryContext historyContext = FHIRPersistenceContextFactory.createHistoryContext();
+        FHIRPersistenceContext context = this.getPersistenceContextForHistory(historyContext);
+        List<Device> history = persistence.history(context, Device.class, this.deviceId1).getResource();
+        assertEquals(history.size(), 2);
+    }
+
+    @Test(dependsOnMethods = { "testCreateOrUpdateAll" })
+    public void testSearchAfterCreateOrUpdateAll() throws Exception {
+        List<Resource> resources = runQueryTest(Device.class, "_id", this.deviceId1);
+        assertNotNull(resources);
+        assertEquals(resources.size(), 1);
+        assertEquals(resources.get(0).getMeta().getVersionId().getValue(), "2");
+    }
+
+    @Test
+    public void testCreateOrUpdateAllEmpty() throws Exception {
+        List<SingleResourceResult<Device>> results = persistence.createOrUpdateAll(getDefaultPersistenceContext(), Arrays.asList());
+        assertTrue(results.isEmpty());
+    }
+}
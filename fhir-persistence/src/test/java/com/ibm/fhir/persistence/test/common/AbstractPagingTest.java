@@ -39,6 +39,7 @@ import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
 import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.cursor.SearchCursor;
 import com.ibm.fhir.search.util.SearchUtil;
 
 /**
@@ -120,6 +121,83 @@ public abstract class AbstractPagingTest extends AbstractPersistenceTest {
         assertTrue(isResourceInResponse(resource3, results));
     }
     
+    // paging with the cursor from each page should produce the same pages as paging by offset
+    @Test
+    public void testSearchCursorPaging() throws Exception {
+        assertCursorPaging(null);
+    }
+    
+    // the cursors of a sorted search also hold the sort key values of the last result
+    @Test
+    public void testSortedSearchCursorPaging() throws Exception {
+        assertCursorPaging("integer");
+        assertCursorPaging("-integer");
+    }
+    
+    private SearchCursor assertCursorPaging(String sort) throws Exception {
+        Map<String, List<String>> queryParameters;
+        FHIRSearchContext searchContext;
+        SearchCursor cursor = null;
+        SearchCursor pageTwoCursor = null;
+        
+        for (int page = 1; page <= 3; page++) {
+            queryParameters = new HashMap<>();
+            queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+            queryParameters.put("_page", Collections.singletonList(String.valueOf(page)));
+            if (sort != null) {
+                queryParameters.put("_sort", Collections.singletonList(sort));
+            }
+            List<Resource> expected = runQueryTest(Basic.class, queryParameters, 1);
+            assertEquals(expected.size(), 1, "expected number of results");
+            
+            if (cursor != null) {
+                queryParameters.put("_cursor", Collections.singletonList(cursor.encode()));
+            }
+            searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+            MultiResourceResult<Resource> result = runQueryTest(searchContext, Basic.class, queryParameters, 1);
+            assertTrue(result.isSuccess());
+            assertEquals(result.getResource().get(0).getId(), expected.get(0).getId(), "result for page " + page + " sorted by " + sort);
+            
+            cursor = searchContext.getNextCursor();
+            if (cursor != null) {
+                assertEquals(cursor.getPageNumber(), page + 1);
+                assertEquals(cursor.getSortValues().isEmpty(), sort == null);
+                if (page == 1) {
+                    pageTwoCursor = cursor;
+                }
+            }
+        }
+        return pageTwoCursor;
+    }
+    
+    // a cursor for a different page or query is ignored
+    @Test
+    public void testSearchCursorMismatch() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        queryParameters.put("_page", Collections.singletonList("3"));
+        List<Resource> expected = runQueryTest(Basic.class, queryParameters, 1);
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setPageSize(1);
+        String queryHash = SearchCursor.hashQuery(Basic.class, searchContext);
+        queryParameters.put("_cursor", Collections.singletonList(new SearchCursor(2, queryHash, 0).encode()));
+        List<Resource> results = runQueryTest(Basic.class, queryParameters, 1);
+        assertEquals(results.size(), 1, "expected number of results");
+        assertEquals(results.get(0).getId(), expected.get(0).getId());
+        
+        SearchCursor sortedCursor = assertCursorPaging("-integer");
+        if (sortedCursor != null) {
+            queryParameters = new HashMap<>();
+            queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+            queryParameters.put("_page", Collections.singletonList("2"));
+            expected = runQueryTest(Basic.class, queryParameters, 1);
+            queryParameters.put("_cursor", Collections.singletonList(sortedCursor.encode()));
+            results = runQueryTest(Basic.class, queryParameters, 1);
+            assertEquals(results.size(), 1, "expected number of results");
+            assertEquals(results.get(0).getId(), expected.get(0).getId());
+        }
+    }
+    
     // history results should be sorted with oldest versions last
     @Test
     public void testHistoryPaging() throws Exception {
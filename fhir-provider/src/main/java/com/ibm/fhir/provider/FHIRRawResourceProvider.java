@@ -0,0 +1,96 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.provider;
+
+import static com.ibm.fhir.model.util.FHIRUtil.buildOperationOutcome;
+import static com.ibm.fhir.model.util.FHIRUtil.buildOperationOutcomeIssue;
+import static com.ibm.fhir.provider.util.FHIRProviderUtil.buildResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+import com.ibm.fhir.core.FHIRMediaType;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
+import com.ibm.fhir.model.parser.exception.FHIRParserException;
+import com.ibm.fhir.model.type.code.IssueSeverity;
+import com.ibm.fhir.model.type.code.IssueType;
+import com.ibm.fhir.model.util.RawResource;
+
+/**
+ * Writes a {@link RawResource} entity. When the client wants JSON that is not pretty-printed, the stored JSON is
+ * copied to the response as is; otherwise the resource is parsed and generated in the requested format.
+ */
+@Produces({ FHIRMediaType.APPLICATION_FHIR_JSON, MediaType.APPLICATION_JSON, FHIRMediaType.APPLICATION_FHIR_XML,
+        MediaType.APPLICATION_XML })
+public class FHIRRawResourceProvider implements MessageBodyWriter<RawResource> {
+    private static final Logger log = Logger.getLogger(FHIRRawResourceProvider.class.getName());
+
+    @Context
+    private UriInfo uriInfo;
+    @Context
+    private HttpHeaders requestHeaders;
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return RawResource.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public void writeTo(RawResource t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders,
+            OutputStream entityStream) throws IOException, WebApplicationException {
+        log.entering(this.getClass().getName(), "writeTo");
+        try {
+            boolean pretty = FHIRProvider.isPretty(requestHeaders, uriInfo);
+            if (isXml(mediaType)) {
+                FHIRGenerator.generator(Format.XML, pretty).generate(t.toResource(), entityStream);
+            } else if (pretty) {
+                FHIRGenerator.generator(Format.JSON, true).generate(t.toResource(), entityStream);
+            } else {
+                t.writeJson(entityStream);
+            }
+        } catch (FHIRParserException | FHIRGeneratorException e) {
+            log.log(Level.WARNING, "an error occurred during resource serialization", e);
+            Response response =
+                    buildResponse(
+                            buildOperationOutcome(Collections.singletonList(
+                                    buildOperationOutcomeIssue(IssueSeverity.FATAL, IssueType.EXCEPTION,
+                                            "FHIRRawResourceProvider: " + e.getMessage()))),
+                            mediaType);
+            throw new WebApplicationException(response);
+        } finally {
+            log.exiting(this.getClass().getName(), "writeTo");
+        }
+    }
+
+    @Override
+    public long getSize(RawResource t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    private boolean isXml(MediaType mediaType) {
+        return mediaType != null && (mediaType.isCompatible(FHIRMediaType.APPLICATION_FHIR_XML_TYPE) ||
+                mediaType.isCompatible(FHIRMediaType.APPLICATION_XML_TYPE));
+    }
+}
@@ -14,11 +14,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -30,10 +32,14 @@ import com.ibm.fhir.model.type.Canonical;
 import com.ibm.fhir.model.type.code.SearchParamType;
 import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.registry.resource.FHIRRegistryResource;
+import com.ibm.fhir.registry.resource.FHIRRegistryResource.Version;
 import com.ibm.fhir.registry.spi.FHIRRegistryResourceProvider;
 
 /**
  * A singleton registry for FHIR definitional resources: <a href="http://hl7.org/fhir/definition.html">http://hl7.org/fhir/definition.html</a>
+ *
+ * <p>The registry resources of static providers (see {@link FHIRRegistryResourceProvider#isStatic()}) are indexed by
+ * resource type and url when a provider is registered; other providers are consulted on each call
  */
 public final class FHIRRegistry {
     private static final Logger log = Logger.getLogger(FHIRRegistry.class.getName());
@@ -42,8 +48,12 @@ public final class FHIRRegistry {
 
     private final List<FHIRRegistryResourceProvider> providers;
 
+    // the index of the static providers, which is replaced (not modified) when a provider is registered
+    private volatile RegistryIndex index;
+
     private FHIRRegistry() {
         providers = new CopyOnWriteArrayList<>(loadProviders());
+        index = new RegistryIndex(providers);
     }
 
     /**
@@ -68,9 +78,10 @@ public final class FHIRRegistry {
      * @param provider
      *     the registry resource provider to be added
      */
-    public void register(FHIRRegistryResourceProvider provider) {
+    public synchronized void register(FHIRRegistryResourceProvider provider) {
         Objects.requireNonNull(provider);
         providers.add(provider);
+        index = new RegistryIndex(providers);
     }
 
     /**
@@ -199,8 +210,21 @@ public final class FHIRRegistry {
         if (!ModelSupport.isResourceType(type)) {
             throw new IllegalArgumentException("The type argument must be a valid FHIR resource type name");
         }
-        return providers.stream().map(provider -> provider.getProfileResources(type))
+        RegistryIndex index = this.index;
+        List<FHIRRegistryResource> dynamicProfileResources = index.dynamicProviders.stream()
+                .map(provider -> provider.getProfileResources(type))
                 .flatMap(Collection::stream)
+                .collect(Collectors.toList());
+        if (dynamicProfileResources.isEmpty()) {
+            return index.getProfiles(type);
+        }
+        List<FHIRRegistryResource> profileResources = new ArrayList<>(index.getProfileResources(type));
+        profileResources.addAll(dynamicProfileResources);
+        return toCanonicals(profileResources);
+    }
+
+    private static List<Canonical> toCanonicals(List<FHIRRegistryResource> profileResources) {
+        return profileResources.stream()
                 .sorted()
                 .map(registryResource -> Canonical.of(registryResource.getUrl(), registryResource.getVersion().toString()))
                 .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
@@ -219,31 +243,46 @@ public final class FHIRRegistry {
     public Collection<SearchParameter> getSearchParameters(String type) {
         Objects.requireNonNull(type);
         SearchParamType.ValueSet.from(type);
-        return providers.stream()
-                .map(provider -> provider.getSearchParameterResources(type))
-                .flatMap(Collection::stream)
-                .map(registryResource -> registryResource.getResource().as(SearchParameter.class))
-                .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
+        RegistryIndex index = this.index;
+        List<SearchParameter> searchParameters = index.getSearchParameters(type);
+        if (index.dynamicProviders.isEmpty()) {
+            return searchParameters;
+        }
+        List<SearchParameter> result = new ArrayList<>(searchParameters);
+        for (FHIRRegistryResourceProvider provider : index.dynamicProviders) {
+            for (FHIRRegistryResource registryResource : provider.getSearchParameterResources(type)) {
+                result.add(registryResource.getResource().as(SearchParameter.class));
+            }
+        }
+        return Collections.unmodifiableList(result);
     }
 
     private FHIRRegistryResource findRegistryResource(Class<? extends Resource> resourceType, String url, String version) {
+        RegistryIndex index = this.index;
         if (version == null) {
             // find the latest version of the registry resource with the specified resourceType and url (across all providers)
-            List<FHIRRegistryResource> registryResources = providers.stream()
-                    .map(provider -> provider.getRegistryResource(resourceType, url, version))
-                    .filter(Objects::nonNull)
-                    .distinct()
-                    .sorted()
-                    .collect(Collectors.toList());
-            return !registryResources.isEmpty() ? registryResources.get(registryResources.size() - 1) : null;
+            FHIRRegistryResource latest = index.getLatestRegistryResource(resourceType, url);
+            for (FHIRRegistryResourceProvider provider : index.dynamicProviders) {
+                FHIRRegistryResource registryResource = provider.getRegistryResource(resourceType, url, null);
+                if (registryResource != null && (latest == null || registryResource.compareTo(latest) >= 0)) {
+                    latest = registryResource;
+                }
+            }
+            return latest;
         }
 
         // find the first registry resource with the specified resourceType, url, and version
-        return providers.stream()
-                .map(provider -> provider.getRegistryResource(resourceType, url, version))
-                .filter(Objects::nonNull)
-                .findFirst()
-                .orElse(null);
+        FHIRRegistryResource registryResource = index.getRegistryResource(resourceType, url, version);
+        if (registryResource != null) {
+            return registryResource;
+        }
+        for (FHIRRegistryResourceProvider provider : index.dynamicProviders) {
+            registryResource = provider.getRegistryResource(resourceType, url, version);
+            if (registryResource != null) {
+                return registryResource;
+            }
+        }
+        return null;
     }
 
     private Resource getResource(FHIRRegistryResource registryResource, String url, String id) {
@@ -301,4 +340,122 @@ public final class FHIRRegistry {
         v.add(canonicalUrl);
         return v;
     }
-}
\ No newline at end of file
+
+    /**
+     * An immutable index of the registry resources from the static providers, by resource type and url
+     */
+    private static final class RegistryIndex {
+        private final List<FHIRRegistryResourceProvider> staticProviders = new ArrayList<>();
+        private final List<FHIRRegistryResourceProvider> dynamicProviders = new ArrayList<>();
+        private final Map<Class<? extends Resource>, Map<String, Entry>> entries = new HashMap<>();
+
+        // profiles and search parameters are computed from the static providers on first use
+        private final Map<String, List<FHIRRegistryResource>> profileResources = new ConcurrentHashMap<>();
+        private final Map<String, List<Canonical>> profiles = new ConcurrentHashMap<>();
+        private final Map<String, List<SearchParameter>> searchParameters = new ConcurrentHashMap<>();
+
+        private RegistryIndex(List<FHIRRegistryResourceProvider> providers) {
+            Map<Class<? extends Resource>, Map<String, List<FHIRRegistryResource>>> registryResourceMap = new HashMap<>();
+            int count = 0;
+            for (FHIRRegistryResourceProvider provider : providers) {
+                if (!provider.isStatic()) {
+                    dynamicProviders.add(provider);
+                    continue;
+                }
+                staticProviders.add(provider);
+
+                // group the resources of this provider by resource type and url, in version order
+                Map<Class<? extends Resource>, Map<String, List<FHIRRegistryResource>>> providerMap = new HashMap<>();
+                for (FHIRRegistryResource registryResource : provider.getRegistryResources()) {
+                    providerMap.computeIfAbsent(registryResource.getResourceType(), k -> new HashMap<>())
+                        .computeIfAbsent(registryResource.getUrl(), k -> new ArrayList<>())
+                        .add(registryResource);
+                    count++;
+                }
+                for (Map.Entry<Class<? extends Resource>, Map<String, List<FHIRRegistryResource>>> typeEntry : providerMap.entrySet()) {
+                    Map<String, List<FHIRRegistryResource>> urlMap = registryResourceMap.computeIfAbsent(typeEntry.getKey(), k -> new HashMap<>());
+                    for (Map.Entry<String, List<FHIRRegistryResource>> urlEntry : typeEntry.getValue().entrySet()) {
+                        List<FHIRRegistryResource> registryResources = urlEntry.getValue();
+                        Collections.sort(registryResources);
+                        urlMap.computeIfAbsent(urlEntry.getKey(), k -> new ArrayList<>()).addAll(registryResources);
+                    }
+                }
+            }
+
+            for (Map.Entry<Class<? extends Resource>, Map<String, List<FHIRRegistryResource>>> typeEntry : registryResourceMap.entrySet()) {
+                Map<String, Entry> urlMap = new HashMap<>();
+                for (Map.Entry<String, List<FHIRRegistryResource>> urlEntry : typeEntry.getValue().entrySet()) {
+                    urlMap.put(urlEntry.getKey(), new Entry(urlEntry.getValue()));
+                }
+                entries.put(typeEntry.getKey(), urlMap);
+            }
+
+            log.fine("Indexed " + count + " registry resources from " + staticProviders.size() + " static provider(s)");
+        }
+
+        private FHIRRegistryResource getLatestRegistryResource(Class<? extends Resource> resourceType, String url) {
+            Entry entry = getEntry(resourceType, url);
+            return (entry != null) ? entry.latest : null;
+        }
+
+        private FHIRRegistryResource getRegistryResource(Class<? extends Resource> resourceType, String url, String version) {
+            Entry entry = getEntry(resourceType, url);
+            if (entry == null) {
+                return null;
+            }
+            Version v = Version.from(version);
+            for (FHIRRegistryResource registryResource : entry.registryResources) {
+                if (registryResource.getVersion().equals(v)) {
+                    return registryResource;
+                }
+            }
+            log.warning("Unable to find resource: " + url + " with version: " + version);
+            return null;
+        }
+
+        private Entry getEntry(Class<? extends Resource> resourceType, String url) {
+            Map<String, Entry> urlMap = entries.get(resourceType);
+            return (urlMap != null) ? urlMap.get(url) : null;
+        }
+
+        private List<FHIRRegistryResource> getProfileResources(String type) {
+            return profileResources.computeIfAbsent(type, k -> staticProviders.stream()
+                .map(provider -> provider.getProfileResources(type))
+                .flatMap(Collection::stream)
+                .sorted()
+                .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList)));
+        }
+
+        private List<Canonical> getProfiles(String type) {
+            return profiles.computeIfAbsent(type, k -> toCanonicals(getProfileResources(type)));
+        }
+
+        private List<SearchParameter> getSearchParameters(String type) {
+            return searchParameters.computeIfAbsent(type, k -> staticProviders.stream()
+                .map(provider -> provider.getSearchParameterResources(type))
+                .flatMap(Collection::stream)
+                .map(registryResource -> registryResource.getResource().as(SearchParameter.class))
+                .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList)));
+        }
+    }
+
+    /**
+     * The registry resources from the static providers for a resource type and url
+     */
+    private static final class Entry {
+        // in provider order, and in version order for each provider
+        private final FHIRRegistryResource[] registryResources;
+        private final FHIRRegistryResource latest;
+
+        private Entry(List<FHIRRegistryResource> registryResources) {
+            this.registryResources = registryResources.toArray(new FHIRRegistryResource[registryResources.size()]);
+            FHIRRegistryResource latest = null;
+            for (FHIRRegistryResource registryResource : new LinkedHashSet<>(registryResources)) {
+                if (latest == null || registryResource.compareTo(latest) >= 0) {
+                    latest = registryResource;
+                }
+            }
+            this.latest = latest;
+        }
+    }
+}
@@ -79,4 +79,17 @@ public interface FHIRRegistryResourceProvider {
     default Collection<FHIRRegistryResource> getProfileResources(){
         throw new UnsupportedOperationException("The specific implementation does not support this feature");
     };
+
+    /**
+     * Indicates whether the registry resources from this provider are fixed for the lifetime of the provider.
+     *
+     * <p>The registry resources of static providers are indexed by the {@link com.ibm.fhir.registry.FHIRRegistry} when
+     * the provider is registered, instead of being looked up through the provider on each call.
+     *
+     * @return
+     *     true if the registry resources from this provider never change, false otherwise
+     */
+    default boolean isStatic() {
+        return false;
+    }
 }
\ No newline at end of file
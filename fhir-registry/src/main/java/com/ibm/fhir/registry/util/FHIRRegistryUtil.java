@@ -147,7 +147,9 @@ public final class FHIRRegistryUtil {
     public static Collection<FHIRRegistryResource> getRegistryResources(String packageId) {
         List<FHIRRegistryResource> resources = new ArrayList<>();
         String packageDirectory = packageId.replace(".", "/") + "/package";
-        for (Entry entry : readIndex(packageDirectory + "/.index.json")) {
+        List<Entry> entries = readIndex(packageDirectory + "/.index.json");
+        PackageArchive archive = entries.isEmpty() ? null : loadArchive(packageDirectory + "/" + PackageArchive.ARCHIVE_FILE_NAME, entries);
+        for (Entry entry : entries) {
             resources.add(new PackageRegistryResource(
                 ModelSupport.getResourceType(entry.getResourceType()),
                 entry.getId(),
@@ -155,11 +157,33 @@ public final class FHIRRegistryUtil {
                 Version.from(entry.getVersion()),
                 entry.getKind(),
                 entry.getType(),
-                packageDirectory + "/" + entry.getFileName()));
+                packageDirectory + "/" + entry.getFileName(),
+                archive));
         }
         return Collections.unmodifiableList(resources);
     }
 
+    /**
+     * Load the package archive at the given class path location if it contains every file listed in the index.
+     *
+     * @return
+     *     the package archive or null if the package resources should be loaded from individual files
+     */
+    private static PackageArchive loadArchive(String archivePath, List<Entry> entries) {
+        PackageArchive archive = PackageArchive.load(archivePath);
+        if (archive == null) {
+            return null;
+        }
+        for (Entry entry : entries) {
+            if (!archive.contains(entry.getFileName())) {
+                log.warning("Ignoring package archive: " + archivePath + " because it does not contain: " + entry.getFileName());
+                return null;
+            }
+        }
+        log.info("Loading package resources from archive: " + archivePath);
+        return archive;
+    }
+
     public static List<Entry> readIndex(String indexPath) {
         log.info("Loading index: " + indexPath);
         try (InputStream in = FHIRRegistryUtil.class.getClassLoader().getResourceAsStream(indexPath)) {
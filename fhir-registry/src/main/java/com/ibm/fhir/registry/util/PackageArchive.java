@@ -0,0 +1,334 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.registry.util.Index.Entry;
+
+/**
+ * A read-only archive of the resource files of a package, generated at build time alongside the package index.
+ *
+ * <p>The archive starts with a table that maps each file name to the offset and length of its content, followed by
+ * the content of the files. The archive is memory-mapped when it is available from the file system and is otherwise
+ * copied once into a direct buffer, so the content of the package is held outside of the Java heap and each resource
+ * is only parsed when it is requested.
+ *
+ * <p>Archive layout (all integers are big-endian):
+ * <pre>
+ * int     magic number (0x46484952)
+ * int     archive version
+ * int     entry count
+ * entry*  (short file name length, UTF-8 file name, int offset, int length)
+ * byte*   file content, with offsets relative to the end of the entry table
+ * </pre>
+ */
+public final class PackageArchive {
+    private static final Logger log = Logger.getLogger(PackageArchive.class.getName());
+
+    public static final String ARCHIVE_FILE_NAME = ".archive";
+
+    private static final int MAGIC = 0x46484952;
+    private static final int ARCHIVE_VERSION = 1;
+
+    private final String name;
+    private final ByteBuffer buffer;
+    private final Map<String, int[]> table;
+
+    private PackageArchive(String name, ByteBuffer buffer) {
+        this.name = name;
+        this.buffer = buffer;
+        if (buffer.limit() < 12 || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("'" + name + "' is not a package archive");
+        }
+        int version = buffer.getInt(4);
+        if (version != ARCHIVE_VERSION) {
+            throw new IllegalArgumentException("Unsupported package archive version: " + version);
+        }
+        ByteBuffer header = buffer.duplicate();
+        header.position(8);
+        int count = header.getInt();
+        Map<String, int[]> table = new HashMap<>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            byte[] fileName = new byte[header.getShort() & 0xFFFF];
+            header.get(fileName);
+            table.put(new String(fileName, StandardCharsets.UTF_8), new int[] { header.getInt(), header.getInt() });
+        }
+        int dataStart = header.position();
+        for (int[] location : table.values()) {
+            location[0] += dataStart;
+            if (location[0] < dataStart || location[1] < 0 || location[0] + location[1] > buffer.limit()) {
+                throw new IllegalArgumentException("Package archive '" + name + "' is truncated or corrupt");
+            }
+        }
+        this.table = Collections.unmodifiableMap(table);
+    }
+
+    /**
+     * Open the package archive at the given class path location.
+     *
+     * @param path
+     *     the class path location of the archive (e.g. hl7/fhir/core/package/.archive)
+     * @return
+     *     the package archive or null if there is no archive at that location or it could not be read
+     */
+    public static PackageArchive load(String path) {
+        URL url = PackageArchive.class.getClassLoader().getResource(path);
+        if (url == null) {
+            return null;
+        }
+        try {
+            if ("file".equals(url.getProtocol())) {
+                return open(Paths.get(url.toURI()));
+            }
+            URLConnection connection = url.openConnection();
+            try (InputStream in = connection.getInputStream()) {
+                return new PackageArchive(path, read(in, connection.getContentLengthLong()));
+            }
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Unable to load package archive: " + path, e);
+        }
+        return null;
+    }
+
+    /**
+     * Open the package archive at the given file system location by mapping it into memory.
+     *
+     * @param path
+     *     the location of the archive
+     * @return
+     *     the package archive
+     * @throws IOException
+     *     if the archive could not be mapped
+     */
+    public static PackageArchive open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new PackageArchive(path.toString(), channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static ByteBuffer read(InputStream in, long length) throws IOException {
+        if (length < 0) {
+            // content length is unknown; grow a heap buffer and copy it once it is complete
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+            ReadableByteChannel channel = Channels.newChannel(in);
+            while (channel.read(buffer) != -1) {
+                if (!buffer.hasRemaining()) {
+                    ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+            }
+            buffer.flip();
+            return ByteBuffer.allocateDirect(buffer.remaining()).put(buffer).asReadOnlyBuffer();
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Package archive is too large: " + length + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) length);
+        ReadableByteChannel channel = Channels.newChannel(in);
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            // keep reading
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("Unexpected end of package archive after " + buffer.position() + " of " + length + " bytes");
+        }
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return
+     *     the number of files in this archive
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * @param fileName
+     *     the name of a file in the package (e.g. StructureDefinition-Patient.json)
+     * @return
+     *     true if this archive contains the file, false otherwise
+     */
+    public boolean contains(String fileName) {
+        return table.containsKey(fileName);
+    }
+
+    /**
+     * Parse the resource in the given file of this archive.
+     *
+     * @param fileName
+     *     the name of a file in the package (e.g. StructureDefinition-Patient.json)
+     * @return
+     *     the parsed resource or null if the file is not in this archive or could not be parsed
+     */
+    public Resource loadResource(String fileName) {
+        int[] location = table.get(fileName);
+        if (location == null) {
+            return null;
+        }
+        ByteBuffer content = buffer.duplicate();
+        content.limit(location[0] + location[1]);
+        content.position(location[0]);
+        try (InputStream in = new ByteBufferInputStream(content)) {
+            return FHIRParser.parser(Format.JSON).parse(in);
+        } catch (Exception e) {
+            log.warning("Unable to load resource: " + fileName + " from package archive: " + name + " due to the following exception: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Generate the archive for each of the given package directories. This is run by the build (exec-maven-plugin)
+     * against the packages in the output directory of a module, so that the archive is packaged with the index.
+     *
+     * <p>Packages without an index are skipped, so that their resources are loaded from the individual files.
+     *
+     * @param args
+     *     the package directories
+     * @throws IOException
+     *     if an archive could not be generated
+     */
+    public static void main(String[] args) throws IOException {
+        for (String packageDirectory : args) {
+            if (!new File(packageDirectory, ".index.json").isFile()) {
+                log.warning("Skipping package archive generation for: " + packageDirectory + " because it has no package index");
+                continue;
+            }
+            generate(new File(packageDirectory));
+            log.info("Generated package archive for: " + packageDirectory);
+        }
+    }
+
+    /**
+     * Write the archive for the package in the given directory, containing the files listed in its index.
+     *
+     * @param packageDirectory
+     *     the package directory, which must contain a package index (.index.json)
+     * @throws IOException
+     *     if a file listed in the index could not be read or the archive could not be written
+     */
+    public static void generate(File packageDirectory) throws IOException {
+        Index index = new Index();
+        try (InputStream in = new FileInputStream(new File(packageDirectory, ".index.json"))) {
+            index.load(in);
+        }
+        try (OutputStream out = new FileOutputStream(new File(packageDirectory, ARCHIVE_FILE_NAME))) {
+            write(packageDirectory, index, out);
+        }
+    }
+
+    /**
+     * Write an archive containing the files listed in the index.
+     *
+     * @param packageDirectory
+     *     the directory that contains the files listed in the index
+     * @param index
+     *     the package index
+     * @param out
+     *     the output stream to write the archive to
+     * @throws IOException
+     *     if a file listed in the index could not be read or the archive could not be written
+     */
+    public static void write(File packageDirectory, Index index, OutputStream out) throws IOException {
+        Objects.requireNonNull(packageDirectory);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(ARCHIVE_VERSION);
+        data.writeInt(index.getEntries().size());
+        long offset = 0;
+        for (Entry entry : index.getEntries()) {
+            byte[] fileName = entry.getFileName().getBytes(StandardCharsets.UTF_8);
+            long length = new File(packageDirectory, entry.getFileName()).length();
+            if (offset + length > Integer.MAX_VALUE) {
+                throw new IOException("Package in '" + packageDirectory + "' is too large to archive");
+            }
+            data.writeShort(fileName.length);
+            data.write(fileName);
+            data.writeInt((int) offset);
+            data.writeInt((int) length);
+            offset += length;
+        }
+        byte[] bytes = new byte[8192];
+        for (Entry entry : index.getEntries()) {
+            File file = new File(packageDirectory, entry.getFileName());
+            long expected = file.length();
+            long copied = 0;
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+                int n;
+                while (copied < expected && (n = in.read(bytes, 0, (int) Math.min(bytes.length, expected - copied))) != -1) {
+                    data.write(bytes, 0, n);
+                    copied += n;
+                }
+            }
+            if (copied != expected) {
+                throw new IOException("File '" + file + "' changed while it was being archived");
+            }
+        }
+        data.flush();
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -8,6 +8,7 @@ package com.ibm.fhir.registry.util;
 
 import static com.ibm.fhir.registry.util.FHIRRegistryUtil.loadResource;
 
+import java.lang.ref.SoftReference;
 import java.util.Objects;
 
 import com.ibm.fhir.model.resource.Resource;
@@ -15,11 +16,16 @@ import com.ibm.fhir.registry.resource.FHIRRegistryResource;
 
 /**
  * A FHIR registry resource that can load a FHIR resource given a path
+ *
+ * <p>Resources that are loaded from a {@link PackageArchive} are only softly referenced, so they may be reclaimed under
+ * memory pressure and parsed again from the archive on the next request.
  */
 public class PackageRegistryResource extends FHIRRegistryResource {
     protected final String path;
+    protected final PackageArchive archive;
 
     protected volatile Resource resource;
+    protected volatile SoftReference<Resource> softResource;
 
     public PackageRegistryResource(
             Class<? extends Resource> resourceType,
@@ -29,14 +35,41 @@ public class PackageRegistryResource extends FHIRRegistryResource {
             String kind,
             String type,
             String path) {
+        this(resourceType, id, url, version, kind, type, path, null);
+    }
+
+    /**
+     * @param path
+     *     the class path location of the resource file
+     * @param archive
+     *     the archive of the package that contains the resource file, or null to load the file from the class path
+     */
+    public PackageRegistryResource(
+            Class<? extends Resource> resourceType,
+            String id,
+            String url,
+            Version version,
+            String kind,
+            String type,
+            String path,
+            PackageArchive archive) {
         super(resourceType, id, url, version, kind, type);
         this.path = Objects.requireNonNull(path);
+        this.archive = archive;
     }
 
     public String getPath() {
         return path;
     }
 
+    /**
+     * @return
+     *     the archive of the package that contains the resource file, or null if the file is loaded from the class path
+     */
+    public PackageArchive getArchive() {
+        return archive;
+    }
+
     /**
      * Get the FHIR resource associated with this registry resource
      *
@@ -45,6 +78,9 @@ public class PackageRegistryResource extends FHIRRegistryResource {
      */
     @Override
     public Resource getResource() {
+        if (archive != null) {
+            return getArchivedResource();
+        }
         Resource resource = this.resource;
         if (resource == null) {
             synchronized (this) {
@@ -57,4 +93,22 @@ public class PackageRegistryResource extends FHIRRegistryResource {
         }
         return resource;
     }
+
+    private Resource getArchivedResource() {
+        SoftReference<Resource> softResource = this.softResource;
+        Resource resource = (softResource != null) ? softResource.get() : null;
+        if (resource == null) {
+            synchronized (this) {
+                softResource = this.softResource;
+                resource = (softResource != null) ? softResource.get() : null;
+                if (resource == null) {
+                    resource = archive.loadResource(path.substring(path.lastIndexOf('/') + 1));
+                    if (resource != null) {
+                        this.softResource = new SoftReference<>(resource);
+                    }
+                }
+            }
+        }
+        return resource;
+    }
 }
@@ -105,6 +105,11 @@ public abstract class PackageRegistryResourceProvider implements FHIRRegistryRes
         return Collections.unmodifiableList(profileResourceMap.getOrDefault(type, Collections.emptyList()));
     }
 
+    @Override
+    public boolean isStatic() {
+        return true;
+    }
+
     @Override
     public Collection<FHIRRegistryResource> getSearchParameterResources(String type) {
         Objects.requireNonNull(type);
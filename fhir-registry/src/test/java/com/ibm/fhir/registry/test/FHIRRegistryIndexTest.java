@@ -0,0 +1,175 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.resource.SearchParameter;
+import com.ibm.fhir.model.resource.StructureDefinition;
+import com.ibm.fhir.model.type.Boolean;
+import com.ibm.fhir.model.type.Canonical;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.PublicationStatus;
+import com.ibm.fhir.model.type.code.StructureDefinitionKind;
+import com.ibm.fhir.registry.FHIRRegistry;
+import com.ibm.fhir.registry.resource.FHIRRegistryResource;
+import com.ibm.fhir.registry.resource.FHIRRegistryResource.Version;
+import com.ibm.fhir.registry.spi.FHIRRegistryResourceProvider;
+
+/**
+ * Tests lookups that combine indexed (static) providers with providers that are consulted on each call
+ */
+public class FHIRRegistryIndexTest {
+    private static final String URL = "http://ibm.com/fhir/StructureDefinition/index-test";
+    private static final String STATIC_ONLY_URL = "http://ibm.com/fhir/StructureDefinition/index-test-static";
+
+    static {
+        FHIRRegistry.getInstance().register(
+            createRegistryResourceProvider(true,
+                createRegistryResource(createStructureDefinition(URL, "2.0.0")),
+                createRegistryResource(createStructureDefinition(URL, "1.0.0")),
+                createRegistryResource(createStructureDefinition(STATIC_ONLY_URL, "1.0.0"))));
+        FHIRRegistry.getInstance().register(
+            createRegistryResourceProvider(false,
+                createRegistryResource(createStructureDefinition(URL, "3.0.0"))));
+        FHIRRegistry.getInstance().register(
+            createRegistryResourceProvider(true,
+                createRegistryResource(createStructureDefinition(URL, "1.5.0")),
+                createRegistryResource(createStructureDefinition(STATIC_ONLY_URL, "1.1.0"))));
+    }
+
+    @Test
+    public void testLatestVersion() throws Exception {
+        FHIRRegistry registry = FHIRRegistry.getInstance();
+        assertEquals(registry.getLatestVersion(URL, StructureDefinition.class), "3.0.0");
+        assertEquals(registry.getLatestVersion(STATIC_ONLY_URL, StructureDefinition.class), "1.1.0");
+        assertEquals(registry.getResource(URL, StructureDefinition.class).getVersion().getValue(), "3.0.0");
+    }
+
+    @Test
+    public void testVersionedLookup() throws Exception {
+        FHIRRegistry registry = FHIRRegistry.getInstance();
+        assertEquals(registry.getResource(URL + "|1.0.0", StructureDefinition.class).getVersion().getValue(), "1.0.0");
+        assertEquals(registry.getResource(URL + "|1.5.0", StructureDefinition.class).getVersion().getValue(), "1.5.0");
+        assertEquals(registry.getResource(URL + "|3.0.0", StructureDefinition.class).getVersion().getValue(), "3.0.0");
+        assertTrue(registry.hasResource(STATIC_ONLY_URL + "|1.0.0", StructureDefinition.class));
+        assertFalse(registry.hasResource(STATIC_ONLY_URL + "|9.0.0", StructureDefinition.class));
+        assertNull(registry.getResource(URL + "|9.0.0", StructureDefinition.class));
+    }
+
+    @Test
+    public void testProfiles() throws Exception {
+        List<String> profiles = FHIRRegistry.getInstance().getProfiles("Observation").stream()
+                .map(Canonical::getValue)
+                .filter(url -> url.startsWith(URL))
+                .collect(Collectors.toList());
+        assertEquals(profiles, Arrays.asList(
+            URL + "|1.0.0",
+            URL + "|1.5.0",
+            URL + "|2.0.0",
+            URL + "|3.0.0",
+            STATIC_ONLY_URL + "|1.0.0",
+            STATIC_ONLY_URL + "|1.1.0"));
+    }
+
+    private static StructureDefinition createStructureDefinition(String url, String version) {
+        return StructureDefinition.builder()
+                .id("index-test")
+                .url(Uri.of(url))
+                .version(string(version))
+                .status(PublicationStatus.DRAFT)
+                .name(string("Index Test Profile"))
+                .kind(StructureDefinitionKind.RESOURCE)
+                .baseDefinition(Canonical.of("http://hl7.org/fhir/StructureDefinition/Observation"))
+                ._abstract(Boolean.FALSE)
+                .type(Uri.of("Observation"))
+                .build();
+    }
+
+    private static FHIRRegistryResource createRegistryResource(StructureDefinition structureDefinition) {
+        return new FHIRRegistryResource(
+                StructureDefinition.class,
+                structureDefinition.getId(),
+                structureDefinition.getUrl().getValue(),
+                Version.from(structureDefinition.getVersion().getValue()),
+                structureDefinition.getKind().getValue(),
+                structureDefinition.getType().getValue()) {
+            @Override
+            public Resource getResource() {
+                return structureDefinition;
+            }
+        };
+    }
+
+    private static FHIRRegistryResourceProvider createRegistryResourceProvider(boolean isStatic, FHIRRegistryResource... registryResources) {
+        return new FHIRRegistryResourceProvider() {
+            @Override
+            public FHIRRegistryResource getRegistryResource(Class<? extends Resource> resourceType, String url, String version) {
+                List<FHIRRegistryResource> registryResources = getRegistryResources(resourceType).stream()
+                        .filter(registryResource -> registryResource.getUrl().equals(url))
+                        .sorted()
+                        .collect(Collectors.toList());
+                if (!registryResources.isEmpty()) {
+                    if (version != null) {
+                        Version v = Version.from(version);
+                        for (FHIRRegistryResource registryResource : registryResources) {
+                            if (registryResource.getVersion().equals(v)) {
+                                return registryResource;
+                            }
+                        }
+                    } else {
+                        return registryResources.get(registryResources.size() - 1);
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public Collection<FHIRRegistryResource> getRegistryResources(Class<? extends Resource> resourceType) {
+                return getRegistryResources().stream()
+                        .filter(registryResource -> registryResource.getResourceType().equals(resourceType))
+                        .collect(Collectors.toList());
+            }
+
+            @Override
+            public Collection<FHIRRegistryResource> getRegistryResources() {
+                return Arrays.asList(registryResources);
+            }
+
+            @Override
+            public Collection<FHIRRegistryResource> getProfileResources(String type) {
+                return getRegistryResources(StructureDefinition.class).stream()
+                        .filter(registryResource -> type.equals(registryResource.getType()))
+                        .filter(registryResource -> "resource".equals(registryResource.getKind()))
+                        .collect(Collectors.toList());
+            }
+
+            @Override
+            public Collection<FHIRRegistryResource> getSearchParameterResources(String type) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public boolean isStatic() {
+                return isStatic;
+            }
+        };
+    }
+}
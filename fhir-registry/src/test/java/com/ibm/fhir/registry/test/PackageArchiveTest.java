@@ -0,0 +1,129 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.resource.StructureDefinition;
+import com.ibm.fhir.model.type.Boolean;
+import com.ibm.fhir.model.type.Canonical;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.PublicationStatus;
+import com.ibm.fhir.model.type.code.StructureDefinitionKind;
+import com.ibm.fhir.registry.resource.FHIRRegistryResource.Version;
+import com.ibm.fhir.registry.util.Index;
+import com.ibm.fhir.registry.util.Index.Entry;
+import com.ibm.fhir.registry.util.PackageArchive;
+import com.ibm.fhir.registry.util.PackageRegistryResource;
+
+public class PackageArchiveTest {
+    private static final String URL = "http://ibm.com/fhir/StructureDefinition/archive-test";
+
+    private File packageDirectory;
+    private StructureDefinition first;
+    private StructureDefinition second;
+
+    @BeforeClass
+    public void generateArchive() throws Exception {
+        packageDirectory = Files.createTempDirectory("package").toFile();
+        packageDirectory.deleteOnExit();
+
+        first = createStructureDefinition("archive-test-1", "1.0.0");
+        second = createStructureDefinition("archive-test-2", "2.0.0");
+
+        Index index = new Index(1);
+        for (StructureDefinition structureDefinition : new StructureDefinition[] { first, second }) {
+            Entry entry = Entry.entry(structureDefinition);
+            File file = new File(packageDirectory, entry.getFileName());
+            file.deleteOnExit();
+            try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                writer.write(structureDefinition.toString());
+            }
+            index.add(entry);
+        }
+        File indexFile = new File(packageDirectory, ".index.json");
+        indexFile.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(indexFile)) {
+            index.store(out);
+        }
+
+        PackageArchive.generate(packageDirectory);
+        new File(packageDirectory, PackageArchive.ARCHIVE_FILE_NAME).deleteOnExit();
+    }
+
+    @Test
+    public void testLoadResource() throws Exception {
+        PackageArchive archive = PackageArchive.open(archivePath());
+
+        assertEquals(archive.size(), 2);
+        assertTrue(archive.contains("StructureDefinition-archive-test-1.json"));
+        assertFalse(archive.contains("StructureDefinition-unknown.json"));
+        assertEquals(archive.loadResource("StructureDefinition-archive-test-1.json"), first);
+        assertEquals(archive.loadResource("StructureDefinition-archive-test-2.json"), second);
+        assertNull(archive.loadResource("StructureDefinition-unknown.json"));
+    }
+
+    @Test
+    public void testPackageRegistryResource() throws Exception {
+        PackageArchive archive = PackageArchive.open(archivePath());
+        PackageRegistryResource registryResource = new PackageRegistryResource(
+                StructureDefinition.class,
+                second.getId(),
+                URL,
+                Version.from("2.0.0"),
+                "resource",
+                "Observation",
+                "test/package/StructureDefinition-archive-test-2.json",
+                archive);
+
+        Resource resource = registryResource.getResource();
+        assertEquals(resource, second);
+
+        // the resource is reused for as long as it is reachable
+        assertSame(registryResource.getResource(), resource);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidArchive() throws Exception {
+        PackageArchive.open(new File(packageDirectory, ".index.json").toPath());
+    }
+
+    private Path archivePath() {
+        return new File(packageDirectory, PackageArchive.ARCHIVE_FILE_NAME).toPath();
+    }
+
+    private static StructureDefinition createStructureDefinition(String id, String version) {
+        return StructureDefinition.builder()
+                .id(id)
+                .url(Uri.of(URL))
+                .version(string(version))
+                .status(PublicationStatus.DRAFT)
+                .name(string("Archive Test Profile"))
+                .kind(StructureDefinitionKind.RESOURCE)
+                .baseDefinition(Canonical.of("http://hl7.org/fhir/StructureDefinition/Observation"))
+                ._abstract(Boolean.FALSE)
+                .type(Uri.of("Observation"))
+                .build();
+    }
+}
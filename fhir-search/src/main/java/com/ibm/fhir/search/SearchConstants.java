@@ -75,6 +75,9 @@ public class SearchConstants {
     // _page
     public static final String PAGE = "_page";
 
+    // _cursor
+    public static final String CURSOR = "_cursor";
+
     // _elements
     public static final String ELEMENTS = "_elements";
 
@@ -84,12 +87,15 @@ public class SearchConstants {
     // _summary
     public static final String SUMMARY = "_summary";
 
+    // _total
+    public static final String TOTAL = "_total";
+
     // _type
     public static final String RESOURCE_TYPE = "_type";
 
     // set as unmodifiable
     public static final List<String> SEARCH_RESULT_PARAMETER_NAMES =
-            Collections.unmodifiableList(Arrays.asList(SORT, COUNT, PAGE, INCLUDE, REVINCLUDE, ELEMENTS, SUMMARY));
+            Collections.unmodifiableList(Arrays.asList(SORT, COUNT, PAGE, CURSOR, INCLUDE, REVINCLUDE, ELEMENTS, SUMMARY, TOTAL));
 
     // set as unmodifiable
     public static final List<String> SYSTEM_LEVEL_SORT_PARAMETER_NAMES = Collections.unmodifiableList(Arrays.asList("_id", "_lastUpdated"));
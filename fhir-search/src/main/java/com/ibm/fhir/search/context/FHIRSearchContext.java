@@ -10,6 +10,8 @@ import java.util.List;
 
 import com.ibm.fhir.core.context.FHIRPagingContext;
 import com.ibm.fhir.search.SummaryValueSet;
+import com.ibm.fhir.search.TotalValueSet;
+import com.ibm.fhir.search.cursor.SearchCursor;
 import com.ibm.fhir.search.parameters.InclusionParameter;
 import com.ibm.fhir.search.parameters.QueryParameter;
 import com.ibm.fhir.search.parameters.SortParameter;
@@ -83,4 +85,45 @@ public interface FHIRSearchContext extends FHIRPagingContext {
      * Set the value of the summary parameter.
      */
     void setSummaryParameter(SummaryValueSet summary);
+
+    /**
+     * @return true when the total parameter is not null
+     */
+    boolean hasTotalParameter();
+
+    /**
+     * Get the total parameter, which indicates how precisely the total number of matching resources must be counted.
+     *
+     * @return the value of the total parameter or null if the request didn't include one
+     */
+    TotalValueSet getTotalParameter();
+
+    /**
+     * Set the value of the total parameter.
+     */
+    void setTotalParameter(TotalValueSet total);
+
+    /**
+     * Get the cursor passed in the _cursor parameter of the request.
+     *
+     * @return the cursor or null if the request didn't include one
+     */
+    SearchCursor getCursor();
+
+    /**
+     * Set the cursor passed in the _cursor parameter of the request.
+     */
+    void setCursor(SearchCursor cursor);
+
+    /**
+     * Get the cursor from which the next page of results can be fetched.
+     *
+     * @return the cursor or null if the persistence layer doesn't support cursor-based paging for this search
+     */
+    SearchCursor getNextCursor();
+
+    /**
+     * Set the cursor from which the next page of results can be fetched.
+     */
+    void setNextCursor(SearchCursor nextCursor);
 }
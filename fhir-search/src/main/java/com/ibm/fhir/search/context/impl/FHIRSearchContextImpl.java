@@ -11,6 +11,8 @@ import java.util.List;
 
 import com.ibm.fhir.core.context.impl.FHIRPagingContextImpl;
 import com.ibm.fhir.search.SummaryValueSet;
+import com.ibm.fhir.search.TotalValueSet;
+import com.ibm.fhir.search.cursor.SearchCursor;
 import com.ibm.fhir.search.context.FHIRSearchContext;
 import com.ibm.fhir.search.parameters.InclusionParameter;
 import com.ibm.fhir.search.parameters.QueryParameter;
@@ -25,6 +27,9 @@ public class FHIRSearchContextImpl extends FHIRPagingContextImpl implements FHIR
     private List<InclusionParameter> revIncludeParameters = new ArrayList<>();
     private List<String> elementsParameters = null;
     private SummaryValueSet summaryParameter = null; 
+    private TotalValueSet totalParameter = null;
+    private SearchCursor cursor = null;
+    private SearchCursor nextCursor = null;
 
     public FHIRSearchContextImpl() {
         searchParameters = new ArrayList<>();
@@ -134,4 +139,39 @@ public class FHIRSearchContextImpl extends FHIRPagingContextImpl implements FHIR
         this.searchResourceTypes = searchResourceTypes;
 
     }
+
+    @Override
+    public boolean hasTotalParameter() {
+        return this.totalParameter != null;
+    }
+
+    @Override
+    public TotalValueSet getTotalParameter() {
+        return this.totalParameter;
+    }
+
+    @Override
+    public void setTotalParameter(TotalValueSet total) {
+        this.totalParameter = total;
+    }
+
+    @Override
+    public SearchCursor getCursor() {
+        return this.cursor;
+    }
+
+    @Override
+    public void setCursor(SearchCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    @Override
+    public SearchCursor getNextCursor() {
+        return this.nextCursor;
+    }
+
+    @Override
+    public void setNextCursor(SearchCursor nextCursor) {
+        this.nextCursor = nextCursor;
+    }
 }
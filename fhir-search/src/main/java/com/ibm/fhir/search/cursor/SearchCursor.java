@@ -0,0 +1,291 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.cursor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.parameters.InclusionParameter;
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.parameters.QueryParameterValue;
+import com.ibm.fhir.search.parameters.SortParameter;
+
+/**
+ * The position reached by a page of search results, used to fetch the following page by seeking past the last
+ * result rather than skipping over all the preceding results.
+ *
+ * <p>A cursor is passed between the client and the server as an opaque, URL-safe token in the <code>_cursor</code>
+ * parameter of the 'next' link. It records the page number it leads to and a hash of the query which issued it, so
+ * that a cursor which doesn't match the requested <code>_page</code> or search can be ignored in favor of
+ * offset-based paging. For a sorted search, it also records the sort key values of the last result.
+ */
+public final class SearchCursor {
+    private static final char SEPARATOR = '.';
+    private static final char NULL_VALUE = '-';
+
+    // the number of bytes of the SHA-256 digest of the normalized query which are kept in the cursor
+    private static final int QUERY_HASH_BYTES = 8;
+
+    private final int pageNumber;
+    private final String queryHash;
+    private final long lastResourceId;
+    private final List<String> sortValues;
+
+    /**
+     * @param pageNumber the number of the page which starts after this cursor
+     * @param queryHash the hash of the query which issued this cursor, as returned by {@link #hashQuery(Class, FHIRSearchContext)}
+     * @param lastResourceId the id of the last resource on the preceding page
+     */
+    public SearchCursor(int pageNumber, String queryHash, long lastResourceId) {
+        this(pageNumber, queryHash, lastResourceId, Collections.emptyList());
+    }
+
+    /**
+     * @param pageNumber the number of the page which starts after this cursor
+     * @param queryHash the hash of the query which issued this cursor, as returned by {@link #hashQuery(Class, FHIRSearchContext)}
+     * @param lastResourceId the id of the last resource on the preceding page
+     * @param sortValues the sort key values of the last resource on the preceding page, in the order of the sort keys;
+     *        a value is null if the resource has no value for its sort key
+     */
+    public SearchCursor(int pageNumber, String queryHash, long lastResourceId, List<String> sortValues) {
+        if (pageNumber < 1) {
+            throw new IllegalArgumentException("pageNumber must be greater than zero");
+        }
+        Objects.requireNonNull(queryHash, "queryHash");
+        if (queryHash.isEmpty() || queryHash.indexOf(SEPARATOR) >= 0) {
+            throw new IllegalArgumentException("Invalid queryHash '" + queryHash + "'");
+        }
+        this.pageNumber = pageNumber;
+        this.queryHash = queryHash;
+        this.lastResourceId = lastResourceId;
+        this.sortValues = Collections.unmodifiableList(new ArrayList<>(Objects.requireNonNull(sortValues, "sortValues")));
+    }
+
+    /**
+     * @return the number of the page which starts after this cursor
+     */
+    public int getPageNumber() {
+        return pageNumber;
+    }
+
+    /**
+     * @return the hash of the query which issued this cursor
+     */
+    public String getQueryHash() {
+        return queryHash;
+    }
+
+    /**
+     * @return the id of the last resource on the preceding page
+     */
+    public long getLastResourceId() {
+        return lastResourceId;
+    }
+
+    /**
+     * @return the sort key values of the last resource on the preceding page, which is empty for an unsorted search
+     */
+    public List<String> getSortValues() {
+        return sortValues;
+    }
+
+    /**
+     * Determine whether this cursor can be used to fetch the current page of a search.
+     *
+     * @param resourceType the type of the resources being searched for
+     * @param searchContext the search context of the request
+     * @return true if this cursor leads to the requested page and was issued by the same query
+     */
+    public boolean matches(Class<?> resourceType, FHIRSearchContext searchContext) {
+        return pageNumber == searchContext.getPageNumber() && queryHash.equals(hashQuery(resourceType, searchContext));
+    }
+
+    /**
+     * @return the opaque token for this cursor
+     */
+    public String encode() {
+        StringBuilder value = new StringBuilder();
+        value.append(pageNumber).append(SEPARATOR).append(queryHash).append(SEPARATOR).append(lastResourceId);
+        for (String sortValue : sortValues) {
+            // each sort value is prefixed with its length, because it may contain the separator
+            value.append(SEPARATOR);
+            if (sortValue == null) {
+                value.append(NULL_VALUE);
+            } else {
+                value.append(sortValue.length()).append(':').append(sortValue);
+            }
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param token a token previously returned by {@link #encode()}
+     * @return the cursor
+     * @throws IllegalArgumentException if the token is not a valid cursor
+     */
+    public static SearchCursor decode(String token) {
+        Objects.requireNonNull(token, "token");
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int pageEnd = value.indexOf(SEPARATOR);
+            int hashEnd = value.indexOf(SEPARATOR, pageEnd + 1);
+            if (pageEnd < 0 || hashEnd < 0) {
+                throw new IllegalArgumentException("Invalid cursor '" + token + "'");
+            }
+            int idEnd = value.indexOf(SEPARATOR, hashEnd + 1);
+            if (idEnd < 0) {
+                idEnd = value.length();
+            }
+            int pageNumber = Integer.parseInt(value.substring(0, pageEnd));
+            String queryHash = value.substring(pageEnd + 1, hashEnd);
+            long lastResourceId = Long.parseLong(value.substring(hashEnd + 1, idEnd));
+
+            List<String> sortValues = new ArrayList<>();
+            int position = idEnd;
+            while (position < value.length()) {
+                // position is at the separator which precedes the next sort value
+                position++;
+                if (position < value.length() && value.charAt(position) == NULL_VALUE) {
+                    sortValues.add(null);
+                    position++;
+                } else {
+                    int lengthEnd = value.indexOf(':', position);
+                    int valueEnd = lengthEnd + 1 + Integer.parseInt(value.substring(position, lengthEnd));
+                    sortValues.add(value.substring(lengthEnd + 1, valueEnd));
+                    position = valueEnd;
+                }
+                if (position < value.length() && value.charAt(position) != SEPARATOR) {
+                    throw new IllegalArgumentException("Invalid cursor '" + token + "'");
+                }
+            }
+            return new SearchCursor(pageNumber, queryHash, lastResourceId, sortValues);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // NumberFormatException and Base64 decoding errors are both IllegalArgumentExceptions
+            throw new IllegalArgumentException("Invalid cursor '" + token + "'", e);
+        }
+    }
+
+    /**
+     * Compute the hash of the normalized query of a search, which consists of the resource type and the parameters
+     * that determine the results and their order: the search parameters (including compartment criteria), the sort
+     * and inclusion parameters, the resource types of a system-level search and the page size.
+     *
+     * @param resourceType the type of the resources being searched for
+     * @param searchContext the search context of the request
+     * @return a URL-safe hash of the normalized query
+     */
+    public static String hashQuery(Class<?> resourceType, FHIRSearchContext searchContext) {
+        List<String> fields = new ArrayList<>();
+        fields.add(resourceType.getSimpleName());
+        fields.add(Integer.toString(searchContext.getPageSize()));
+        List<String> searchParameters = new ArrayList<>();
+        for (QueryParameter parameter : searchContext.getSearchParameters()) {
+            StringBuilder normalized = new StringBuilder();
+            for (QueryParameter link = parameter; link != null; link = link.getNextParameter()) {
+                normalizeParameter(normalized, link);
+            }
+            searchParameters.add(normalized.toString());
+        }
+        // the search parameters are ANDed, so their order doesn't matter
+        Collections.sort(searchParameters);
+        fields.addAll(searchParameters);
+        fields.add("_sort");
+        for (SortParameter parameter : searchContext.getSortParameters()) {
+            fields.add(parameter.getCode() + ':' + parameter.getDirection().value());
+        }
+        fields.add("_include");
+        for (InclusionParameter parameter : searchContext.getIncludeParameters()) {
+            fields.add(parameter.toString());
+        }
+        fields.add("_revinclude");
+        for (InclusionParameter parameter : searchContext.getRevIncludeParameters()) {
+            fields.add(parameter.toString());
+        }
+        fields.add("_type");
+        if (searchContext.getSearchResourceTypes() != null) {
+            fields.addAll(searchContext.getSearchResourceTypes());
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String field : fields) {
+                // each field is prefixed with its length so that different queries can't produce the same input
+                digest.update((field.length() + ":" + field).getBytes(StandardCharsets.UTF_8));
+            }
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest.digest(), QUERY_HASH_BYTES));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void normalizeParameter(StringBuilder normalized, QueryParameter parameter) {
+        normalized.append(parameter.getCode().length()).append(':').append(parameter.getCode());
+        normalized.append(':').append(parameter.getModifier() == null ? "" : parameter.getModifier().value());
+        normalized.append(':').append(parameter.getModifierResourceTypeName() == null ? "" : parameter.getModifierResourceTypeName());
+        normalized.append(':').append(parameter.isInclusionCriteria());
+        for (QueryParameterValue value : parameter.getValues()) {
+            // QueryParameterValue.toString() isn't used, because it can only be called once per value
+            normalized.append('[');
+            appendField(normalized, value.getPrefix() == null ? null : value.getPrefix().value());
+            appendField(normalized, value.getValueNumber() == null ? null : value.getValueNumber().toPlainString());
+            appendField(normalized, value.getValueSystem());
+            appendField(normalized, value.getValueCode());
+            appendField(normalized, value.getValueString());
+            appendField(normalized, value.getValueDateLowerBound());
+            appendField(normalized, value.getValueDateUpperBound());
+            if (value.getComponent() != null) {
+                for (QueryParameter component : value.getComponent()) {
+                    normalizeParameter(normalized, component);
+                }
+            }
+            normalized.append(']');
+        }
+        normalized.append(';');
+    }
+
+    private static void appendField(StringBuilder normalized, Object field) {
+        if (field == null) {
+            normalized.append("-1:");
+        } else {
+            String value = field.toString();
+            normalized.append(value.length()).append(':').append(value);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SearchCursor)) {
+            return false;
+        }
+        SearchCursor other = (SearchCursor) obj;
+        return pageNumber == other.pageNumber && queryHash.equals(other.queryHash) && lastResourceId == other.lastResourceId
+                && sortValues.equals(other.sortValues);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(pageNumber, queryHash, lastResourceId, sortValues);
+    }
+
+    @Override
+    public String toString() {
+        return "SearchCursor [pageNumber=" + pageNumber + ", queryHash=" + queryHash + ", lastResourceId=" + lastResourceId
+                + ", sortValues=" + sortValues + "]";
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.parameters;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+
+import com.ibm.fhir.model.resource.SearchParameter;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.FHIRPathParser;
+import com.ibm.fhir.path.FHIRPathParser.ExpressionContext;
+import com.ibm.fhir.path.FHIRPathType;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+import com.ibm.fhir.path.exception.FHIRPathException;
+import com.ibm.fhir.path.util.FHIRPathUtil;
+
+/**
+ * A precompiled plan for extracting the values of a fixed list of search parameters from resources of a single
+ * resource type.
+ *
+ * <p>Each search parameter expression is split into its top-level union branches. The leading run of plain member
+ * invocations in each branch (for example <code>Observation.code</code> in
+ * <code>Observation.code.where(...)</code>) is merged into a prefix tree shared by all of the search parameters, so
+ * each distinct path prefix is navigated only once per resource. Only the remainder of each branch is evaluated
+ * with the {@link FHIRPathEvaluator}, using the nodes selected by its prefix as the initial context. Expressions that
+ * cannot be split this way are evaluated in full, exactly as before.
+ *
+ * <p>Plans are immutable and may be shared across threads.
+ */
+public class ExtractionPlan {
+    private static final Logger log = Logger.getLogger(ExtractionPlan.class.getName());
+
+    private static final String SYSTEM_NAMESPACE = "System";
+
+    private static final String EXTRACT_PARAMETERS_LOGGING = "extractParameterValues: [%s] [%s]";
+    private static final String UNSUPPORTED_EXCEPTION =
+            "Search Parameter includes an unsupported operation or bad expression : [%s] [%s] [%s]";
+    private static final String UNSUPPORTED_EXPR_NULL =
+            "An empty expression is found or the parameter type is unsupported [%s][%s]";
+
+    private final List<SearchParameter> parameters;
+    private final List<Step> steps;
+    private final List<ParameterPlan> parameterPlans;
+
+    private ExtractionPlan(List<SearchParameter> parameters) {
+        this.parameters = Collections.unmodifiableList(new ArrayList<>(parameters));
+
+        // the prefix tree is flattened into a list of steps in which each step follows its parent
+        Step root = new Step(null, null, -1);
+        List<Step> steps = new ArrayList<>();
+        List<ParameterPlan> parameterPlans = new ArrayList<>();
+        for (SearchParameter parameter : parameters) {
+            if (parameter.getExpression() == null) {
+                if (log.isLoggable(Level.FINER)) {
+                    log.finer(String.format(UNSUPPORTED_EXPR_NULL, parameter.getType(), parameter.getCode().getValue()));
+                }
+                continue;
+            }
+            parameterPlans.add(plan(parameter, root, steps));
+        }
+        this.steps = Collections.unmodifiableList(steps);
+        this.parameterPlans = Collections.unmodifiableList(parameterPlans);
+    }
+
+    /**
+     * Build a plan for the passed search parameters
+     *
+     * @param parameters
+     *     the search parameters applicable to a resource type, in the order their values should be extracted
+     * @return
+     *     the plan
+     */
+    public static ExtractionPlan build(List<SearchParameter> parameters) {
+        return new ExtractionPlan(parameters);
+    }
+
+    /**
+     * @return the search parameters this plan was built for
+     */
+    public List<SearchParameter> getSearchParameters() {
+        return parameters;
+    }
+
+    /**
+     * Indicates whether this plan was built for exactly these search parameter instances
+     *
+     * @param parameters
+     * @return
+     */
+    public boolean isPlanFor(List<SearchParameter> parameters) {
+        if (parameters.size() != this.parameters.size()) {
+            return false;
+        }
+        for (int i = 0; i < parameters.size(); i++) {
+            if (parameters.get(i) != this.parameters.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Extract the values of each search parameter from the resource associated with the evaluation context.
+     *
+     * <p>A search parameter whose expression can't be evaluated is logged and omitted from the result.
+     *
+     * @param evaluationContext
+     *     the evaluation context for the resource
+     * @param skipEmpty
+     *     whether to omit search parameters which have no values
+     * @return
+     *     the values of each search parameter, in the order of the search parameters passed to {@link #build(List)}
+     */
+    public Map<SearchParameter, List<FHIRPathNode>> extract(EvaluationContext evaluationContext, boolean skipEmpty) {
+        Map<SearchParameter, List<FHIRPathNode>> result = new LinkedHashMap<>();
+
+        FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
+
+        // navigate the shared prefixes once
+        Collection<FHIRPathNode> rootContext = Collections.singletonList(evaluationContext.getTree().getRoot());
+        List<Collection<FHIRPathNode>> stepResults = new ArrayList<>(steps.size());
+        for (Step step : steps) {
+            Collection<FHIRPathNode> context = (step.parentIndex < 0) ? rootContext : stepResults.get(step.parentIndex);
+            stepResults.add(navigate(context, step.identifier));
+        }
+
+        for (ParameterPlan parameterPlan : parameterPlans) {
+            SearchParameter parameter = parameterPlan.parameter;
+            String expression = parameter.getExpression().getValue();
+
+            // Outputs the Expression and the Name of the SearchParameter
+            if (log.isLoggable(Level.FINEST)) {
+                log.finest(String.format(EXTRACT_PARAMETERS_LOGGING, parameter.getCode().getValue(), expression));
+            }
+
+            try {
+                Collection<FHIRPathNode> tmpResults;
+                if (parameterPlan.branches == null) {
+                    tmpResults = evaluator.evaluate(evaluationContext, expression);
+                } else if (parameterPlan.branches.size() == 1) {
+                    tmpResults = parameterPlan.branches.get(0).evaluate(evaluator, evaluationContext, stepResults);
+                } else {
+                    // union
+                    Set<FHIRPathNode> union = new LinkedHashSet<>();
+                    for (Branch branch : parameterPlan.branches) {
+                        union.addAll(branch.evaluate(evaluator, evaluationContext, stepResults));
+                    }
+                    tmpResults = union;
+                }
+
+                if (log.isLoggable(Level.FINEST)) {
+                    log.finest("Expression [" + expression + "] parameter-code ["
+                            + parameter.getCode().getValue() + "] Size -[" + tmpResults.size() + "]");
+                }
+
+                // Adds only if !skipEmpty || tmpResults is not empty
+                if (!tmpResults.isEmpty() || !skipEmpty) {
+                    result.put(parameter, new ArrayList<>(tmpResults));
+                }
+            } catch (java.lang.UnsupportedOperationException | FHIRPathException uoe) {
+                // switched to using code instead of name
+                log.warning(String.format(UNSUPPORTED_EXCEPTION, parameter.getCode().getValue(),
+                        expression, uoe.getMessage()));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Split the search parameter expression into branches, adding the path prefix of each branch to the prefix tree
+     */
+    private static ParameterPlan plan(SearchParameter parameter, Step root, List<Step> steps) {
+        String expression = parameter.getExpression().getValue();
+
+        ExpressionContext expressionContext;
+        try {
+            expressionContext = FHIRPathUtil.compile(expression);
+        } catch (RuntimeException e) {
+            // leave it to the evaluator to report the error
+            return new ParameterPlan(parameter, null);
+        }
+
+        List<ExpressionContext> unionBranches = new LinkedList<>();
+        while (expressionContext instanceof FHIRPathParser.UnionExpressionContext) {
+            FHIRPathParser.UnionExpressionContext union = (FHIRPathParser.UnionExpressionContext) expressionContext;
+            unionBranches.add(0, union.expression(1));
+            expressionContext = union.expression(0);
+        }
+        unionBranches.add(0, expressionContext);
+
+        List<Branch> branches = new ArrayList<>(unionBranches.size());
+        for (ExpressionContext unionBranch : unionBranches) {
+            List<FHIRPathParser.InvocationContext> invocations = getInvocations(unionBranch);
+            if (invocations == null || !(invocations.get(0) instanceof FHIRPathParser.MemberInvocationContext)) {
+                branches.add(new Branch(-1, text(expression, unionBranch, unionBranch)));
+                continue;
+            }
+
+            Step step = root;
+            int i = 0;
+            while (i < invocations.size() && invocations.get(i) instanceof FHIRPathParser.MemberInvocationContext) {
+                String identifier = ((FHIRPathParser.MemberInvocationContext) invocations.get(i)).identifier().getText();
+                if (identifier.startsWith("`")) {
+                    identifier = identifier.substring(1, identifier.length() - 1);
+                }
+                step = step.child(identifier, steps);
+                i++;
+            }
+
+            String tail = null;
+            if (i < invocations.size()) {
+                tail = text(expression, invocations.get(i), unionBranch);
+                if (tail.contains("%")) {
+                    // external constants such as %context depend on the initial context, so evaluate the whole branch
+                    branches.add(new Branch(-1, text(expression, unionBranch, unionBranch)));
+                    continue;
+                }
+            }
+            branches.add(new Branch(step.index, tail));
+        }
+
+        if (branches.size() == 1 && branches.get(0).stepIndex < 0) {
+            // nothing to share
+            return new ParameterPlan(parameter, null);
+        }
+        return new ParameterPlan(parameter, branches);
+    }
+
+    /**
+     * @return the chain of invocations which make up the expression, or null if it isn't a simple invocation chain
+     */
+    private static List<FHIRPathParser.InvocationContext> getInvocations(ExpressionContext expressionContext) {
+        LinkedList<FHIRPathParser.InvocationContext> invocations = new LinkedList<>();
+        while (expressionContext instanceof FHIRPathParser.InvocationExpressionContext) {
+            FHIRPathParser.InvocationExpressionContext invocationExpression = (FHIRPathParser.InvocationExpressionContext) expressionContext;
+            invocations.addFirst(invocationExpression.invocation());
+            expressionContext = invocationExpression.expression();
+        }
+        if (expressionContext instanceof FHIRPathParser.TermExpressionContext) {
+            FHIRPathParser.TermContext term = ((FHIRPathParser.TermExpressionContext) expressionContext).term();
+            if (term instanceof FHIRPathParser.InvocationTermContext) {
+                invocations.addFirst(((FHIRPathParser.InvocationTermContext) term).invocation());
+                return invocations;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the original text of the expression from the start of the first context to the end of the last
+     */
+    private static String text(String expression, ParserRuleContext first, ParserRuleContext last) {
+        return expression.substring(first.getStart().getStartIndex(), last.getStop().getStopIndex() + 1);
+    }
+
+    /**
+     * Navigate to the children with the given name, following the same rules as a FHIRPath member invocation
+     */
+    private static Collection<FHIRPathNode> navigate(Collection<FHIRPathNode> context, String identifier) {
+        if (context.isEmpty()) {
+            return context;
+        }
+        if (context.size() == 1) {
+            FHIRPathNode node = context.iterator().next();
+            if (hasTypeName(node.type(), identifier)) {
+                return context;
+            }
+        }
+        List<FHIRPathNode> result = new ArrayList<>();
+        for (FHIRPathNode node : context) {
+            for (FHIRPathNode child : node.children()) {
+                if (identifier.equals(child.name())) {
+                    result.add(child);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean hasTypeName(FHIRPathType type, String identifier) {
+        if (SYSTEM_NAMESPACE.equals(type.namespace())) {
+            return false;
+        }
+        while (!FHIRPathType.FHIR_ANY.equals(type)) {
+            if (type.getName().equals(identifier)) {
+                return true;
+            }
+            type = type.baseType();
+        }
+        return false;
+    }
+
+    /**
+     * A node in the prefix tree
+     */
+    private static class Step {
+        private final String identifier;
+        private final int parentIndex;
+        private final int index;
+        private final Map<String, Step> children = new LinkedHashMap<>();
+
+        private Step(String identifier, Step parent, int index) {
+            this.identifier = identifier;
+            this.parentIndex = (parent == null) ? -1 : parent.index;
+            this.index = index;
+        }
+
+        private Step child(String identifier, List<Step> steps) {
+            Step child = children.get(identifier);
+            if (child == null) {
+                child = new Step(identifier, this, steps.size());
+                children.put(identifier, child);
+                steps.add(child);
+            }
+            return child;
+        }
+    }
+
+    /**
+     * A top-level union branch of a search parameter expression
+     */
+    private static class Branch {
+        // the prefix tree step for the path prefix of this branch, or -1 if the branch has no such prefix
+        private final int stepIndex;
+        // the remainder of the branch (or the whole branch when there is no prefix); null if there is no remainder
+        private final String expression;
+
+        private Branch(int stepIndex, String expression) {
+            this.stepIndex = stepIndex;
+            this.expression = expression;
+        }
+
+        private Collection<FHIRPathNode> evaluate(FHIRPathEvaluator evaluator, EvaluationContext evaluationContext,
+                List<Collection<FHIRPathNode>> stepResults) throws FHIRPathException {
+            if (stepIndex < 0) {
+                return evaluator.evaluate(evaluationContext, expression);
+            }
+            Collection<FHIRPathNode> nodes = stepResults.get(stepIndex);
+            if (expression == null) {
+                return nodes;
+            }
+            return evaluator.evaluate(evaluationContext, expression, nodes);
+        }
+    }
+
+    /**
+     * The plan for a single search parameter
+     */
+    private static class ParameterPlan {
+        private final SearchParameter parameter;
+        // null if the expression is to be evaluated in full
+        private final List<Branch> branches;
+
+        private ParameterPlan(SearchParameter parameter, List<Branch> branches) {
+            this.parameter = parameter;
+            this.branches = branches;
+        }
+    }
+}
@@ -17,11 +17,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -41,19 +41,20 @@ import com.ibm.fhir.model.type.code.ResourceType;
 import com.ibm.fhir.model.util.JsonSupport;
 import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.path.FHIRPathNode;
-import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
 import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
-import com.ibm.fhir.path.exception.FHIRPathException;
 import com.ibm.fhir.search.SearchConstants;
 import com.ibm.fhir.search.SearchConstants.Modifier;
 import com.ibm.fhir.search.SearchConstants.Type;
 import com.ibm.fhir.search.SummaryValueSet;
+import com.ibm.fhir.search.TotalValueSet;
 import com.ibm.fhir.search.compartment.CompartmentUtil;
 import com.ibm.fhir.search.context.FHIRSearchContext;
 import com.ibm.fhir.search.context.FHIRSearchContextFactory;
+import com.ibm.fhir.search.cursor.SearchCursor;
 import com.ibm.fhir.search.date.DateTimeHandler;
 import com.ibm.fhir.search.exception.FHIRSearchException;
 import com.ibm.fhir.search.exception.SearchExceptionUtil;
+import com.ibm.fhir.search.parameters.ExtractionPlan;
 import com.ibm.fhir.search.parameters.InclusionParameter;
 import com.ibm.fhir.search.parameters.ParametersMap;
 import com.ibm.fhir.search.parameters.ParametersUtil;
@@ -73,11 +74,8 @@ public class SearchUtil {
     private static final Logger log = Logger.getLogger(CLASSNAME);
 
     // Logging Strings
-    private static final String EXTRACT_PARAMETERS_LOGGING = "extractParameterValues: [%s] [%s]";
     private static final String NO_TENANT_SP_MAP_LOGGING =
             "No tenant-specific search parameters found for tenant '%s'; trying %s ";
-    private static final String UNSUPPORTED_EXCEPTION =
-            "Search Parameter includes an unsupported operation or bad expression : [%s] [%s] [%s]";
 
     // Exception Strings
     private static final String MODIFIER_NOT_ALLOWED_WITH_CHAINED_EXCEPTION = "Modifier: '%s' not allowed on chained parameter";
@@ -86,8 +84,6 @@ public class SearchUtil {
     private static final String SEARCH_PARAMETER_MODIFIER_NAME =
             "Search parameter: '%s' must have resource type name modifier";
     private static final String INVALID_TARGET_TYPE_EXCEPTION = "Invalid target type for the Inclusion Parameter.";
-    private static final String UNSUPPORTED_EXPR_NULL =
-            "An empty expression is found or the parameter type is unsupported [%s][%s]";
 
     private static final String MODIFIYERRESOURCETYPE_NOT_ALLOWED_FOR_RESOURCETYPE =
             "Modifier resource type [%s] is not allowed for search parameter [%s] of resource type [%s].";
@@ -125,6 +121,13 @@ public class SearchUtil {
      */
     private static TenantSpecificSearchParameterCache searchParameterCache = new TenantSpecificSearchParameterCache();
 
+    /*
+     * The plans used to extract search parameter values from resources, organized by tenant-id and then by resource
+     * type. A plan is rebuilt whenever the search parameters applicable to its resource type change (for example,
+     * when the tenant's extension-search-parameters.json file is reloaded).
+     */
+    private static final Map<String, Map<String, ExtractionPlan>> extractionPlanCache = new ConcurrentHashMap<>();
+
     private SearchUtil() {
         // No Operation
         // Hides the Initialization
@@ -526,59 +529,36 @@ public class SearchUtil {
     public static Map<SearchParameter, List<FHIRPathNode>> extractParameterValues(Resource resource, boolean skipEmpty)
             throws Exception {
 
-        Map<SearchParameter, List<FHIRPathNode>> result = new LinkedHashMap<>();
-
         // Get the Parameters for the class.
-        Class<?> resourceType = resource.getClass();
-
-        // Create one time.
-        FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
-        EvaluationContext evaluationContext = new EvaluationContext(resource);
-
-        List<SearchParameter> parameters = getApplicableSearchParameters(resourceType.getSimpleName());
-
-        for (SearchParameter parameter : parameters) {
-
-            com.ibm.fhir.model.type.String expression = parameter.getExpression();
+        String resourceType = resource.getClass().getSimpleName();
+        List<SearchParameter> parameters = getApplicableSearchParameters(resourceType);
 
-            // Outputs the Expression and the Name of the SearchParameter
-            if (log.isLoggable(Level.FINEST)) {
-                String loggedValue = "EMPTY";
-                if (expression != null) {
-                    loggedValue = expression.getValue();
-                }
-
-                log.finest(String.format(EXTRACT_PARAMETERS_LOGGING, parameter.getCode().getValue(), loggedValue));
-            }
-
-            // Process the Expression
-            if (expression == null) {
-                if (log.isLoggable(Level.FINER)) {
-                    log.finer(String.format(UNSUPPORTED_EXPR_NULL, parameter.getType(), parameter.getCode().getValue()));
-                }
-                continue;
-            }
-            try {
-                Collection<FHIRPathNode> tmpResults = evaluator.evaluate(evaluationContext, expression.getValue());
-
-                if (log.isLoggable(Level.FINEST)) {
-                    log.finest("Expression [" + expression.getValue() + "] parameter-code ["
-                            + parameter.getCode().getValue() + "] Size -[" + tmpResults.size() + "]");
-                }
+        return getExtractionPlan(resourceType, parameters).extract(new EvaluationContext(resource), skipEmpty);
+    }
 
-                // Adds only if !skipEmpty || tmpResults is not empty
-                if (!tmpResults.isEmpty() || !skipEmpty) {
-                    result.put(parameter, new ArrayList<>(tmpResults));
-                }
+    /**
+     * Returns the cached extraction plan for the specified resource type and the current tenant, building a new plan
+     * if there is no cached plan or if the applicable search parameters have changed since it was built.
+     *
+     * @param resourceType
+     *                     the resource type
+     * @param parameters
+     *                     the search parameters currently applicable to the resource type
+     * @return the extraction plan
+     */
+    private static ExtractionPlan getExtractionPlan(String resourceType, List<SearchParameter> parameters) {
+        String tenantId = FHIRRequestContext.get().getTenantId();
+        Map<String, ExtractionPlan> tenantPlans = extractionPlanCache.computeIfAbsent(tenantId, k -> new ConcurrentHashMap<>());
 
-            } catch (java.lang.UnsupportedOperationException | FHIRPathException uoe) {
-                // switched to using code instead of name
-                log.warning(String.format(UNSUPPORTED_EXCEPTION, parameter.getCode().getValue(),
-                        expression.getValue(), uoe.getMessage()));
+        ExtractionPlan plan = tenantPlans.get(resourceType);
+        if (plan == null || !plan.isPlanFor(parameters)) {
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Building search parameter extraction plan for tenant '" + tenantId + "' and resource type '" + resourceType + "'");
             }
+            plan = ExtractionPlan.build(parameters);
+            tenantPlans.put(resourceType, plan);
         }
-
-        return result;
+        return plan;
     }
 
     public static FHIRSearchContext parseQueryParameters(Class<?> resourceType,
@@ -1070,6 +1050,8 @@ public class SearchUtil {
             } else if (SearchConstants.PAGE.equals(name)) {
                 int pageNumber = Integer.parseInt(first);
                 context.setPageNumber(pageNumber);
+            } else if (SearchConstants.CURSOR.equals(name)) {
+                context.setCursor(SearchCursor.decode(first));
             } else if (SearchConstants.SORT.equals(name)) {
                 // in R4, we only look for _sort
                 sort.parseSortParameter(resourceTypeName, context, values, lenient);
@@ -1079,6 +1061,8 @@ public class SearchUtil {
                 parseElementsParameter(resourceType, context, values, lenient);
             } else if (SearchConstants.SUMMARY.equals(name) && first != null) {
                 context.setSummaryParameter(SummaryValueSet.from(first));
+            } else if (SearchConstants.TOTAL.equals(name) && first != null) {
+                context.setTotalParameter(TotalValueSet.from(first));
             }
         } catch (FHIRSearchException se) {
             throw se;
@@ -0,0 +1,160 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.cursor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Practitioner;
+import com.ibm.fhir.search.SearchConstants.Type;
+import com.ibm.fhir.search.TotalValueSet;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.context.FHIRSearchContextFactory;
+import com.ibm.fhir.search.exception.FHIRSearchException;
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.parameters.QueryParameterValue;
+import com.ibm.fhir.search.parameters.SortParameter;
+import com.ibm.fhir.search.sort.Sort.Direction;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Tests the encoding of the _cursor token and its parsing by SearchUtil
+ */
+public class SearchCursorTest {
+
+    @Test
+    public void testEncodeDecode() {
+        SearchCursor cursor = new SearchCursor(3, "abc_-09", 1234567890123L);
+        String token = cursor.encode();
+
+        // the token must be usable as-is in a query string
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), token);
+        assertFalse(token.contains("1234567890123"));
+
+        SearchCursor decoded = SearchCursor.decode(token);
+        assertEquals(decoded, cursor);
+        assertEquals(decoded.getPageNumber(), 3);
+        assertEquals(decoded.getQueryHash(), "abc_-09");
+        assertEquals(decoded.getLastResourceId(), 1234567890123L);
+        assertTrue(decoded.getSortValues().isEmpty());
+    }
+
+    @Test
+    public void testEncodeDecodeSortValues() {
+        List<String> sortValues = Arrays.asList("a.b:c", null, "", "2020-01-01T00:00:00.123456Z", "-");
+        SearchCursor cursor = new SearchCursor(2, "hash", 42, sortValues);
+        String token = cursor.encode();
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), token);
+
+        SearchCursor decoded = SearchCursor.decode(token);
+        assertEquals(decoded, cursor);
+        assertEquals(decoded.getLastResourceId(), 42);
+        assertEquals(decoded.getSortValues(), sortValues);
+    }
+
+    @Test
+    public void testHashQuery() {
+        FHIRSearchContext context = createSearchContext("Smith", 10);
+        String hash = SearchCursor.hashQuery(Patient.class, context);
+        assertTrue(hash.matches("[A-Za-z0-9_-]+"), hash);
+
+        // the page number and the parameters which don't select or order the results don't change the hash
+        FHIRSearchContext other = createSearchContext("Smith", 10);
+        other.setPageNumber(3);
+        other.setTotalParameter(TotalValueSet.NONE);
+        assertEquals(SearchCursor.hashQuery(Patient.class, other), hash);
+
+        // the parameter values, the sort order, the page size and the resource type do
+        assertNotEquals(SearchCursor.hashQuery(Patient.class, createSearchContext("Jones", 10)), hash);
+        assertNotEquals(SearchCursor.hashQuery(Patient.class, createSearchContext("Smith", 5)), hash);
+        assertNotEquals(SearchCursor.hashQuery(Practitioner.class, context), hash);
+        other = createSearchContext("Smith", 10);
+        other.setSortParameters(Collections.singletonList(new SortParameter("birthdate", Type.DATE, Direction.INCREASING)));
+        assertNotEquals(SearchCursor.hashQuery(Patient.class, other), hash);
+
+        context.setPageNumber(2);
+        assertTrue(new SearchCursor(2, hash, 1).matches(Patient.class, context));
+        assertFalse(new SearchCursor(3, hash, 1).matches(Patient.class, context));
+        assertFalse(new SearchCursor(2, "other", 1).matches(Patient.class, context));
+    }
+
+    private FHIRSearchContext createSearchContext(String name, int pageSize) {
+        QueryParameterValue value = new QueryParameterValue();
+        value.setValueString(name);
+        List<QueryParameter> searchParameters = new ArrayList<>();
+        searchParameters.add(new QueryParameter(Type.STRING, "name", null, null, Collections.singletonList(value)));
+        FHIRSearchContext context = FHIRSearchContextFactory.createSearchContext();
+        context.setSearchParameters(searchParameters);
+        context.setPageSize(pageSize);
+        return context;
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDecodeInvalidSortValue() {
+        // the length of the sort value is longer than the rest of the token
+        SearchCursor.decode(Base64.getUrlEncoder().encodeToString("2.hash.42.5:abc".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDecodeInvalidBase64() {
+        SearchCursor.decode("not a cursor!");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDecodeInvalidContent() {
+        SearchCursor.decode("bm90LWEtY3Vyc29y");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidPageNumber() {
+        new SearchCursor(0, "hash", 1);
+    }
+
+    @Test
+    public void testParseCursorParameter() throws Exception {
+        SearchCursor cursor = new SearchCursor(2, "hash", 42);
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_page", Arrays.asList("2"));
+        queryParameters.put("_cursor", Arrays.asList(cursor.encode()));
+
+        FHIRSearchContext context = SearchUtil.parseQueryParameters(Patient.class, queryParameters);
+        assertEquals(context.getPageNumber(), 2);
+        assertEquals(context.getCursor(), cursor);
+        assertNull(context.getNextCursor());
+        assertTrue(context.getSearchParameters().isEmpty());
+    }
+
+    @Test(expectedExceptions = FHIRSearchException.class)
+    public void testParseInvalidCursorParameterStrict() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_cursor", Arrays.asList("not a cursor!"));
+        SearchUtil.parseQueryParameters(Patient.class, queryParameters, false);
+    }
+
+    @Test
+    public void testParseInvalidCursorParameterLenient() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_cursor", Arrays.asList("not a cursor!"));
+        FHIRSearchContext context = SearchUtil.parseQueryParameters(Patient.class, queryParameters, true);
+        assertNull(context.getCursor());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.parameters;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.examples.ExamplesUtil;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.SearchParameter;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Markdown;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.PublicationStatus;
+import com.ibm.fhir.model.type.code.ResourceType;
+import com.ibm.fhir.model.type.code.SearchParamType;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+
+/**
+ * Tests that extracting search parameter values with an ExtractionPlan gives the same results as evaluating each
+ * search parameter expression in full
+ */
+public class ExtractionPlanTest {
+    private static final String[] EXPRESSIONS = {
+            "Observation.code",
+            "Observation.code | Observation.component.code",
+            "Observation.component.code.coding.where(system = 'http://loinc.org').code",
+            "Observation.subject.where(resolve() is Patient)",
+            "(Observation.value as Quantity) | (Observation.component.value as Quantity)",
+            "Observation.component.value",
+            "Observation.effective",
+            "Resource.id",
+            "Observation.`subject`.reference",
+            "Observation.performer | Observation.subject | Observation.subject",
+            "Observation.notAnElement.count()",
+            "Observation.code.coding.code.first()",
+            "Observation.code.coding.where(%context.exists())"
+    };
+
+    @Test
+    public void testExtractMatchesEvaluation() throws Exception {
+        Observation observation = read("json/spec/observation-example-bloodpressure.json");
+
+        List<SearchParameter> parameters = new ArrayList<>();
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            parameters.add(searchParameter("code" + i, EXPRESSIONS[i]));
+        }
+
+        ExtractionPlan plan = ExtractionPlan.build(parameters);
+        Map<SearchParameter, List<FHIRPathNode>> actual = plan.extract(new EvaluationContext(observation), false);
+
+        Map<SearchParameter, List<FHIRPathNode>> expected = new LinkedHashMap<>();
+        for (SearchParameter parameter : parameters) {
+            EvaluationContext evaluationContext = new EvaluationContext(observation);
+            Collection<FHIRPathNode> nodes = FHIRPathEvaluator.evaluator().evaluate(evaluationContext, parameter.getExpression().getValue());
+            expected.put(parameter, new ArrayList<>(nodes));
+        }
+
+        assertEquals(new ArrayList<>(actual.keySet()), new ArrayList<>(expected.keySet()));
+        for (SearchParameter parameter : parameters) {
+            assertEquals(actual.get(parameter), expected.get(parameter), parameter.getExpression().getValue());
+        }
+        assertFalse(actual.get(parameters.get(1)).isEmpty());
+    }
+
+    @Test
+    public void testSkipEmptyAndInvalid() throws Exception {
+        Observation observation = read("json/spec/observation-example-bloodpressure.json");
+
+        SearchParameter code = searchParameter("code", "Observation.code");
+        SearchParameter empty = searchParameter("empty", "Observation.notAnElement");
+        SearchParameter invalid = searchParameter("invalid", "Observation.code.notAFunction()");
+        SearchParameter noExpression = searchParameter("none", null);
+
+        ExtractionPlan plan = ExtractionPlan.build(Arrays.asList(code, empty, invalid, noExpression));
+
+        Map<SearchParameter, List<FHIRPathNode>> result = plan.extract(new EvaluationContext(observation), true);
+        assertEquals(new ArrayList<>(result.keySet()), Arrays.asList(code));
+
+        result = plan.extract(new EvaluationContext(observation), false);
+        assertEquals(new ArrayList<>(result.keySet()), Arrays.asList(code, empty));
+    }
+
+    @Test
+    public void testIsPlanFor() throws Exception {
+        SearchParameter code = searchParameter("code", "Observation.code");
+        SearchParameter subject = searchParameter("subject", "Observation.subject");
+
+        ExtractionPlan plan = ExtractionPlan.build(Arrays.asList(code, subject));
+        assertTrue(plan.isPlanFor(Arrays.asList(code, subject)));
+        assertFalse(plan.isPlanFor(Arrays.asList(code)));
+        assertFalse(plan.isPlanFor(Arrays.asList(subject, code)));
+        assertFalse(plan.isPlanFor(Arrays.asList(code, searchParameter("subject", "Observation.subject"))));
+    }
+
+    private static SearchParameter searchParameter(String code, String expression) {
+        return SearchParameter.builder()
+                .url(Uri.of("http://ibm.com/fhir/test/" + code))
+                .name(string(code))
+                .status(PublicationStatus.DRAFT)
+                .description(Markdown.of("#Test Parameter"))
+                .code(Code.of(code))
+                .base(ResourceType.OBSERVATION)
+                .type(SearchParamType.TOKEN)
+                .expression(expression == null ? null : string(expression))
+                .build();
+    }
+
+    private static Observation read(String path) throws Exception {
+        try (Reader reader = ExamplesUtil.resourceReader(path)) {
+            return FHIRParser.parser(Format.JSON).parse(reader);
+        }
+    }
+}
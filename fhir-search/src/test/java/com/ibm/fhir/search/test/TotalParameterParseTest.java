@@ -0,0 +1,71 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.search.TotalValueSet;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.exception.FHIRSearchException;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * This testng test class contains methods that test the parsing of the search result _total parameter in the
+ * SearchUtil class.
+ */
+public class TotalParameterParseTest extends BaseSearchTest {
+
+    @Test
+    public void testTotal() throws Exception {
+        for (TotalValueSet total : TotalValueSet.values()) {
+            Map<String, List<String>> queryParameters = new HashMap<>();
+            queryParameters.put("_total", Arrays.asList(total.value()));
+            FHIRSearchContext context = SearchUtil.parseQueryParameters(Patient.class, queryParameters);
+            assertTrue(context.hasTotalParameter());
+            assertEquals(context.getTotalParameter(), total);
+
+            String selfUri = SearchUtil.buildSearchSelfUri("http://localhost:8080/fhir-server/api/v4/Patient", context);
+            assertTrue(selfUri.contains("_total=" + total.value()), selfUri);
+        }
+    }
+
+    @Test
+    public void testTotalMissing() throws Exception {
+        FHIRSearchContext context = SearchUtil.parseQueryParameters(Patient.class, new HashMap<>());
+        assertFalse(context.hasTotalParameter());
+        assertNull(context.getTotalParameter());
+
+        String selfUri = SearchUtil.buildSearchSelfUri("http://localhost:8080/fhir-server/api/v4/Patient", context);
+        assertFalse(selfUri.contains("_total"), selfUri);
+    }
+
+    @Test
+    public void testTotalInvalid_lenient() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_total", Arrays.asList("invalid"));
+        FHIRSearchContext context = SearchUtil.parseQueryParameters(Patient.class, queryParameters, true);
+        assertNull(context.getTotalParameter());
+    }
+
+    @Test(expectedExceptions = FHIRSearchException.class)
+    public void testTotalInvalid_strict() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_total", Arrays.asList("invalid"));
+        SearchUtil.parseQueryParameters(Patient.class, queryParameters, false);
+    }
+}
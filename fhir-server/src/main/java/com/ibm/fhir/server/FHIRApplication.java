@@ -16,6 +16,7 @@ import javax.ws.rs.core.Application;
 import com.ibm.fhir.provider.FHIRJsonPatchProvider;
 import com.ibm.fhir.provider.FHIRJsonProvider;
 import com.ibm.fhir.provider.FHIRProvider;
+import com.ibm.fhir.provider.FHIRRawResourceProvider;
 import com.ibm.fhir.server.resources.Batch;
 import com.ibm.fhir.server.resources.Capabilities;
 import com.ibm.fhir.server.resources.Create;
@@ -78,6 +79,7 @@ public class FHIRApplication extends Application {
                 singletons.add(new FHIRProvider(RuntimeType.SERVER));
                 singletons.add(new FHIRJsonProvider(RuntimeType.SERVER));
                 singletons.add(new FHIRJsonPatchProvider(RuntimeType.SERVER));
+                singletons.add(new FHIRRawResourceProvider());
             }
             return singletons;
         } finally {
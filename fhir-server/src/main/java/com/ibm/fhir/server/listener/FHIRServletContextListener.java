@@ -40,6 +40,7 @@ import javax.websocket.server.ServerContainer;
 
 import org.owasp.encoder.Encode;
 
+import com.ibm.fhir.audit.logging.api.AuditLogServiceFactory;
 import com.ibm.fhir.config.FHIRConfigHelper;
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
@@ -330,6 +331,9 @@ public class FHIRServletContextListener implements ServletContextListener {
                 natsPublisher.shutdown();
                 natsPublisher = null;
             }
+
+            // Flush any audit events which haven't been published yet.
+            AuditLogServiceFactory.stopService();
         } catch (Exception e) {
         } finally {
             if (log.isLoggable(Level.FINER)) {
@@ -23,7 +23,7 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import com.ibm.fhir.config.FHIRRequestContext;
-import com.ibm.fhir.core.util.LRUCache;
+import com.ibm.fhir.core.util.ConcurrentCache;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.resource.SearchParameter;
 import com.ibm.fhir.model.resource.StructureDefinition;
@@ -47,7 +47,7 @@ public class ServerRegistryResourceProvider implements FHIRRegistryResourceProvi
     public static final Logger log = Logger.getLogger(ServerRegistryResourceProvider.class.getName());
 
     private final PersistenceHelper persistenceHelper;
-    private final Map<String, Map<String, List<FHIRRegistryResource>>> registryResourceMap = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentCache<String, List<FHIRRegistryResource>>> registryResourceMap = new ConcurrentHashMap<>();
 
     public ServerRegistryResourceProvider(PersistenceHelper persistenceHelper) {
         try {
@@ -62,7 +62,7 @@ public class ServerRegistryResourceProvider implements FHIRRegistryResourceProvi
         String tenantId = FHIRRequestContext.get().getTenantId();
         String dataStoreId = FHIRRequestContext.get().getDataStoreId();
         String key = tenantId + ":" + dataStoreId;
-        List<FHIRRegistryResource> registryResources = registryResourceMap.computeIfAbsent(key, k -> LRUCache.createLRUCache(1024))
+        List<FHIRRegistryResource> registryResources = registryResourceMap.computeIfAbsent(key, k -> createRegistryResourceCache())
                 .computeIfAbsent(url, k -> computeRegistryResources(resourceType, url));
         if (!registryResources.isEmpty()) {
             if (version != null) {
@@ -226,6 +226,12 @@ public class ServerRegistryResourceProvider implements FHIRRegistryResourceProvi
         return Collections.emptyList();
     }
 
+    private static ConcurrentCache<String, List<FHIRRegistryResource>> createRegistryResourceCache() {
+        return ConcurrentCache.<String, List<FHIRRegistryResource>>builder()
+                .maximumSize(1024)
+                .build();
+    }
+
     private void updateRegistryResourceMap(FHIRPersistenceEvent event) {
         if (event == null || event.getFhirResource() == null || !isDefinitionalResource(event.getFhirResource())) {
             return;
@@ -236,7 +242,8 @@ public class ServerRegistryResourceProvider implements FHIRRegistryResourceProvi
             String tenantId = FHIRRequestContext.get().getTenantId();
             String dataStoreId = FHIRRequestContext.get().getDataStoreId();
             String key = tenantId + ":" + dataStoreId;
-            List<FHIRRegistryResource> previous = registryResourceMap.getOrDefault(key, Collections.emptyMap()).remove(url);
+            ConcurrentCache<String, List<FHIRRegistryResource>> registryResources = registryResourceMap.get(key);
+            List<FHIRRegistryResource> previous = (registryResources != null) ? registryResources.remove(url) : null;
             if (previous != null && !previous.isEmpty()) {
                 log.fine("Removed registry resource(s) with url '" + url + "' from the ServerRegistryResourceProvider cache");
             }
@@ -13,6 +13,7 @@ import static com.ibm.fhir.server.util.IssueTypeToHttpStatusMapper.issueListToSt
 import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -200,14 +201,22 @@ public class FHIRResource {
      * Adds the Etag and Last-Modified headers to the specified response object.
      */
     protected ResponseBuilder addHeaders(ResponseBuilder rb, Resource resource) {
-        return rb.header(HttpHeaders.ETAG, getEtagValue(resource))
+        return addHeaders(rb, resource.getMeta().getVersionId().getValue(), resource.getMeta().getLastUpdated().getValue().toInstant());
+    }
+
+    /**
+     * Adds the Etag and Last-Modified headers for a resource with the specified version id and last updated time
+     * to the specified response object.
+     */
+    protected ResponseBuilder addHeaders(ResponseBuilder rb, String versionId, Instant lastUpdated) {
+        return rb.header(HttpHeaders.ETAG, getEtagValue(versionId))
                 // According to 3.3.1 of RTC2616(HTTP/1.1), we MUST only generate the RFC 1123 format for representing HTTP-date values
                 // in header fields, e.g Sat, 28 Sep 2019 16:11:14 GMT
-                .lastModified(Date.from(resource.getMeta().getLastUpdated().getValue().toInstant()));
+                .lastModified(Date.from(lastUpdated));
     }
 
-    private String getEtagValue(Resource resource) {
-        return "W/\"" + resource.getMeta().getVersionId().getValue() + "\"";
+    private String getEtagValue(String versionId) {
+        return "W/\"" + versionId + "\"";
     }
 
     protected Response exceptionResponse(FHIRRestBundledRequestException e) {
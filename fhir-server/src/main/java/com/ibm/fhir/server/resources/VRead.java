@@ -30,6 +30,7 @@ import org.eclipse.microprofile.jwt.JsonWebToken;
 import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.exception.FHIROperationException;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.util.RawResource;
 import com.ibm.fhir.server.operation.spi.FHIRRestOperationResponse;
 import com.ibm.fhir.server.util.FHIRRestHelper;
 import com.ibm.fhir.server.util.RestAuditLogger;
@@ -66,10 +67,18 @@ public class VRead extends FHIRResource {
             checkInitComplete();
 
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
-            Resource resource = helper.doVRead(type, id, vid, null);
+            ResponseBuilder response;
+            // Write the stored resource as is when possible, rather than parsing it and generating it again
+            RawResource rawResource = helper.doVReadRaw(type, id, vid, uriInfo.getQueryParameters());
+            if (rawResource != null) {
+                response = Response.ok().entity(rawResource);
+                response = addHeaders(response, rawResource.getVersionId(), rawResource.getLastUpdated());
+            } else {
+                Resource resource = helper.doVRead(type, id, vid, null);
+                response = Response.ok().entity(resource);
+                response = addHeaders(response, resource);
+            }
             status = Status.OK;
-            ResponseBuilder response = Response.ok().entity(resource);
-            response = addHeaders(response, resource);
             return response.build();
         } catch (FHIROperationException e) {
             status = issueListToStatus(e.getIssues());
@@ -23,6 +23,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -61,6 +64,7 @@ import com.ibm.fhir.model.type.code.IssueSeverity;
 import com.ibm.fhir.model.type.code.IssueType;
 import com.ibm.fhir.model.util.FHIRUtil;
 import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.util.RawResource;
 import com.ibm.fhir.model.util.ReferenceMappingVisitor;
 import com.ibm.fhir.persistence.FHIRPersistence;
 import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
@@ -78,7 +82,9 @@ import com.ibm.fhir.persistence.util.FHIRPersistenceUtil;
 import com.ibm.fhir.provider.util.FHIRUrlParser;
 import com.ibm.fhir.search.SearchConstants;
 import com.ibm.fhir.search.SummaryValueSet;
+import com.ibm.fhir.search.TotalValueSet;
 import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.cursor.SearchCursor;
 import com.ibm.fhir.search.exception.FHIRSearchException;
 import com.ibm.fhir.search.util.SearchUtil;
 import com.ibm.fhir.server.exception.FHIRRestBundledRequestException;
@@ -122,6 +128,45 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         this.persistence = persistence;
     }
 
+    /**
+     * Returns a validator which validates nested resources in parallel if parallel validation is enabled
+     * for the current tenant.
+     */
+    private static FHIRValidator validator() {
+        if (FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_PARALLEL_VALIDATION_ENABLED, Boolean.FALSE)) {
+            return FHIRValidator.validator(ParallelValidationPoolHolder.POOL);
+        }
+        return FHIRValidator.validator();
+    }
+
+    /**
+     * Holds the pool shared by all parallel validators, which is created the first time it is used.
+     */
+    private static class ParallelValidationPoolHolder {
+        private static final ForkJoinPool POOL = createPool();
+
+        private static ForkJoinPool createPool() {
+            int parallelism = FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_PARALLEL_VALIDATION_PARALLELISM,
+                Runtime.getRuntime().availableProcessors());
+            if (parallelism < 1) {
+                log.warning("Invalid value for '" + FHIRConfiguration.PROPERTY_PARALLEL_VALIDATION_PARALLELISM + "': " + parallelism
+                        + "; using " + Runtime.getRuntime().availableProcessors());
+                parallelism = Runtime.getRuntime().availableProcessors();
+            }
+            log.info("Creating parallel validation pool with parallelism=" + parallelism);
+
+            // the worker threads load classes (e.g. registry and terminology providers) using the loader of the application
+            ClassLoader classLoader = FHIRRestHelper.class.getClassLoader();
+            ForkJoinWorkerThreadFactory factory = pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setContextClassLoader(classLoader);
+                thread.setName("fhir-validation-" + thread.getPoolIndex());
+                return thread;
+            };
+            return new ForkJoinPool(parallelism, factory, null, false);
+        }
+    }
+
     @Override
     public FHIRRestOperationResponse doCreate(String type, Resource resource, String ifNoneExist,
             Map<String, String> requestProperties) throws Exception {
@@ -402,6 +447,9 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
 
             // Next, set the "previous resource" in the persistence event.
             event.setPrevFhirResource(ior.getPrevResource());
+            if (isDeleted) {
+                event.getProperties().put(FHIRPersistenceEvent.PROPNAME_PREV_RESOURCE_DELETED, Boolean.TRUE);
+            }
 
             // Next, invoke the 'beforeUpdate' or 'beforeCreate' interceptor methods as appropriate.
             boolean updateCreate = (ior.getPrevResource() == null);
@@ -432,10 +480,13 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             ior.setLocationURI(FHIRUtil.buildLocationURI(ModelSupport.getTypeName(newResource.getClass()), newResource));
             event.getProperties().put(FHIRPersistenceEvent.PROPNAME_RESOURCE_LOCATION_URI, ior.getLocationURI().toString());
 
-            // Invoke the 'afterUpdate' interceptor methods.
+            // Invoke the 'afterUpdate' interceptor methods, unless the update was skipped because
+            // it didn't change the resource, in which case there is nothing new to notify or audit.
             if (updateCreate) {
                 ior.setStatus(Response.Status.CREATED);
                 getInterceptorMgr().fireAfterCreateEvent(event);
+            } else if (result.isUnchanged()) {
+                ior.setStatus(Response.Status.OK);
             } else {
                 ior.setStatus(Response.Status.OK);
                 if (patch != null) {
@@ -731,6 +782,129 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         }
     }
 
+    /**
+     * Performs a 'read' operation which retrieves a Resource in the form in which it was stored, so that it can
+     * be written to the client without parsing it and generating it again. This is only possible if raw resource
+     * passthrough is enabled, no query parameters other than _format and _pretty were passed, and no
+     * interceptor implements the read interceptor methods.
+     *
+     * @param type
+     *            the resource type associated with the Resource to be retrieved
+     * @param id
+     *            the id of the Resource to be retrieved
+     * @param queryParameters
+     *            the query parameters of the request
+     * @return the stored Resource, or null if the Resource must be retrieved with
+     *         {@link #doRead(String, String, boolean, boolean, Map, Resource, MultivaluedMap)}
+     * @throws Exception
+     */
+    public RawResource doReadRaw(String type, String id, MultivaluedMap<String, String> queryParameters) throws Exception {
+        if (!isRawResourcePassthroughEnabled(queryParameters) || getInterceptorMgr().hasReadInterceptors()) {
+            return null;
+        }
+        log.entering(this.getClass().getName(), "doReadRaw");
+
+        // Start a new txn in the persistence layer if one is not already active.
+        FHIRTransactionHelper txn = new FHIRTransactionHelper(getTransaction());
+        txn.begin();
+
+        try {
+            if (!ModelSupport.isResourceType(type)) {
+                throw buildUnsupportedResourceTypeException(type);
+            }
+
+            FHIRPersistenceEvent event =
+                    new FHIRPersistenceEvent(null, buildPersistenceEventProperties(type, id, null, null));
+            FHIRPersistenceContext persistenceContext =
+                    FHIRPersistenceContextFactory.createPersistenceContext(event);
+            RawResource resource = persistence.readRaw(persistenceContext, getResourceType(type), id);
+
+            // Commit our transaction if we started one before.
+            txn.commit();
+            txn = null;
+
+            return resource;
+        } finally {
+            // If we previously started a transaction and it's still active, we need to rollback due to an error.
+            if (txn != null) {
+                txn.rollback();
+            }
+
+            log.exiting(this.getClass().getName(), "doReadRaw");
+        }
+    }
+
+    /**
+     * Performs a 'vread' operation which retrieves the specified version of a Resource in the form in which it
+     * was stored. The same conditions apply as for {@link #doReadRaw(String, String, MultivaluedMap)}.
+     *
+     * @param type
+     *            the resource type associated with the Resource to be retrieved
+     * @param id
+     *            the id of the Resource to be retrieved
+     * @param versionId
+     *            the version id of the Resource to be retrieved
+     * @param queryParameters
+     *            the query parameters of the request
+     * @return the stored Resource, or null if the Resource must be retrieved with
+     *         {@link #doVRead(String, String, String, Map)}
+     * @throws Exception
+     */
+    public RawResource doVReadRaw(String type, String id, String versionId, MultivaluedMap<String, String> queryParameters) throws Exception {
+        if (!isRawResourcePassthroughEnabled(queryParameters) || getInterceptorMgr().hasVreadInterceptors()) {
+            return null;
+        }
+        log.entering(this.getClass().getName(), "doVReadRaw");
+
+        // Start a new txn in the persistence layer if one is not already active.
+        FHIRTransactionHelper txn = new FHIRTransactionHelper(getTransaction());
+        txn.begin();
+
+        try {
+            if (!ModelSupport.isResourceType(type)) {
+                throw buildUnsupportedResourceTypeException(type);
+            }
+
+            FHIRPersistenceEvent event =
+                    new FHIRPersistenceEvent(null, buildPersistenceEventProperties(type, id, versionId, null));
+            FHIRPersistenceContext persistenceContext =
+                    FHIRPersistenceContextFactory.createPersistenceContext(event);
+            RawResource resource = persistence.vreadRaw(persistenceContext, getResourceType(type), id, versionId);
+
+            // Commit our transaction if we started one before.
+            txn.commit();
+            txn = null;
+
+            return resource;
+        } finally {
+            // If we previously started a transaction and it's still active, we need to rollback due to an error.
+            if (txn != null) {
+                txn.rollback();
+            }
+
+            log.exiting(this.getClass().getName(), "doVReadRaw");
+        }
+    }
+
+    /**
+     * Indicates whether a stored resource may be written to the client as is for a request with the passed query
+     * parameters.
+     */
+    private boolean isRawResourcePassthroughEnabled(MultivaluedMap<String, String> queryParameters) {
+        if (!FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_RAW_RESOURCE_PASSTHROUGH_ENABLED, Boolean.TRUE)) {
+            return false;
+        }
+        if (queryParameters != null) {
+            for (String name : queryParameters.keySet()) {
+                // other parameters (e.g. _summary and _elements) require the resource to be parsed
+                if (!"_format".equals(name) && !"_pretty".equals(name)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * Performs a 'vread' operation by retrieving the specified version of a Resource.
      *
@@ -1091,7 +1265,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
      */
     private List<OperationOutcome.Issue> validateInput(Resource resource)
             throws FHIRValidationException, FHIROperationException {
-        List<OperationOutcome.Issue> issues = FHIRValidator.validator().validate(resource);
+        List<OperationOutcome.Issue> issues = validator().validate(resource);
         if (!issues.isEmpty()) {
             for (OperationOutcome.Issue issue : issues) {
                 if (FHIRUtil.isFailure(issue.getSeverity())) {
@@ -1214,7 +1388,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                     // If the request entry contains a resource, then validate it now.
                     if (resource != null) {
                         List<OperationOutcome.Issue> issues =
-                                FHIRValidator.validator().validate(resource);
+                                validator().validate(resource);
                         if (!issues.isEmpty()) {
                             if (anyFailureInIssues(issues)) {
                                 if (requestType == BundleType.ValueSet.TRANSACTION) {
@@ -2196,13 +2370,19 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
     private Bundle createSearchBundle(List<Resource> resources, FHIRSearchContext searchContext, String type)
         throws Exception {
 
-        // throws if we have a count of more than 2,147,483,647 resources
-        UnsignedInt totalCount = UnsignedInt.of(searchContext.getTotalCount());
         // generate ID for this bundle and set total
         Bundle.Builder bundleBuider = Bundle.builder()
                                             .type(BundleType.SEARCHSET)
-                                            .id(UUID.randomUUID().toString())
-                                            .total(totalCount);
+                                            .id(UUID.randomUUID().toString());
+
+        // with _total=none the matching resources aren't counted, unless only the count was requested
+        // (with _summary=count or _count=0), in which case the persistence layer counts them anyway
+        if (!TotalValueSet.NONE.equals(searchContext.getTotalParameter())
+                || SummaryValueSet.COUNT.equals(searchContext.getSummaryParameter())
+                || searchContext.getPageSize() == 0) {
+            // throws if we have a count of more than 2,147,483,647 resources
+            bundleBuider.total(UnsignedInt.of(searchContext.getTotalCount()));
+        }
 
         for (Resource resource : resources) {
             if (resource.getId() == null) {
@@ -2305,11 +2485,13 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
     private Bundle addLinks(FHIRPagingContext context, Bundle responseBundle, String requestUri) throws Exception {
         String selfUri = null;
         SummaryValueSet summaryParameter = null;
+        SearchCursor nextCursor = null;
         Bundle.Builder bundleBuilder = responseBundle.toBuilder();
 
         if (context instanceof FHIRSearchContext) {
             FHIRSearchContext searchContext = (FHIRSearchContext) context;
             summaryParameter = searchContext.getSummaryParameter();
+            nextCursor = searchContext.getNextCursor();
             try {
                 selfUri = SearchUtil.buildSearchSelfUri(requestUri, searchContext);
             } catch (Exception e) {
@@ -2332,11 +2514,12 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                 // starting with the self URI
                 String nextLinkUrl = selfUri;
 
-                // remove existing _page parameters from the query string
+                // remove existing _page and _cursor parameters from the query string
                 nextLinkUrl =
                         nextLinkUrl.replace("&_page=" + context.getPageNumber(), "").replace("_page="
                                 + context.getPageNumber() + "&", "").replace("_page="
                                         + context.getPageNumber(), "");
+                nextLinkUrl = removeCursorParameter(nextLinkUrl);
 
                 if (nextLinkUrl.contains("?")) {
                     if (!nextLinkUrl.endsWith("?")) {
@@ -2350,6 +2533,11 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                 // add new _page parameter to the query string
                 nextLinkUrl += "_page=" + nextPageNumber;
 
+                // if the persistence layer can seek directly to the next page, add the _cursor parameter as well
+                if (nextCursor != null && nextCursor.getPageNumber() == nextPageNumber) {
+                    nextLinkUrl += "&" + SearchConstants.CURSOR + "=" + nextCursor.encode();
+                }
+
                 // create 'next' link
                 Bundle.Link nextLink =
                         Bundle.Link.builder().relation(string("next")).url(Url.of(nextLinkUrl)).build();
@@ -2362,11 +2550,12 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                 // starting with the original request URI
                 String prevLinkUrl = requestUri;
 
-                // remove existing _page parameters from the query string
+                // remove existing _page and _cursor parameters from the query string
                 prevLinkUrl =
                         prevLinkUrl.replace("&_page=" + context.getPageNumber(), "").replace("_page="
                                 + context.getPageNumber() + "&", "").replace("_page="
                                         + context.getPageNumber(), "");
+                prevLinkUrl = removeCursorParameter(prevLinkUrl);
 
                 if (prevLinkUrl.contains("?")) {
                     if (!prevLinkUrl.endsWith("?")) {
@@ -2390,6 +2579,17 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         return bundleBuilder.build();
     }
 
+    /**
+     * Remove the _cursor parameter (if any) from the query string of the passed URL.
+     */
+    private String removeCursorParameter(String url) {
+        String result = url.replaceAll("([?&])" + SearchConstants.CURSOR + "=[^&]*(&|$)", "$1");
+        if (result.endsWith("&")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+
     /**
      * Get the original request URI from either the HttpServletRequest or a configured Header (in case of re-writing proxies).
      *
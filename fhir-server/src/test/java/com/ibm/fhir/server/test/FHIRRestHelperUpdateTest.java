@@ -0,0 +1,174 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.server.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.Response;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.OperationOutcome;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Boolean;
+import com.ibm.fhir.model.type.Id;
+import com.ibm.fhir.model.type.Instant;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
+import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.SingleResourceResult;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceInterceptor;
+import com.ibm.fhir.persistence.interceptor.impl.FHIRPersistenceInterceptorMgr;
+import com.ibm.fhir.server.operation.spi.FHIRRestOperationResponse;
+import com.ibm.fhir.server.util.FHIRRestHelper;
+
+/**
+ * Tests that updates which the persistence layer skips because they don't change the resource
+ * don't fire the 'afterUpdate' interceptor methods
+ */
+public class FHIRRestHelperUpdateTest {
+    private static final AtomicInteger afterUpdateCount = new AtomicInteger();
+
+    private static final Patient EXISTING = Patient.builder()
+            .id("1")
+            .meta(Meta.builder()
+                .versionId(Id.of("1"))
+                .lastUpdated(Instant.now())
+                .build())
+            .active(Boolean.TRUE)
+            .build();
+
+    @BeforeClass
+    public void setup() {
+        FHIRPersistenceInterceptorMgr.getInstance().addInterceptor(new FHIRPersistenceInterceptor() {
+            @Override
+            public void afterUpdate(FHIRPersistenceEvent event) {
+                afterUpdateCount.incrementAndGet();
+            }
+        });
+    }
+
+    @Test
+    public void testUnchangedUpdate() throws Exception {
+        int count = afterUpdateCount.get();
+        FHIRRestOperationResponse response = new FHIRRestHelper(new UpdatePersistence(true))
+                .doUpdate("Patient", "1", EXISTING.toBuilder().meta(null).build(), null, null, new HashMap<>());
+        assertEquals(response.getStatus(), Response.Status.OK);
+        assertEquals(response.getResource().getMeta().getVersionId().getValue(), "1");
+        assertEquals(afterUpdateCount.get(), count);
+    }
+
+    @Test
+    public void testChangedUpdate() throws Exception {
+        int count = afterUpdateCount.get();
+        FHIRRestOperationResponse response = new FHIRRestHelper(new UpdatePersistence(false))
+                .doUpdate("Patient", "1", EXISTING.toBuilder().meta(null).active(Boolean.FALSE).build(), null, null,
+                    new HashMap<>());
+        assertEquals(response.getStatus(), Response.Status.OK);
+        assertEquals(response.getResource().getMeta().getVersionId().getValue(), "2");
+        assertEquals(afterUpdateCount.get(), count + 1);
+    }
+
+    /**
+     * A persistence implementation which holds one existing Patient and either skips updates of it
+     * or writes a second version
+     */
+    private static class UpdatePersistence implements FHIRPersistence {
+        private final boolean unchanged;
+
+        UpdatePersistence(boolean unchanged) {
+            this.unchanged = unchanged;
+        }
+
+        @Override
+        public <T extends Resource> SingleResourceResult<T> create(FHIRPersistenceContext context, T resource) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T extends Resource> SingleResourceResult<T> read(FHIRPersistenceContext context, Class<T> resourceType,
+                String logicalId) {
+            return new SingleResourceResult.Builder<T>()
+                    .success(true)
+                    .resource((T) EXISTING)
+                    .build();
+        }
+
+        @Override
+        public <T extends Resource> SingleResourceResult<T> vread(FHIRPersistenceContext context, Class<T> resourceType,
+                String logicalId, String versionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T extends Resource> SingleResourceResult<T> update(FHIRPersistenceContext context, String logicalId,
+                T resource) {
+            assertSame(context.getPersistenceEvent().getPrevFhirResource(), EXISTING);
+            String versionId = unchanged ? "1" : "2";
+            T result = (T) resource.toBuilder()
+                    .meta(Meta.builder()
+                        .versionId(Id.of(versionId))
+                        .lastUpdated(Instant.now())
+                        .build())
+                    .build();
+            return new SingleResourceResult.Builder<T>()
+                    .success(true)
+                    .unchanged(unchanged)
+                    .resource(result)
+                    .build();
+        }
+
+        @Override
+        public <T extends Resource> MultiResourceResult<T> history(FHIRPersistenceContext context, Class<T> resourceType,
+                String logicalId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MultiResourceResult<Resource> search(FHIRPersistenceContext context, Class<? extends Resource> resourceType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isTransactional() {
+            return false;
+        }
+
+        @Override
+        public OperationOutcome getHealth() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FHIRPersistenceTransaction getTransaction() {
+            return new FHIRPersistenceTransaction() {
+                @Override
+                public void begin() {
+                }
+
+                @Override
+                public void end() {
+                }
+
+                @Override
+                public void setRollbackOnly() {
+                }
+            };
+        }
+    }
+}
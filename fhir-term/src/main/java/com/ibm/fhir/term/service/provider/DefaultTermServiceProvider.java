@@ -6,16 +6,16 @@
 
 package com.ibm.fhir.term.service.provider;
 
-import static com.ibm.fhir.core.util.LRUCache.createLRUCache;
 import static com.ibm.fhir.model.type.String.string;
 import static com.ibm.fhir.model.util.FHIRUtil.STRING_DATA_ABSENT_REASON_UNKNOWN;
 import static com.ibm.fhir.term.util.CodeSystemSupport.findConcept;
 import static com.ibm.fhir.term.util.CodeSystemSupport.getCodeSystem;
-import static com.ibm.fhir.term.util.CodeSystemSupport.getConcepts;
 import static com.ibm.fhir.term.util.ValueSetSupport.getContains;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -25,6 +25,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import com.ibm.fhir.core.util.ConcurrentCache;
 import com.ibm.fhir.model.resource.CodeSystem;
 import com.ibm.fhir.model.resource.CodeSystem.Concept;
 import com.ibm.fhir.model.resource.ConceptMap;
@@ -32,7 +33,6 @@ import com.ibm.fhir.model.resource.ConceptMap.Group;
 import com.ibm.fhir.model.resource.ConceptMap.Group.Element;
 import com.ibm.fhir.model.resource.ConceptMap.Group.Element.Target;
 import com.ibm.fhir.model.resource.ValueSet;
-import com.ibm.fhir.model.resource.ValueSet.Expansion;
 import com.ibm.fhir.model.resource.ValueSet.Expansion.Contains;
 import com.ibm.fhir.model.type.Boolean;
 import com.ibm.fhir.model.type.Code;
@@ -52,6 +52,7 @@ import com.ibm.fhir.term.spi.TranslationOutcome.Match;
 import com.ibm.fhir.term.spi.TranslationParameters;
 import com.ibm.fhir.term.spi.ValidationOutcome;
 import com.ibm.fhir.term.spi.ValidationParameters;
+import com.ibm.fhir.term.util.CodeSystemIndex;
 import com.ibm.fhir.term.util.ValueSetSupport;
 
 /**
@@ -61,7 +62,9 @@ public class DefaultTermServiceProvider implements FHIRTermServiceProvider {
     private static final Logger log = Logger.getLogger(DefaultTermServiceProvider.class.getName());
 
     private static final String VERSION_UNKNOWN = "<version unknown>";
-    private static final Map<String, Map<String, Set<String>>> CODE_SET_MAP_CACHE = createLRUCache(1024);
+    private static final ConcurrentCache<String, CodeSetMap> CODE_SET_MAP_CACHE = ConcurrentCache.<String, CodeSetMap>builder()
+            .maximumSize(1024)
+            .build();
 
     @Override
     public boolean isExpandable(ValueSet valueSet) {
@@ -135,17 +138,14 @@ public class DefaultTermServiceProvider implements FHIRTermServiceProvider {
 
             CodeSystem codeSystem = getCodeSystem(url);
             if (codeSystem != null && CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning())) {
-                Concept conceptA = findConcept(codeSystem, codeA);
-                if (conceptA != null) {
-                    Concept conceptB = findConcept(conceptA, codeB);
-                    if (conceptB != null) {
-                        return conceptA.equals(conceptB) ? ConceptSubsumptionOutcome.EQUIVALENT : ConceptSubsumptionOutcome.SUBSUMES;
-                    }
-                    conceptB = findConcept(codeSystem, codeB);
-                    if (conceptB != null) {
-                        conceptA = findConcept(conceptB, codeA);
-                        return (conceptA != null) ? ConceptSubsumptionOutcome.SUBSUMED_BY : ConceptSubsumptionOutcome.NOT_SUBSUMED;
+                CodeSystemIndex index = CodeSystemIndex.of(codeSystem);
+                Concept conceptA = index.getConcept(codeA);
+                Concept conceptB = index.getConcept(codeB);
+                if (conceptA != null && conceptB != null) {
+                    if (index.subsumes(codeA, codeB)) {
+                        return (conceptA == conceptB) ? ConceptSubsumptionOutcome.EQUIVALENT : ConceptSubsumptionOutcome.SUBSUMES;
                     }
+                    return index.subsumes(codeB, codeA) ? ConceptSubsumptionOutcome.SUBSUMED_BY : ConceptSubsumptionOutcome.NOT_SUBSUMED;
                 }
             }
         }
@@ -163,9 +163,9 @@ public class DefaultTermServiceProvider implements FHIRTermServiceProvider {
             String url = (version != null) ? system.getValue() + "|" + version : system.getValue();
             CodeSystem codeSystem = getCodeSystem(url);
             if (codeSystem != null && CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning())) {
-                Concept concept = findConcept(codeSystem, code);
-                if (concept != null) {
-                    return getConcepts(concept);
+                List<Concept> concepts = CodeSystemIndex.of(codeSystem).getDescendantsAndSelf(code);
+                if (!concepts.isEmpty()) {
+                    return new LinkedHashSet<>(concepts);
                 }
             }
         }
@@ -199,7 +199,7 @@ public class DefaultTermServiceProvider implements FHIRTermServiceProvider {
 
     @Override
     public ValidationOutcome validateCode(ValueSet valueSet, CodeableConcept codeableConcept, ValidationParameters parameters) {
-        Map<String, Set<String>> codeSetMap = getCodeSetMap(valueSet);
+        CodeSetMap codeSetMap = getCodeSetMap(valueSet);
         for (Coding coding : codeableConcept.getCoding()) {
             boolean result = validateCode(codeSetMap, coding);
             if (result) {
@@ -287,101 +287,112 @@ public class DefaultTermServiceProvider implements FHIRTermServiceProvider {
                 .build();
     }
 
-    private boolean validateCode(Map<String, Set<String>> codeSetMap, Coding coding) {
+    private boolean validateCode(CodeSetMap codeSetMap, Coding coding) {
         String system = (coding.getSystem() != null) ? coding.getSystem().getValue() : null;
         String version = (coding.getVersion() != null) ? coding.getVersion().getValue() : null;
         String code = (coding.getCode() != null) ? coding.getCode().getValue() : null;
-        return validateCode(codeSetMap, system, version, code);
+        return codeSetMap.contains(system, version, code);
     }
 
-    /**
-     * Determine whether the provided code is in the codeSet associated with the provided system and version.
-     *
-     * <p>If the system and version are non-null, then they are concatenated to form a key into the codeSetMap. If
-     * not found, then the system is concatenated with the "VERSION_UNKNOWN" constant (in cases where the expanded
-     * value set did not have a version available during the expansion). If only the system is non-null, then the
-     * codeSetMap keys are checked for startsWith(system). Finally, if both system and version are null, map keys
-     * are ignored and the values of the map are checked directly.
-     *
-     * @param codeSetMap
-     *     the code set map
-     * @param system
-     *     the system of the focal coded element (can be null)
-     * @param version
-     *     the version of the focal coded element (can be null)
-     * @param code
-     *     the code used in the membership check
-     * @return
-     *     true if a codeSet is found and the provided code is a member of that codeSet, false otherwise
-     */
-    private boolean validateCode(Map<String, Set<String>> codeSetMap, String system, String version, String code) {
-        if (system != null && version != null) {
-            Set<String> codeSet = codeSetMap.get(system + "|" + version);
-            if (codeSet != null) {
-                if (codeSet.contains(code)) {
-                    return true;
-                } else {
-                    codeSet = codeSetMap.get(system + "|" + VERSION_UNKNOWN);
-                    if (codeSet != null) {
-                        return codeSet.contains(code);
-                    }
-                }
-            }
-        } else if (system != null) {
-            String prefix = system + "|";
-            for (String key : codeSetMap.keySet()) {
-                if (key.startsWith(prefix)) {
-                    return codeSetMap.get(key).contains(code);
-                }
+    private CodeSetMap getCodeSetMap(ValueSet valueSet) {
+        try {
+            // the expansion is memoized by ValueSetSupport, so the code set map is only rebuilt when it changes
+            ValueSet expanded = expand(valueSet);
+            if (valueSet.getUrl() == null || valueSet.getVersion() == null) {
+                return new CodeSetMap(expanded);
             }
-        } else {
-            for (Set<String> codeSet : codeSetMap.values()) {
-                if (codeSet.contains(code)) {
-                    return true;
-                }
+            String url = valueSet.getUrl().getValue() + "|" + valueSet.getVersion().getValue();
+            CodeSetMap codeSetMap = CODE_SET_MAP_CACHE.get(url);
+            if (codeSetMap == null || codeSetMap.expanded != expanded) {
+                codeSetMap = new CodeSetMap(expanded);
+                CODE_SET_MAP_CACHE.put(url, codeSetMap);
             }
+            return codeSetMap;
+        } catch (Exception e) {
+            String url = (valueSet.getUrl() != null) ? valueSet.getUrl().getValue() : "<no url>";
+            String version = (valueSet.getVersion() != null) ? valueSet.getVersion().getValue() : "<no version>";
+            log.log(Level.WARNING, String.format("Unable to expand value set with url: %s and version: %s", url, version), e);
         }
-        return false;
+        return new CodeSetMap(null);
     }
 
-    private Map<String, Set<String>> getCodeSetMap(ValueSet valueSet) {
-        if (valueSet.getUrl() == null || valueSet.getVersion() == null) {
-            return computeCodeSetMap(valueSet);
+    private Uri getSource(ConceptMap conceptMap) {
+        StringBuilder sb = new StringBuilder(conceptMap.getUrl().getValue());
+        if (conceptMap.getVersion() != null) {
+            sb.append("|").append(conceptMap.getVersion().getValue());
         }
-        String url = valueSet.getUrl().getValue() + "|" + valueSet.getVersion().getValue();
-        return CODE_SET_MAP_CACHE.computeIfAbsent(url, k -> computeCodeSetMap(valueSet));
+        return Uri.of(sb.toString());
     }
 
-    private Map<String, Set<String>> computeCodeSetMap(ValueSet valueSet) {
-        try {
-            ValueSet expanded = expand(valueSet);
+    /**
+     * The codes in a value set expansion, grouped by system and then by version
+     */
+    private static final class CodeSetMap {
+        private final ValueSet expanded;
+        private final Map<String, Map<String, Set<String>>> codeSets = new HashMap<>();
+
+        private CodeSetMap(ValueSet expanded) {
+            this.expanded = expanded;
             if (expanded == null || expanded.getExpansion() == null) {
-                return Collections.emptyMap();
+                return;
             }
-            Map<String, Set<String>> codeSetMap = new LinkedHashMap<>();
-            Expansion expansion = expanded.getExpansion();
-            for (Contains contains : getContains(expansion)) {
+            for (Contains contains : getContains(expanded.getExpansion())) {
                 String system = (contains.getSystem() != null) ? contains.getSystem().getValue() : null;
                 String version = (contains.getVersion() != null && contains.getVersion().getValue() != null) ? contains.getVersion().getValue() : VERSION_UNKNOWN;
                 String code = (contains.getCode() != null) ? contains.getCode().getValue() : null;
                 if (system != null && code != null) {
-                    codeSetMap.computeIfAbsent(system + "|" + version, k -> new LinkedHashSet<>()).add(code);
+                    codeSets.computeIfAbsent(system, k -> new LinkedHashMap<>())
+                        .computeIfAbsent(version, k -> new HashSet<>())
+                        .add(code);
                 }
             }
-            return codeSetMap;
-        } catch (Exception e) {
-            String url = (valueSet.getUrl() != null) ? valueSet.getUrl().getValue() : "<no url>";
-            String version = (valueSet.getVersion() != null) ? valueSet.getVersion().getValue() : "<no version>";
-            log.log(Level.WARNING, String.format("Unable to expand value set with url: %s and version: %s", url, version), e);
         }
-        return Collections.emptyMap();
-    }
 
-    private Uri getSource(ConceptMap conceptMap) {
-        StringBuilder sb = new StringBuilder(conceptMap.getUrl().getValue());
-        if (conceptMap.getVersion() != null) {
-            sb.append("|").append(conceptMap.getVersion().getValue());
+        /**
+         * Determine whether the provided code is in the codeSet associated with the provided system and version.
+         *
+         * <p>If the system and version are non-null, then the codeSet for that system and version is checked. If the
+         * code is not found there, then the codeSet for the system and the "VERSION_UNKNOWN" constant is checked (in
+         * cases where the expanded value set did not have a version available during the expansion). If only the
+         * system is non-null, then the first codeSet for the system is checked. Finally, if both system and version are
+         * null, every codeSet is checked.
+         *
+         * @param system
+         *     the system of the focal coded element (can be null)
+         * @param version
+         *     the version of the focal coded element (can be null)
+         * @param code
+         *     the code used in the membership check
+         * @return
+         *     true if a codeSet is found and the provided code is a member of that codeSet, false otherwise
+         */
+        private boolean contains(String system, String version, String code) {
+            if (system != null) {
+                Map<String, Set<String>> versionMap = codeSets.get(system);
+                if (versionMap == null) {
+                    return false;
+                }
+                if (version != null) {
+                    Set<String> codeSet = versionMap.get(version);
+                    if (codeSet != null) {
+                        if (codeSet.contains(code)) {
+                            return true;
+                        }
+                        codeSet = versionMap.get(VERSION_UNKNOWN);
+                        return (codeSet != null) && codeSet.contains(code);
+                    }
+                    return false;
+                }
+                return versionMap.values().iterator().next().contains(code);
+            }
+            for (Map<String, Set<String>> versionMap : codeSets.values()) {
+                for (Set<String> codeSet : versionMap.values()) {
+                    if (codeSet.contains(code)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
         }
-        return Uri.of(sb.toString());
     }
 }
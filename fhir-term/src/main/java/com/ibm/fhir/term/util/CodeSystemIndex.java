@@ -0,0 +1,331 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.fhir.core.util.ConcurrentCache;
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.type.Code;
+
+/**
+ * An immutable index over the concepts of a code system.
+ *
+ * <p>The concepts are numbered in depth-first (pre-order) sequence, so the descendants of a concept are exactly the
+ * concepts numbered after it and before the end of its subtree. This makes code lookups, parent lookups and
+ * subsumption tests constant time operations instead of scans of the concept hierarchy.
+ *
+ * <p>Where a code occurs more than once in the hierarchy (a polyhierarchy, in which a concept has more than one
+ * parent), the index keeps every occurrence: a concept is subsumed by the ancestors of each of its occurrences, and
+ * the descendants of a concept are those of each of its occurrences, transitively. Lookups of a single concept or parent use the
+ * first occurrence in pre-order, which is the concept that a recursive search of the hierarchy would find, and lists
+ * of concepts hold each code once.
+ */
+public final class CodeSystemIndex {
+    // the maximum total number of concepts held by the cached indexes
+    private static final long MAX_CACHED_CONCEPTS = 1_000_000;
+
+    private static final ConcurrentCache<String, CodeSystemIndex> INDEX_CACHE = ConcurrentCache.<String, CodeSystemIndex>builder()
+            .maximumWeight(MAX_CACHED_CONCEPTS, (url, index) -> Math.max(1, index.concepts.size()))
+            .build();
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private final CodeSystem codeSystem;
+
+    // the concepts in pre-order, including every occurrence of a code
+    private final List<Concept> concepts;
+
+    // the first occurrence of each code (and each concept without a code) in pre-order
+    private final List<Concept> distinctConcepts;
+
+    // the position of the parent of each concept, or -1 for root concepts
+    private final int[] parent;
+
+    // the position after the last descendant of each concept
+    private final int[] end;
+
+    // the positions of the occurrences of each code, in pre-order
+    private final Map<String, int[]> positions;
+
+    // whether any code occurs more than once
+    private boolean hasDuplicates;
+
+    private CodeSystemIndex(CodeSystem codeSystem) {
+        this.codeSystem = codeSystem;
+        List<Concept> concepts = new ArrayList<>();
+        for (Concept concept : codeSystem.getConcept()) {
+            collect(concept, concepts);
+        }
+        this.concepts = Collections.unmodifiableList(concepts);
+        this.parent = new int[concepts.size()];
+        this.end = new int[concepts.size()];
+        this.positions = new HashMap<>(concepts.size() * 4 / 3 + 1);
+
+        int position = 0;
+        for (Concept concept : codeSystem.getConcept()) {
+            position = label(concept, -1, position);
+        }
+
+        if (hasDuplicates) {
+            List<Concept> distinctConcepts = new ArrayList<>(positions.size());
+            for (int i = 0; i < concepts.size(); i++) {
+                if (isFirstOccurrence(i)) {
+                    distinctConcepts.add(concepts.get(i));
+                }
+            }
+            this.distinctConcepts = Collections.unmodifiableList(distinctConcepts);
+        } else {
+            this.distinctConcepts = this.concepts;
+        }
+    }
+
+    private static void collect(Concept concept, List<Concept> concepts) {
+        concepts.add(concept);
+        for (Concept child : concept.getConcept()) {
+            collect(child, concepts);
+        }
+    }
+
+    /**
+     * Label the tree rooted by the concept at the given position.
+     *
+     * @return the position after the last descendant of the concept
+     */
+    private int label(Concept concept, int parentPosition, int position) {
+        int self = position++;
+        parent[self] = parentPosition;
+        if (concept.getCode() != null) {
+            int[] previous = positions.putIfAbsent(concept.getCode().getValue(), new int[] { self });
+            if (previous != null) {
+                int[] occurrences = Arrays.copyOf(previous, previous.length + 1);
+                occurrences[previous.length] = self;
+                positions.put(concept.getCode().getValue(), occurrences);
+                hasDuplicates = true;
+            }
+        }
+        for (Concept child : concept.getConcept()) {
+            position = label(child, self, position);
+        }
+        end[self] = position;
+        return position;
+    }
+
+    /**
+     * Get the index for the provided code system.
+     *
+     * <p>Indexes of code systems with a url are cached by url and version, so the index is only rebuilt when a
+     * different instance of the code system is passed in.
+     *
+     * @param codeSystem
+     *     the code system
+     * @return
+     *     the index for the code system
+     */
+    public static CodeSystemIndex of(CodeSystem codeSystem) {
+        if (codeSystem.getUrl() == null || codeSystem.getUrl().getValue() == null) {
+            return new CodeSystemIndex(codeSystem);
+        }
+        String url = codeSystem.getUrl().getValue();
+        if (codeSystem.getVersion() != null && codeSystem.getVersion().getValue() != null) {
+            url = url + "|" + codeSystem.getVersion().getValue();
+        }
+        CodeSystemIndex index = INDEX_CACHE.get(url);
+        if (index == null || index.codeSystem != codeSystem) {
+            index = new CodeSystemIndex(codeSystem);
+            INDEX_CACHE.put(url, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return
+     *     the code system of this index
+     */
+    public CodeSystem getCodeSystem() {
+        return codeSystem;
+    }
+
+    /**
+     * @return
+     *     the number of distinct concepts in the code system, including nested concepts
+     */
+    public int size() {
+        return distinctConcepts.size();
+    }
+
+    /**
+     * @return
+     *     an unmodifiable list of all concepts in the code system, with each concept followed by its descendants, which
+     *     holds the first occurrence of each code only
+     */
+    public List<Concept> getConcepts() {
+        return distinctConcepts;
+    }
+
+    /**
+     * Get the concept that matches the specified code.
+     *
+     * @param code
+     *     the code to match
+     * @return
+     *     the code system concept that matches the specified code, or null if no such concept exists
+     */
+    public Concept getConcept(Code code) {
+        int position = position(code);
+        return (position != -1) ? concepts.get(position) : null;
+    }
+
+    /**
+     * Get the parent of the concept that matches the specified code.
+     *
+     * @param code
+     *     the code to match
+     * @return
+     *     the parent of the concept that matches the specified code, or null if the concept doesn't exist or is a root
+     *     concept
+     */
+    public Concept getParent(Code code) {
+        int position = position(code);
+        return (position != -1 && parent[position] != -1) ? concepts.get(parent[position]) : null;
+    }
+
+    /**
+     * Get every occurrence of the concept that matches the specified code in the concept hierarchy.
+     *
+     * @param code
+     *     the code to match
+     * @return
+     *     an unmodifiable list of the occurrences of the matching concept in pre-order, or an empty list if no such
+     *     concept exists
+     */
+    public List<Concept> getOccurrences(Code code) {
+        int[] occurrences = positions(code);
+        if (occurrences.length == 1) {
+            return Collections.singletonList(concepts.get(occurrences[0]));
+        }
+        List<Concept> result = new ArrayList<>(occurrences.length);
+        for (int occurrence : occurrences) {
+            result.add(concepts.get(occurrence));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Get the concept that matches the specified code and all of its descendants.
+     *
+     * @param code
+     *     the code to match
+     * @return
+     *     an unmodifiable list containing the matching concept followed by its descendants under each occurrence of the
+     *     code, with each code once, or an empty list if no such concept exists
+     */
+    public List<Concept> getDescendantsAndSelf(Code code) {
+        int[] occurrences = positions(code);
+        if (occurrences.length == 0) {
+            return Collections.emptyList();
+        }
+        if (!hasDuplicates) {
+            return concepts.subList(occurrences[0], end[occurrences[0]]);
+        }
+        // the subtrees of the other occurrences of a code found in a subtree hold descendants as well
+        Set<String> codes = new LinkedHashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        codes.add(code.getValue());
+        pending.add(code.getValue());
+        while (!pending.isEmpty()) {
+            for (int occurrence : positions.get(pending.poll())) {
+                for (int i = occurrence; i < end[occurrence]; i++) {
+                    String descendant = concepts.get(i).getCode().getValue();
+                    if (codes.add(descendant) && positions.get(descendant).length > 1) {
+                        pending.add(descendant);
+                    }
+                }
+            }
+        }
+        List<Concept> descendantsAndSelf = new ArrayList<>(codes.size());
+        for (String descendant : codes) {
+            descendantsAndSelf.add(concepts.get(positions.get(descendant)[0]));
+        }
+        return Collections.unmodifiableList(descendantsAndSelf);
+    }
+
+    /**
+     * Determine whether the concept that matches codeA is the same as, or an ancestor of, the concept that matches codeB.
+     *
+     * @param codeA
+     *     the code of the potential ancestor
+     * @param codeB
+     *     the code of the potential descendant
+     * @return
+     *     true if both concepts exist and codeA is codeB or one of its ancestors in the concept hierarchy, false otherwise
+     */
+    public boolean subsumes(Code codeA, Code codeB) {
+        int positionA = position(codeA);
+        int positionB = position(codeB);
+        if (positionA == -1 || positionB == -1) {
+            return false;
+        }
+        if (!hasDuplicates) {
+            return positionA <= positionB && positionB < end[positionA];
+        }
+        // walk up from every occurrence of codeB and of each of its ancestors
+        Set<String> ancestors = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        ancestors.add(codeB.getValue());
+        pending.add(codeB.getValue());
+        while (!pending.isEmpty()) {
+            String ancestor = pending.poll();
+            if (ancestor.equals(codeA.getValue())) {
+                return true;
+            }
+            for (int occurrence : positions.get(ancestor)) {
+                int parentPosition = parent[occurrence];
+                if (parentPosition != -1 && ancestors.add(concepts.get(parentPosition).getCode().getValue())) {
+                    pending.add(concepts.get(parentPosition).getCode().getValue());
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isFirstOccurrence(int position) {
+        Concept concept = concepts.get(position);
+        return concept.getCode() == null || positions.get(concept.getCode().getValue())[0] == position;
+    }
+
+    private int position(Code code) {
+        int[] occurrences = positions(code);
+        return (occurrences.length != 0) ? occurrences[0] : -1;
+    }
+
+    private int[] positions(Code code) {
+        if (code == null || code.getValue() == null) {
+            return NO_POSITIONS;
+        }
+        int[] occurrences = positions.get(code.getValue());
+        return (occurrences != null) ? occurrences : NO_POSITIONS;
+    }
+
+    /**
+     * Discard all cached indexes.
+     */
+    public static void clearCache() {
+        INDEX_CACHE.clear();
+    }
+}
@@ -24,6 +24,8 @@ public final class CodeSystemSupport {
 
     /**
      * Find the concept in the provided code system that matches the specified code.
+     *
+     * <p>The lookup uses the {@link CodeSystemIndex} of the code system, which is built on first use.
      * 
      * @param codeSystem
      *     the code system to search
@@ -33,14 +35,7 @@ public final class CodeSystemSupport {
      *     the code system concept that matches the specified code, or null if no such concept exists
      */
     public static Concept findConcept(CodeSystem codeSystem, Code code) {
-        Concept result = null;
-        for (Concept concept : codeSystem.getConcept()) {
-            result = findConcept(concept, code);
-            if (result != null) {
-                break;
-            }
-        }
-        return result;
+        return CodeSystemIndex.of(codeSystem).getConcept(code);
     }
 
     /**
@@ -10,7 +10,6 @@ import static com.ibm.fhir.model.type.String.string;
 import static com.ibm.fhir.term.util.CodeSystemSupport.findConcept;
 import static com.ibm.fhir.term.util.CodeSystemSupport.getCodeSystem;
 import static com.ibm.fhir.term.util.CodeSystemSupport.getConceptPropertyValue;
-import static com.ibm.fhir.term.util.CodeSystemSupport.getConcepts;
 import static com.ibm.fhir.term.util.CodeSystemSupport.hasCodeSystemProperty;
 import static com.ibm.fhir.term.util.CodeSystemSupport.hasConceptProperty;
 
@@ -18,8 +17,10 @@ import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Level;
@@ -27,6 +28,7 @@ import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import com.ibm.fhir.core.util.ConcurrentCache;
 import com.ibm.fhir.model.resource.CodeSystem;
 import com.ibm.fhir.model.resource.CodeSystem.Concept;
 import com.ibm.fhir.model.resource.Resource;
@@ -53,10 +55,21 @@ import com.ibm.fhir.registry.FHIRRegistry;
 
 /**
  * A utility class for expanding FHIR value sets
+ *
+ * <p>Expansions of value sets with a url are cached by url and version. Each cached expansion records the code
+ * systems and value sets that it was computed from, and is only reused while the FHIR registry still returns those
+ * same resources.
  */
 public final class ValueSetSupport {
     private static final Logger log = Logger.getLogger(ValueSetSupport.class.getName());
 
+    // the maximum total number of codes held by the cached expansions
+    private static final long MAX_CACHED_CODES = 250_000;
+
+    private static final ConcurrentCache<java.lang.String, CachedExpansion> EXPANSION_CACHE = ConcurrentCache.<java.lang.String, CachedExpansion>builder()
+            .maximumWeight(MAX_CACHED_CODES, (key, cachedExpansion) -> Math.max(1, cachedExpansion.size))
+            .build();
+
     private ValueSetSupport() { }
 
     /**
@@ -68,17 +81,67 @@ public final class ValueSetSupport {
      *     the expanded value set, or the original value set if already expanded or unable to expand
      */
     public static ValueSet expand(ValueSet valueSet) {
-        if (!isExpanded(valueSet) && isExpandable(valueSet)) {
-            Set<Contains> result = expand(valueSet.getCompose());
-            return valueSet.toBuilder()
-                .expansion(Expansion.builder()
-                    .total(Integer.of(result.size()))
-                    .timestamp(DateTime.now(ZoneOffset.UTC))
-                    .contains(result)
-                    .build())
-                .build();
+        return expand(valueSet, null);
+    }
+
+    /**
+     * Expand the given value set and add the resources that the expansion depends on to the provided dependencies.
+     */
+    private static ValueSet expand(ValueSet valueSet, Dependencies dependencies) {
+        if (isExpanded(valueSet)) {
+            return valueSet;
         }
-        return valueSet;
+
+        java.lang.String key = getCacheKey(valueSet);
+        if (key != null) {
+            CachedExpansion cachedExpansion = EXPANSION_CACHE.get(key);
+            if (cachedExpansion != null && cachedExpansion.isCurrent(valueSet)) {
+                if (dependencies != null) {
+                    dependencies.addAll(cachedExpansion.dependencies);
+                }
+                return cachedExpansion.expanded;
+            }
+        }
+
+        if (!isExpandable(valueSet)) {
+            return valueSet;
+        }
+
+        Dependencies expansionDependencies = new Dependencies();
+        Set<Contains> result = expand(valueSet.getCompose(), expansionDependencies);
+        ValueSet expanded = valueSet.toBuilder()
+            .expansion(Expansion.builder()
+                .total(Integer.of(result.size()))
+                .timestamp(DateTime.now(ZoneOffset.UTC))
+                .contains(result)
+                .build())
+            .build();
+
+        if (key != null) {
+            EXPANSION_CACHE.put(key, new CachedExpansion(valueSet, expanded, expansionDependencies, result.size()));
+        }
+        if (dependencies != null) {
+            dependencies.addAll(expansionDependencies);
+        }
+        return expanded;
+    }
+
+    private static java.lang.String getCacheKey(ValueSet valueSet) {
+        if (valueSet == null || valueSet.getUrl() == null || valueSet.getUrl().getValue() == null) {
+            return null;
+        }
+        java.lang.String key = valueSet.getUrl().getValue();
+        if (valueSet.getVersion() != null && valueSet.getVersion().getValue() != null) {
+            key = key + "|" + valueSet.getVersion().getValue();
+        }
+        return key;
+    }
+
+    /**
+     * Discard all cached value set expansions.
+     */
+    public static void clearExpansionCache() {
+        EXPANSION_CACHE.clear();
     }
 
     public static boolean isExpanded(ValueSet valueSet) {
@@ -178,6 +241,19 @@ public final class ValueSetSupport {
         return FHIRRegistry.getInstance().getResource(url, ValueSet.class);
     }
 
+    /**
+     * A concept which occurs more than once in the concept hierarchy is accepted if any of its occurrences is accepted,
+     * because each occurrence may hold different properties and child concepts
+     */
+    private static boolean accept(List<ConceptFilter> conceptFilters, List<Concept> occurrences) {
+        for (Concept occurrence : occurrences) {
+            if (accept(conceptFilters, occurrence)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static boolean accept(List<ConceptFilter> conceptFilters, Concept concept) {
         for (ConceptFilter conceptFilter : conceptFilters) {
             if (!conceptFilter.accept(concept)) {
@@ -276,7 +352,7 @@ public final class ValueSetSupport {
         if ("concept".equals(filter.getProperty().getValue()) && CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning())) {
             Concept concept = findConcept(codeSystem, code(filter.getValue()));
             if (concept != null) {
-                return new DescendentOfFilter(concept);
+                return new DescendentOfFilter(CodeSystemIndex.of(codeSystem), concept);
             }
         }
         return null;
@@ -305,7 +381,7 @@ public final class ValueSetSupport {
         if ("concept".equals(filter.getProperty().getValue()) && CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning())) {
             Concept concept = findConcept(codeSystem, code(filter.getValue()));
             if (concept != null) {
-                return new GeneralizesFilter(concept);
+                return new GeneralizesFilter(CodeSystemIndex.of(codeSystem), concept);
             }
         }
         return null;
@@ -325,7 +401,7 @@ public final class ValueSetSupport {
         if ("concept".equals(filter.getProperty().getValue()) && CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning())) {
             Concept concept = findConcept(codeSystem, code(filter.getValue()));
             if (concept != null) {
-                return new IsAFilter(concept);
+                return new IsAFilter(CodeSystemIndex.of(codeSystem), concept);
             }
         }
         return null;
@@ -335,7 +411,7 @@ public final class ValueSetSupport {
         if ("concept".equals(filter.getProperty().getValue()) && CodeSystemHierarchyMeaning.IS_A.equals(codeSystem.getHierarchyMeaning())) {
             Concept concept = findConcept(codeSystem, code(filter.getValue()));
             if (concept != null) {
-                return new IsNotAFilter(concept);
+                return new IsNotAFilter(CodeSystemIndex.of(codeSystem), concept);
             }
         }
         return null;
@@ -359,7 +435,7 @@ public final class ValueSetSupport {
         return null;
     }
 
-    private static Set<Contains> expand(Compose compose) {
+    private static Set<Contains> expand(Compose compose, Dependencies dependencies) {
         if (compose == null) {
             return Collections.emptySet();
         }
@@ -368,12 +444,12 @@ public final class ValueSetSupport {
 
         Set<Contains> included = new LinkedHashSet<>();
         for (Include include : compose.getInclude()) {
-            included.addAll(expand(include));
+            included.addAll(expand(include, dependencies));
         }
 
         Set<Contains> excluded = new LinkedHashSet<>();
         for (Include exclude : compose.getExclude()) {
-            excluded.addAll(expand(exclude));
+            excluded.addAll(expand(exclude, dependencies));
         }
 
         Set<Contains> difference = new LinkedHashSet<>(included);
@@ -383,7 +459,7 @@ public final class ValueSetSupport {
         return result;
     }
 
-    private static Set<Contains> expand(Include includeOrExclude) {
+    private static Set<Contains> expand(Include includeOrExclude, Dependencies dependencies) {
         if (includeOrExclude == null) {
             return Collections.emptySet();
         }
@@ -392,7 +468,7 @@ public final class ValueSetSupport {
         if (includeOrExclude.getSystem() != null) {
             Uri system = includeOrExclude.getSystem();
             String version = (includeOrExclude.getVersion() != null) ?
-                    includeOrExclude.getVersion() : getLatestVersion(system);
+                    includeOrExclude.getVersion() : getLatestVersion(system, dependencies);
             if (!includeOrExclude.getConcept().isEmpty()) {
                 for (Include.Concept concept : includeOrExclude.getConcept()) {
                     Code code = (concept.getCode() != null) ? concept.getCode() : null;
@@ -405,11 +481,12 @@ public final class ValueSetSupport {
                 if (version != null) {
                     url = url + "|" + version.getValue();
                 }
-                if (hasResource(url, CodeSystem.class)) {
-                    CodeSystem codeSystem = getCodeSystem(url);
+                CodeSystem codeSystem = dependencies.getCodeSystem(url);
+                if (codeSystem != null) {
                     List<ConceptFilter> conceptFilters = buildConceptFilters(codeSystem, includeOrExclude.getFilter());
-                    for (Concept concept : getConcepts(codeSystem)) {
-                        if (accept(conceptFilters, concept)) {
+                    CodeSystemIndex index = CodeSystemIndex.of(codeSystem);
+                    for (Concept concept : index.getConcepts()) {
+                        if (accept(conceptFilters, index.getOccurrences(concept.getCode()))) {
                             Contains contains = buildContains(system, version, concept);
                             if (contains != null) {
                                 systemContains.add(contains);
@@ -423,8 +500,9 @@ public final class ValueSetSupport {
         Set<Contains> valueSetContains = new LinkedHashSet<>();
         for (Canonical valueSet : includeOrExclude.getValueSet()) {
             java.lang.String url = valueSet.getValue();
-            if (hasResource(url, ValueSet.class)) {
-                valueSetContains.addAll(getContains(expand(getValueSet(url)).getExpansion()));
+            ValueSet vs = dependencies.getValueSet(url);
+            if (vs != null) {
+                valueSetContains.addAll(getContains(expand(vs, dependencies).getExpansion()));
             }
         }
 
@@ -449,7 +527,9 @@ public final class ValueSetSupport {
         return result;
     }
 
-    private static String getLatestVersion(Uri system) {
+    private static String getLatestVersion(Uri system, Dependencies dependencies) {
+        // the latest version is the version of the code system that the registry returns for the unversioned url
+        dependencies.getCodeSystem(system.getValue());
         java.lang.String version = FHIRRegistry.getInstance().getLatestVersion(system.getValue(), CodeSystem.class);
         return (version != null) ? string(version) : null;
     }
@@ -462,51 +542,120 @@ public final class ValueSetSupport {
         return "true".equals(value.getValue()) ? Boolean.TRUE : Boolean.FALSE;
     }
 
+    /**
+     * The code systems and value sets that an expansion was computed from, by url. A null value records that the
+     * url could not be resolved.
+     */
+    private static final class Dependencies {
+        private final Map<java.lang.String, CodeSystem> codeSystems = new HashMap<>();
+        private final Map<java.lang.String, ValueSet> valueSets = new HashMap<>();
+
+        private CodeSystem getCodeSystem(java.lang.String url) {
+            CodeSystem codeSystem = CodeSystemSupport.getCodeSystem(url);
+            codeSystems.put(url, codeSystem);
+            return codeSystem;
+        }
+
+        private ValueSet getValueSet(java.lang.String url) {
+            ValueSet valueSet = ValueSetSupport.getValueSet(url);
+            valueSets.put(url, valueSet);
+            return valueSet;
+        }
+
+        private void addAll(Dependencies dependencies) {
+            codeSystems.putAll(dependencies.codeSystems);
+            valueSets.putAll(dependencies.valueSets);
+        }
+
+        /**
+         * @return
+         *     true if the registry still returns the same resource for each of the dependencies, false otherwise
+         */
+        private boolean isCurrent() {
+            for (Map.Entry<java.lang.String, CodeSystem> entry : codeSystems.entrySet()) {
+                if (CodeSystemSupport.getCodeSystem(entry.getKey()) != entry.getValue()) {
+                    return false;
+                }
+            }
+            for (Map.Entry<java.lang.String, ValueSet> entry : valueSets.entrySet()) {
+                if (ValueSetSupport.getValueSet(entry.getKey()) != entry.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class CachedExpansion {
+        private final ValueSet valueSet;
+        private final ValueSet expanded;
+        private final Dependencies dependencies;
+        private final int size;
+
+        private CachedExpansion(ValueSet valueSet, ValueSet expanded, Dependencies dependencies, int size) {
+            this.valueSet = valueSet;
+            this.expanded = expanded;
+            this.dependencies = dependencies;
+            this.size = size;
+        }
+
+        /**
+         * @return
+         *     true if this expansion was computed from the given instance of the value set and its dependencies are
+         *     current, false otherwise
+         */
+        private boolean isCurrent(ValueSet valueSet) {
+            return this.valueSet == valueSet && dependencies.isCurrent();
+        }
+    }
+
     private interface ConceptFilter {
         boolean accept(Concept concept);
     }
 
     private static class DescendentOfFilter implements ConceptFilter {
-        private final Set<Concept> descendants;
+        private final CodeSystemIndex index;
+        private final Code code;
 
-        public DescendentOfFilter(Concept concept) {
-            Set<Concept> descendants = getConcepts(concept);
-            descendants.remove(concept);
-            this.descendants = descendants;
+        public DescendentOfFilter(CodeSystemIndex index, Concept concept) {
+            this.index = index;
+            this.code = concept.getCode();
         }
 
         @Override
         public boolean accept(Concept concept) {
-            return descendants.contains(concept);
+            return !code.equals(concept.getCode()) && index.subsumes(code, concept.getCode());
         }
     }
 
     private static class EqualsFilter implements ConceptFilter {
         private final Code property;
         private final String value;
-        private final Set<Concept> children;
-        private final Concept child;
+        private final CodeSystemIndex index;
+        private final Code parent;
 
         public EqualsFilter(CodeSystem codeSystem, Code property, String value) {
             this.property = property;
             this.value = value;
-            children = new LinkedHashSet<>();
+            this.index = CodeSystemIndex.of(codeSystem);
             if ("parent".equals(property.getValue())) {
-                Concept parent = findConcept(codeSystem, code(value));
-                if (parent != null) {
-                    children.addAll(parent.getConcept());
-                }
+                this.parent = code(value);
+            } else if ("child".equals(property.getValue())) {
+                Concept parent = index.getParent(code(value));
+                this.parent = (parent != null) ? parent.getCode() : null;
+            } else {
+                this.parent = null;
             }
-            this.child = "child".equals(property.getValue()) ? findConcept(codeSystem, code(value)) : null;
         }
 
         @Override
         public boolean accept(Concept concept) {
             if ("parent".equals(property.getValue())) {
-                return children.contains(concept);
+                Concept parent = index.getParent(concept.getCode());
+                return parent != null && this.parent.equals(parent.getCode());
             }
             if ("child".equals(property.getValue())) {
-                return concept.getConcept().contains(child);
+                return parent != null && parent.equals(concept.getCode());
             }
             if (hasConceptProperty(concept, property)) {
                 Element value = getConceptPropertyValue(concept, property);
@@ -536,15 +685,17 @@ public final class ValueSetSupport {
     }
 
     private static class GeneralizesFilter implements ConceptFilter {
-        private final Concept concept;
+        private final CodeSystemIndex index;
+        private final Code code;
 
-        public GeneralizesFilter(Concept concept) {
-            this.concept = concept;
+        public GeneralizesFilter(CodeSystemIndex index, Concept concept) {
+            this.index = index;
+            this.code = concept.getCode();
         }
 
         @Override
         public boolean accept(Concept concept) {
-            return getConcepts(concept).contains(this.concept);
+            return index.subsumes(concept.getCode(), code);
         }
     }
 
@@ -566,21 +717,23 @@ public final class ValueSetSupport {
     }
 
     private static class IsAFilter implements ConceptFilter {
-        protected final Set<Concept> descendantsAndSelf;
+        protected final CodeSystemIndex index;
+        protected final Code code;
 
-        public IsAFilter(Concept concept) {
-            descendantsAndSelf = getConcepts(concept);
+        public IsAFilter(CodeSystemIndex index, Concept concept) {
+            this.index = index;
+            this.code = concept.getCode();
         }
 
         @Override
         public boolean accept(Concept concept) {
-            return descendantsAndSelf.contains(concept);
+            return index.subsumes(code, concept.getCode());
         }
     }
 
     private static class IsNotAFilter extends IsAFilter {
-        public IsNotAFilter(Concept concept) {
-            super(concept);
+        public IsNotAFilter(CodeSystemIndex index, Concept concept) {
+            super(index, concept);
         }
 
         @Override
@@ -0,0 +1,152 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.util.test;
+
+import static com.ibm.fhir.term.util.CodeSystemSupport.getCodeSystem;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.code.CodeSystemContentMode;
+import com.ibm.fhir.model.type.code.PublicationStatus;
+import com.ibm.fhir.term.util.CodeSystemIndex;
+import com.ibm.fhir.term.util.CodeSystemSupport;
+
+public class CodeSystemIndexTest {
+    private static final String CS3 = "http://ibm.com/fhir/CodeSystem/cs3|1.0.0";
+
+    @Test
+    public void testGetConcept() throws Exception {
+        CodeSystem codeSystem = getCodeSystem(CS3);
+        CodeSystemIndex index = CodeSystemIndex.of(codeSystem);
+
+        assertEquals(index.size(), 6);
+        assertEquals(codes(index.getConcepts()), Arrays.asList("g", "x", "y", "z", "h", "i"));
+        assertEquals(index.getConcept(Code.of("z")).getCode(), Code.of("z"));
+        assertNull(index.getConcept(Code.of("unknown")));
+        assertSame(CodeSystemSupport.findConcept(codeSystem, Code.of("y")), index.getConcept(Code.of("y")));
+    }
+
+    @Test
+    public void testGetParent() throws Exception {
+        CodeSystemIndex index = CodeSystemIndex.of(getCodeSystem(CS3));
+
+        assertEquals(index.getParent(Code.of("y")).getCode(), Code.of("x"));
+        assertEquals(index.getParent(Code.of("x")).getCode(), Code.of("g"));
+        assertNull(index.getParent(Code.of("g")));
+        assertNull(index.getParent(Code.of("unknown")));
+    }
+
+    @Test
+    public void testSubsumes() throws Exception {
+        CodeSystemIndex index = CodeSystemIndex.of(getCodeSystem(CS3));
+
+        assertTrue(index.subsumes(Code.of("g"), Code.of("z")));
+        assertTrue(index.subsumes(Code.of("x"), Code.of("y")));
+        assertTrue(index.subsumes(Code.of("x"), Code.of("x")));
+        assertFalse(index.subsumes(Code.of("y"), Code.of("x")));
+        assertFalse(index.subsumes(Code.of("y"), Code.of("z")));
+        assertFalse(index.subsumes(Code.of("g"), Code.of("h")));
+        assertFalse(index.subsumes(Code.of("g"), Code.of("unknown")));
+    }
+
+    @Test
+    public void testGetDescendantsAndSelf() throws Exception {
+        CodeSystemIndex index = CodeSystemIndex.of(getCodeSystem(CS3));
+
+        assertEquals(codes(index.getDescendantsAndSelf(Code.of("g"))), Arrays.asList("g", "x", "y", "z"));
+        assertEquals(codes(index.getDescendantsAndSelf(Code.of("x"))), Arrays.asList("x", "y", "z"));
+        assertEquals(codes(index.getDescendantsAndSelf(Code.of("h"))), Arrays.asList("h"));
+        assertTrue(index.getDescendantsAndSelf(Code.of("unknown")).isEmpty());
+    }
+
+    @Test
+    public void testDuplicateCode() throws Exception {
+        CodeSystem codeSystem = CodeSystem.builder()
+                .status(PublicationStatus.ACTIVE)
+                .content(CodeSystemContentMode.COMPLETE)
+                .concept(concept("a", concept("b")))
+                .concept(concept("b", concept("c")))
+                .build();
+        CodeSystemIndex index = CodeSystemIndex.of(codeSystem);
+
+        // the first occurrence of a code is the one that is looked up
+        assertEquals(index.getParent(Code.of("b")).getCode(), Code.of("a"));
+        assertTrue(index.getDescendantsAndSelf(Code.of("b")).get(0).getConcept().isEmpty());
+
+        // every occurrence of a code is used for subsumption
+        assertTrue(index.subsumes(Code.of("b"), Code.of("c")));
+        assertTrue(index.subsumes(Code.of("a"), Code.of("b")));
+        assertTrue(index.subsumes(Code.of("a"), Code.of("c")));
+        assertFalse(index.subsumes(Code.of("c"), Code.of("a")));
+        assertEquals(codes(index.getDescendantsAndSelf(Code.of("a"))), Arrays.asList("a", "b", "c"));
+        assertEquals(codes(index.getDescendantsAndSelf(Code.of("b"))), Arrays.asList("b", "c"));
+        assertEquals(codes(index.getConcepts()), Arrays.asList("a", "b", "c"));
+        assertEquals(index.size(), 3);
+        assertEquals(codes(index.getOccurrences(Code.of("b"))), Arrays.asList("b", "b"));
+        assertEquals(index.getOccurrences(Code.of("b")).get(1).getConcept().size(), 1);
+    }
+
+    @Test
+    public void testPolyhierarchy() throws Exception {
+        CodeSystem codeSystem = CodeSystem.builder()
+                .status(PublicationStatus.ACTIVE)
+                .content(CodeSystemContentMode.COMPLETE)
+                .concept(concept("r",
+                    concept("a", concept("x", concept("y"))),
+                    concept("b", concept("x", concept("y")))))
+                .build();
+        CodeSystemIndex index = CodeSystemIndex.of(codeSystem);
+
+        assertTrue(index.subsumes(Code.of("a"), Code.of("x")));
+        assertTrue(index.subsumes(Code.of("b"), Code.of("x")));
+        assertTrue(index.subsumes(Code.of("b"), Code.of("y")));
+        assertFalse(index.subsumes(Code.of("x"), Code.of("b")));
+        assertEquals(codes(index.getConcepts()), Arrays.asList("r", "a", "x", "y", "b"));
+        assertEquals(codes(index.getDescendantsAndSelf(Code.of("r"))), Arrays.asList("r", "a", "x", "y", "b"));
+        assertEquals(codes(index.getDescendantsAndSelf(Code.of("b"))), Arrays.asList("b", "x", "y"));
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        CodeSystem codeSystem = getCodeSystem(CS3);
+        CodeSystemIndex index = CodeSystemIndex.of(codeSystem);
+        assertSame(CodeSystemIndex.of(codeSystem), index);
+
+        // a different instance of the code system with the same url and version replaces the cached index
+        CodeSystem copy = codeSystem.toBuilder().build();
+        CodeSystemIndex copyIndex = CodeSystemIndex.of(copy);
+        assertNotSame(copyIndex, index);
+        assertSame(copyIndex.getCodeSystem(), copy);
+        assertSame(CodeSystemIndex.of(copy), copyIndex);
+    }
+
+    private static Concept concept(String code, Concept... children) {
+        return Concept.builder()
+                .code(Code.of(code))
+                .concept(children)
+                .build();
+    }
+
+    private static List<String> codes(List<Concept> concepts) {
+        return concepts.stream()
+                .map(concept -> concept.getCode().getValue())
+                .collect(Collectors.toList());
+    }
+}
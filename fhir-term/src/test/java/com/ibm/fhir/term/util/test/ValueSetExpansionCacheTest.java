@@ -0,0 +1,188 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.term.util.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static com.ibm.fhir.term.util.ValueSetSupport.getContains;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.CodeSystem.Concept;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.resource.ValueSet;
+import com.ibm.fhir.model.resource.ValueSet.Compose;
+import com.ibm.fhir.model.resource.ValueSet.Compose.Include;
+import com.ibm.fhir.model.type.Boolean;
+import com.ibm.fhir.model.type.Canonical;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.CodeSystemContentMode;
+import com.ibm.fhir.model.type.code.PublicationStatus;
+import com.ibm.fhir.registry.FHIRRegistry;
+import com.ibm.fhir.registry.resource.FHIRRegistryResource;
+import com.ibm.fhir.registry.resource.FHIRRegistryResource.Version;
+import com.ibm.fhir.registry.spi.FHIRRegistryResourceProvider;
+import com.ibm.fhir.term.service.FHIRTermService;
+import com.ibm.fhir.term.util.ValueSetSupport;
+
+public class ValueSetExpansionCacheTest {
+    private static final String CODE_SYSTEM_URL = "http://ibm.com/fhir/CodeSystem/expansion-cache-test";
+    private static final String VALUE_SET_URL = "http://ibm.com/fhir/ValueSet/expansion-cache-test";
+
+    // the code system and value set returned by the test registry resource provider
+    private static volatile CodeSystem codeSystem;
+    private static volatile ValueSet childValueSet;
+
+    static {
+        FHIRRegistry.getInstance().register(createRegistryResourceProvider());
+    }
+
+    @Test
+    public void testExpansionIsCachedUntilCodeSystemChanges() throws Exception {
+        // the parent value set includes the child value set, which includes the code system without a version
+        ValueSet childValueSet = createValueSet(VALUE_SET_URL + "-child", Include.builder()
+            .system(Uri.of(CODE_SYSTEM_URL))
+            .build());
+        ValueSet parentValueSet = createValueSet(VALUE_SET_URL, Include.builder()
+            .valueSet(Canonical.of(VALUE_SET_URL + "-child"))
+            .build());
+        ValueSetExpansionCacheTest.childValueSet = childValueSet;
+
+        codeSystem = createCodeSystem("1.0.0", "a", "b");
+        ValueSet expanded = ValueSetSupport.expand(parentValueSet);
+        assertEquals(codes(expanded), Arrays.asList("a", "b"));
+        assertSame(ValueSetSupport.expand(parentValueSet), expanded);
+        assertTrue(validateCode(parentValueSet, "1.0.0", "b"));
+        assertFalse(validateCode(parentValueSet, "1.0.0", "c"));
+
+        // a new version of the code system is picked up by the nested expansion and everything that includes it
+        codeSystem = createCodeSystem("2.0.0", "a", "b", "c");
+        ValueSet reexpanded = ValueSetSupport.expand(parentValueSet);
+        assertNotSame(reexpanded, expanded);
+        assertEquals(codes(reexpanded), Arrays.asList("a", "b", "c"));
+        assertSame(ValueSetSupport.expand(parentValueSet), reexpanded);
+        assertTrue(validateCode(parentValueSet, "2.0.0", "c"));
+    }
+
+    @Test
+    public void testDifferentValueSetInstanceIsExpanded() throws Exception {
+        codeSystem = createCodeSystem("1.0.0", "a", "b");
+        ValueSet valueSet = createValueSet(VALUE_SET_URL + "-instance", Include.builder()
+            .system(Uri.of(CODE_SYSTEM_URL))
+            .concept(Include.Concept.builder().code(Code.of("a")).build())
+            .build());
+        ValueSet expanded = ValueSetSupport.expand(valueSet);
+        assertEquals(codes(expanded), Arrays.asList("a"));
+
+        // a value set with the same url and version is not served from the cache
+        ValueSet other = createValueSet(VALUE_SET_URL + "-instance", Include.builder()
+            .system(Uri.of(CODE_SYSTEM_URL))
+            .concept(Include.Concept.builder().code(Code.of("b")).build())
+            .build());
+        assertEquals(codes(ValueSetSupport.expand(other)), Arrays.asList("b"));
+    }
+
+    private static boolean validateCode(ValueSet valueSet, String version, String code) {
+        Coding coding = Coding.builder()
+                .system(Uri.of(CODE_SYSTEM_URL))
+                .version(string(version))
+                .code(Code.of(code))
+                .build();
+        return Boolean.TRUE.equals(FHIRTermService.getInstance().validateCode(valueSet, coding).getResult());
+    }
+
+    private static List<String> codes(ValueSet expanded) {
+        return getContains(expanded.getExpansion()).stream()
+                .map(contains -> contains.getCode().getValue())
+                .collect(Collectors.toList());
+    }
+
+    private static ValueSet createValueSet(String url, Include include) {
+        return ValueSet.builder()
+                .url(Uri.of(url))
+                .version(string("1.0.0"))
+                .status(PublicationStatus.ACTIVE)
+                .compose(Compose.builder()
+                    .include(include)
+                    .build())
+                .build();
+    }
+
+    private static CodeSystem createCodeSystem(String version, String... codes) {
+        CodeSystem.Builder builder = CodeSystem.builder()
+                .id("expansion-cache-test")
+                .url(Uri.of(CODE_SYSTEM_URL))
+                .version(string(version))
+                .status(PublicationStatus.ACTIVE)
+                .content(CodeSystemContentMode.COMPLETE);
+        for (String code : codes) {
+            builder.concept(Concept.builder().code(Code.of(code)).build());
+        }
+        return builder.build();
+    }
+
+    private static FHIRRegistryResource createRegistryResource(Resource resource, String id, String url, String version) {
+        return new FHIRRegistryResource(resource.getClass(), id, url, Version.from(version), null, null) {
+            @Override
+            public Resource getResource() {
+                return resource;
+            }
+        };
+    }
+
+    private static FHIRRegistryResourceProvider createRegistryResourceProvider() {
+        return new FHIRRegistryResourceProvider() {
+            @Override
+            public FHIRRegistryResource getRegistryResource(Class<? extends Resource> resourceType, String url, String version) {
+                if (CodeSystem.class.equals(resourceType) && CODE_SYSTEM_URL.equals(url)) {
+                    CodeSystem codeSystem = ValueSetExpansionCacheTest.codeSystem;
+                    if (codeSystem != null && (version == null || version.equals(codeSystem.getVersion().getValue()))) {
+                        return createRegistryResource(codeSystem, codeSystem.getId(), url, codeSystem.getVersion().getValue());
+                    }
+                }
+                ValueSet valueSet = childValueSet;
+                if (ValueSet.class.equals(resourceType) && valueSet != null && valueSet.getUrl().getValue().equals(url)) {
+                    return createRegistryResource(valueSet, "child", url, valueSet.getVersion().getValue());
+                }
+                return null;
+            }
+
+            @Override
+            public Collection<FHIRRegistryResource> getRegistryResources(Class<? extends Resource> resourceType) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public Collection<FHIRRegistryResource> getRegistryResources() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public Collection<FHIRRegistryResource> getProfileResources(String type) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public Collection<FHIRRegistryResource> getSearchParameterResources(String type) {
+                return Collections.emptyList();
+            }
+        };
+    }
+}
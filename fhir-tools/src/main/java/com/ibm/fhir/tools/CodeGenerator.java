@@ -57,6 +57,10 @@ public class CodeGenerator {
     private final List<String> integerSubtypeClassNames = new ArrayList<>();
     private final List<String> uriSubtypeClassNames = new ArrayList<>();
     private final Map<String, String> superClassMap = new HashMap<>();
+    // generated class name -> metadata for the elements declared by that class, in field order
+    private final Map<String, List<ElementMetadata>> elementMetadataMap = new HashMap<>();
+    // generated class name -> the attributes of the constraints declared by that class, in annotation order
+    private final Map<String, List<Map<String, String>>> constraintMetadataMap = new HashMap<>();
     private final Map<String, JsonObject> modifierExtensionDefinitionMap = new HashMap<>();
     private static final List<String> DATA_TYPE_NAMES = Arrays.asList(
         "Base64Binary",
@@ -259,10 +263,12 @@ public class CodeGenerator {
         generateVisitorInterface(basePath);
         generateDefaultVisitorClass(basePath);
         generateJsonParser(basePath);
+        generateJsonStreamParser(basePath);
         generateXMLParser(basePath);
         generateModelClassesFile(basePath);
         generateCodeSubtypeClass("ConceptSubsumptionOutcome", "http://hl7.org/fhir/ValueSet/concept-subsumption-outcome", basePath);
         generateCodeSubtypeClass("DataAbsentReason", "http://hl7.org/fhir/ValueSet/data-absent-reason", basePath);
+        generateModelMetadataClass(basePath);
     }
 
     private void generateModelClassesFile(String basePath) {
@@ -273,34 +279,262 @@ public class CodeGenerator {
         }
 
         List<String> qualifiedClassNames = new ArrayList<>();
-        for (String generatedClassName : generatedClassNames) {
-            String packageName;
-            if (generatedClassName.contains(".")) {
-                // nested class
-                String enclosingClassName = generatedClassName.substring(0, generatedClassName.indexOf("."));
-                packageName = typeClassNames.contains(enclosingClassName) ?
-                        "com.ibm.fhir.model.type" :
-                        "com.ibm.fhir.model.resource";
+        for (String generatedClassName : getSortedGeneratedClassNames()) {
+            qualifiedClassNames.add(getPackageName(generatedClassName) + "." + generatedClassName.replace(".", "$"));
+        }
+
+        try {
+            File file = new File(baseDir + "/src/main/resources/modelClasses");
+            Files.write(file.toPath(), qualifiedClassNames);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+
+    /**
+     * @return the generated class names (with nested class names separated by ".") in the order of their binary names
+     */
+    private List<String> getSortedGeneratedClassNames() {
+        List<String> sortedGeneratedClassNames = new ArrayList<>(generatedClassNames);
+        Collections.sort(sortedGeneratedClassNames, Comparator.comparing(s -> getPackageName(s) + "." + s.replace(".", "$")));
+        return sortedGeneratedClassNames;
+    }
+
+    private String getPackageName(String generatedClassName) {
+        String enclosingClassName = generatedClassName.contains(".") ?
+                generatedClassName.substring(0, generatedClassName.indexOf(".")) :
+                generatedClassName;
+        return typeClassNames.contains(enclosingClassName) ?
+                "com.ibm.fhir.model.type" :
+                "com.ibm.fhir.model.resource";
+    }
+
+    /**
+     * Generates the ModelMetadata class which holds the element and constraint metadata of each generated model class
+     * so that ModelSupport can be initialized without reflecting over the model classes and their annotations.
+     */
+    private void generateModelMetadataClass(String basePath) {
+        CodeBuilder cb = new CodeBuilder();
+
+        String packageName = "com.ibm.fhir.model.util";
+        cb.lines(HEADER).newLine();
+        cb._package(packageName).newLine();
+
+        cb._importstatic("com.ibm.fhir.model.util.AnnotationSupport", "binding");
+        cb._importstatic("com.ibm.fhir.model.util.AnnotationSupport", "constraint");
+        cb.newLine();
+
+        cb._import("java.util.Arrays");
+        cb._import("java.util.Collections");
+        cb._import("java.util.LinkedHashMap");
+        cb._import("java.util.LinkedHashSet");
+        cb._import("java.util.List");
+        cb._import("java.util.Map");
+        cb._import("java.util.Set");
+        cb.newLine();
+
+        cb._import("javax.annotation.Generated");
+        cb.newLine();
+
+        cb._import("com.ibm.fhir.model.annotation.Constraint");
+        cb._import("com.ibm.fhir.model.util.ModelSupport.ElementInfo");
+        cb.newLine();
+
+        cb.javadocStart();
+        cb.javadoc("The elements and constraints declared by each model class, as captured from the FHIR structure definitions");
+        cb.javadoc("at code generation time.");
+        cb.javadocEnd();
+        cb.annotation("Generated", quote("com.ibm.fhir.tools.CodeGenerator"));
+        cb._class(mods("final"), "ModelMetadata");
+
+        cb.constructor(mods("private"), "ModelMetadata").end().newLine();
+
+        List<String> sortedGeneratedClassNames = getSortedGeneratedClassNames();
+
+        cb.javadocStart();
+        cb.javadoc("@return the elements declared by each model class, in field declaration order, keyed by model class in the");
+        cb.javadoc("order of the modelClasses resource");
+        cb.javadocEnd();
+        cb.method(mods("static"), "Map<Class<?>, List<ElementInfo>>", "buildDeclaredElementInfoMap");
+        cb.assign("Map<Class<?>, List<ElementInfo>> declaredElementInfoMap", "new LinkedHashMap<>(1024)");
+        for (String generatedClassName : sortedGeneratedClassNames) {
+            cb.invoke("declaredElementInfoMap", "put", args(getClassLiteral(generatedClassName), getMetadataMethodName(generatedClassName, "Elements") + "()"));
+        }
+        cb._return("declaredElementInfoMap");
+        cb.end().newLine();
+
+        cb.javadocStart();
+        cb.javadoc("@return the constraints declared by each model class, in annotation order, for the model classes which");
+        cb.javadoc("declare constraints");
+        cb.javadocEnd();
+        cb.method(mods("static"), "Map<Class<?>, List<Constraint>>", "buildDeclaredConstraintMap");
+        cb.assign("Map<Class<?>, List<Constraint>> declaredConstraintMap", "new LinkedHashMap<>(512)");
+        for (String generatedClassName : sortedGeneratedClassNames) {
+            if (!constraintMetadataMap.getOrDefault(generatedClassName, Collections.emptyList()).isEmpty()) {
+                cb.invoke("declaredConstraintMap", "put", args(getClassLiteral(generatedClassName), getMetadataMethodName(generatedClassName, "Constraints") + "()"));
+            }
+        }
+        cb._return("declaredConstraintMap");
+        cb.end().newLine();
+
+        for (String generatedClassName : sortedGeneratedClassNames) {
+            String declaringType = getClassLiteral(generatedClassName);
+            List<ElementMetadata> elementMetadata = elementMetadataMap.get(generatedClassName);
+            cb.method(mods("private", "static"), "List<ElementInfo>", getMetadataMethodName(generatedClassName, "Elements"));
+            if (elementMetadata.isEmpty()) {
+                cb._return("Collections.emptyList()");
             } else {
-                packageName = typeClassNames.contains(generatedClassName) ?
-                        "com.ibm.fhir.model.type" :
-                        "com.ibm.fhir.model.resource";
+                List<String> elementInfos = new ArrayList<>();
+                for (ElementMetadata element : elementMetadata) {
+                    elementInfos.add(buildElementInfoExpression(element, declaringType));
+                }
+                cb._return(buildListExpression(elementInfos));
+            }
+            cb.end().newLine();
+
+            List<Map<String, String>> constraintValueMaps = constraintMetadataMap.getOrDefault(generatedClassName, Collections.emptyList());
+            if (!constraintValueMaps.isEmpty()) {
+                List<String> constraints = new ArrayList<>();
+                for (Map<String, String> valueMap : constraintValueMaps) {
+                    constraints.add("constraint(" + valueMap.get("id") + ", " + valueMap.get("level") + ", " + valueMap.get("location") + ", " +
+                            valueMap.get("description") + ", " + valueMap.get("expression") + ", " + valueMap.getOrDefault("modelChecked", "false") + ")");
+                }
+                cb.method(mods("private", "static"), "List<Constraint>", getMetadataMethodName(generatedClassName, "Constraints"));
+                cb._return(buildListExpression(constraints));
+                cb.end().newLine();
             }
-            String className = generatedClassName.replace(".", "$");
-            String qualifiedClassName = packageName + "." + className;
-            qualifiedClassNames.add(qualifiedClassName);
         }
 
-        Collections.sort(qualifiedClassNames);
+        cb.method(mods("private", "static"), "Set<Class<?>>", "choiceTypes", params("Class<?>... choiceTypes"));
+        cb._return("Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(choiceTypes)))");
+        cb.end().newLine();
 
+        cb.method(mods("private", "static"), "Set<String>", "referenceTypes", params("String... referenceTypes"));
+        cb._return("Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(referenceTypes)))");
+        cb.end();
+
+        cb._end();
+
+        File file = new File(basePath + "/" + packageName.replace(".", "/") + "/ModelMetadata.java");
         try {
-            File file = new File(baseDir + "/src/main/resources/modelClasses");
-            Files.write(file.toPath(), qualifiedClassNames);
+            if (!file.exists()) {
+                file.getParentFile().mkdirs();
+                Files.createFile(file.toPath());
+            }
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(cb.toString());
         } catch (Exception e) {
             throw new Error(e);
         }
     }
 
+    private String buildListExpression(List<String> expressions) {
+        String separator = System.lineSeparator() + "            ";
+        return "Collections.unmodifiableList(Arrays.asList(" + separator + String.join("," + separator, expressions) + "))";
+    }
+
+    private String buildElementInfoExpression(ElementMetadata element, String declaringType) {
+        String choiceTypes = element.choiceTypeNames.stream().map(s -> getClassLiteral(s)).collect(Collectors.joining(", "));
+        String referenceTypes = element.referenceTypes.stream().map(s -> quote(s)).collect(Collectors.joining(", "));
+        String binding = "null";
+        if (!element.bindingValueMap.isEmpty()) {
+            Map<String, String> valueMap = element.bindingValueMap;
+            if (!valueMap.containsKey("strength")) {
+                throw new Error("Binding without a strength for element: " + element.name);
+            }
+            binding = "binding(" +
+                    valueMap.getOrDefault("bindingName", quote("")) + ", " +
+                    "com.ibm.fhir.model.type.code." + valueMap.get("strength") + ", " +
+                    valueMap.getOrDefault("description", quote("")) + ", " +
+                    valueMap.getOrDefault("valueSet", quote("")) + ", " +
+                    valueMap.getOrDefault("inheritedExtensibleValueSet", quote("")) + ", " +
+                    valueMap.getOrDefault("minValueSet", quote("")) + ", " +
+                    valueMap.getOrDefault("maxValueSet", quote("")) + ")";
+        }
+        return "new ElementInfo(" +
+                quote(element.name) + ", " +
+                getClassLiteral(element.typeName) + ", " +
+                declaringType + ", " +
+                element.required + ", " +
+                element.repeating + ", " +
+                element.choice + ", " +
+                (element.choice ? "choiceTypes(" + choiceTypes + ")" : "Collections.emptySet()") + ", " +
+                element.reference + ", " +
+                (element.reference ? "referenceTypes(" + referenceTypes + ")" : "Collections.emptySet()") + ", " +
+                binding + ", " +
+                element.summary + ")";
+    }
+
+    private ElementMetadata buildElementMetadata(JsonObject structureDefinition, JsonObject elementDefinition, String fieldName) {
+        ElementMetadata element = new ElementMetadata();
+        element.name = "clazz".equals(fieldName) ? "class" : fieldName.startsWith("_") ? fieldName.substring(1) : fieldName;
+        String path = elementDefinition.getString("path");
+        if (!hasContentReference(elementDefinition) && (getTypes(elementDefinition).isEmpty() || isBackboneElement(elementDefinition))) {
+            // nested class
+            element.typeName = Arrays.asList(path.split("\\.")).stream().map(s -> titleCase(s)).collect(Collectors.joining("."));
+        } else {
+            element.typeName = getFieldType(structureDefinition, elementDefinition, false);
+        }
+        element.required = isRequired(elementDefinition);
+        element.repeating = isRepeating(elementDefinition);
+        element.choice = isChoiceElement(elementDefinition);
+        if (element.choice) {
+            element.choiceTypeNames = getChoiceTypeNames(elementDefinition);
+        }
+        if (isReferenceElement(structureDefinition, elementDefinition)) {
+            element.referenceTypes = getReferenceTypes(elementDefinition);
+            element.reference = !element.referenceTypes.isEmpty();
+        }
+        element.bindingValueMap = getBindingValueMap(elementDefinition);
+        element.summary = isSummary(elementDefinition);
+        return element;
+    }
+
+    /**
+     * @return the class literal, with a fully qualified class name, for the passed field type or generated class name
+     */
+    private String getClassLiteral(String typeName) {
+        switch (typeName) {
+        case "byte[]":
+            return "byte[].class";
+        case "TemporalAccessor":
+            return "java.time.temporal.TemporalAccessor.class";
+        case "BigDecimal":
+            return "java.math.BigDecimal.class";
+        case "ZonedDateTime":
+        case "LocalTime":
+            return "java.time." + typeName + ".class";
+        default:
+            break;
+        }
+        if (typeName.startsWith("java.") || typeName.startsWith("com.ibm.fhir.")) {
+            return typeName + ".class";
+        }
+        String enclosingClassName = typeName.contains(".") ? typeName.substring(0, typeName.indexOf(".")) : typeName;
+        List<String> packageNames = new ArrayList<>();
+        if (typeClassNames.contains(enclosingClassName)) {
+            packageNames.add("com.ibm.fhir.model.type");
+        }
+        if (resourceClassNames.contains(enclosingClassName)) {
+            packageNames.add("com.ibm.fhir.model.resource");
+        }
+        if (!typeName.contains(".") && codeSubtypeClassNames.contains(typeName)) {
+            packageNames.add("com.ibm.fhir.model.type.code");
+        }
+        if (packageNames.size() != 1) {
+            throw new Error("Unable to determine the package of class: " + typeName);
+        }
+        return packageNames.get(0) + "." + typeName + ".class";
+    }
+
+    private String getMetadataMethodName(String generatedClassName, String suffix) {
+        return camelCase(generatedClassName.replace(".", "")) + suffix;
+    }
+
     private void generateDefaultVisitorClass(String basePath) {
         CodeBuilder cb = new CodeBuilder();
 
@@ -887,11 +1121,15 @@ public class CodeGenerator {
             cb.javadoc(Arrays.asList(getElementDefinition(structureDefinition, path).getString("definition").split(System.lineSeparator())));
 
             String className = nested ? titleCase(path.substring(path.lastIndexOf(".") + 1)) : titleCase(structureDefinition.getString("name"));
+            List<ElementMetadata> elementMetadata = new ArrayList<>();
             if (nested) {
                 String nestedClassName = Arrays.asList(path.split("\\.")).stream().map(s -> titleCase(s)).collect(Collectors.joining("."));
+                elementMetadataMap.put(nestedClassName, elementMetadata);
                 generatedClassNames.add(nestedClassName);
                 superClassMap.put(nestedClassName, "BackboneElement");
             } else {
+                elementMetadataMap.put(className, elementMetadata);
+                constraintMetadataMap.put(className, getConstraintValueMaps(structureDefinition));
                 generatedClassNames.add(className);
                 if (isPrimitiveType(structureDefinition)) {
                     primitiveTypeClassNames.add(className);
@@ -995,6 +1233,7 @@ public class CodeGenerator {
                         cb.annotation("Required");
                     }
                     cb.field(mods(visibility, "final"), fieldType, fieldName);
+                    elementMetadata.add(buildElementMetadata(structureDefinition, elementDefinition, fieldName));
                     if (isBackboneElement(elementDefinition)) {
                         nestedPaths.add(elementDefinition.getString("path"));
                     }
@@ -1281,6 +1520,27 @@ public class CodeGenerator {
     }
 
     private void generateBindingAnnotation(JsonObject structureDefinition, CodeBuilder cb, String className, JsonObject elementDefinition) {
+        Map<String, String> valueMap = getBindingValueMap(elementDefinition);
+        if (!valueMap.isEmpty()) {
+            String name = structureDefinition.getString("name");
+
+            String prefix = "";
+            if ("ElementDefinition".equals(name) ||
+                    ("OperationDefinition".equals(name) &&
+                            ("Parameter".equals(className) || "Binding".equals(className)))) {
+                prefix = "com.ibm.fhir.model.annotation.";
+            }
+
+            cb.annotation(prefix + "Binding", valueMap);
+        }
+    }
+
+    /**
+     * @return the attributes of the Binding annotation for the passed element definition, as Java expressions, or an
+     *     empty map if it has no binding
+     */
+    private Map<String, String> getBindingValueMap(JsonObject elementDefinition) {
+        Map<String, String> valueMap = new LinkedHashMap<>();
         JsonObject binding = getBinding(elementDefinition);
         if (binding != null) {
             String bindingName = getBindingName(binding);
@@ -1291,7 +1551,6 @@ public class CodeGenerator {
             String minValueSet = getMinValueSet(binding);
             String maxValueSet = getMaxValueSet(binding);
 
-            Map<String, String> valueMap = new LinkedHashMap<>();
             if (bindingName != null) {
                 valueMap.put("bindingName", "\"" + bindingName + "\"");
             }
@@ -1313,20 +1572,8 @@ public class CodeGenerator {
             if (maxValueSet != null) {
                 valueMap.put("maxValueSet", "\"" + maxValueSet + "\"");
             }
-
-            if (!valueMap.isEmpty()) {
-                String name = structureDefinition.getString("name");
-
-                String prefix = "";
-                if ("ElementDefinition".equals(name) ||
-                        ("OperationDefinition".equals(name) &&
-                                ("Parameter".equals(className) || "Binding".equals(className)))) {
-                    prefix = "com.ibm.fhir.model.annotation.";
-                }
-
-                cb.annotation(prefix + "Binding", valueMap);
-            }
         }
+        return valueMap;
     }
 
     @SuppressWarnings("unused")
@@ -1414,7 +1661,18 @@ public class CodeGenerator {
     }
 
     private void generateConstraintAnnotations(JsonObject structureDefinition, CodeBuilder cb) {
+        for (Map<String, String> valueMap : getConstraintValueMaps(structureDefinition)) {
+            cb.annotation("Constraint", valueMap);
+        }
+    }
+
+    /**
+     * @return the attributes of the Constraint annotations for the passed structure definition, as Java expressions,
+     *     in annotation order
+     */
+    private List<Map<String, String>> getConstraintValueMaps(JsonObject structureDefinition) {
         String name = structureDefinition.getString("name");
+        List<Map<String, String>> valueMaps = new ArrayList<>();
 
         List<JsonObject> allConstraints = new ArrayList<>();
 
@@ -1473,8 +1731,9 @@ public class CodeGenerator {
             if (MODEL_CHECKED_CONSTRAINTS.contains(key)) {
                 valueMap.put("modelChecked", "true");
             }
-            cb.annotation("Constraint", valueMap);
+            valueMaps.add(valueMap);
         }
+        return valueMaps;
     }
 
     private boolean hasConstraints(JsonObject structureDefinition) {
@@ -2441,6 +2700,8 @@ public class CodeGenerator {
         cb._import("javax.json.JsonReaderFactory");
         cb._import("javax.json.JsonString");
         cb._import("javax.json.JsonValue");
+        cb._import("javax.json.stream.JsonParser");
+        cb._import("javax.json.stream.JsonParserFactory");
         cb.newLine();
 
         cb._import("com.ibm.fhir.model.parser.FHIRParser");
@@ -2461,8 +2722,15 @@ public class CodeGenerator {
         cb.annotation("NotThreadSafe");
         cb.annotation("Generated", quote("com.ibm.fhir.tools.CodeGenerator"));
         cb._class(mods("public"), "FHIRJsonParser", "FHIRAbstractParser");
+        cb.javadoc(Arrays.asList(
+            "Property name for a property that controls whether the parser reads the input as a stream of JSON events",
+            "and populates the model builders directly, instead of first reading the whole input into a JsonObject"));
+        cb.field(mods("public", "static", "final"), "java.lang.String", "PROPERTY_STREAMING", quote("com.ibm.fhir.model.parser.json.streaming"));
+        cb.newLine();
+
         cb.field(mods("public", "static"), "boolean", "DEBUG", "false");
         cb.field(mods("private", "static", "final"), "JsonReaderFactory", "JSON_READER_FACTORY", "Json.createReaderFactory(null)");
+        cb.field(mods("private", "static", "final"), "JsonParserFactory", "JSON_PARSER_FACTORY", "Json.createParserFactory(null)");
         cb.newLine();
 
         cb.field(mods("private", "final"), "Stack<java.lang.String>", "stack", _new("Stack<>"));
@@ -2482,6 +2750,15 @@ public class CodeGenerator {
 
         // public <T extends Resource> T parseAndFilter(InputStream in, java.util.List<java.lang.String> elementsToInclude) throws FHIRException
         cb.method(mods("public"), "<T extends Resource> T", "parseAndFilter", params("InputStream in", "Collection<java.lang.String> elementsToInclude"), throwsExceptions("FHIRParserException"))
+            ._if("isStreaming()")
+                ._try("JsonParser jsonParser = JSON_PARSER_FACTORY.createParser(nonClosingInputStream(in), StandardCharsets.UTF_8)")
+                    ._return("parseAndFilter(jsonParser, elementsToInclude)")
+                ._catch("FHIRParserException e")
+                    ._throw("e")
+                ._catch("Exception e")
+                    ._throw("new FHIRParserException(e.getMessage(), getPath(), e)")
+                ._end()
+            ._end()
             ._try("JsonReader jsonReader = JSON_READER_FACTORY.createReader(nonClosingInputStream(in), StandardCharsets.UTF_8)")
                 .assign("JsonObject jsonObject", "jsonReader.readObject()")
                 ._return("parseAndFilter(jsonObject, elementsToInclude)")
@@ -2502,6 +2779,15 @@ public class CodeGenerator {
 
         // public <T extends Resource> T parseAndFilter(Reader reader, java.util.List<java.lang.String> elementsToInclude) throws FHIRException
         cb.method(mods("public"), "<T extends Resource> T", "parseAndFilter", params("Reader reader", "Collection<java.lang.String> elementsToInclude"), throwsExceptions("FHIRParserException"))
+            ._if("isStreaming()")
+                ._try("JsonParser jsonParser = JSON_PARSER_FACTORY.createParser(nonClosingReader(reader))")
+                    ._return("parseAndFilter(jsonParser, elementsToInclude)")
+                ._catch("FHIRParserException e")
+                    ._throw("e")
+                ._catch("Exception e")
+                    ._throw("new FHIRParserException(e.getMessage(), getPath(), e)")
+                ._end()
+            ._end()
             ._try("JsonReader jsonReader = JSON_READER_FACTORY.createReader(nonClosingReader(reader))")
                 .assign("JsonObject jsonObject", "jsonReader.readObject()")
                 ._return("parseAndFilter(jsonObject, elementsToInclude)")
@@ -2535,14 +2821,30 @@ public class CodeGenerator {
         .end();
         cb.newLine();
 
+        cb.method(mods("public"), "<T extends Resource> T", "parse", args("JsonParser jsonParser"), throwsExceptions("FHIRParserException"))
+            ._return("parseAndFilter(jsonParser, null)")
+        .end();
+        cb.newLine();
+
+        // public <T extends Resource> T parseAndFilter(JsonParser jsonParser, java.util.List<java.lang.String> elementsToInclude)
+        cb.method(mods("public"), "<T extends Resource> T", "parseAndFilter", params("JsonParser jsonParser", "Collection<java.lang.String> elementsToInclude"), throwsExceptions("FHIRParserException"))
+            ._return("new FHIRJsonStreamParser(this).parseAndFilter(jsonParser, elementsToInclude)")
+        .end();
+        cb.newLine();
+
         cb.method(mods("private"), "void", "reset")
             .invoke("stack", "clear", args())
         .end();
         cb.newLine();
 
+        cb.method(mods("private"), "boolean", "isStreaming")
+            ._return("getPropertyOrDefault(PROPERTY_STREAMING, java.lang.Boolean.FALSE, java.lang.Boolean.class)")
+        .end();
+        cb.newLine();
+
         cb.override();
         cb.method(mods("public"), "boolean", "isPropertySupported", params("java.lang.String name"))
-            ._if("FHIRParser.PROPERTY_IGNORE_UNRECOGNIZED_ELEMENTS.equals(name)")
+            ._if("FHIRParser.PROPERTY_IGNORE_UNRECOGNIZED_ELEMENTS.equals(name) || PROPERTY_STREAMING.equals(name)")
                 ._return("true")
             ._end()
             ._return("false")
@@ -2720,6 +3022,495 @@ public class CodeGenerator {
         cb.end().newLine();
     }
 
+    private void generateJsonStreamParser(String basePath) {
+        CodeBuilder cb = new CodeBuilder();
+
+        String packageName = "com.ibm.fhir.model.parser";
+        cb.lines(HEADER).newLine();
+        cb._package(packageName).newLine();
+
+        cb._importstatic("com.ibm.fhir.model.util.JsonSupport", "checkChoiceElementKey");
+        cb._importstatic("com.ibm.fhir.model.util.JsonSupport", "getResourceType");
+        cb._importstatic("com.ibm.fhir.model.util.JsonSupport", "getValueType");
+        cb._importstatic("com.ibm.fhir.model.util.JsonSupport", "hasNextObject");
+        cb._importstatic("com.ibm.fhir.model.util.JsonSupport", "readObject");
+        cb._importstatic("com.ibm.fhir.model.util.JsonSupport", "requireArray");
+        cb._importstatic("com.ibm.fhir.model.util.JsonSupport", "requireObject");
+        cb._importstatic("com.ibm.fhir.model.util.JsonSupport", "skipValue");
+        cb.newLine();
+
+        cb._import("java.util.ArrayList");
+        cb._import("java.util.Collection");
+        cb._import("java.util.Stack");
+        cb._import("java.util.StringJoiner");
+        cb._import("java.util.function.Supplier");
+        cb.newLine();
+
+        cb._import("javax.annotation.Generated");
+        cb._import("javax.json.JsonObject");
+        cb._import("javax.json.stream.JsonParser");
+        cb.newLine();
+
+        cb._import("com.ibm.fhir.model.parser.exception.FHIRParserException");
+        cb._import("com.ibm.fhir.model.resource.*");
+        cb._import("com.ibm.fhir.model.type.*");
+        cb._import("com.ibm.fhir.model.type.code.*");
+        cb._import("com.ibm.fhir.model.type.Boolean");
+        cb._import("com.ibm.fhir.model.type.Integer");
+        cb._import("com.ibm.fhir.model.type.String");
+        cb._import("com.ibm.fhir.model.util.ElementFilter");
+        cb.newLine();
+
+        cb._import("net.jcip.annotations.NotThreadSafe");
+        cb.newLine();
+
+        cb.javadoc(Arrays.asList(
+            "Parses a resource from a stream of JSON events, populating the model builders as each member is read",
+            "instead of first reading the whole input into a JsonObject.",
+            "",
+            "Used by {@link FHIRJsonParser} when {@link FHIRJsonParser#PROPERTY_STREAMING} is set; an instance parses a single resource."));
+        cb.annotation("NotThreadSafe");
+        cb.annotation("Generated", quote("com.ibm.fhir.tools.CodeGenerator"));
+        cb._class(mods(), "FHIRJsonStreamParser");
+        cb.field(mods("private", "final"), "FHIRJsonParser", "fhirJsonParser");
+        cb.field(mods("private", "final"), "boolean", "ignoringUnrecognizedElements");
+        cb.field(mods("private", "final"), "Stack<java.lang.String>", "stack", _new("Stack<>"));
+        cb.field(mods("private"), "Collection<java.lang.String>", "elementsToInclude");
+        cb.field(mods("private"), "ElementFilter", "elementFilter");
+        cb.newLine();
+
+        cb.constructor(mods(), "FHIRJsonStreamParser", args("FHIRJsonParser fhirJsonParser"))
+            .assign("this.fhirJsonParser", "fhirJsonParser")
+            .assign("this.ignoringUnrecognizedElements", "fhirJsonParser.getPropertyOrDefault(FHIRParser.PROPERTY_IGNORE_UNRECOGNIZED_ELEMENTS, java.lang.Boolean.FALSE, java.lang.Boolean.class)")
+        .end();
+        cb.newLine();
+
+        cb.annotation("SuppressWarnings", quote("unchecked"));
+        cb.method(mods(), "<T extends Resource> T", "parseAndFilter", params("JsonParser parser", "Collection<java.lang.String> elementsToInclude"), throwsExceptions("FHIRParserException"))
+            ._try()
+                .assign("this.elementsToInclude", "elementsToInclude")
+                .invoke("requireObject", args("parser", "null"))
+                .assign("JsonParser.Event event", "parser.next()")
+                ._if("event != JsonParser.Event.KEY_NAME || !\"resourceType\".equals(parser.getString())")
+                    .comment("resourceType is not the first member of the object, so read it fully and use the JsonObject-based parser")
+                    ._return("fhirJsonParser.parseAndFilter(readObject(parser, event), elementsToInclude)")
+                ._end()
+                .assign("Class<?> resourceType", "getResourceType(parser)")
+                ._if("elementsToInclude != null")
+                    .assign("elementFilter", "new ElementFilter(resourceType, elementsToInclude)")
+                ._end()
+                ._return("(T) parseResource(resourceType, resourceType.getSimpleName(), parser, -1)")
+            ._catch("FHIRParserException e")
+                ._throw("e")
+            ._catch("Exception e")
+                ._throw("new FHIRParserException(e.getMessage(), getPath(), e)")
+            ._end()
+        .end();
+        cb.newLine();
+
+        cb.method(mods("private"), "Resource", "parseResource", params("java.lang.String elementName", "JsonParser parser", "int elementIndex"))
+            .assign("JsonParser.Event event", "parser.next()")
+            ._if("event != JsonParser.Event.KEY_NAME || !\"resourceType\".equals(parser.getString())")
+                ._try()
+                    ._return("fhirJsonParser.parse(readObject(parser, event))")
+                ._catch("FHIRParserException e")
+                    ._throw("new IllegalArgumentException(e.getMessage(), e)")
+                ._end()
+            ._end()
+            ._return("parseResource(getResourceType(parser), elementName, parser, elementIndex)")
+        .end();
+        cb.newLine();
+
+        cb.method(mods("private"), "Resource", "parseResource", params("Class<?> resourceType", "java.lang.String elementName", "JsonParser parser", "int elementIndex"));
+        cb._switch("resourceType.getSimpleName()");
+        for (String resourceClassName : resourceClassNames) {
+            if ("Resource".equals(resourceClassName) || "DomainResource".equals(resourceClassName)) {
+                continue;
+            }
+            cb._case(quote(resourceClassName));
+            cb._return("parse" + resourceClassName + "(elementName, parser, elementIndex)");
+        }
+        cb._end();
+        cb._return("null");
+        cb.end();
+        cb.newLine();
+
+        Collections.sort(generatedClassNames);
+
+        for (String generatedClassName : generatedClassNames) {
+            JsonObject structureDefinition = getStructureDefinition(generatedClassName);
+            if (isPrimitiveType(structureDefinition)) {
+                generateStreamPrimitiveTypeParseMethod(generatedClassName, cb);
+            } else {
+                generateStreamParseMethod(generatedClassName, structureDefinition, cb);
+            }
+        }
+
+        cb.method(mods("private"), "void", "parseElement", params("Element.Builder builder", "java.lang.String elementName", "JsonParser.Event event", "JsonParser parser", "int elementIndex"))
+            ._if("event == JsonParser.Event.START_OBJECT")
+                .invoke("stackPush", args("elementName", "elementIndex"))
+                ._while("parser.next() == JsonParser.Event.KEY_NAME")
+                    .assign("java.lang.String key", "parser.getString()")
+                    ._switch("key")
+                    ._case(quote("id"))
+                        .invoke("builder", "id", args("parseJavaString(key, parser)"))
+                        ._break()
+                    ._case(quote("extension"))
+                        .invoke("requireArray", args("parser", "key"))
+                        ._for("int i = 0", "hasNextObject(parser, key)", "i++")
+                            .invoke("builder", "extension", args("parseExtension(key, parser, i)"))
+                        ._end()
+                        ._break()
+                    ._default()
+                        .invoke("skipUnrecognizedElement", args("key", "parser"))
+                    ._end()
+                ._end()
+                .invoke("stackPop", args())
+            ._elseif("event != JsonParser.Event.VALUE_NULL || elementIndex == -1")
+                ._throw("new IllegalArgumentException(\"Expected: OBJECT but found: \" + getValueType(event) + \" for element: _\" + elementName)")
+            ._end()
+        .end().newLine();
+
+        cb.method(mods("private"), "java.lang.String", "parseJavaString", params("java.lang.String elementName", "JsonParser parser"))
+            .assign("JsonParser.Event event", "parser.next()")
+            ._if("event != JsonParser.Event.VALUE_STRING")
+                ._throw("new IllegalArgumentException(\"Expected: JsonString but found: \" + getValueType(event) + \" for element: \" + elementName)")
+            ._end()
+            ._return("parser.getString()")
+        .end().newLine();
+
+        cb.method(mods("private"), "<T extends Element.Builder> T", "getBuilder", params("java.util.List<T> builders", "int index", "Supplier<T> supplier"))
+            ._if("index == builders.size()")
+                .invoke("builders", "add", args("supplier.get()"))
+            ._end()
+            ._return("builders.get(index)")
+        .end().newLine();
+
+        cb.method(mods("private"), "void", "checkChoiceElementKeys", params("java.lang.String key", "java.lang.String _key"))
+            ._if("key != null && _key != null && !_key.endsWith(key)")
+                ._throw("new IllegalArgumentException(\"Choice element keys: \" + key + \" and \" + _key + \" are not consistent\")")
+            ._end()
+        .end().newLine();
+
+        cb.method(mods("private"), "boolean", "isFiltered", params("java.lang.String key"))
+            ._return("elementFilter != null && stack.size() == 1 && !elementFilter.includes(key)")
+        .end().newLine();
+
+        cb.method(mods("private"), "void", "skipUnrecognizedElement", params("java.lang.String key", "JsonParser parser"))
+            ._if("!ignoringUnrecognizedElements && !\"resourceType\".equals(key) && !\"fhir_comments\".equals(key)")
+                ._throw("new IllegalArgumentException(\"Unrecognized element: '\" + key + \"'\")")
+            ._end()
+            .invoke("skipValue", args("parser"))
+        .end().newLine();
+
+        cb.method(mods("private"), "void", "stackPush", params("java.lang.String elementName", "int elementIndex"))
+            ._if("elementIndex != -1")
+                .invoke("stack", "push", args("elementName + \"[\" + elementIndex + \"]\""))
+            ._else()
+                .invoke("stack", "push", args("elementName"))
+            ._end()
+            ._if("FHIRJsonParser.DEBUG")
+                .invoke("System.out", "println", args("getPath()"))
+            ._end()
+        .end().newLine();
+
+        cb.method(mods("private"), "void", "stackPop")
+            .invoke("stack", "pop", args())
+        .end().newLine();
+
+        cb.method(mods("private"), "java.lang.String", "getPath")
+            .assign("StringJoiner joiner", "new StringJoiner(\".\")")
+            ._foreach("java.lang.String s", "stack")
+                .invoke("joiner", "add", args("s"))
+            ._end()
+            ._return("joiner.toString()")
+        .end();
+
+        cb._end();
+
+        File file = new File(basePath + "/" + packageName.replace(".", "/") + "/FHIRJsonStreamParser.java");
+        try {
+            if (!file.exists()) {
+                file.getParentFile().mkdirs();
+                Files.createFile(file.toPath());
+            }
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(cb.toString());
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+
+    /**
+     * Generates a method that sets the value of a primitive type builder from the current event of a JsonParser.
+     * Subtypes of string, uri, integer and code share the method of their base type.
+     */
+    private void generateStreamPrimitiveTypeParseMethod(String generatedClassName, CodeBuilder cb) {
+        if (isStringSubtype(generatedClassName) || isUriSubtype(generatedClassName) || isCodeSubtype(generatedClassName) || isIntegerSubtype(generatedClassName)) {
+            return;
+        }
+
+        cb.method(mods("private"), "void", "parse" + generatedClassName + "Value", params(generatedClassName + ".Builder builder", "java.lang.String elementName", "JsonParser.Event event", "JsonParser parser", "int elementIndex"));
+        cb.invoke("stackPush", args("elementName", "elementIndex"));
+
+        String expected;
+        if ("Boolean".equals(generatedClassName)) {
+            expected = "TRUE or FALSE";
+            cb._if("event == JsonParser.Event.VALUE_TRUE || event == JsonParser.Event.VALUE_FALSE")
+                .invoke("builder", "value", args("(event == JsonParser.Event.VALUE_TRUE) ? java.lang.Boolean.TRUE : java.lang.Boolean.FALSE"));
+        } else if ("Integer".equals(generatedClassName)) {
+            expected = "NUMBER";
+            cb._if("event == JsonParser.Event.VALUE_NUMBER")
+                .invoke("builder", "value", args("parser.getBigDecimal().intValueExact()"));
+        } else if ("Decimal".equals(generatedClassName)) {
+            expected = "NUMBER";
+            cb._if("event == JsonParser.Event.VALUE_NUMBER")
+                .invoke("builder", "value", args("parser.getBigDecimal()"));
+        } else {
+            expected = "STRING";
+            cb._if("event == JsonParser.Event.VALUE_STRING")
+                .invoke("builder", "value", args("parser.getString()"));
+        }
+        cb._elseif("event != JsonParser.Event.VALUE_NULL || elementIndex == -1")
+            ._throw("new IllegalArgumentException(\"Expected: " + expected + " but found: \" + getValueType(event) + \" for element: \" + elementName)")
+        ._end();
+
+        cb.invoke("stackPop", args());
+        cb.end().newLine();
+    }
+
+    /**
+     * Collects the element definitions of the given class, including those inherited from its superclasses, keyed by element name.
+     * The field type of each element is collected into the passed fieldTypeMap.
+     */
+    private void collectStreamElementDefinitions(String generatedClassName, JsonObject structureDefinition, Map<String, JsonObject> elementDefinitionMap, Map<String, String> fieldTypeMap) {
+        String superClass = superClassMap.get(generatedClassName);
+        if (superClass != null) {
+            collectStreamElementDefinitions(superClass, getStructureDefinition(superClass), elementDefinitionMap, fieldTypeMap);
+        }
+
+        String path = titleCase(Arrays.asList(generatedClassName.split("\\.")).stream().map(s -> camelCase(s)).collect(Collectors.joining(".")));
+
+        for (JsonObject elementDefinition : getElementDefinitions(structureDefinition, path)) {
+            String basePath = elementDefinition.getJsonObject("base").getString("path");
+            if (elementDefinition.getString("path").equals(basePath)) {
+                String elementName = getElementName(elementDefinition, path);
+                String fieldType = getFieldType(structureDefinition, elementDefinition, false)
+                        .replace("com.ibm.fhir.model.type.", "")
+                        .replace("com.ibm.fhir.model.resource.", "");
+
+                if (isBackboneElement(elementDefinition)) {
+                    fieldType = generatedClassName + "." + fieldType;
+                }
+
+                elementDefinitionMap.put(elementName, elementDefinition);
+                fieldTypeMap.put(elementName, fieldType);
+            }
+        }
+    }
+
+    /**
+     * @return the name of the primitive type whose stream parse method is used for the given primitive type or subtype
+     */
+    private String getStreamPrimitiveBaseType(String fieldType) {
+        if (isStringSubtype(fieldType) || isCodeSubtype(fieldType)) {
+            return "String";
+        } else if (isUriSubtype(fieldType)) {
+            return "Uri";
+        } else if (isIntegerSubtype(fieldType)) {
+            return "Integer";
+        }
+        return fieldType;
+    }
+
+    private String buildStreamParseMethodInvocation(String fieldType, String elementIndex) {
+        if (isQuantitySubtype(fieldType)) {
+            return "(" + fieldType + ") parseQuantity(" + fieldType + ".builder(), key, parser, " + elementIndex + ")";
+        }
+        return "parse" + fieldType.replace(".", "") + "(key, parser, " + elementIndex + ")";
+    }
+
+    private void generateStreamParseMethod(String generatedClassName, JsonObject structureDefinition, CodeBuilder cb) {
+        if (isQuantitySubtype(structureDefinition) || isAbstract(structureDefinition)) {
+            return;
+        }
+
+        Map<String, JsonObject> elementDefinitionMap = new LinkedHashMap<>();
+        Map<String, String> fieldTypeMap = new HashMap<>();
+        collectStreamElementDefinitions(generatedClassName, structureDefinition, elementDefinitionMap, fieldTypeMap);
+
+        if ("Quantity".equals(generatedClassName)) {
+            cb.method(mods("private"), "Quantity", "parseQuantity", params("Quantity.Builder builder", "java.lang.String elementName", "JsonParser parser", "int elementIndex"));
+        } else {
+            cb.method(mods("private"), generatedClassName, "parse" + generatedClassName.replace(".", ""), params("java.lang.String elementName", "JsonParser parser", "int elementIndex"));
+        }
+        cb.invoke("stackPush", args("elementName", "elementIndex"));
+        if (!"Quantity".equals(generatedClassName)) {
+            cb.assign(generatedClassName + ".Builder builder", generatedClassName + ".builder()");
+        }
+
+        // a primitive value and its '_' counterpart may appear in either order, so they share a builder that is built after the last member
+        for (String elementName : elementDefinitionMap.keySet()) {
+            JsonObject elementDefinition = elementDefinitionMap.get(elementName);
+            String fieldType = fieldTypeMap.get(elementName);
+            if (isChoiceElement(elementDefinition)) {
+                cb.assign("java.lang.String " + elementName + "Key", "null");
+                if (getChoiceTypeNames(elementDefinition).stream().anyMatch(t -> isPrimitiveType(t))) {
+                    cb.assign("java.lang.String _" + elementName + "Key", "null");
+                    cb.assign("Element.Builder " + elementName + "Builder", "null");
+                }
+            } else if (isPrimitiveType(fieldType) || isCodeSubtype(fieldType)) {
+                if (isRepeating(elementDefinition)) {
+                    cb.assign("java.util.List<" + fieldType + ".Builder> " + elementName + "Builders", "null");
+                    cb.assign("int " + elementName + "Count", "-1");
+                    cb.assign("int _" + elementName + "Count", "-1");
+                } else {
+                    cb.assign(fieldType + ".Builder " + elementName + "Builder", "null");
+                }
+            }
+        }
+
+        cb._while("parser.next() == JsonParser.Event.KEY_NAME");
+        cb.assign("java.lang.String key", "parser.getString()");
+        if (resourceClassNames.contains(generatedClassName)) {
+            cb._if("isFiltered(key)")
+                .invoke("skipValue", args("parser"))
+                ._continue()
+            ._end();
+        }
+        cb._switch("key");
+
+        for (String elementName : elementDefinitionMap.keySet()) {
+            JsonObject elementDefinition = elementDefinitionMap.get(elementName);
+            String fieldType = fieldTypeMap.get(elementName);
+            String fieldName = getFieldName(elementName);
+
+            if (isChoiceElement(elementDefinition)) {
+                boolean hasPrimitiveChoice = getChoiceTypeNames(elementDefinition).stream().anyMatch(t -> isPrimitiveType(t));
+                for (String choiceTypeName : getChoiceTypeNames(elementDefinition)) {
+                    String key = elementName + (isProfiledType(choiceTypeName) ? "Quantity" : choiceTypeName);
+                    cb._case(quote(key));
+                    cb.assign(elementName + "Key", "checkChoiceElementKey(" + quote(elementName) + ", " + elementName + "Key, key)");
+                    if (hasPrimitiveChoice) {
+                        cb.invoke("checkChoiceElementKeys", args(elementName + "Key", "_" + elementName + "Key"));
+                    }
+                    if (isPrimitiveType(choiceTypeName)) {
+                        String baseType = getStreamPrimitiveBaseType(choiceTypeName);
+                        cb.assign(elementName + "Builder", "(" + elementName + "Builder != null) ? " + elementName + "Builder : " + choiceTypeName + ".builder()");
+                        cb.invoke("parse" + baseType + "Value", args("(" + baseType + ".Builder) " + elementName + "Builder", "key", "parser.next()", "parser", "-1"));
+                        cb._break();
+                        cb._case(quote("_" + key));
+                        cb.assign("_" + elementName + "Key", "checkChoiceElementKey(" + quote("_" + elementName) + ", _" + elementName + "Key, key)");
+                        cb.invoke("checkChoiceElementKeys", args(elementName + "Key", "_" + elementName + "Key"));
+                        cb.assign(elementName + "Builder", "(" + elementName + "Builder != null) ? " + elementName + "Builder : " + choiceTypeName + ".builder()");
+                        cb.invoke("parseElement", args(elementName + "Builder", quote(key), "parser.next()", "parser", "-1"));
+                    } else {
+                        cb.invoke("requireObject", args("parser", "key"));
+                        cb.invoke("builder", fieldName, args(buildStreamParseMethodInvocation(choiceTypeName, "-1")));
+                    }
+                    cb._break();
+                }
+            } else if (isJavaString(fieldType)) {
+                cb._case(quote(elementName));
+                cb.invoke("builder", fieldName, args("parseJavaString(key, parser)"));
+                cb._break();
+            } else if (isPrimitiveType(fieldType) || isCodeSubtype(fieldType)) {
+                String baseType = getStreamPrimitiveBaseType(fieldType);
+                if (isRepeating(elementDefinition)) {
+                    String builders = elementName + "Builders";
+                    for (String count : Arrays.asList(elementName + "Count", "_" + elementName + "Count")) {
+                        cb._case(quote(count.startsWith("_") ? "_" + elementName : elementName));
+                        cb.invoke("requireArray", args("parser", "key"));
+                        cb.assign(builders, "(" + builders + " != null) ? " + builders + " : new ArrayList<>()");
+                        cb.assign(count, "0");
+                        cb._for("JsonParser.Event event = parser.next()", "event != JsonParser.Event.END_ARRAY", "event = parser.next(), " + count + "++");
+                        String builder = "getBuilder(" + builders + ", " + count + ", " + fieldType + "::builder)";
+                        if (count.startsWith("_")) {
+                            cb.invoke("parseElement", args(builder, quote(elementName), "event", "parser", count));
+                        } else {
+                            cb.invoke("parse" + baseType + "Value", args(builder, "key", "event", "parser", count));
+                        }
+                        cb._end();
+                        cb._break();
+                    }
+                } else {
+                    String builder = elementName + "Builder";
+                    cb._case(quote(elementName));
+                    cb.assign(builder, "(" + builder + " != null) ? " + builder + " : " + fieldType + ".builder()");
+                    cb.invoke("parse" + baseType + "Value", args(builder, "key", "parser.next()", "parser", "-1"));
+                    cb._break();
+                    cb._case(quote("_" + elementName));
+                    cb.assign(builder, "(" + builder + " != null) ? " + builder + " : " + fieldType + ".builder()");
+                    cb.invoke("parseElement", args(builder, quote(elementName), "parser.next()", "parser", "-1"));
+                    cb._break();
+                }
+            } else if (isRepeating(elementDefinition)) {
+                cb._case(quote(elementName));
+                cb.invoke("requireArray", args("parser", "key"));
+                cb._for("int i = 0", "hasNextObject(parser, key)", "i++");
+                cb.invoke("builder", fieldName, args(buildStreamParseMethodInvocation(fieldType, "i")));
+                cb._end();
+                cb._break();
+            } else {
+                cb._case(quote(elementName));
+                cb.invoke("requireObject", args("parser", "key"));
+                cb.invoke("builder", fieldName, args(buildStreamParseMethodInvocation(fieldType, "-1")));
+                cb._break();
+            }
+        }
+
+        cb._default();
+        cb.invoke("skipUnrecognizedElement", args("key", "parser"));
+        cb._end();
+        cb._end();
+
+        for (String elementName : elementDefinitionMap.keySet()) {
+            JsonObject elementDefinition = elementDefinitionMap.get(elementName);
+            String fieldType = fieldTypeMap.get(elementName);
+            String fieldName = getFieldName(elementName);
+
+            if (isChoiceElement(elementDefinition)) {
+                if (getChoiceTypeNames(elementDefinition).stream().anyMatch(t -> isPrimitiveType(t))) {
+                    cb._if(elementName + "Builder != null");
+                    cb.invoke("builder", fieldName, args(elementName + "Builder.build()"));
+                    cb._end();
+                }
+            } else if (isPrimitiveType(fieldType) || isCodeSubtype(fieldType)) {
+                if (isRepeating(elementDefinition)) {
+                    String count = elementName + "Count";
+                    cb._if(count + " != -1");
+                    cb._if("_" + count + " != -1 && _" + count + " < " + count);
+                    cb._throw("new IllegalArgumentException(\"Could not find element at index: \" + _" + count + ")");
+                    cb._end();
+                    cb._for("int i = 0", "i < " + count, "i++");
+                    cb.invoke("builder", fieldName, args(elementName + "Builders.get(i).build()"));
+                    cb._end();
+                    cb._elseif("_" + count + " != -1");
+                    cb._throw("new IllegalArgumentException(\"Found array with key '_" + elementName + "' but could not find matching array with key: '" + elementName + "'\")");
+                    cb._end();
+                } else {
+                    cb._if(elementName + "Builder != null");
+                    cb.invoke("builder", fieldName, args(elementName + "Builder.build()"));
+                    cb._end();
+                }
+            }
+        }
+
+        cb.invoke("stackPop", args());
+        cb._return("builder.build()");
+        cb.end().newLine();
+
+        if ("Quantity".equals(generatedClassName)) {
+            cb.method(mods("private"), "Quantity", "parseQuantity", params("java.lang.String elementName", "JsonParser parser", "int elementIndex"));
+            cb._return("parseQuantity(Quantity.builder(), elementName, parser, elementIndex)");
+            cb.end().newLine();
+        }
+    }
+
     private void generateParseMethod(String generatedClassName, JsonObject structureDefinition, CodeBuilder cb) {
         if (isQuantitySubtype(structureDefinition)) {
             return;
@@ -4019,4 +4810,21 @@ public class CodeGenerator {
         CodeGenerator generator = new CodeGenerator(structureDefinitionMap, codeSystemMap, valueSetMap);
         generator.generate("./src/main/java");
     }
+
+    /**
+     * The metadata of an element declared by a generated class, as exposed at runtime by ModelSupport.ElementInfo
+     */
+    private static class ElementMetadata {
+        String name;
+        // the field type or nested class name, without the List wrapper for repeating elements
+        String typeName;
+        boolean required;
+        boolean repeating;
+        boolean choice;
+        List<String> choiceTypeNames = Collections.emptyList();
+        boolean reference;
+        List<String> referenceTypes = Collections.emptyList();
+        Map<String, String> bindingValueMap;
+        boolean summary;
+    }
 }
@@ -21,6 +21,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,9 +50,11 @@ import com.ibm.fhir.validation.exception.FHIRValidationException;
 public class FHIRValidator {
     private static final Logger log = Logger.getLogger(FHIRValidator.class.getName());
 
-    private final ValidatingNodeVisitor visitor = new ValidatingNodeVisitor();
+    private final ValidatingNodeVisitor visitor;
 
-    private FHIRValidator() { }
+    private FHIRValidator(ForkJoinPool pool) {
+        visitor = new ValidatingNodeVisitor(pool);
+    }
 
     /**
      * Validate a {@link Resource} against constraints in the base specification and
@@ -178,7 +182,24 @@ public class FHIRValidator {
     }
 
     public static FHIRValidator validator() {
-        return new FHIRValidator();
+        return new FHIRValidator(null);
+    }
+
+    /**
+     * Create a validator that validates independent subtrees of the target resource in parallel.
+     *
+     * <p>Resources nested within the target resource (e.g. Bundle entries and contained resources) are validated
+     * by separate tasks in the passed {@link ForkJoinPool}, each with its own {@link FHIRPathEvaluator} and
+     * {@link EvaluationContext}. The issues from each task are merged in the order in which they would have been
+     * generated by a validator that validates serially.
+     *
+     * @param pool
+     *     the pool in which to validate nested resources
+     * @return
+     *     a new validator
+     */
+    public static FHIRValidator validator(ForkJoinPool pool) {
+        return new FHIRValidator(Objects.requireNonNull(pool));
     }
 
     /**
@@ -227,6 +248,33 @@ public class FHIRValidator {
             .build();
     }
 
+    /**
+     * Validates a nested resource subtree on behalf of a parallel {@link ValidatingNodeVisitor}.
+     */
+    private static class ValidationTask extends RecursiveTask<List<Issue>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient ForkJoinPool pool;
+        private final transient EvaluationContext evaluationContext;
+        private final transient FHIRPathResourceNode resourceNode;
+        private final boolean includeResourceAssertedProfiles;
+        private final List<String> profiles;
+
+        private ValidationTask(ForkJoinPool pool, EvaluationContext evaluationContext, FHIRPathResourceNode resourceNode,
+                boolean includeResourceAssertedProfiles, List<String> profiles) {
+            this.pool = pool;
+            this.evaluationContext = evaluationContext;
+            this.resourceNode = resourceNode;
+            this.includeResourceAssertedProfiles = includeResourceAssertedProfiles;
+            this.profiles = profiles;
+        }
+
+        @Override
+        protected List<Issue> compute() {
+            return new ValidatingNodeVisitor(pool).validate(evaluationContext, resourceNode, includeResourceAssertedProfiles, profiles);
+        }
+    }
+
     private static class ValidatingNodeVisitor extends FHIRPathDefaultNodeVisitor {
         private FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
         private EvaluationContext evaluationContext;
@@ -234,19 +282,75 @@ public class FHIRValidator {
         private List<String> profiles;
         private List<Issue> issues = new ArrayList<>();
 
-        private ValidatingNodeVisitor() { }
+        // the pool in which nested resources are validated, or null if this visitor validates serially
+        private final ForkJoinPool pool;
+
+        // the tasks validating nested resources and, for each task, the number of issues which preceded it
+        private final List<ValidationTask> tasks = new ArrayList<>();
+        private final List<Integer> taskIssueIndexes = new ArrayList<>();
+
+        private ValidatingNodeVisitor(ForkJoinPool pool) {
+            this.pool = pool;
+        }
 
         private List<Issue> validate(EvaluationContext evaluationContext, boolean includeResourceAssertedProfiles, String... profiles) {
+            FHIRPathResourceNode rootNode = evaluationContext.getTree().getRoot().asResourceNode();
+            if (pool != null) {
+                return pool.invoke(new ValidationTask(pool, evaluationContext, rootNode, includeResourceAssertedProfiles, Arrays.asList(profiles)));
+            }
+            return validate(evaluationContext, rootNode, includeResourceAssertedProfiles, Arrays.asList(profiles));
+        }
+
+        private List<Issue> validate(EvaluationContext evaluationContext, FHIRPathResourceNode resourceNode, boolean includeResourceAssertedProfiles, List<String> profiles) {
             reset();
             this.evaluationContext = evaluationContext;
             this.includeResourceAssertedProfiles = includeResourceAssertedProfiles;
-            this.profiles = Arrays.asList(profiles);
-            this.evaluationContext.getTree().getRoot().accept(this);
-            return issues;
+            this.profiles = profiles;
+            resourceNode.accept(this);
+            return tasks.isEmpty() ? issues : joinTasks();
         }
 
         private void reset() {
             issues.clear();
+            tasks.clear();
+            taskIssueIndexes.clear();
+        }
+
+        /**
+         * Merge the issues of the forked tasks with the issues of this visitor, in the order in which they would
+         * have been generated by a serial traversal of the tree.
+         */
+        private List<Issue> joinTasks() {
+            List<Issue> result = new ArrayList<>();
+            int fromIndex = 0;
+            for (int i = 0; i < tasks.size(); i++) {
+                int toIndex = taskIssueIndexes.get(i);
+                result.addAll(issues.subList(fromIndex, toIndex));
+                result.addAll(tasks.get(i).join());
+                fromIndex = toIndex;
+            }
+            result.addAll(issues.subList(fromIndex, issues.size()));
+            return result;
+        }
+
+        @Override
+        protected void visitChildren(FHIRPathNode node) {
+            if (pool == null) {
+                super.visitChildren(node);
+                return;
+            }
+            for (FHIRPathNode child : node.children()) {
+                if (child.isResourceNode()) {
+                    // nested resources (e.g. Bundle entries and contained resources) are validated independently
+                    ValidationTask task = new ValidationTask(pool, new EvaluationContext(evaluationContext), child.asResourceNode(),
+                        includeResourceAssertedProfiles, profiles);
+                    task.fork();
+                    tasks.add(task);
+                    taskIssueIndexes.add(issues.size());
+                } else {
+                    child.accept(this);
+                }
+            }
         }
 
         @Override
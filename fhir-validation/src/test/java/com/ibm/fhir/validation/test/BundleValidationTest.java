@@ -13,6 +13,7 @@ import static org.testng.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.testng.annotations.Test;
 
@@ -240,4 +241,42 @@ public class BundleValidationTest {
         assertTrue(errors.get(0).getDetails().getText().getValue().startsWith("bdl-3"));
         assertTrue(errors.get(1).getDetails().getText().getValue().startsWith("bdl-4"));
     }
+
+    @Test
+    public static void testParallelValidation() throws Exception {
+        FHIRParser parser = FHIRParser.parser(Format.JSON);
+        Bundle bundleTemplate = parser.parse(ExamplesUtil.resourceReader("json/ibm/minimal/Bundle-1.json"));
+        Patient patient = parser.parse(ExamplesUtil.resourceReader("json/ibm/minimal/Patient-1.json"));
+        Practitioner practitioner = parser.parse(ExamplesUtil.resourceReader("json/ibm/minimal/Practitioner-1.json"));
+
+        Bundle invalidInnerBundle = bundleTemplate.toBuilder()
+                .type(BundleType.BATCH)
+                .entry(Entry.builder().fullUrl(Uri.of("BadURI")).build())
+                .build();
+
+        Bundle.Builder builder = bundleTemplate.toBuilder();
+        for (int i = 0; i < 50; i++) {
+            builder.entry(Entry.builder()
+                .resource(patient.toBuilder()
+                    .contained(practitioner.toBuilder().id("test").build())
+                    .generalPractitioner(Reference.builder().reference(String.of((i % 2 == 0) ? "#test" : "#missing")).build())
+                    .build())
+                .build());
+            builder.entry(Entry.builder().resource(invalidInnerBundle).build());
+        }
+        Bundle bundle = builder.build();
+
+        List<Issue> serialIssues = FHIRValidator.validator().validate(bundle);
+        assertTrue(serialIssues.size() > 100);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            FHIRValidator validator = FHIRValidator.validator(pool);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(validator.validate(bundle), serialIssues);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
 }